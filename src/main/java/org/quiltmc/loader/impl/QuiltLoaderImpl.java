@@ -52,6 +52,7 @@ import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
+import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.Opcodes;
 import org.quiltmc.loader.api.FasterFiles;
 import org.quiltmc.loader.api.LanguageAdapter;
@@ -104,6 +105,7 @@ import org.quiltmc.loader.impl.report.QuiltReportedError;
 import org.quiltmc.loader.impl.solver.ModSolveResultImpl;
 import org.quiltmc.loader.impl.transformer.TransformCacheManager;
 import org.quiltmc.loader.impl.transformer.TransformCacheResult;
+import org.quiltmc.loader.impl.transformer.TransformCacheStats;
 import org.quiltmc.loader.impl.util.Arguments;
 import org.quiltmc.loader.impl.util.AsciiTableGenerator;
 import org.quiltmc.loader.impl.util.AsciiTableGenerator.AsciiTableColumn;
@@ -160,6 +162,10 @@ public final class QuiltLoaderImpl {
 
 	private boolean frozen = false;
 
+	/** True if mods are only being loaded to generate the transform cache, and the game won't be launched. See
+	 * {@link #prebuild()}. */
+	private boolean prebuildOnly = false;
+
 	private Object gameInstance;
 
 	private MappingResolver mappingResolver;
@@ -171,6 +177,15 @@ public final class QuiltLoaderImpl {
 	private Path configDir;
 	private Path modsDir;
 
+	/** The folder which contains the transform cache, or null if it hasn't been created yet. */
+	private Path transformCacheFolder;
+
+	/** The stats from generating the transform cache during this launch, or null if it was reused. */
+	private TransformCacheStats transformCacheStats;
+
+	/** The options which the transform cache was generated with, or null if it hasn't been created yet. */
+	private String transformCacheOptions;
+
 	/** Stores every mod which has been copied into a temporary jar file: see {@link #shouldCopyToJar(ModLoadOption)}
 	 * and {@link #copyToJar(ModLoadOption, Path)}. */
 	private final Map<String, File> copiedToJarMods = new HashMap<>();
@@ -278,6 +293,32 @@ public final class QuiltLoaderImpl {
 		return ensureDirExists(getCacheDir().resolve(CACHE_DIR_NAME), "quilt loader cache");
 	}
 
+	/**
+	 * @return The folder which contains the transform cache, or null if mods haven't been loaded yet.
+	 */
+	@Nullable
+	public Path getTransformCacheFolder() {
+		return transformCacheFolder;
+	}
+
+	/**
+	 * @return The time spent in each phase of generating the transform cache, and how many classes and bytes were
+	 *         processed, or null if an existing transform cache was reused during this launch.
+	 */
+	@Nullable
+	public TransformCacheStats getTransformCacheStats() {
+		return transformCacheStats;
+	}
+
+	/**
+	 * @return Every option which the transform cache depends on (which includes every mod, and the hash of its origin),
+	 *         or null if mods haven't been loaded yet.
+	 */
+	@Nullable
+	public String getTransformCacheOptions() {
+		return transformCacheOptions;
+	}
+
 	/**
 	 * @return The game instance's configuration directory.
 	 */
@@ -309,6 +350,13 @@ public final class QuiltLoaderImpl {
 		}
 	}
 
+	/** Loads mods exactly like {@link #load()}, including generating the transform cache, but without showing any
+	 * windows. This is used to generate the transform cache ahead of time, without launching the game. */
+	public void prebuild() {
+		prebuildOnly = true;
+		load();
+	}
+
 	private void setup() throws ModResolutionException {
 
 		ModSolveResult result = runPlugins();
@@ -374,13 +422,21 @@ public final class QuiltLoaderImpl {
 		}
 
 		Path transformCacheFolder = getCacheDir().resolve(CACHE_DIR_NAME).resolve("transform-cache-" + suffix);
-		TransformCacheResult cacheResult = TransformCacheManager.populateTransformBundle(transformCacheFolder, modList, modOriginHash, result);
+		this.transformCacheFolder = transformCacheFolder;
+		TransformCacheResult cacheResult = TransformCacheManager.populateTransformBundle(transformCacheFolder, modList, modOriginHash, result, !prebuildOnly);
 		QuiltZipPath transformedModBundle = cacheResult.transformCacheRoot;
+		transformCacheStats = cacheResult.stats;
+		transformCacheOptions = cacheResult.options;
 
 		long zipEnd = System.nanoTime();
 
 		try {
-			QuiltLauncherBase.getLauncher().setTransformCache(transformedModBundle.toUri().toURL());
+			if (transformedModBundle != null) {
+				QuiltLauncherBase.getLauncher().setTransformCache(transformedModBundle.toUri().toURL());
+				QuiltLauncherBase.getLauncher().setClassPathSnapshot(cacheResult.classPathSnapshot, cacheResult.options);
+			} else {
+				QuiltLauncherBase.getLauncher().setLazyTransformer(cacheResult.lazyTransformer);
+			}
 			QuiltLauncherBase.getLauncher().setHiddenClasses(cacheResult.hiddenClasses);
 		} catch (MalformedURLException e) {
 			throw new RuntimeException(e);
@@ -403,6 +459,9 @@ public final class QuiltLoaderImpl {
 
 			if (!modOption.needsTransforming() && modOption.namespaceMappingFrom() == null) {
 				resourceRoot = modOption.resourceRoot();
+			} else if (transformedModBundle == null) {
+				// Classes are transformed lazily, when they are loaded
+				resourceRoot = modOption.resourceRoot();
 			} else {
 				String modid = modOption.id();
 				Path modTransformed = transformedModBundle.resolve(modid + "/");
@@ -455,7 +514,9 @@ public final class QuiltLoaderImpl {
 		}
 
 		try {
-			transformedModBundle.getFileSystem().close();
+			if (transformedModBundle != null) {
+				transformedModBundle.getFileSystem().close();
+			}
 		} catch (IOException e) {
 			// TODO!
 			throw new Error(e);
@@ -590,7 +651,7 @@ public final class QuiltLoaderImpl {
 
 	private ModSolveResult runPlugins() {
 		QuiltLoaderConfig config = new QuiltLoaderConfig(getConfigDir().resolve("quilt-loader.txt"));
-		QuiltPluginManagerImpl plugins = new QuiltPluginManagerImpl(getGameDir(), getConfigDir(), getModsDir(), getCacheDir(), provider, config);
+		QuiltPluginManagerImpl plugins = new QuiltPluginManagerImpl(getGameDir(), getConfigDir(), getModsDir(), getCacheDir(), provider, prebuildOnly, config);
 
 		Path crashReportFile = null;
 		String fullCrashText = null;
@@ -607,7 +668,7 @@ public final class QuiltLoaderImpl {
 
 			QuiltLauncherBase.getLauncher().setPluginPackages(plugins.getPluginPackages());
 
-			if (displayedMessage) {
+			if (displayedMessage || plugins.simulationOnly) {
 				return result;
 			}
 
@@ -669,7 +730,7 @@ public final class QuiltLoaderImpl {
 			}
 		}
 
-		if ((provider != null && !provider.canOpenGui()) || GraphicsEnvironment.isHeadless()) {
+		if ((provider != null && !provider.canOpenGui()) || GraphicsEnvironment.isHeadless() || prebuildOnly) {
 			if (crashReportFile != null) {
 				System.err.println("Game crashed! Saved the crash report to " + crashReportFile);
 			}
@@ -735,7 +796,7 @@ public final class QuiltLoaderImpl {
 			return false;
 		}
 
-		{
+		if (!plugins.simulationOnly) {
 			QuiltBasicWindow<Void> window = QuiltLoaderGui.createBasicWindow();
 			window.title(QuiltLoaderText.of("Quilt Loader " + QuiltLoaderImpl.VERSION));
 			window.addFolderViewButton(QuiltLoaderText.translate("button.open_mods_folder"), getModsDir());
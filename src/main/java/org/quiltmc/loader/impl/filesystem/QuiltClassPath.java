@@ -19,10 +19,14 @@ package org.quiltmc.loader.impl.filesystem;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.nio.file.FileSystem;
+import java.nio.file.FileSystemNotFoundException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayDeque;
@@ -39,12 +43,17 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.LongBinaryOperator;
 
+import org.jetbrains.annotations.Nullable;
 import org.quiltmc.loader.api.FasterFiles;
 import org.quiltmc.loader.api.QuiltLoader;
 import org.quiltmc.loader.impl.util.QuiltLoaderInternal;
 import org.quiltmc.loader.impl.util.QuiltLoaderInternalType;
+import org.quiltmc.loader.impl.util.QuiltLoaderWorkerPool;
 import org.quiltmc.loader.impl.util.SystemProperties;
 import org.quiltmc.loader.impl.util.log.Log;
 import org.quiltmc.loader.impl.util.log.LogCategory;
@@ -66,10 +75,30 @@ public class QuiltClassPath {
 	 * by int hash) */
 	private static final boolean USE_CUSTOM_TABLE = !Boolean.getBoolean(SystemProperties.DISABLE_QUILT_CLASS_PATH_CUSTOM_TABLE);
 
+	private static final boolean ENABLE_SNAPSHOT = !Boolean.getBoolean(SystemProperties.DISABLE_QUILT_CLASS_PATH_SNAPSHOT);
+
 	private final List<Path> allRoots = VALIDATE ? new CopyOnWriteArrayList<>() : null;
 	private final AtomicReference<Path[]> roots = new AtomicReference<>(new Path[0]);
 	private final FileMap files = USE_CUSTOM_TABLE ? new HashTableFileMap() : new StandardFileMap();
 
+	/** Every folder which contains a path in {@link #files}, {@link #segments}, or the snapshot. */
+	private final FolderFilter folders = new FolderFilter();
+
+	/** Indexed roots which are searched after {@link #files}, in the order they were added. Replaced (rather than
+	 * modified) whenever a segment is added. */
+	private volatile Segment[] segments = new Segment[0];
+
+	/** Set between {@link #openSnapshot(Path, String)} and {@link #finishSnapshot()}. */
+	private Path snapshotFile;
+	private String snapshotKey;
+
+	/** Every root added since the snapshot was opened which can be stored in a snapshot, in order. */
+	private final List<Path> snapshotRoots = new ArrayList<>();
+	private final List<String> snapshotDescriptors = new ArrayList<>();
+
+	/** Null unless the opened snapshot has matched every root added to it so far. */
+	private volatile SnapshotView snapshotView;
+
 	/** Set if {@link #VALIDATE} finds a problem. */
 	private static boolean printFullDetail = false;
 
@@ -85,7 +114,15 @@ public class QuiltClassPath {
 				addRoot(from);
 			}
 
-		} else if (root instanceof QuiltMemoryPath) {
+		} else if (!addSnapshotRoot(root)) {
+			indexRoot(root);
+		}
+	}
+
+	private void indexRoot(Path root) {
+		FileMap files = quickFiles();
+
+		if (root instanceof QuiltMemoryPath) {
 			QuiltMemoryFileSystem fs = ((QuiltMemoryPath) root).fs;
 
 			if (fs instanceof QuiltMemoryFileSystem.ReadWrite) {
@@ -96,17 +133,26 @@ public class QuiltClassPath {
 				files.ensureCapacityFor(fs.getEntryCount());
 
 				for (Path key : fs.getEntryPathIterator()) {
-					putQuickFile(key.toString(), key);
+					putQuickFile(files, key);
 				}
 			}
 
 		} else if (root instanceof QuiltMapPath<?, ?>) {
 			QuiltMapFileSystem<?, ?> fs = ((QuiltMapPath<?, ?>) root).fs;
 
+			if (fs instanceof QuiltZipFileSystem) {
+				QuiltZipIndex index = ((QuiltZipFileSystem) fs).getLazyIndex();
+				if (index != null) {
+					// Lazy zips are large, so they are searched through their own index rather than creating every path
+					addIndexSegment((QuiltZipFileSystem) fs, index);
+					return;
+				}
+			}
+
 			files.ensureCapacityFor(fs.getEntryCount());
 
 			for (Path key : fs.getEntryPathIterator()) {
-				putQuickFile(key.toString(), key);
+				putQuickFile(files, key);
 			}
 
 		} else {
@@ -116,7 +162,7 @@ public class QuiltClassPath {
 			if ("jar".equals(fs.provider().getScheme())) {
 				// Assume it's read-only for speed
 				addRootToInternalArray(root);
-				beginScanning(root);
+				beginScanning(root, files);
 				return;
 			}
 
@@ -128,6 +174,213 @@ public class QuiltClassPath {
 		}
 	}
 
+	private void putQuickFile(FileMap files, Path file) {
+		// Added to the filter first, so the file is never visible in the map without it
+		folders.add(file);
+		files.put(file);
+	}
+
+	private void addIndexSegment(QuiltZipFileSystem fs, QuiltZipIndex index) {
+		// Added to the filter first, so the paths are never visible without it.
+		// The index stores the hash of every full path, so none of them need to be created.
+		for (int i = QuiltZipIndex.ROOT + 1; i < index.entryCount; i++) {
+			if (index.isFolder(i) && index.childCount(i) > 0) {
+				folders.add(index.pathHash(i));
+			}
+		}
+		addSegment(new IndexSegment(fs, index));
+	}
+
+	/** @return The map which newly added roots should be indexed into, which is always searched after every root
+	 *         which was added before. */
+	private synchronized FileMap quickFiles() {
+		Segment[] array = segments;
+		if (array.length == 0) {
+			return files;
+		}
+		Segment last = array[array.length - 1];
+		if (last instanceof MapSegment) {
+			return ((MapSegment) last).files;
+		}
+		FileMap map = USE_CUSTOM_TABLE ? new HashTableFileMap() : new StandardFileMap();
+		addSegment(new MapSegment(map));
+		return map;
+	}
+
+	private synchronized void addSegment(Segment segment) {
+		Segment[] array = segments;
+		Segment[] array2 = Arrays.copyOf(array, array.length + 1);
+		array2[array.length] = segment;
+		segments = array2;
+	}
+
+	/** Starts using the {@link QuiltClassPathSnapshot} stored in the given file, if it was written with the same key.
+	 * Every root added from now on is compared to the roots stored in the snapshot (in order), and roots which match
+	 * aren't indexed. If any root doesn't match then the snapshot is discarded, and the roots which matched are indexed
+	 * normally instead.
+	 * <p>
+	 * {@link #finishSnapshot()} must be called once every root has been added, which writes a new snapshot if this one
+	 * couldn't be used.
+	 *
+	 * @param key Describes everything which could change the contents of the roots, but isn't checked by comparing the
+	 *            roots themselves. */
+	public synchronized void openSnapshot(Path file, String key) {
+		if (!ENABLE_SNAPSHOT || snapshotFile != null) {
+			return;
+		}
+
+		snapshotFile = file;
+		snapshotKey = key;
+
+		try {
+			QuiltClassPathSnapshot snapshot = QuiltClassPathSnapshot.read(file, key);
+			if (snapshot != null) {
+				// Any roots which don't match will be indexed normally, so extra folders here don't matter
+				snapshot.addFoldersTo(folders);
+				snapshotView = new SnapshotView(snapshot, new FileSystem[0]);
+				// Roots added after this are indexed into a new segment, so they're searched after the snapshot's roots
+				addSegment(SnapshotSegment.INSTANCE);
+			}
+		} catch (IOException e) {
+			Log.warn(LogCategory.GENERAL, "Failed to read the class path snapshot " + file, e);
+		}
+	}
+
+	/** Stops comparing roots to the snapshot opened by {@link #openSnapshot(Path, String)}. If it matched every root
+	 * then it continues to be used, otherwise a new snapshot is written in the background. */
+	public synchronized void finishSnapshot() {
+		Path file = snapshotFile;
+		if (file == null) {
+			return;
+		}
+		String key = snapshotKey;
+		snapshotFile = null;
+		snapshotKey = null;
+
+		SnapshotView view = snapshotView;
+		if (view != null && view.fileSystems.length != view.snapshot.rootCount()) {
+			discardSnapshot("only " + view.fileSystems.length + " of its " + view.snapshot.rootCount() + " roots were added");
+		}
+
+		List<Path> roots = new ArrayList<>(snapshotRoots);
+		List<String> descriptors = new ArrayList<>(snapshotDescriptors);
+		snapshotRoots.clear();
+		snapshotDescriptors.clear();
+
+		if (snapshotView != null) {
+			Log.info(LogCategory.GENERAL, "Using the class path snapshot for " + roots.size() + " roots");
+			return;
+		}
+
+		if (roots.isEmpty()) {
+			return;
+		}
+
+		QuiltLoaderWorkerPool.get().execute(() -> writeSnapshot(file, key, roots, descriptors));
+	}
+
+	/** @return True if the root was found in the snapshot, and so doesn't need to be indexed. */
+	private synchronized boolean addSnapshotRoot(Path root) {
+		if (snapshotFile == null) {
+			return false;
+		}
+
+		String descriptor = describeSnapshotRoot(root);
+		if (descriptor == null) {
+			// Not stored in the snapshot, so it's indexed normally
+			return false;
+		}
+
+		int index = snapshotRoots.size();
+		snapshotRoots.add(root);
+		snapshotDescriptors.add(descriptor);
+
+		SnapshotView view = snapshotView;
+		if (view == null) {
+			return false;
+		}
+
+		if (index < view.snapshot.rootCount() && descriptor.equals(view.snapshot.descriptor(index))) {
+			FileSystem[] fileSystems = Arrays.copyOf(view.fileSystems, index + 1);
+			fileSystems[index] = root.getFileSystem();
+			snapshotView = new SnapshotView(view.snapshot, fileSystems);
+			return true;
+		}
+
+		discardSnapshot("root " + index + " (" + descriptor + ") doesn't match");
+		return false;
+	}
+
+	private void discardSnapshot(String reason) {
+		SnapshotView view = snapshotView;
+		Log.info(LogCategory.GENERAL, "Not using the class path snapshot since " + reason);
+		// Indexed before the view is removed, so lookups never miss these roots
+		for (int i = 0; i < view.fileSystems.length; i++) {
+			indexRoot(snapshotRoots.get(i));
+		}
+		snapshotView = null;
+	}
+
+	/** @return A string which is only equal for the same root in a later launch if its contents haven't changed, or
+	 *         null if the root can't be stored in a snapshot. */
+	@Nullable
+	private static String describeSnapshotRoot(Path root) {
+		if (root instanceof QuiltMapPath<?, ?>) {
+			QuiltMapFileSystem<?, ?> fs = ((QuiltMapPath<?, ?>) root).fs;
+			// Memory file systems aren't stored, since the only way to tell if their contents have changed is to read
+			// all of them, which is slower than indexing them normally.
+			if (!(fs instanceof QuiltZipFileSystem)) {
+				return null;
+			}
+			String identity = ((QuiltZipFileSystem) fs).getContentIdentity();
+			return identity == null ? null : "zip " + identity;
+		}
+
+		if ("jar".equals(root.getFileSystem().provider().getScheme())) {
+			try {
+				String uri = root.toUri().getRawSchemeSpecificPart();
+				int end = uri.indexOf("!/");
+				if (end < 0) {
+					return null;
+				}
+				Path file = Paths.get(new URI(uri.substring(0, end)));
+				BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+				return "jar " + file + " " + attributes.size() + " " + attributes.lastModifiedTime().toMillis();
+			} catch (IOException | URISyntaxException | IllegalArgumentException | FileSystemNotFoundException e) {
+				return null;
+			}
+		}
+
+		return null;
+	}
+
+	private static void writeSnapshot(Path file, String key, List<Path> roots, List<String> descriptors) {
+		long start = System.nanoTime();
+		try {
+			QuiltClassPathSnapshot.Builder builder = new QuiltClassPathSnapshot.Builder(descriptors);
+			for (int i = 0; i < roots.size(); i++) {
+				int index = i;
+				Path root = roots.get(i);
+				Consumer<Path> to = path -> {
+					// The index never returns the root folder itself (see isEqual), so neither does the snapshot
+					if (path.getNameCount() > 0) {
+						builder.add(path.toString(), index);
+					}
+				};
+				if (root instanceof QuiltMapPath<?, ?>) {
+					((QuiltMapPath<?, ?>) root).fs.getEntryPathIterator().forEach(to);
+				} else {
+					walkZip(root, to);
+				}
+			}
+			builder.write(file, key);
+			long end = System.nanoTime();
+			Log.info(LogCategory.GENERAL, "Took " + (end - start) / 1000 + "us to write the class path snapshot for " + roots.size() + " roots");
+		} catch (IOException e) {
+			Log.warn(LogCategory.GENERAL, "Failed to write the class path snapshot " + file, e);
+		}
+	}
+
 	private void addRootToInternalArray(Path root) {
 		roots.updateAndGet(array -> {
 			Path[] array2 = Arrays.copyOf(array, array.length + 1);
@@ -136,13 +389,9 @@ public class QuiltClassPath {
 		});
 	}
 
-	private void putQuickFile(String fileName, Path file) {
-		files.put(file);
-	}
-
-	private void beginScanning(Path zipRoot) {
+	private void beginScanning(Path zipRoot, FileMap files) {
 		synchronized (QuiltClassPath.class) {
-			SCAN_TASKS.add(() -> scanZip(zipRoot));
+			SCAN_TASKS.add(() -> scanZip(zipRoot, files));
 			int scannerCount = ACTIVE_SCANNERS.size();
 			if (scannerCount < 4 && scannerCount < SCAN_TASKS.size()) {
 				Thread scanner = new Thread("QuiltClassPath ZipScanner#" + ZIP_SCANNER_COUNT.incrementAndGet()) {
@@ -168,65 +417,10 @@ public class QuiltClassPath {
 		}
 	}
 
-	private void scanZip(Path zipRoot) {
+	private void scanZip(Path zipRoot, FileMap files) {
 		try {
 			long start = System.nanoTime();
-			Files.walkFileTree(zipRoot, new SimpleFileVisitor<Path>() {
-
-				// A previous version of this code used Path.relativize to construct the output paths
-				// But Java 8's ZipFileSystem doesn't implement this correctly, so we do it manually instead.
-
-				final Deque<String> stack = new ArrayDeque<>();
-				int foldersRead = 0;
-				int filesRead = 0;
-
-				@Override
-				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
-					Path fileName = dir.getFileName();
-					if (fileName != null) {
-						stack.addLast(fileName.toString());
-					} else if (!"/".equals(dir.toString())) {
-						throw new IOException("Unknown directory with no file names " + dir.getClass() + " '" + dir + "'");
-					} else if (!stack.isEmpty()) {
-						if (stack.size() == 1 && stack.contains("/")) {
-							// Java 8's ZipFileSystem seems to repeat the zip forever?
-							Log.info(LogCategory.GENERAL, "Encountered the root directory multiple times, terminating "
-								+ zipRoot.getClass() + " (after reading " + foldersRead + " folders and "
-								+ filesRead + " files)");
-							return FileVisitResult.TERMINATE;
-						}
-						throw new IOException("Encountered multiple roots? (Non-empty stack): " + stack);
-					} else {
-						stack.addLast("/");
-					}
-					foldersRead++;
-					putQuickFile(dir.toString(), dir);
-					return FileVisitResult.CONTINUE;
-				}
-
-				@Override
-				public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
-					stack.removeLast();
-					return FileVisitResult.CONTINUE;
-				}
-
-				@Override
-				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-					StringBuilder relativeString = new StringBuilder();
-					boolean first = true;
-					for (String path : stack) {
-						if (!first) {
-							relativeString.append(path);
-						}
-						relativeString.append("/");
-						first = false;
-					}
-					filesRead++;
-					relativeString.append(file.getFileName().toString());
-					putQuickFile(relativeString.toString(), file);
-					return FileVisitResult.CONTINUE;
-				}
-			});
+			walkZip(zipRoot, file -> putQuickFile(files, file));
 			roots.updateAndGet(array -> {
 				Path[] array2 = new Path[array.length - 1];
 				int output = 0;
@@ -245,6 +439,66 @@ public class QuiltClassPath {
 		}
 	}
 
+	/** Visits every folder and file in the given zip root. */
+	private static void walkZip(Path zipRoot, Consumer<Path> to) throws IOException {
+		Files.walkFileTree(zipRoot, new SimpleFileVisitor<Path>() {
+
+			// A previous version of this code used Path.relativize to construct the output paths
+			// But Java 8's ZipFileSystem doesn't implement this correctly, so we do it manually instead.
+
+			final Deque<String> stack = new ArrayDeque<>();
+			int foldersRead = 0;
+			int filesRead = 0;
+
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				Path fileName = dir.getFileName();
+				if (fileName != null) {
+					stack.addLast(fileName.toString());
+				} else if (!"/".equals(dir.toString())) {
+					throw new IOException("Unknown directory with no file names " + dir.getClass() + " '" + dir + "'");
+				} else if (!stack.isEmpty()) {
+					if (stack.size() == 1 && stack.contains("/")) {
+						// Java 8's ZipFileSystem seems to repeat the zip forever?
+						Log.info(LogCategory.GENERAL, "Encountered the root directory multiple times, terminating "
+							+ zipRoot.getClass() + " (after reading " + foldersRead + " folders and "
+							+ filesRead + " files)");
+						return FileVisitResult.TERMINATE;
+					}
+					throw new IOException("Encountered multiple roots? (Non-empty stack): " + stack);
+				} else {
+					stack.addLast("/");
+				}
+				foldersRead++;
+				to.accept(dir);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+				stack.removeLast();
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				StringBuilder relativeString = new StringBuilder();
+				boolean first = true;
+				for (String path : stack) {
+					if (!first) {
+						relativeString.append(path);
+					}
+					relativeString.append("/");
+					first = false;
+				}
+				filesRead++;
+				relativeString.append(file.getFileName().toString());
+				to.accept(file);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
 	public Path findResource(String path) {
 		Path[] rootsCopy0 = roots.get();
 		Path quick = quickFindResource(path);
@@ -285,10 +539,6 @@ public class QuiltClassPath {
 	}
 
 	private Path quickFindResource(String path) {
-		String absolutePath = path;
-		if (!path.startsWith("/")) {
-			absolutePath = "/" + path;
-		}
 		if (printFullDetail) {
 			Log.warn(LogCategory.GENERAL, "quickFindResource(" + path + ")");
 		}
@@ -304,7 +554,25 @@ public class QuiltClassPath {
 		 */
 		// Grabbing a copy of the roots array before we check in files ensures we never miss a path
 		// This fix is also applied to quickGetResources
+		// (The snapshot view is grabbed first for the same reason, since discarding it adds to the roots array)
+		SnapshotView view = snapshotView;
+		Segment[] later = segments;
 		Path[] fullArray = roots.get();
+
+		// Every indexed root (the file map, the snapshot, and lazy zip indexes) adds its folders to the filter, and
+		// "roots" only contains roots which aren't indexed. So a filter miss means only those roots need to be checked.
+		String indexPath = removeTrailingSlash(path);
+		if (!folders.mightContain(indexPath)) {
+			if (printFullDetail) {
+				Log.warn(LogCategory.GENERAL, "- folder filter miss");
+			}
+			return findResourceIn(fullArray, path);
+		}
+
+		String absolutePath = indexPath;
+		if (!indexPath.startsWith("/")) {
+			absolutePath = "/" + indexPath;
+		}
 		Path quick = files.get(absolutePath);
 
 		if (printFullDetail) {
@@ -325,9 +593,25 @@ public class QuiltClassPath {
 			return quick;
 		}
 
+		for (Segment segment : later) {
+			quick = segment.find(absolutePath, view);
+			if (quick != null) {
+				return quick;
+			}
+		}
+
 		return findResourceIn(fullArray, path);
 	}
 
+	/** Folders are indexed without a trailing slash, but {@link Path#resolve(String)} ignores it, so "folder/" finds the
+	 * same folder as "folder". */
+	private static String removeTrailingSlash(String path) {
+		if (path.length() > 1 && path.endsWith("/")) {
+			return path.substring(0, path.length() - 1);
+		}
+		return path;
+	}
+
 	private static Path findResourceIn(Path[] array, String path) {
 		for (Path root : array) {
 			Path ext = root.resolve(path);
@@ -373,14 +657,24 @@ public class QuiltClassPath {
 	}
 
 	private List<Path> quickGetResources(String path) {
-		String absolutePath = path;
-		if (!path.startsWith("/")) {
-			absolutePath = "/" + path;
-		}
-
 		// Thread race condition fix
 		// see "quickFindResource" for details
+		SnapshotView view = snapshotView;
+		Segment[] later = segments;
 		Path[] rootsArray = roots.get();
+
+		String indexPath = removeTrailingSlash(path);
+		if (!folders.mightContain(indexPath)) {
+			// Only roots which aren't indexed can contain it
+			List<Path> paths = new ArrayList<>();
+			getResourcesIn(rootsArray, path, paths);
+			return Collections.unmodifiableList(paths);
+		}
+
+		String absolutePath = indexPath;
+		if (!indexPath.startsWith("/")) {
+			absolutePath = "/" + indexPath;
+		}
 		Path quick = files.get(absolutePath);
 
 		if (quick instanceof HashCollisionPath) {
@@ -388,16 +682,24 @@ public class QuiltClassPath {
 		}
 
 		List<Path> paths = new ArrayList<>();
+		addQuickPaths(quick, paths);
+
+		for (Segment segment : later) {
+			segment.findAll(absolutePath, view, paths);
+		}
+
+		getResourcesIn(rootsArray, path, paths);
+		return Collections.unmodifiableList(paths);
+	}
+
+	private static void addQuickPaths(Path quick, List<Path> dst) {
 		if (quick != null) {
 			if (quick instanceof OverlappingPath) {
-				Collections.addAll(paths, ((OverlappingPath) quick).paths);
+				Collections.addAll(dst, ((OverlappingPath) quick).paths);
 			} else {
-				paths.add(quick);
+				dst.add(quick);
 			}
 		}
-
-		getResourcesIn(rootsArray, path, paths);
-		return Collections.unmodifiableList(paths);
 	}
 
 	private static void getResourcesIn(Path[] src, String path, List<Path> dst) {
@@ -654,6 +956,226 @@ public class QuiltClassPath {
 		}
 	}
 
+	/** A bloom filter of folders, so lookups for paths in folders which no indexed root contains (like every
+	 * "java/lang/" class, or any other class from the parent class loader) don't need to check any map. Folders are
+	 * only ever added, so if {@link #mightContain(String)} returns false then the path is definitely not indexed. */
+	@QuiltLoaderInternal(QuiltLoaderInternalType.NEW_INTERNAL)
+	static final class FolderFilter {
+		private static final int BITS_SHIFT = 19;
+		static final int BITS = 1 << BITS_SHIFT;
+		static final int LONGS = BITS / 64;
+
+		private static final LongBinaryOperator OR = (a, b) -> a | b;
+
+		private final AtomicLongArray bits = new AtomicLongArray(LONGS);
+
+		/** Adds the folder which contains the given path. */
+		void add(Path path) {
+			if (path instanceof QuiltBasePath) {
+				QuiltBasePath<?, ?> parent = ((QuiltBasePath<?, ?>) path).parent;
+				if (parent != null && !parent.isRoot()) {
+					add(parent.toStringHashCode());
+				}
+			} else {
+				String str = path.toString();
+				int end = folderEnd(str);
+				if (end > 0) {
+					add(folderHash(str, end));
+				}
+			}
+		}
+
+		/** Adds the folder with the given hash (from {@link #folderHash(String, int)}). */
+		void add(int folderHash) {
+			set(index1(folderHash));
+			set(index2(folderHash));
+		}
+
+		private void set(int index) {
+			long mask = 1L << index;
+			int word = index >>> 6;
+			if ((bits.get(word) & mask) == 0) {
+				bits.getAndAccumulate(word, mask, OR);
+			}
+		}
+
+		/** Adds every folder from a filter which was built by {@link #set(long[], int)}. */
+		void addAll(long word, int index) {
+			if (word != 0) {
+				bits.getAndAccumulate(index, word, OR);
+			}
+		}
+
+		/** @param path A path, which may or may not start with "/".
+		 * @return False if no indexed path is in the same folder as the given path. */
+		boolean mightContain(String path) {
+			int end = folderEnd(path);
+			if (end <= 0) {
+				// Every root contains the root folder
+				return true;
+			}
+			int hash = folderHash(path, end);
+			return isSet(index1(hash)) && isSet(index2(hash));
+		}
+
+		private boolean isSet(int index) {
+			return (bits.get(index >>> 6) & (1L << index)) != 0;
+		}
+
+		/** Adds the folder with the given hash (from {@link #folderHash(String, int)}) to a plain filter. */
+		static void set(long[] filter, int folderHash) {
+			int index1 = index1(folderHash);
+			int index2 = index2(folderHash);
+			filter[index1 >>> 6] |= 1L << index1;
+			filter[index2 >>> 6] |= 1L << index2;
+		}
+
+		/** @return The index of the last "/" in the path, which is 0 (or less) for paths directly inside the root
+		 *         folder. */
+		static int folderEnd(String path) {
+			return path.lastIndexOf('/');
+		}
+
+		/** @return The same as the {@link String#hashCode()} of the absolute path of the folder which ends at the given
+		 *         index, without creating that string. */
+		static int folderHash(String path, int end) {
+			int hash = path.charAt(0) == '/' ? 0 : '/';
+			for (int i = 0; i < end; i++) {
+				hash = 31 * hash + path.charAt(i);
+			}
+			return hash;
+		}
+
+		private static int index1(int hash) {
+			return QuiltZipIndex.mix(hash) & (BITS - 1);
+		}
+
+		private static int index2(int hash) {
+			return (hash * 0x9E3779B9) >>> (32 - BITS_SHIFT);
+		}
+	}
+
+	/** Indexed roots which are searched after {@link QuiltClassPath#files}. */
+	@QuiltLoaderInternal(QuiltLoaderInternalType.NEW_INTERNAL)
+	private static abstract class Segment {
+		/** @param view The current {@link QuiltClassPath#snapshotView}, which must be read before the segments. */
+		@Nullable
+		abstract Path find(String absolutePath, @Nullable SnapshotView view);
+
+		abstract void findAll(String absolutePath, @Nullable SnapshotView view, List<Path> dst);
+	}
+
+	/** Roots which were indexed into a {@link FileMap}. */
+	@QuiltLoaderInternal(QuiltLoaderInternalType.NEW_INTERNAL)
+	private static final class MapSegment extends Segment {
+		final FileMap files;
+
+		MapSegment(FileMap files) {
+			this.files = files;
+		}
+
+		@Override
+		Path find(String absolutePath, SnapshotView view) {
+			Path quick = files.get(absolutePath);
+			if (quick instanceof OverlappingPath) {
+				return ((OverlappingPath) quick).getFirst();
+			}
+			return quick;
+		}
+
+		@Override
+		void findAll(String absolutePath, SnapshotView view, List<Path> dst) {
+			addQuickPaths(files.get(absolutePath), dst);
+		}
+	}
+
+	/** The roots which matched the snapshot, if it's still being used. */
+	@QuiltLoaderInternal(QuiltLoaderInternalType.NEW_INTERNAL)
+	private static final class SnapshotSegment extends Segment {
+		static final SnapshotSegment INSTANCE = new SnapshotSegment();
+
+		@Override
+		Path find(String absolutePath, SnapshotView view) {
+			return view != null ? view.find(absolutePath) : null;
+		}
+
+		@Override
+		void findAll(String absolutePath, SnapshotView view, List<Path> dst) {
+			if (view != null) {
+				view.findAll(absolutePath, dst);
+			}
+		}
+	}
+
+	/** A lazy {@link QuiltZipFileSystem}, which is searched through its {@link QuiltZipIndex} so a path is only created
+	 * when it's found. */
+	@QuiltLoaderInternal(QuiltLoaderInternalType.NEW_INTERNAL)
+	private static final class IndexSegment extends Segment {
+		final QuiltZipFileSystem fs;
+		final QuiltZipIndex index;
+
+		IndexSegment(QuiltZipFileSystem fs, QuiltZipIndex index) {
+			this.fs = fs;
+			this.index = index;
+		}
+
+		@Override
+		Path find(String absolutePath, SnapshotView view) {
+			// The other indexes never return the root folder either (see isEqual)
+			return index.find(absolutePath) > QuiltZipIndex.ROOT ? fs.getPath(absolutePath) : null;
+		}
+
+		@Override
+		void findAll(String absolutePath, SnapshotView view, List<Path> dst) {
+			Path path = find(absolutePath, view);
+			if (path != null) {
+				dst.add(path);
+			}
+		}
+	}
+
+	/** The roots which have matched a {@link QuiltClassPathSnapshot} so far. Replaced (rather than modified) whenever
+	 * another root matches, so lookups always see the snapshot and its roots together. */
+	@QuiltLoaderInternal(QuiltLoaderInternalType.NEW_INTERNAL)
+	private static final class SnapshotView {
+		final QuiltClassPathSnapshot snapshot;
+		final FileSystem[] fileSystems;
+
+		SnapshotView(QuiltClassPathSnapshot snapshot, FileSystem[] fileSystems) {
+			this.snapshot = snapshot;
+			this.fileSystems = fileSystems;
+		}
+
+		Path find(String absolutePath) {
+			int record = snapshot.find(absolutePath);
+			if (record < 0) {
+				return null;
+			}
+			int count = snapshot.rootCount(record);
+			for (int i = 0; i < count; i++) {
+				int root = snapshot.root(record, i);
+				if (root < fileSystems.length) {
+					return fileSystems[root].getPath(absolutePath);
+				}
+			}
+			return null;
+		}
+
+		void findAll(String absolutePath, List<Path> dst) {
+			int record = snapshot.find(absolutePath);
+			if (record < 0) {
+				return;
+			}
+			int count = snapshot.rootCount(record);
+			for (int i = 0; i < count; i++) {
+				int root = snapshot.root(record, i);
+				if (root < fileSystems.length) {
+					dst.add(fileSystems[root].getPath(absolutePath));
+				}
+			}
+		}
+	}
+
 	/** Used so we don't need to store a full {@link String} for every file we track. */
 	@QuiltLoaderInternal(QuiltLoaderInternalType.NEW_INTERNAL)
 	private static final class HashCollisionPath extends NullPath {
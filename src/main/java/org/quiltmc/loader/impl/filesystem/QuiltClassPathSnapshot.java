@@ -0,0 +1,320 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.loader.impl.filesystem;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jetbrains.annotations.Nullable;
+import org.quiltmc.loader.api.FasterFiles;
+import org.quiltmc.loader.impl.util.HashUtil;
+import org.quiltmc.loader.impl.util.QuiltLoaderInternal;
+import org.quiltmc.loader.impl.util.QuiltLoaderInternalType;
+
+/** A saved copy of the {@link QuiltClassPath} index, which maps every file and folder to the roots which contain it,
+ * so the next launch doesn't have to iterate or scan those roots again.
+ * <p>
+ * The file starts with a header (containing a hash of the key it was written with, and a descriptor of each root),
+ * followed by an open-addressed hash table of record offsets, the {@link QuiltClassPath.FolderFilter} of every
+ * record, and then the records themselves. Only the header is parsed up front - the rest is kept as a single buffer
+ * (memory-mapped if {@link QuiltZipFileSystem#MAP_FILES} is set), and only read when looking up a path. */
+@QuiltLoaderInternal(QuiltLoaderInternalType.NEW_INTERNAL)
+final class QuiltClassPathSnapshot {
+
+	private static final int MAGIC = 0x51435053; // "QCPS"
+	private static final int VERSION = 2;
+
+	/** Size of the magic, version, and header length. */
+	private static final int START_SIZE = 12;
+
+	private final String[] descriptors;
+	private final ByteBuffer body;
+	private final int mask;
+	private final int filterStart;
+	private final int recordsStart;
+
+	private QuiltClassPathSnapshot(String[] descriptors, ByteBuffer body, int slotCount) {
+		this.descriptors = descriptors;
+		this.body = body;
+		this.mask = slotCount - 1;
+		this.filterStart = 8 + slotCount * 4;
+		this.recordsStart = filterStart + QuiltClassPath.FolderFilter.LONGS * 8;
+	}
+
+	/** @return The snapshot stored in the given file, or null if it doesn't exist or was written with a different
+	 *         key. */
+	@Nullable
+	static QuiltClassPathSnapshot read(Path file, String key) throws IOException {
+		if (!FasterFiles.isRegularFile(file)) {
+			return null;
+		}
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < START_SIZE) {
+				throw new IOException("Truncated snapshot " + file);
+			}
+			ByteBuffer start = ByteBuffer.allocate(START_SIZE);
+			readFully(channel, start, 0);
+			if (start.getInt(0) != MAGIC || start.getInt(4) != VERSION) {
+				return null;
+			}
+
+			int headerLength = start.getInt(8);
+			long bodyStart = START_SIZE + (long) headerLength;
+			if (headerLength < 0 || bodyStart + 8 > size) {
+				throw new IOException("Truncated snapshot " + file);
+			}
+
+			ByteBuffer header = ByteBuffer.allocate(headerLength);
+			readFully(channel, header, START_SIZE);
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(header.array()));
+			if (!hashKey(key).equals(in.readUTF())) {
+				return null;
+			}
+			String[] descriptors = new String[in.readInt()];
+			for (int i = 0; i < descriptors.length; i++) {
+				descriptors[i] = in.readUTF();
+			}
+
+			long bodyLength = size - bodyStart;
+			if (bodyLength > Integer.MAX_VALUE) {
+				throw new IOException("Snapshot " + file + " is too large");
+			}
+			ByteBuffer body;
+			if (QuiltZipFileSystem.MAP_FILES) {
+				body = channel.map(FileChannel.MapMode.READ_ONLY, bodyStart, bodyLength);
+			} else {
+				body = ByteBuffer.allocate((int) bodyLength);
+				readFully(channel, body, bodyStart);
+			}
+
+			int slotCount = body.getInt(0);
+			int recordsLength = body.getInt(4);
+			long filterLength = QuiltClassPath.FolderFilter.LONGS * 8L;
+			if (slotCount <= 0 || Integer.bitCount(slotCount) != 1 || 8 + slotCount * 4L + filterLength + recordsLength != bodyLength) {
+				throw new IOException("Corrupt snapshot " + file);
+			}
+			return new QuiltClassPathSnapshot(descriptors, body, slotCount);
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer to, long position) throws IOException {
+		while (to.hasRemaining()) {
+			int read = channel.read(to, position + to.position());
+			if (read < 0) {
+				throw new EOFException();
+			}
+		}
+	}
+
+	private static String hashKey(String key) {
+		return HashUtil.hashToString(HashUtil.computeHash(key));
+	}
+
+	int rootCount() {
+		return descriptors.length;
+	}
+
+	String descriptor(int root) {
+		return descriptors[root];
+	}
+
+	/** Adds the folder of every record to the given filter. */
+	void addFoldersTo(QuiltClassPath.FolderFilter filter) {
+		for (int i = 0; i < QuiltClassPath.FolderFilter.LONGS; i++) {
+			filter.addAll(body.getLong(filterStart + i * 8), i);
+		}
+	}
+
+	/** @param absolutePath A path starting with "/", as returned by {@link Path#toString()} for the path of a file or
+	 *            folder in one of the roots.
+	 * @return The record of the given path, or -1 if no root contains it. */
+	int find(String absolutePath) {
+		int hash = absolutePath.hashCode();
+		int slot = QuiltZipIndex.mix(hash) & mask;
+		int record;
+		while ((record = body.getInt(8 + slot * 4) - 1) >= 0) {
+			int offset = recordsStart + record;
+			if (body.getInt(offset) == hash && nameEquals(offset + 4, absolutePath)) {
+				return offset;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	private boolean nameEquals(int offset, String path) {
+		int length = body.getInt(offset);
+		int start = offset + 4;
+		int pathLength = path.length();
+		for (int i = 0; i < pathLength; i++) {
+			if (path.charAt(i) >= 0x80) {
+				byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+				if (bytes.length != length) {
+					return false;
+				}
+				for (int j = 0; j < length; j++) {
+					if (body.get(start + j) != bytes[j]) {
+						return false;
+					}
+				}
+				return true;
+			}
+		}
+		if (length != pathLength) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (body.get(start + i) != path.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** @return The number of roots which contain the given record. */
+	int rootCount(int record) {
+		return body.getShort(rootsStart(record)) & 0xFFFF;
+	}
+
+	/** @return The index of the root which contains the given record, in the order they were added. */
+	int root(int record, int index) {
+		return body.getShort(rootsStart(record) + 2 + index * 2) & 0xFFFF;
+	}
+
+	private int rootsStart(int record) {
+		return record + 8 + body.getInt(record + 4);
+	}
+
+	/** Collects every path in every root, and then writes them to a file. */
+	static final class Builder {
+		private static final int[] NO_ROOTS = new int[0];
+
+		private final List<String> descriptors;
+		private final Map<String, int[]> paths = new LinkedHashMap<>();
+		private final long[] folders = new long[QuiltClassPath.FolderFilter.LONGS];
+
+		Builder(List<String> descriptors) throws IOException {
+			if (descriptors.size() > 0xFFFF) {
+				throw new IOException("Too many roots (" + descriptors.size() + ")");
+			}
+			this.descriptors = descriptors;
+		}
+
+		void add(String absolutePath, int root) {
+			int[] roots = paths.getOrDefault(absolutePath, NO_ROOTS);
+			roots = Arrays.copyOf(roots, roots.length + 1);
+			roots[roots.length - 1] = root;
+			paths.put(absolutePath, roots);
+
+			int folderEnd = QuiltClassPath.FolderFilter.folderEnd(absolutePath);
+			if (folderEnd > 0) {
+				QuiltClassPath.FolderFilter.set(folders, QuiltClassPath.FolderFilter.folderHash(absolutePath, folderEnd));
+			}
+		}
+
+		/** Writes the snapshot to a temporary file, and then moves it over the given file. */
+		void write(Path file, String key) throws IOException {
+			ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+			DataOutputStream header = new DataOutputStream(headerBytes);
+			header.writeUTF(hashKey(key));
+			header.writeInt(descriptors.size());
+			for (String descriptor : descriptors) {
+				header.writeUTF(descriptor);
+			}
+			header.flush();
+
+			int slotCount = QuiltZipIndex.slotCount(paths.size());
+			int mask = slotCount - 1;
+			int[] table = new int[slotCount];
+			ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+			DataOutputStream records = new DataOutputStream(recordBytes);
+
+			for (Map.Entry<String, int[]> entry : paths.entrySet()) {
+				String path = entry.getKey();
+				int hash = path.hashCode();
+				int slot = QuiltZipIndex.mix(hash) & mask;
+				while (table[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				table[slot] = records.size() + 1;
+
+				byte[] name = path.getBytes(StandardCharsets.UTF_8);
+				int[] roots = entry.getValue();
+				if (roots.length > 0xFFFF) {
+					throw new IOException("Too many roots contain " + path);
+				}
+				records.writeInt(hash);
+				records.writeInt(name.length);
+				records.write(name);
+				records.writeShort(roots.length);
+				for (int root : roots) {
+					records.writeShort(root);
+				}
+			}
+			records.flush();
+
+			Files.createDirectories(file.getParent());
+			Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+			try {
+				try (OutputStream stream = Files.newOutputStream(tmp)) {
+					DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+					out.writeInt(MAGIC);
+					out.writeInt(VERSION);
+					out.writeInt(headerBytes.size());
+					headerBytes.writeTo(out);
+					out.writeInt(slotCount);
+					out.writeInt(recordBytes.size());
+					for (int slot : table) {
+						out.writeInt(slot);
+					}
+					for (long word : folders) {
+						out.writeLong(word);
+					}
+					recordBytes.writeTo(out);
+					out.flush();
+				}
+				try {
+					Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+				} catch (AtomicMoveNotSupportedException e) {
+					Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+				}
+			} finally {
+				Files.deleteIfExists(tmp);
+			}
+		}
+	}
+}
@@ -19,12 +19,16 @@ package org.quiltmc.loader.impl.filesystem;
 import java.io.IOException;
 import java.nio.file.FileStore;
 import java.nio.file.FileSystem;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.spi.FileSystemProvider;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -32,6 +36,8 @@ import java.util.Set;
 import org.jetbrains.annotations.Nullable;
 import org.quiltmc.loader.impl.util.QuiltLoaderInternal;
 import org.quiltmc.loader.impl.util.QuiltLoaderInternalType;
+import org.quiltmc.loader.impl.util.log.Log;
+import org.quiltmc.loader.impl.util.log.LogCategory;
 import org.quiltmc.loader.api.CachedFileSystem;
 import org.quiltmc.loader.api.FasterFiles;
 
@@ -45,6 +51,10 @@ public class QuiltJoinedFileSystem extends QuiltBaseFileSystem<QuiltJoinedFileSy
 	final boolean allCached;
 	boolean isOpen = true;
 
+	/** Non-null once every {@link #from} path is permanently read-only, since then they can be merged. */
+	private volatile MergedIndex mergedIndex;
+	private volatile boolean mergedIndexFailed;
+
 	public QuiltJoinedFileSystem(String name, List<Path> from) {
 		this(name, from, null);
 	}
@@ -66,6 +76,8 @@ public class QuiltJoinedFileSystem extends QuiltBaseFileSystem<QuiltJoinedFileSy
 		}
 		this.allCached = allCached;
 		QuiltJoinedFileSystemProvider.register(this);
+		// Build the index now if we can, rather than on the first lookup
+		getMergedIndex();
 	}
 
 	@Override
@@ -123,6 +135,10 @@ public class QuiltJoinedFileSystem extends QuiltBaseFileSystem<QuiltJoinedFileSy
 	@Override
 	public boolean exists(Path path, LinkOption... options) {
 		QuiltJoinedPath qjp = (QuiltJoinedPath) path;
+		MergedIndex index = getMergedIndex();
+		if (index != null) {
+			return index.get(qjp) != null;
+		}
 		for (int i = 0; i < from.length; i++) {
 			Path backingPath = getBackingPath(i, qjp);
 			if (FasterFiles.exists(backingPath, options)) {
@@ -152,6 +168,29 @@ public class QuiltJoinedFileSystem extends QuiltBaseFileSystem<QuiltJoinedFileSy
 		return supported;
 	}
 
+	/** @return A first-wins index of every path in every backing path, or null if any of them are not
+	 *         {@link CachedFileSystem#isPermanentlyReadOnly() permanently read-only} (in which case each backing path
+	 *         must be checked in turn). */
+	@Nullable
+	MergedIndex getMergedIndex() {
+		MergedIndex index = mergedIndex;
+		if (index != null || !allCached || mergedIndexFailed || !isPermanentlyReadOnly()) {
+			return index;
+		}
+
+		synchronized (this) {
+			if (mergedIndex == null && !mergedIndexFailed) {
+				try {
+					mergedIndex = new MergedIndex(this);
+				} catch (IOException e) {
+					Log.warn(LogCategory.GENERAL, "Failed to index the joined file system " + name + "!", e);
+					mergedIndexFailed = true;
+				}
+			}
+			return mergedIndex;
+		}
+	}
+
 	public int getBackingPathCount() {
 		return from.length;
 	}
@@ -171,4 +210,84 @@ public class QuiltJoinedFileSystem extends QuiltBaseFileSystem<QuiltJoinedFileSy
 			return other;
 		}
 	}
+
+	/** Every path of every backing path, merged together. */
+	static final class MergedIndex {
+
+		private final Map<QuiltJoinedPath, MergedEntry> entries = new HashMap<>();
+
+		MergedIndex(QuiltJoinedFileSystem fs) throws IOException {
+			Map<QuiltJoinedPath, Integer> sources = new HashMap<>();
+			Map<QuiltJoinedPath, Set<QuiltJoinedPath>> folders = new HashMap<>();
+
+			for (int i = 0; i < fs.from.length; i++) {
+				Path from = fs.from[i];
+				if (!FasterFiles.exists(from)) {
+					continue;
+				}
+
+				int source = i;
+				Files.walkFileTree(from, new SimpleFileVisitor<Path>() {
+					@Override
+					public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+						add(dir, true);
+						return FileVisitResult.CONTINUE;
+					}
+
+					@Override
+					public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+						add(file, attrs.isDirectory());
+						return FileVisitResult.CONTINUE;
+					}
+
+					private void add(Path backing, boolean isFolder) {
+						QuiltJoinedPath path = fs.root;
+						if (!backing.equals(from)) {
+							Path relative = from.relativize(backing);
+							if (fs.getSeparator().equals(relative.getFileSystem().getSeparator())) {
+								path = path.resolve(relative.toString());
+							} else {
+								for (Path name : relative) {
+									path = path.resolve(name.toString());
+								}
+							}
+						}
+
+						// The first backing path which contains a path wins
+						sources.putIfAbsent(path, source);
+						if (isFolder) {
+							folders.computeIfAbsent(path, p -> new LinkedHashSet<>());
+						}
+						if (path.parent != null) {
+							folders.computeIfAbsent(path.parent, p -> new LinkedHashSet<>()).add(path);
+						}
+					}
+				});
+			}
+
+			for (Map.Entry<QuiltJoinedPath, Integer> entry : sources.entrySet()) {
+				Set<QuiltJoinedPath> children = folders.get(entry.getKey());
+				QuiltJoinedPath[] childArray = children != null ? children.toArray(new QuiltJoinedPath[0]) : null;
+				entries.put(entry.getKey(), new MergedEntry(entry.getValue(), childArray));
+			}
+		}
+
+		@Nullable
+		MergedEntry get(QuiltJoinedPath path) {
+			return entries.get(path.toAbsolutePath().normalize());
+		}
+	}
+
+	static final class MergedEntry {
+		/** The index of the first backing path which contains this path. */
+		final int source;
+
+		/** Every child in every backing path where this is a folder, or null if it's not a folder in any of them. */
+		final QuiltJoinedPath @Nullable [] children;
+
+		MergedEntry(int source, QuiltJoinedPath @Nullable [] children) {
+			this.source = source;
+			this.children = children;
+		}
+	}
 }
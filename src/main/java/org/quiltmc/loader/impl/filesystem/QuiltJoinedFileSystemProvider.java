@@ -167,6 +167,11 @@ public final class QuiltJoinedFileSystemProvider extends FileSystemProvider {
 
 		QuiltJoinedPath p = (QuiltJoinedPath) path;
 
+		QuiltJoinedFileSystem.MergedIndex index = p.fs.getMergedIndex();
+		if (index != null) {
+			return Files.newInputStream(getIndexedBackingPath(index, p), options);
+		}
+
 		int count = p.fs.getBackingPathCount();
 		for (int i = 0; i < count; i++) {
 			Path real = p.fs.getBackingPath(i, p);
@@ -198,6 +203,11 @@ public final class QuiltJoinedFileSystemProvider extends FileSystemProvider {
 
 		QuiltJoinedPath p = (QuiltJoinedPath) path;
 
+		QuiltJoinedFileSystem.MergedIndex index = p.fs.getMergedIndex();
+		if (index != null) {
+			return Files.newByteChannel(getIndexedBackingPath(index, p), options, attrs);
+		}
+
 		int count = p.fs.getBackingPathCount();
 		for (int i = 0; i < count; i++) {
 			Path real = p.fs.getBackingPath(i, p);
@@ -213,9 +223,27 @@ public final class QuiltJoinedFileSystemProvider extends FileSystemProvider {
 		throw new NoSuchFileException(path.toString());
 	}
 
+	private static Path getIndexedBackingPath(QuiltJoinedFileSystem.MergedIndex index, QuiltJoinedPath path)
+		throws NoSuchFileException {
+
+		QuiltJoinedFileSystem.MergedEntry entry = index.get(path);
+		if (entry == null) {
+			throw new NoSuchFileException(path.toString());
+		}
+		return path.fs.getBackingPath(entry.source, path);
+	}
+
 	@Override
 	public DirectoryStream<Path> newDirectoryStream(Path dir, Filter<? super Path> filter) throws IOException {
 		QuiltJoinedPath qmp = (QuiltJoinedPath) dir;
+		QuiltJoinedFileSystem.MergedIndex index = qmp.fs.getMergedIndex();
+		if (index != null) {
+			QuiltJoinedFileSystem.MergedEntry entry = index.get(qmp);
+			if (entry == null || entry.children == null) {
+				throw new NotDirectoryException(dir.toString());
+			}
+			return new IndexedDirectoryStream(qmp, entry.children, filter);
+		}
 		return new DirectoryStream<Path>() {
 
 			final List<Path> backingPaths = new ArrayList<>();
@@ -360,6 +388,69 @@ public final class QuiltJoinedFileSystemProvider extends FileSystemProvider {
 		};
 	}
 
+	/** A {@link DirectoryStream} over the children of a {@link QuiltJoinedFileSystem.MergedEntry}, which have already
+	 * been merged from every backing path. */
+	private static final class IndexedDirectoryStream implements DirectoryStream<Path> {
+		final QuiltJoinedPath dir;
+		final QuiltJoinedPath[] children;
+		final Filter<? super Path> filter;
+		boolean opened = false;
+		boolean closed = false;
+
+		IndexedDirectoryStream(QuiltJoinedPath dir, QuiltJoinedPath[] children, Filter<? super Path> filter) {
+			this.dir = dir;
+			this.children = children;
+			this.filter = filter;
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+
+		@Override
+		public Iterator<Path> iterator() {
+			if (opened) {
+				throw new IllegalStateException("newDirectoryStream only supports a single iteration!");
+			}
+			opened = true;
+
+			// The indexed children are absolute, so only resolve new paths if the directory was given differently
+			boolean sameDir = dir.equals(dir.toAbsolutePath().normalize());
+
+			return new Iterator<Path>() {
+				int index = 0;
+				Path next;
+
+				@Override
+				public boolean hasNext() {
+					while (next == null && !closed && index < children.length) {
+						QuiltJoinedPath child = children[index++];
+						Path path = sameDir ? child : dir.resolve(child.name);
+						try {
+							if (filter.accept(path)) {
+								next = path;
+							}
+						} catch (IOException e) {
+							throw new DirectoryIteratorException(e);
+						}
+					}
+					return next != null;
+				}
+
+				@Override
+				public Path next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					Path path = next;
+					next = null;
+					return path;
+				}
+			};
+		}
+	}
+
 	private static QuiltJoinedPath toAbsQuiltPath(Path path) {
 		Path p = path.toAbsolutePath().normalize();
 		if (p instanceof QuiltJoinedPath) {
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.loader.impl.filesystem;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.quiltmc.loader.impl.filesystem.QuiltUnifiedEntry.QuiltUnifiedFolder;
+import org.quiltmc.loader.impl.util.QuiltLoaderInternal;
+import org.quiltmc.loader.impl.util.QuiltLoaderInternalType;
+
+/** Every entry of a {@link QuiltMapFileSystem} which has been switched to read-only, stored without any
+ * {@link Path}s. This is laid out like {@link QuiltZipIndex}: each entry is numbered (breadth first, so the children
+ * of each folder are next to each other), and is found through an open-addressing hash table keyed by
+ * {@link String#hashCode()} of its full path (see {@link QuiltBasePath#toStringHashCode()}). Lookups walk up through
+ * the parents of the matching entry, so {@link #find(QuiltMapPath)} doesn't allocate anything.
+ * <p>
+ * Files are stored without a path (see {@link QuiltUnifiedEntry#path}), and are only given one when they are looked
+ * up, by {@link QuiltUnifiedEntry#createMovedTo(QuiltMapPath)}. */
+@QuiltLoaderInternal(QuiltLoaderInternalType.NEW_INTERNAL)
+final class QuiltMapEntryTrie {
+
+	static final int ROOT = 0;
+
+	/** Folder names, shared between every file system since most of them are package names. File names aren't
+	 * interned, since they are rarely the same between different file systems. */
+	private static final Map<String, String> FOLDER_NAMES = new ConcurrentHashMap<>();
+
+	/** {@link String#hashCode()} of the full path of each entry. */
+	private final int[] hashes;
+	private final int[] parents;
+	private final String[] names;
+	private final int[] firstChild;
+	private final int[] childCount;
+
+	/** The file of each entry, or null for folders. */
+	private final QuiltUnifiedEntry[] files;
+
+	/** Each slot contains the index of an entry plus one, so zero means empty. */
+	private final int[] slots;
+	private final int slotMask;
+
+	private QuiltMapEntryTrie(int count) {
+		hashes = new int[count];
+		parents = new int[count];
+		names = new String[count];
+		firstChild = new int[count];
+		childCount = new int[count];
+		files = new QuiltUnifiedEntry[count];
+		slots = new int[QuiltZipIndex.slotCount(count)];
+		slotMask = slots.length - 1;
+	}
+
+	/** Copies every entry which can be reached from the given root.
+	 *
+	 * @throws IllegalStateException if a folder contains a child which doesn't have an entry, or if some entries can't
+	 *             be reached from the root. */
+	static QuiltMapEntryTrie build(Map<? extends QuiltMapPath<?, ?>, QuiltUnifiedEntry> entries, QuiltMapPath<?, ?> root) {
+		int count = entries.size();
+		QuiltMapEntryTrie trie = new QuiltMapEntryTrie(count);
+		QuiltUnifiedEntry[] pending = new QuiltUnifiedEntry[count];
+		pending[ROOT] = entries.get(root);
+		trie.hashes[ROOT] = QuiltBasePath.NAME_ROOT.hashCode();
+		trie.parents[ROOT] = -1;
+		trie.names[ROOT] = QuiltBasePath.NAME_ROOT;
+		int next = 1;
+
+		for (int index = 0; index < next; index++) {
+			QuiltUnifiedEntry entry = pending[index];
+			pending[index] = null;
+
+			if (entry instanceof QuiltUnifiedFolder) {
+				trie.firstChild[index] = next;
+				int folderHash = index == ROOT ? 0 : trie.hashes[index];
+				for (Path child : ((QuiltUnifiedFolder) entry).getChildren()) {
+					QuiltUnifiedEntry childEntry = entries.get(child);
+					if (childEntry == null) {
+						throw new IllegalStateException("Missing entry for " + child);
+					}
+					if (next == count) {
+						throw new IllegalStateException("Found more entries than " + count + " from " + root);
+					}
+					String name = ((QuiltMapPath<?, ?>) child).name;
+					int hash = 31 * folderHash + '/';
+					for (int i = 0; i < name.length(); i++) {
+						hash = 31 * hash + name.charAt(i);
+					}
+					pending[next] = childEntry;
+					trie.hashes[next] = hash;
+					trie.parents[next] = index;
+					trie.names[next] = childEntry instanceof QuiltUnifiedFolder ? internFolderName(name) : name;
+					next++;
+				}
+				trie.childCount[index] = next - trie.firstChild[index];
+			} else {
+				trie.files[index] = entry.createMovedTo(null);
+			}
+
+			int slot = QuiltZipIndex.mix(trie.hashes[index]) & trie.slotMask;
+			while (trie.slots[slot] != 0) {
+				slot = (slot + 1) & trie.slotMask;
+			}
+			trie.slots[slot] = index + 1;
+		}
+
+		if (next != count) {
+			throw new IllegalStateException("Only " + next + " of " + count + " entries can be reached from " + root);
+		}
+		return trie;
+	}
+
+	private static String internFolderName(String name) {
+		String current = FOLDER_NAMES.putIfAbsent(name, name);
+		return current != null ? current : name;
+	}
+
+	int size() {
+		return names.length;
+	}
+
+	int parent(int index) {
+		return parents[index];
+	}
+
+	String name(int index) {
+		return names[index];
+	}
+
+	boolean isFolder(int index) {
+		return files[index] == null;
+	}
+
+	int firstChild(int index) {
+		return firstChild[index];
+	}
+
+	int childCount(int index) {
+		return childCount[index];
+	}
+
+	/** @return The file at the given index, without a path. */
+	QuiltUnifiedEntry file(int index) {
+		return files[index];
+	}
+
+	/** @param path A normalised, absolute, path.
+	 * @return The index of the entry, or -1 if it doesn't exist. */
+	int find(QuiltMapPath<?, ?> path) {
+		int hash = path.toStringHashCode();
+		for (int slot = QuiltZipIndex.mix(hash) & slotMask;; slot = (slot + 1) & slotMask) {
+			int value = slots[slot];
+			if (value == 0) {
+				return -1;
+			}
+			int index = value - 1;
+			if (hashes[index] == hash && matches(index, path)) {
+				return index;
+			}
+		}
+	}
+
+	private boolean matches(int index, QuiltMapPath<?, ?> path) {
+		QuiltMapPath<?, ?> current = path;
+		while (index != ROOT) {
+			if (current.parent == null || !names[index].equals(current.name)) {
+				return false;
+			}
+			index = parents[index];
+			current = current.parent;
+		}
+		return current.isRoot();
+	}
+}
@@ -18,11 +18,13 @@ package org.quiltmc.loader.impl.filesystem;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.DirectoryNotEmptyException;
 import java.nio.file.FileStore;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.NotDirectoryException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -36,9 +38,11 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
@@ -48,6 +52,7 @@ import java.util.stream.Stream;
 import org.quiltmc.loader.api.CachedFileSystem;
 import org.quiltmc.loader.impl.filesystem.QuiltUnifiedEntry.QuiltUnifiedFile;
 import org.quiltmc.loader.impl.filesystem.QuiltUnifiedEntry.QuiltUnifiedFolder;
+import org.quiltmc.loader.impl.filesystem.QuiltUnifiedEntry.QuiltUnifiedFolderReadOnly;
 import org.quiltmc.loader.impl.filesystem.QuiltUnifiedEntry.QuiltUnifiedFolderWriteable;
 import org.quiltmc.loader.impl.util.QuiltLoaderInternal;
 import org.quiltmc.loader.impl.util.QuiltLoaderInternalType;
@@ -66,7 +71,13 @@ public abstract class QuiltMapFileSystem<FS extends QuiltMapFileSystem<FS, P>, P
 		SystemProperties.DEBUG_VALIDATE_FILESYSTEM_CONTENTS, SystemProperties.VALIDATION_LEVEL > 3
 	);
 
-	private final Map<P, QuiltUnifiedEntry> entries;
+	/** Null once {@link #compacted} has been built. */
+	private Map<P, QuiltUnifiedEntry> entries;
+
+	/** Every entry, once this has been switched to read-only (unless entries are created lazily). */
+	private QuiltMapEntryTrie compacted;
+
+	private boolean lazyEntries;
 
 	public QuiltMapFileSystem(Class<FS> filesystemClass, Class<P> pathClass, String name, boolean uniqueify) {
 		super(filesystemClass, pathClass, name, uniqueify);
@@ -85,8 +96,8 @@ public abstract class QuiltMapFileSystem<FS extends QuiltMapFileSystem<FS, P>, P
 		}
 		try (BufferedWriter bw = Files.newBufferedWriter(Paths.get("dbg-map-fs-" + name + ".txt"))) {
 			Set<String> paths = new TreeSet<>();
-			for (Map.Entry<P, QuiltUnifiedEntry> entry : entries.entrySet()) {
-				paths.add(entry.getKey().toString() + "  = " + entry.getValue().getClass());
+			for (P path : getEntryPathIterator()) {
+				paths.add(path.toString() + "  = " + getEntry(path).getClass());
 			}
 			for (String key : paths) {
 				bw.append(key);
@@ -98,7 +109,8 @@ public abstract class QuiltMapFileSystem<FS extends QuiltMapFileSystem<FS, P>, P
 	}
 
 	public void validate() {
-		if (!ENABLE_VALIDATION) {
+		if (!ENABLE_VALIDATION || entries == null) {
+			// Compacted entries are always linked to their parent
 			return;
 		}
 		for (Entry<P, QuiltUnifiedEntry> entry : entries.entrySet()) {
@@ -123,27 +135,92 @@ public abstract class QuiltMapFileSystem<FS extends QuiltMapFileSystem<FS, P>, P
 
 	// Subtype helpers
 
+	/** Converts every entry to read-only, and then (unless entries are created lazily) moves them all into a
+	 * {@link QuiltMapEntryTrie}, so the paths of every entry don't need to be kept around. After this no more entries
+	 * can be added or removed. */
 	protected void switchToReadOnly() {
+		if (compacted != null) {
+			return;
+		}
 		for (Map.Entry<P, QuiltUnifiedEntry> entry : entries.entrySet()) {
 			entry.setValue(entry.getValue().switchToReadOnly());
 		}
+		if (!lazyEntries && entries.containsKey(root)) {
+			compacted = QuiltMapEntryTrie.build(entries, root);
+			entries = null;
+		}
+	}
+
+	/** Removes every entry, and stores entries in a concurrent map from now on. This is for file systems which only
+	 * create entries when they are first accessed (by overriding {@link #getEntry(Path)} and calling
+	 * {@link #addLazyEntry(QuiltUnifiedEntry)}), so it must be called before this file system is used. */
+	protected void switchToLazyEntries() {
+		entries = new ConcurrentHashMap<>();
+		lazyEntries = true;
+	}
+
+	/** @return The entries of this file system, if it has been switched to read-only and they aren't created lazily.
+	 *         Otherwise this returns null. */
+	QuiltMapEntryTrie getCompactedEntries() {
+		return compacted;
 	}
 
 	// File map access
 
 	protected int getEntryCount() {
-		return entries.size();
+		QuiltMapEntryTrie trie = compacted;
+		return trie != null ? trie.size() : entries.size();
 	}
 
 	protected Iterable<P> getEntryPathIterator() {
-		return entries.keySet();
+		QuiltMapEntryTrie trie = compacted;
+		if (trie == null) {
+			return entries.keySet();
+		}
+		// Paths are created as they are iterated, rather than all at once
+		return () -> new CompactedPathIterator(trie);
 	}
 
 	protected QuiltUnifiedEntry getEntry(Path path) {
 		if (path.getFileSystem() != this) {
 			throw new IllegalStateException("The given path is for a different filesystem!");
 		}
-		return entries.get(path.toAbsolutePath().normalize());
+		P normalized = pathClass.cast(path.toAbsolutePath().normalize());
+		QuiltMapEntryTrie trie = compacted;
+		if (trie == null) {
+			return entries.get(normalized);
+		}
+		int index = trie.find(normalized);
+		if (index < 0) {
+			return null;
+		} else if (trie.isFolder(index)) {
+			return new CompactedFolder(trie, index, normalized);
+		} else {
+			return trie.file(index).createMovedTo(normalized);
+		}
+	}
+
+	/** @return The index of the given path in {@link #compacted}, or -1 if it doesn't exist. */
+	private int findCompacted(QuiltMapEntryTrie trie, Path path) {
+		if (path.getFileSystem() != this) {
+			throw new IllegalStateException("The given path is for a different filesystem!");
+		}
+		return trie.find(pathClass.cast(path.toAbsolutePath().normalize()));
+	}
+
+	/** Reads every byte of a file directly from its entry, rather than through a {@link SeekableByteChannel} like
+	 * {@link Files#readAllBytes(Path)} does.
+	 *
+	 * @throws NoSuchFileException if the file doesn't exist. */
+	public byte[] readAllBytes(Path path) throws IOException {
+		QuiltUnifiedEntry entry = getEntry(path);
+		if (entry instanceof QuiltUnifiedFile) {
+			return ((QuiltUnifiedFile) entry).readAllBytes();
+		} else if (entry == null) {
+			throw new NoSuchFileException(path.toString());
+		} else {
+			throw new IOException(path + " is a directory");
+		}
 	}
 
 	protected void addEntryRequiringParent(QuiltUnifiedEntry newEntry) throws IOException {
@@ -156,6 +233,7 @@ public abstract class QuiltMapFileSystem<FS extends QuiltMapFileSystem<FS, P>, P
 
 	private <T extends Throwable> void addEntryRequiringParents0(QuiltUnifiedEntry newEntry, Function<String, T> execCtor) throws T {
 		P path = pathClass.cast(newEntry.path);
+		checkNotCompacted(path, execCtor);
 		P parent = path.parent;
 		if (parent == null) {
 			if (root.equals(path)) {
@@ -224,11 +302,23 @@ public abstract class QuiltMapFileSystem<FS extends QuiltMapFileSystem<FS, P>, P
 		addEntryWithoutParents0(newEntry, IOException::new);
 	}
 
+	/** Adds an entry which was created when it was first accessed, unless another thread has already added it.
+	 *
+	 * @return The entry which is now stored for the path of the given entry. */
+	protected QuiltUnifiedEntry addLazyEntry(QuiltUnifiedEntry newEntry) {
+		if (newEntry.path.fs != this) {
+			throw new IllegalArgumentException("The given entry is for a different filesystem!");
+		}
+		QuiltUnifiedEntry current = entries.putIfAbsent(pathClass.cast(newEntry.path), newEntry);
+		return current != null ? current : newEntry;
+	}
+
 	private <T extends Throwable> P addEntryWithoutParents0(QuiltUnifiedEntry newEntry, Function<String, T> execCtor) throws T {
 		if (newEntry.path.fs != this) {
 			throw new IllegalArgumentException("The given entry is for a different filesystem!");
 		}
 		P path = pathClass.cast(newEntry.path);
+		checkNotCompacted(path, execCtor);
 		QuiltUnifiedEntry current = entries.putIfAbsent(path, newEntry);
 		if (current == null) {
 			return path;
@@ -237,8 +327,15 @@ public abstract class QuiltMapFileSystem<FS extends QuiltMapFileSystem<FS, P>, P
 		}
 	}
 
+	private <T extends Throwable> void checkNotCompacted(P path, Function<String, T> execCtor) throws T {
+		if (compacted != null) {
+			throw execCtor.apply("Cannot put entry " + path + " because this file system is read-only");
+		}
+	}
+
 	protected synchronized boolean removeEntry(P path, boolean throwIfMissing) throws IOException {
 		path = path.toAbsolutePath().normalize();
+		checkNotCompacted(path, IOException::new);
 
 		QuiltUnifiedEntry current = getEntry(path);
 		if (current == null) {
@@ -272,16 +369,30 @@ public abstract class QuiltMapFileSystem<FS extends QuiltMapFileSystem<FS, P>, P
 
 	@Override
 	public boolean isDirectory(Path path, LinkOption... options) {
+		QuiltMapEntryTrie trie = compacted;
+		if (trie != null) {
+			int index = findCompacted(trie, path);
+			return index >= 0 && trie.isFolder(index);
+		}
 		return getEntry(path) instanceof QuiltUnifiedFolder;
 	}
 
 	@Override
 	public boolean isRegularFile(Path path, LinkOption[] options) {
+		QuiltMapEntryTrie trie = compacted;
+		if (trie != null) {
+			int index = findCompacted(trie, path);
+			return index >= 0 && !trie.isFolder(index);
+		}
 		return getEntry(path) instanceof QuiltUnifiedFile;
 	}
 
 	@Override
 	public boolean exists(Path path, LinkOption... options) {
+		QuiltMapEntryTrie trie = compacted;
+		if (trie != null) {
+			return findCompacted(trie, path) >= 0;
+		}
 		return getEntry(path) != null;
 	}
 
@@ -404,4 +515,69 @@ public abstract class QuiltMapFileSystem<FS extends QuiltMapFileSystem<FS, P>, P
 	public Set<String> supportedFileAttributeViews() {
 		return Collections.singleton("basic");
 	}
+
+	/** A folder in {@link QuiltMapFileSystem#compacted}, which creates the paths of its children when asked for them. */
+	private final class CompactedFolder extends QuiltUnifiedFolderReadOnly {
+		private final QuiltMapEntryTrie trie;
+		private final int index;
+
+		CompactedFolder(QuiltMapEntryTrie trie, int index, P path) {
+			super(path);
+			this.trie = trie;
+			this.index = index;
+		}
+
+		@Override
+		public QuiltMapPath<?, ?>[] children() {
+			P folder = pathClass.cast(path);
+			int first = trie.firstChild(index);
+			QuiltMapPath<?, ?>[] children = new QuiltMapPath<?, ?>[trie.childCount(index)];
+			for (int i = 0; i < children.length; i++) {
+				children[i] = createPath(folder, trie.name(first + i));
+			}
+			return children;
+		}
+	}
+
+	/** Iterates through {@link QuiltMapFileSystem#compacted} in order, which is breadth first, so the path of the
+	 * parent of each entry is always at the start of {@link #folders}. */
+	private final class CompactedPathIterator implements Iterator<P> {
+		private final QuiltMapEntryTrie trie;
+		private final Deque<P> folders = new ArrayDeque<>();
+		private final Deque<Integer> folderIndices = new ArrayDeque<>();
+		private int next = QuiltMapEntryTrie.ROOT;
+
+		CompactedPathIterator(QuiltMapEntryTrie trie) {
+			this.trie = trie;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next < trie.size();
+		}
+
+		@Override
+		public P next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			int index = next++;
+			P path;
+			if (index == QuiltMapEntryTrie.ROOT) {
+				path = root;
+			} else {
+				int parent = trie.parent(index);
+				while (folderIndices.peekFirst() != parent) {
+					folderIndices.removeFirst();
+					folders.removeFirst();
+				}
+				path = createPath(folders.peekFirst(), trie.name(index));
+			}
+			if (trie.childCount(index) > 0) {
+				folderIndices.addLast(index);
+				folders.addLast(path);
+			}
+			return path;
+		}
+	}
 }
@@ -296,7 +296,7 @@ public abstract class QuiltMapFileSystemProvider<FS extends QuiltMapFileSystem<F
 		final QuiltMapPath<?, ?>[] entries;
 		QuiltUnifiedEntry entry = qmp.fs.getEntry(qmp);
 		if (entry instanceof QuiltUnifiedFolderReadOnly) {
-			entries = ((QuiltUnifiedFolderReadOnly) entry).children;
+			entries = ((QuiltUnifiedFolderReadOnly) entry).children();
 		} else if (entry instanceof QuiltUnifiedFolderWriteable) {
 			entries = ((QuiltUnifiedFolderWriteable) entry).children
 					.toArray(new QuiltMapPath[0]);
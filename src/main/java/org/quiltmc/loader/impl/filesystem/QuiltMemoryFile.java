@@ -32,6 +32,7 @@ import java.util.Set;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
+import org.jetbrains.annotations.Nullable;
 import org.quiltmc.loader.impl.filesystem.QuiltUnifiedEntry.QuiltUnifiedFile;
 import org.quiltmc.loader.impl.util.QuiltLoaderInternal;
 import org.quiltmc.loader.impl.util.QuiltLoaderInternalType;
@@ -45,7 +46,10 @@ abstract class QuiltMemoryFile extends QuiltUnifiedFile {
 
 	static final class ReadOnly extends QuiltMemoryFile {
 
-		final byte[] bytes;
+		/** The stored (possibly compressed) bytes, or null if they are stored in {@link #regions} instead. */
+		final byte @Nullable [] bytes;
+		final @Nullable QuiltMemoryFileRegions regions;
+		final int regionId;
 		final boolean isCompressed;
 		final int uncompressedSize;
 
@@ -54,47 +58,80 @@ abstract class QuiltMemoryFile extends QuiltUnifiedFile {
 			this.isCompressed = compressed;
 			this.uncompressedSize = uncompressedSize;
 			this.bytes = bytes;
+			this.regions = null;
+			this.regionId = -1;
 		}
 
-		final byte[] byteArray() {
-			return bytes;
+		ReadOnly(QuiltMapPath<?, ?> path, boolean compressed, int uncompressedSize, QuiltMemoryFileRegions regions,
+			int regionId) {
+
+			super(path);
+			this.isCompressed = compressed;
+			this.uncompressedSize = uncompressedSize;
+			this.bytes = null;
+			this.regions = regions;
+			this.regionId = regionId;
 		}
 
-		final int bytesOffset() {
-			return 0;
+		/** @return The number of bytes stored for this file, which is less than {@link #uncompressedSize} if it's
+		 *         compressed. */
+		final int storedLength() {
+			return bytes != null ? bytes.length : regions.length(regionId);
 		}
 
-		final int bytesLength() {
-			return bytes.length;
+		/** @return A new buffer containing the stored (possibly compressed) bytes. */
+		final ByteBuffer storedBuffer() {
+			return bytes != null ? ByteBuffer.wrap(bytes) : regions.get(regionId);
+		}
+
+		private InputStream openStoredStream() {
+			if (bytes != null) {
+				return new ByteArrayInputStream(bytes);
+			}
+			return new QuiltZipFileSystem.ByteBufferInputStream(regions.get(regionId));
 		}
 
 		static QuiltMemoryFile.ReadOnly create(QuiltMapPath<?, ?> path, byte[] bytes, boolean compress) {
-			int size = bytes.length;
+			return create(path, bytes, compress, null);
+		}
 
-			if (size < 24 || !compress) {
-				return new QuiltMemoryFile.ReadOnly(path, false, size, bytes);
-			}
+		/** @param regions If non-null then the bytes are stored in these regions rather than on the heap. */
+		static QuiltMemoryFile.ReadOnly create(QuiltMapPath<?, ?> path, byte[] bytes, boolean compress,
+			@Nullable QuiltMemoryFileRegions regions) {
+
+			int size = bytes.length;
+			byte[] stored = bytes;
+			boolean compressed = false;
 
-			try {
-				ByteArrayOutputStream baos = new ByteArrayOutputStream();
-				GZIPOutputStream gzip = new GZIPOutputStream(baos);
-				gzip.write(bytes);
-				gzip.close();
+			if (size >= 24 && compress) {
+				try {
+					ByteArrayOutputStream baos = new ByteArrayOutputStream();
+					GZIPOutputStream gzip = new GZIPOutputStream(baos);
+					gzip.write(bytes);
+					gzip.close();
 
-				byte[] c = baos.toByteArray();
+					byte[] c = baos.toByteArray();
 
-				if (c.length + 24 < size) {
-					return new QuiltMemoryFile.ReadOnly(path, true, size, c);
-				} else {
-					return new QuiltMemoryFile.ReadOnly(path, false, size, bytes);
+					if (c.length + 24 < size) {
+						stored = c;
+						compressed = true;
+					}
+				} catch (IOException e) {
+					// Just store it uncompressed
 				}
-			} catch (IOException e) {
-				return new QuiltMemoryFile.ReadOnly(path, false, size, bytes);
 			}
+
+			if (regions != null) {
+				return new QuiltMemoryFile.ReadOnly(path, compressed, size, regions, regions.add(stored));
+			}
+			return new QuiltMemoryFile.ReadOnly(path, compressed, size, stored);
 		}
 
 		@Override
 		protected QuiltUnifiedEntry createCopiedTo(QuiltMapPath<?, ?> newPath) {
+			if (bytes == null) {
+				return new ReadOnly(newPath, isCompressed, uncompressedSize, regions, regionId);
+			}
 			return new ReadOnly(newPath, isCompressed, uncompressedSize, bytes);
 		}
 
@@ -103,9 +140,29 @@ abstract class QuiltMemoryFile extends QuiltUnifiedFile {
 			return new QuiltFileAttributes(path, uncompressedSize);
 		}
 
+		@Override
+		byte[] readAllBytes() throws IOException {
+			byte[] to = new byte[uncompressedSize];
+			if (!isCompressed) {
+				storedBuffer().get(to);
+				return to;
+			}
+			try (InputStream stream = createInputStream()) {
+				int read = 0;
+				while (read < to.length) {
+					int r = stream.read(to, read, to.length - read);
+					if (r < 0) {
+						throw new EOFException("Expected " + to.length + " bytes in " + path + ", but only found " + read);
+					}
+					read += r;
+				}
+			}
+			return to;
+		}
+
 		@Override
 		InputStream createInputStream() throws IOException {
-			InputStream direct = new ByteArrayInputStream(byteArray(), bytesOffset(), bytesLength());
+			InputStream direct = openStoredStream();
 			if (!isCompressed) {
 				return direct;
 			}
@@ -171,9 +228,7 @@ abstract class QuiltMemoryFile extends QuiltUnifiedFile {
 			return new QuiltSeekableByteChannel() {
 				boolean open = true;
 
-				final GZIPInputStream gzip = new GZIPInputStream(
-						new ByteArrayInputStream(byteArray(), bytesOffset(), bytesLength())
-				);
+				final GZIPInputStream gzip = new GZIPInputStream(openStoredStream());
 				byte[] buffer = new byte[uncompressedSize];
 				int bufferPosition = 0;
 
@@ -253,7 +308,14 @@ abstract class QuiltMemoryFile extends QuiltUnifiedFile {
 				}
 				int toRead = (int) Math.min(uncompressedSize - position, dst.remaining());
 				int offset = (int) position;
-				dst.put(byteArray(), offset + bytesOffset(), toRead);
+				if (bytes != null) {
+					dst.put(bytes, offset, toRead);
+				} else {
+					ByteBuffer src = regions.get(regionId);
+					src.position(offset);
+					src.limit(offset + toRead);
+					dst.put(src);
+				}
 				position += toRead;
 				return toRead;
 			}
@@ -332,9 +394,9 @@ abstract class QuiltMemoryFile extends QuiltUnifiedFile {
 					throw new IllegalStateException("Failed to read a perfectly good compressed stream!", e);
 				}
 			} else {
-				int offset = src.bytesOffset();
-				this.bytes = Arrays.copyOfRange(src.byteArray(), offset, offset + src.bytesLength());
-				this.length = src.bytesLength();
+				this.bytes = new byte[src.storedLength()];
+				src.storedBuffer().get(this.bytes);
+				this.length = bytes.length;
 			}
 		}
 
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.loader.impl.filesystem;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.quiltmc.loader.impl.util.QuiltLoaderInternal;
+import org.quiltmc.loader.impl.util.QuiltLoaderInternalType;
+
+/** Stores the contents of many read-only files in a few large direct {@link ByteBuffer}s (outside of the java heap),
+ * rather than in a byte array per file, so long-lived file systems don't add to the old generation. The location of
+ * each file is stored in arrays, indexed by the id returned from {@link #add(byte[])}.
+ * <p>
+ * Files are only added while the owning file system is being constructed, and the regions are only freed when this
+ * is garbage collected. */
+@QuiltLoaderInternal(QuiltLoaderInternalType.NEW_INTERNAL)
+final class QuiltMemoryFileRegions {
+
+	static final int REGION_SIZE = 4 * 1024 * 1024;
+
+	private final List<ByteBuffer> regions = new ArrayList<>();
+	private ByteBuffer current;
+	private int currentIndex;
+
+	private int count;
+	private int[] regionIndices = new int[64];
+	private int[] offsets = new int[64];
+	private int[] lengths = new int[64];
+
+	private long offHeapSize;
+
+	/** @return The id of the new file. */
+	int add(byte[] bytes) {
+		if (count == lengths.length) {
+			int newLength = count * 2;
+			regionIndices = Arrays.copyOf(regionIndices, newLength);
+			offsets = Arrays.copyOf(offsets, newLength);
+			lengths = Arrays.copyOf(lengths, newLength);
+		}
+
+		ByteBuffer region;
+		if (bytes.length >= REGION_SIZE / 2) {
+			// Larger files get a region to themselves, so they don't waste the rest of the current region
+			region = ByteBuffer.allocateDirect(bytes.length);
+			regions.add(region);
+			offHeapSize += region.capacity();
+			regionIndices[count] = regions.size() - 1;
+		} else {
+			if (current == null || current.remaining() < bytes.length) {
+				current = ByteBuffer.allocateDirect(REGION_SIZE);
+				currentIndex = regions.size();
+				regions.add(current);
+				offHeapSize += current.capacity();
+			}
+			region = current;
+			regionIndices[count] = currentIndex;
+		}
+
+		offsets[count] = region.position();
+		lengths[count] = bytes.length;
+		region.put(bytes);
+		return count++;
+	}
+
+	/** Shrinks the last region (and the location arrays) down to the space actually used. Must be called once every
+	 * file has been added. */
+	void finish() {
+		if (current != null && current.hasRemaining()) {
+			ByteBuffer exact = ByteBuffer.allocateDirect(current.position());
+			current.flip();
+			exact.put(current);
+			offHeapSize += exact.capacity() - current.capacity();
+			regions.set(currentIndex, exact);
+		}
+		current = null;
+		regionIndices = Arrays.copyOf(regionIndices, count);
+		offsets = Arrays.copyOf(offsets, count);
+		lengths = Arrays.copyOf(lengths, count);
+	}
+
+	/** @return A new buffer containing exactly the contents of the given file, positioned at 0. */
+	ByteBuffer get(int id) {
+		ByteBuffer buffer = regions.get(regionIndices[id]).duplicate();
+		buffer.position(offsets[id]);
+		buffer.limit(offsets[id] + lengths[id]);
+		return buffer.slice();
+	}
+
+	int length(int id) {
+		return lengths[id];
+	}
+
+	/** @return The number of bytes allocated outside of the java heap. */
+	long getOffHeapSize() {
+		return offHeapSize;
+	}
+
+	/** @return An estimate of the number of bytes used on the java heap to track the location of every file. */
+	long getHeapSize() {
+		return 64 + regions.size() * 64L + 3 * (16 + lengths.length * 4L);
+	}
+}
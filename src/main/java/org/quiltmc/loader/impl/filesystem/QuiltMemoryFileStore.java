@@ -65,11 +65,39 @@ public abstract class QuiltMemoryFileStore extends FileStore {
 	}
 
 	public static final class ReadOnly extends QuiltMemoryFileStore {
+		/** The {@link #getAttribute(String) attribute} for the estimated number of bytes used on the java heap. */
+		public static final String ATTR_HEAP_SIZE = "quilt-in-memory:heapSize";
+		/** The {@link #getAttribute(String) attribute} for the number of bytes allocated outside of the java heap. */
+		public static final String ATTR_OFF_HEAP_SIZE = "quilt-in-memory:offHeapSize";
+
 		private final int totalSize;
+		private final long heapSize, offHeapSize;
 
-		ReadOnly(String name, int totalSize) {
+		ReadOnly(String name, int totalSize, long heapSize, long offHeapSize) {
 			super(name);
 			this.totalSize = totalSize;
+			this.heapSize = heapSize;
+			this.offHeapSize = offHeapSize;
+		}
+
+		/** @return An estimate of the number of bytes used on the java heap by the file system. */
+		public long getHeapSize() {
+			return heapSize;
+		}
+
+		/** @return The number of bytes allocated outside of the java heap to store file contents. */
+		public long getOffHeapSize() {
+			return offHeapSize;
+		}
+
+		@Override
+		public Object getAttribute(String attribute) throws IOException {
+			if (ATTR_HEAP_SIZE.equals(attribute)) {
+				return heapSize;
+			} else if (ATTR_OFF_HEAP_SIZE.equals(attribute)) {
+				return offHeapSize;
+			}
+			return super.getAttribute(attribute);
 		}
 
 		@Override
@@ -52,6 +52,7 @@ import org.quiltmc.loader.impl.filesystem.QuiltUnifiedEntry.QuiltUnifiedFolderWr
 import org.quiltmc.loader.impl.util.FileUtil;
 import org.quiltmc.loader.impl.util.QuiltLoaderInternal;
 import org.quiltmc.loader.impl.util.QuiltLoaderInternalType;
+import org.quiltmc.loader.impl.util.SystemProperties;
 
 @QuiltLoaderInternal(QuiltLoaderInternalType.LEGACY_EXPOSED)
 public abstract class QuiltMemoryFileSystem extends QuiltMapFileSystem<QuiltMemoryFileSystem, QuiltMemoryPath> implements CachedFileSystem {
@@ -164,11 +165,16 @@ public abstract class QuiltMemoryFileSystem extends QuiltMapFileSystem<QuiltMemo
 
 	public static final class ReadOnly extends QuiltMemoryFileSystem implements ReadOnlyFileSystem {
 
+		static final boolean OFF_HEAP = Boolean.getBoolean(SystemProperties.MEMORY_FILE_SYSTEM_OFF_HEAP);
+
 		private static final int STAT_UNCOMPRESSED = 0;
 		private static final int STAT_USED = 1;
 		private static final int STAT_MEMORY = 2;
 
 		private final int uncompressedSize, usedSize, memorySize;
+		private final long offHeapSize;
+		/** Non-null if file contents are stored outside of the java heap. */
+		private final @Nullable QuiltMemoryFileRegions regions;
 		private QuiltMemoryFileStore.ReadOnly fileStore;
 		private Iterable<FileStore> fileStoreItr;
 
@@ -177,7 +183,19 @@ public abstract class QuiltMemoryFileSystem extends QuiltMapFileSystem<QuiltMemo
 		 * @param compress if true then all files will be stored in-memory compressed.
 		 * @throws IOException if any of the files in the given path could not be read. */
 		public ReadOnly(String name, boolean uniquify, Path from, boolean compress) throws IOException {
+			this(name, uniquify, from, compress, OFF_HEAP);
+		}
+
+		/** Creates a new read-only {@link FileSystem} that copies every file in the given directory.
+		 *
+		 * @param compress if true then all files will be stored in-memory compressed.
+		 * @param offHeap if true then file contents will be stored in direct buffers, outside of the java heap.
+		 * @throws IOException if any of the files in the given path could not be read. */
+		public ReadOnly(String name, boolean uniquify, Path from, boolean compress, boolean offHeap)
+			throws IOException {
+
 			super(name, uniquify);
+			regions = offHeap ? new QuiltMemoryFileRegions() : null;
 
 			int[] stats = new int[3];
 			stats[STAT_MEMORY] = 60;
@@ -214,7 +232,9 @@ public abstract class QuiltMemoryFileSystem extends QuiltMapFileSystem<QuiltMemo
 					stats[STAT_MEMORY] += fileName.length() + 28;
 					QuiltMemoryPath childPath = state.folder.resolve(fileName);
 					state.children.add(childPath);
-					QuiltMemoryFile.ReadOnly qmf = QuiltMemoryFile.ReadOnly.create(childPath, Files.readAllBytes(file), compress);
+					QuiltMemoryFile.ReadOnly qmf = QuiltMemoryFile.ReadOnly.create(
+						childPath, Files.readAllBytes(file), compress, regions
+					);
 					putFileStats(stats, qmf);
 					addEntryWithoutParents(qmf);
 
@@ -237,10 +257,13 @@ public abstract class QuiltMemoryFileSystem extends QuiltMapFileSystem<QuiltMemo
 				throw new IllegalStateException("Stack is not empty!");
 			}
 
+			switchToReadOnly();
+
 			uncompressedSize = stats[STAT_UNCOMPRESSED];
 			usedSize = stats[STAT_USED];
-			memorySize = stats[STAT_MEMORY] + ((int) (getEntryCount() * 24 / 0.75f));
-			fileStore = new QuiltMemoryFileStore.ReadOnly(name, usedSize);
+			memorySize = stats[STAT_MEMORY] + ((int) (getEntryCount() * 24 / 0.75f)) + finishRegions();
+			offHeapSize = regions != null ? regions.getOffHeapSize() : 0;
+			fileStore = new QuiltMemoryFileStore.ReadOnly(name, usedSize, memorySize, offHeapSize);
 			fileStoreItr = Collections.singleton(fileStore);
 		}
 
@@ -251,8 +274,18 @@ public abstract class QuiltMemoryFileSystem extends QuiltMapFileSystem<QuiltMemo
 
 		private static void putFileStats(int[] stats, QuiltMemoryFile.ReadOnly qmf) {
 			stats[STAT_UNCOMPRESSED] += qmf.uncompressedSize;
-			stats[STAT_USED] += qmf.byteArray().length;
-			stats[STAT_MEMORY] += qmf.byteArray().length + 16;
+			stats[STAT_USED] += qmf.storedLength();
+			// Files stored in regions only use the heap for their entry
+			stats[STAT_MEMORY] += (qmf.bytes != null ? qmf.storedLength() : 0) + 16;
+		}
+
+		/** @return The estimated heap usage of {@link #regions}. */
+		private int finishRegions() {
+			if (regions == null) {
+				return 0;
+			}
+			regions.finish();
+			return (int) regions.getHeapSize();
 		}
 
 		/** Creates a new read-only file system that copies every entry of a {@link ZipInputStream} that starts with
@@ -269,7 +302,18 @@ public abstract class QuiltMemoryFileSystem extends QuiltMapFileSystem<QuiltMemo
 		 * @param compress If true then entries will be compressed in-memory. Generally slow.
 		 * @throws IOException if {@link ZipInputStream} threw an {@link IOException} while reading entries. */
 		public ReadOnly(String name, ZipInputStream zipFrom, String zipPathPrefix, boolean compress) throws IOException {
+			this(name, zipFrom, zipPathPrefix, compress, OFF_HEAP);
+		}
+
+		/** Creates a new read-only file system that copies every entry of a {@link ZipInputStream} that starts with
+		 * "zipPathPrefix", like {@link #ReadOnly(String, ZipInputStream, String, boolean)}.
+		 *
+		 * @param offHeap If true then entries will be stored in direct buffers, outside of the java heap. */
+		public ReadOnly(String name, ZipInputStream zipFrom, String zipPathPrefix, boolean compress, boolean offHeap)
+			throws IOException {
+
 			super(name, true);
+			regions = offHeap ? new QuiltMemoryFileRegions() : null;
 
 			addEntryAndParents(new QuiltUnifiedFolderWriteable(root));
 
@@ -297,7 +341,7 @@ public abstract class QuiltMemoryFileSystem extends QuiltMapFileSystem<QuiltMemo
 					// File
 					stats[STAT_MEMORY] += path.name.length() + 28;
 					byte[] bytes = FileUtil.readAllBytes(zipFrom);
-					QuiltMemoryFile.ReadOnly qmf = QuiltMemoryFile.ReadOnly.create(path, bytes, compress);
+					QuiltMemoryFile.ReadOnly qmf = QuiltMemoryFile.ReadOnly.create(path, bytes, compress, regions);
 					putFileStats(stats, qmf);
 					addEntryAndParents(qmf);
 				}
@@ -314,9 +358,10 @@ public abstract class QuiltMemoryFileSystem extends QuiltMapFileSystem<QuiltMemo
 
 			uncompressedSize = stats[STAT_UNCOMPRESSED];
 			usedSize = stats[STAT_USED];
-			memorySize = stats[STAT_MEMORY] + ((int) (getEntryCount() * 24 / 0.75f));
+			memorySize = stats[STAT_MEMORY] + ((int) (getEntryCount() * 24 / 0.75f)) + finishRegions();
+			offHeapSize = regions != null ? regions.getOffHeapSize() : 0;
 
-			fileStore = new QuiltMemoryFileStore.ReadOnly(name, usedSize);
+			fileStore = new QuiltMemoryFileStore.ReadOnly(name, usedSize, memorySize, offHeapSize);
 			fileStoreItr = Collections.singleton(fileStore);
 		}
 
@@ -346,17 +391,23 @@ public abstract class QuiltMemoryFileSystem extends QuiltMapFileSystem<QuiltMemo
 			return uncompressedSize;
 		}
 
-		/** @return The raw number of bytes we store in byte arrays. */
+		/** @return The raw number of bytes we store in byte arrays (or direct buffers). */
 		public int getUsedSize() {
 			return usedSize;
 		}
 
-		/** @return An estimate of the memory footprint required in this JVM for this file system. Always bigger than
-		 *         {@link #getUsedSize()}. */
+		/** @return An estimate of the memory footprint required on the java heap for this file system. Always bigger
+		 *         than {@link #getUsedSize()}, unless files are stored off-heap. */
 		public int getEstimatedMemoryFootprint() {
 			return memorySize;
 		}
 
+		/** @return The number of bytes allocated outside of the java heap to store files, which is 0 unless this was
+		 *         created with "offHeap" set to true. */
+		public long getOffHeapSize() {
+			return offHeapSize;
+		}
+
 		@Override
 		public Iterable<FileStore> getFileStores() {
 			return fileStoreItr;
@@ -390,7 +441,7 @@ public abstract class QuiltMemoryFileSystem extends QuiltMapFileSystem<QuiltMemo
 				QuiltUnifiedFolderWriteable folderDst = new QuiltUnifiedFolderWriteable(dst);
 				dst.fs.addEntryWithoutParentsUnsafe(folderDst);
 
-				for (QuiltMapPath<?, ?> pathSrc : folderSrc.children) {
+				for (QuiltMapPath<?, ?> pathSrc : folderSrc.children()) {
 					QuiltMemoryPath pathDst = dst.resolve(pathSrc.name);
 					folderDst.children.add(pathDst);
 					copyPath((QuiltMemoryPath) pathSrc, pathDst);
@@ -33,6 +33,7 @@ import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
+import org.quiltmc.loader.impl.util.FileUtil;
 import org.quiltmc.loader.impl.util.QuiltLoaderInternal;
 import org.quiltmc.loader.impl.util.QuiltLoaderInternalType;
 
@@ -40,10 +41,12 @@ import org.quiltmc.loader.impl.util.QuiltLoaderInternalType;
 public abstract /* sealed */ class QuiltUnifiedEntry /* permits QuiltUnifiedFolder, QuiltUnifiedFile */ {
 
 	// We don't actually need generics at this point
+	/** Null for files stored in a {@link QuiltMapEntryTrie}, which are only used through copies made by
+	 * {@link #createMovedTo(QuiltMapPath)}. */
 	final QuiltMapPath<?, ?> path;
 
 	private QuiltUnifiedEntry(QuiltMapPath<?, ?> path) {
-		this.path = path.toAbsolutePath().normalize();
+		this.path = path == null ? null : path.toAbsolutePath().normalize();
 	}
 
 	@Override
@@ -81,17 +84,26 @@ public abstract /* sealed */ class QuiltUnifiedEntry /* permits QuiltUnifiedFold
 	}
 
 	@QuiltLoaderInternal(QuiltLoaderInternalType.NEW_INTERNAL)
-	public static final class QuiltUnifiedFolderReadOnly extends QuiltUnifiedFolder {
-		public final QuiltMapPath<?, ?>[] children;
+	public static class QuiltUnifiedFolderReadOnly extends QuiltUnifiedFolder {
+		private final QuiltMapPath<?, ?>[] children;
 
 		public QuiltUnifiedFolderReadOnly(QuiltMapPath<?, ?> path, QuiltMapPath<?, ?>[] children) {
 			super(path);
 			this.children = children;
 		}
 
+		/** For subclasses which create their children when they are asked for, rather than storing them. */
+		QuiltUnifiedFolderReadOnly(QuiltMapPath<?, ?> path) {
+			this(path, null);
+		}
+
+		public QuiltMapPath<?, ?>[] children() {
+			return children;
+		}
+
 		@Override
 		protected Collection<? extends Path> getChildren() {
-			return Arrays.asList(children);
+			return Arrays.asList(children());
 		}
 
 		@Override
@@ -132,6 +144,13 @@ public abstract /* sealed */ class QuiltUnifiedEntry /* permits QuiltUnifiedFold
 
 		abstract InputStream createInputStream() throws IOException;
 
+		/** @return Every byte of this file, in a new array. */
+		byte[] readAllBytes() throws IOException {
+			try (InputStream stream = createInputStream()) {
+				return FileUtil.readAllBytes(stream);
+			}
+		}
+
 		abstract OutputStream createOutputStream(boolean append, boolean truncate) throws IOException;
 
 		abstract SeekableByteChannel createByteChannel(Set<? extends OpenOption> options) throws IOException;
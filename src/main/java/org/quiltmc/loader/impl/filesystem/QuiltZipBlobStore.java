@@ -0,0 +1,163 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.loader.impl.filesystem;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Set;
+
+import org.quiltmc.loader.api.FasterFiles;
+import org.quiltmc.loader.impl.util.QuiltLoaderInternal;
+import org.quiltmc.loader.impl.util.QuiltLoaderInternalType;
+
+/** A folder of raw-deflated files which are shared between several "Quilt compressed file systems", each named by the
+ * SHA-1 hash of its uncompressed contents. A file system written with a blob store only stores the hash of each
+ * larger file, so identical files (for example the same mod in caches for two different sets of mods) are only
+ * stored once.
+ * <p>
+ * Blobs are never modified after they are written, so they can be read by any number of processes at once. Unused
+ * blobs are only deleted by {@link #sweep(Path, Set, long)}, which must be given every referenced hash. */
+@QuiltLoaderInternal(QuiltLoaderInternalType.NEW_INTERNAL)
+public final class QuiltZipBlobStore {
+
+	/** Files which compress to less than this are always stored in the file system itself, since a separate file for
+	 * every small class would waste more disk space (and file handles) than deduplicating them saves. */
+	static final int MIN_BLOB_SIZE = 4096;
+
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private QuiltZipBlobStore() {}
+
+	static Path resolve(Path store, byte[] hash) {
+		String name = toHex(hash);
+		return store.resolve(name.substring(0, 2)).resolve(name);
+	}
+
+	/** Stores the given compressed bytes under the given hash, unless a blob with that hash already exists. */
+	static void store(Path store, byte[] hash, byte[] compressed, int length) throws IOException {
+		Path blob = resolve(store, hash);
+		if (FasterFiles.exists(blob)) {
+			// Refresh the timestamp so a concurrent sweep won't delete it before our file system references it
+			Files.setLastModifiedTime(blob, FileTime.fromMillis(System.currentTimeMillis()));
+			return;
+		}
+
+		Files.createDirectories(blob.getParent());
+		Path temp = Files.createTempFile(blob.getParent(), blob.getFileName().toString(), TEMP_SUFFIX);
+		try {
+			try (OutputStream stream = Files.newOutputStream(temp)) {
+				stream.write(compressed, 0, length);
+			}
+			try {
+				Files.move(temp, blob, StandardCopyOption.ATOMIC_MOVE);
+			} catch (FileAlreadyExistsException e) {
+				// Another writer stored the same blob first, which is fine since the contents are the same
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/** Adds the hash of every blob referenced by the given file to the given set. Files which don't use a blob store
+	 * (including normal zips and partially written files) are ignored. */
+	public static void collectReferences(Path file, Set<String> to) throws IOException {
+		long indexStart;
+		try (InputStream stream = Files.newInputStream(file)) {
+			byte[] header = new byte[QuiltZipCustomCompressedWriter.HEADER_V3.length];
+			DataInputStream data = new DataInputStream(stream);
+			try {
+				data.readFully(header);
+			} catch (IOException e) {
+				return;
+			}
+			if (!Arrays.equals(header, QuiltZipCustomCompressedWriter.HEADER_V3)) {
+				return;
+			}
+			indexStart = data.readLong();
+		}
+
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long length = channel.size() - indexStart;
+			if (indexStart < 0 || length < 0 || length > Integer.MAX_VALUE) {
+				throw new IOException("Invalid index offset " + indexStart + " in " + file);
+			}
+			buffer = ByteBuffer.allocate((int) length);
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, indexStart + buffer.position()) < 0) {
+					throw new EOFException();
+				}
+			}
+			buffer.flip();
+		}
+		QuiltZipIndex index = QuiltZipIndex.read(buffer);
+		for (int i = 0; i < index.blobCount(); i++) {
+			to.add(toHex(index.blobHashAt(i)));
+		}
+	}
+
+	/** Deletes every blob which isn't in the given set of hashes, and hasn't been modified for at least the given time.
+	 * The minimum age protects blobs which were just written (or reused) by a file system that is still being written,
+	 * possibly by a different process.
+	 *
+	 * @return The number of bytes deleted. */
+	public static long sweep(Path store, Set<String> referenced, long minAgeMillis) throws IOException {
+		if (!FasterFiles.isDirectory(store)) {
+			return 0;
+		}
+		long cutoff = System.currentTimeMillis() - minAgeMillis;
+		long[] deleted = { 0 };
+		Files.walkFileTree(store, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				String name = file.getFileName().toString();
+				boolean unused = name.endsWith(TEMP_SUFFIX) || !referenced.contains(name);
+				if (unused && attrs.lastModifiedTime().toMillis() < cutoff) {
+					Files.deleteIfExists(file);
+					deleted[0] += attrs.size();
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return deleted[0];
+	}
+
+	static String toHex(byte[] hash) {
+		char[] chars = new char[hash.length * 2];
+		for (int i = 0; i < hash.length; i++) {
+			int b = hash[i] & 0xFF;
+			chars[i * 2] = Character.forDigit(b >>> 4, 16);
+			chars[i * 2 + 1] = Character.forDigit(b & 0xF, 16);
+		}
+		return new String(chars);
+	}
+}
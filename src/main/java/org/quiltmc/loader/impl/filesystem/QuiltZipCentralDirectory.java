@@ -0,0 +1,246 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.loader.impl.filesystem;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jetbrains.annotations.Nullable;
+import org.quiltmc.loader.impl.util.QuiltLoaderInternal;
+import org.quiltmc.loader.impl.util.QuiltLoaderInternalType;
+
+/** Reads the entries of a zip file from its central directory, rather than by reading every local file header (which
+ * requires reading the whole file). Only the central directory (and the end of central directory records, including
+ * the ZIP64 records) are read - the local file header of each entry is only read when the entry itself is read, by
+ * {@link #readDataOffset(SeekableByteChannel, long)}. */
+@QuiltLoaderInternal(QuiltLoaderInternalType.NEW_INTERNAL)
+final class QuiltZipCentralDirectory {
+
+	static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+	static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+	static final int END_SIGNATURE = 0x06054b50;
+	static final int ZIP64_END_SIGNATURE = 0x06064b50;
+	static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+
+	static final int LOCAL_HEADER_SIZE = 30;
+	static final int CENTRAL_HEADER_SIZE = 46;
+	static final int END_SIZE = 22;
+	static final int ZIP64_END_SIZE = 56;
+	static final int ZIP64_LOCATOR_SIZE = 20;
+	static final int MAX_COMMENT_LENGTH = 0xFFFF;
+
+	static final int ZIP64_EXTRA_ID = 0x0001;
+	static final long ZIP64_MAGIC = 0xFFFF_FFFFL;
+	static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+	static final class Entry {
+		final String name;
+		final int method;
+		final long compressedSize, uncompressedSize;
+		/** The offset of the local file header, from the start of the file. */
+		final long localHeaderOffset;
+
+		Entry(String name, int method, long compressedSize, long uncompressedSize, long localHeaderOffset) {
+			this.name = name;
+			this.method = method;
+			this.compressedSize = compressedSize;
+			this.uncompressedSize = uncompressedSize;
+			this.localHeaderOffset = localHeaderOffset;
+		}
+	}
+
+	private QuiltZipCentralDirectory() {}
+
+	/** @return Every entry in the central directory, in order, or null if the central directory couldn't be found or
+	 *         is malformed, in which case the zip should be read from the start instead.
+	 * @throws IOException if the channel couldn't be read from. */
+	static @Nullable List<Entry> read(SeekableByteChannel channel) throws IOException {
+		try {
+			return read0(channel);
+		} catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException | EOFException e) {
+			return null;
+		}
+	}
+
+	private static @Nullable List<Entry> read0(SeekableByteChannel channel) throws IOException {
+		long size = channel.size();
+		if (size < END_SIZE) {
+			return null;
+		}
+
+		// The end of central directory record is followed by a variable-length comment, so it has to be searched for
+		int tailLength = (int) Math.min(size, END_SIZE + MAX_COMMENT_LENGTH);
+		long tailStart = size - tailLength;
+		ByteBuffer tail = readFully(channel, tailStart, tailLength);
+		int endPos = -1;
+		for (int i = tailLength - END_SIZE; i >= 0; i--) {
+			if (tail.getInt(i) == END_SIGNATURE && i + END_SIZE + (tail.getShort(i + 20) & 0xFFFF) == tailLength) {
+				endPos = i;
+				break;
+			}
+		}
+		if (endPos < 0) {
+			return null;
+		}
+
+		if (tail.getShort(endPos + 4) != 0 || tail.getShort(endPos + 6) != 0) {
+			// Split (multi-disk) archives aren't supported
+			return null;
+		}
+
+		int entryCount = tail.getShort(endPos + 10) & 0xFFFF;
+		long directorySize = tail.getInt(endPos + 12) & 0xFFFF_FFFFL;
+		long directoryOffset = tail.getInt(endPos + 16) & 0xFFFF_FFFFL;
+		long directoryEnd = tailStart + endPos;
+
+		if (entryCount == ZIP64_MAGIC_COUNT || directorySize == ZIP64_MAGIC || directoryOffset == ZIP64_MAGIC) {
+			long locatorPos = directoryEnd - ZIP64_LOCATOR_SIZE;
+			if (locatorPos >= 0) {
+				ByteBuffer locator = readFully(channel, locatorPos, ZIP64_LOCATOR_SIZE);
+				if (locator.getInt(0) == ZIP64_LOCATOR_SIGNATURE) {
+					// The recorded offset is wrong if anything was prepended to the zip,
+					// so fall back to assuming the record is directly before the locator
+					long zip64Pos = locator.getLong(8);
+					ByteBuffer zip64 = null;
+					if (zip64Pos >= 0 && zip64Pos + ZIP64_END_SIZE <= locatorPos) {
+						zip64 = readFully(channel, zip64Pos, ZIP64_END_SIZE);
+					}
+					if (zip64 == null || zip64.getInt(0) != ZIP64_END_SIGNATURE) {
+						zip64Pos = locatorPos - ZIP64_END_SIZE;
+						zip64 = zip64Pos < 0 ? null : readFully(channel, zip64Pos, ZIP64_END_SIZE);
+					}
+					if (zip64 == null || zip64.getInt(0) != ZIP64_END_SIGNATURE) {
+						return null;
+					}
+					directorySize = zip64.getLong(40);
+					directoryOffset = zip64.getLong(48);
+					directoryEnd = zip64Pos;
+				}
+			}
+		}
+
+		long directoryStart = directoryEnd - directorySize;
+		// Non-zero if something (like a launcher script) was prepended to the zip
+		long prefixLength = directoryStart - directoryOffset;
+		if (directorySize < 0 || directoryStart < 0 || prefixLength < 0 || directorySize > Integer.MAX_VALUE) {
+			return null;
+		}
+
+		ByteBuffer directory = readFully(channel, directoryStart, (int) directorySize);
+		// The entry count is only a hint, since it wraps around in zips with more than 65535 entries without ZIP64
+		List<Entry> entries = new ArrayList<>(entryCount);
+		int pos = 0;
+		while (pos < directory.limit()) {
+			if (directory.getInt(pos) != CENTRAL_HEADER_SIGNATURE) {
+				return null;
+			}
+			int method = directory.getShort(pos + 10) & 0xFFFF;
+			long compressedSize = directory.getInt(pos + 20) & 0xFFFF_FFFFL;
+			long uncompressedSize = directory.getInt(pos + 24) & 0xFFFF_FFFFL;
+			int nameLength = directory.getShort(pos + 28) & 0xFFFF;
+			int extraLength = directory.getShort(pos + 30) & 0xFFFF;
+			int commentLength = directory.getShort(pos + 32) & 0xFFFF;
+			long localHeaderOffset = directory.getInt(pos + 42) & 0xFFFF_FFFFL;
+
+			int nameStart = pos + CENTRAL_HEADER_SIZE;
+			int extraStart = nameStart + nameLength;
+			int next = extraStart + extraLength + commentLength;
+			if (next > directory.limit()) {
+				return null;
+			}
+
+			if (uncompressedSize == ZIP64_MAGIC || compressedSize == ZIP64_MAGIC || localHeaderOffset == ZIP64_MAGIC) {
+				// The ZIP64 extra field only contains the values which didn't fit, in this order
+				int extraPos = extraStart;
+				int extraEnd = extraStart + extraLength;
+				while (extraPos + 4 <= extraEnd) {
+					int id = directory.getShort(extraPos) & 0xFFFF;
+					int length = directory.getShort(extraPos + 2) & 0xFFFF;
+					int dataPos = extraPos + 4;
+					int dataEnd = dataPos + length;
+					if (dataEnd > extraEnd) {
+						return null;
+					}
+					if (id == ZIP64_EXTRA_ID) {
+						if (uncompressedSize == ZIP64_MAGIC && dataPos + 8 <= dataEnd) {
+							uncompressedSize = directory.getLong(dataPos);
+							dataPos += 8;
+						}
+						if (compressedSize == ZIP64_MAGIC && dataPos + 8 <= dataEnd) {
+							compressedSize = directory.getLong(dataPos);
+							dataPos += 8;
+						}
+						if (localHeaderOffset == ZIP64_MAGIC && dataPos + 8 <= dataEnd) {
+							localHeaderOffset = directory.getLong(dataPos);
+						}
+						break;
+					}
+					extraPos = dataEnd;
+				}
+			}
+
+			localHeaderOffset += prefixLength;
+			if (compressedSize < 0 || uncompressedSize < 0 || localHeaderOffset < 0) {
+				return null;
+			}
+			if (localHeaderOffset + LOCAL_HEADER_SIZE + compressedSize > directoryStart) {
+				return null;
+			}
+
+			byte[] nameBytes = new byte[nameLength];
+			directory.position(nameStart);
+			directory.get(nameBytes);
+			// ZipInputStream always uses UTF-8, so this does too
+			String name = new String(nameBytes, StandardCharsets.UTF_8);
+			entries.add(new Entry(name, method, compressedSize, uncompressedSize, localHeaderOffset));
+			pos = next;
+		}
+		return entries;
+	}
+
+	/** Reads the local file header at the given offset.
+	 *
+	 * @return The offset of the entry's data. */
+	static long readDataOffset(SeekableByteChannel channel, long localHeaderOffset) throws IOException {
+		ByteBuffer header = readFully(channel, localHeaderOffset, LOCAL_HEADER_SIZE);
+		if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+			throw new IOException("Missing local file header at " + localHeaderOffset);
+		}
+		int nameLength = header.getShort(26) & 0xFFFF;
+		int extraLength = header.getShort(28) & 0xFFFF;
+		return localHeaderOffset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+	}
+
+	private static ByteBuffer readFully(SeekableByteChannel channel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		channel.position(position);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				throw new EOFException();
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+}
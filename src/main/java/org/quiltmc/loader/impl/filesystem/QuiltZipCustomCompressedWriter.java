@@ -16,7 +16,6 @@
 
 package org.quiltmc.loader.impl.filesystem;
 
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
@@ -33,50 +32,74 @@ import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Deque;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
-import java.util.zip.GZIPOutputStream;
 
+import org.jetbrains.annotations.Nullable;
 import org.quiltmc.loader.impl.util.ExposedByteArrayOutputStream;
+import org.quiltmc.loader.impl.util.HashUtil;
+import org.quiltmc.loader.impl.util.QuiltLoaderWorkerPool;
+import org.quiltmc.loader.impl.util.SystemProperties;
 
 /** Writer class that implements
- * {@link QuiltZipFileSystem#writeQuiltCompressedFileSystem(java.nio.file.Path, java.nio.file.Path)}. */
+ * {@link QuiltZipFileSystem#writeQuiltCompressedFileSystem(java.nio.file.Path, java.nio.file.Path, java.nio.file.Path)}. */
 final class QuiltZipCustomCompressedWriter {
 
 	static final Charset UTF8 = StandardCharsets.UTF_8;
+	/** The header of version 2 files, which have a gzipped directory and 32-bit offsets. These are no longer written,
+	 * but can still be read. */
 	static final byte[] HEADER = "quiltmczipcmpv2".getBytes(UTF8);
+	/** The header of version 3 files, which end with a {@link QuiltZipIndex}, and can be larger than 2GB. */
+	static final byte[] HEADER_V3 = "quiltmczipcmpv3".getBytes(UTF8);
 	static final byte[] PARTIAL_HEADER = Arrays.copyOf("PARTIAL!PARTIAL!PARTIAL!".getBytes(UTF8), HEADER.length);
 
-	private static final AtomicInteger WRITER_THREAD_INDEX = new AtomicInteger();
-	private static final StopThreadsPath THREAD_STOPPER = new StopThreadsPath();
+	/** The largest file which can be written. Every file is compressed into a single array, and the index can store
+	 * larger sizes but {@link QuiltZipFileSystem} reads sizes as ints. This leaves room for deflate to make a file
+	 * slightly larger than it was. */
+	static final long MAX_FILE_SIZE = 2_000_000_000L;
+
+	/** The maximum (uncompressed) size of the files which are compressed at once, since each one is held in memory until
+	 * it's been written. */
+	static final int MAX_MEMORY = (int) Math.max(1, Math.min(
+		Integer.MAX_VALUE, Long.getLong(SystemProperties.TRANSFORM_CACHE_WRITER_MEMORY, 64) * 1024 * 1024
+	));
 
 	final Path src, dst;
-	final LinkedBlockingQueue<Path> sourceFiles = new LinkedBlockingQueue<>();
+	final @Nullable Path blobStore;
 	final Map<Path, FileEntry> files = new ConcurrentHashMap<>();
-	final AtomicInteger currentOffset = new AtomicInteger();
+	final AtomicLong currentOffset = new AtomicLong();
+	final Semaphore memory = new Semaphore(MAX_MEMORY);
+	final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
 
-	volatile boolean interrupted;
 	volatile boolean aborted = false;
 	volatile Exception exception;
 
-	QuiltZipCustomCompressedWriter(Path src, Path dst) {
+	QuiltZipCustomCompressedWriter(Path src, Path dst, @Nullable Path blobStore) {
 		this.src = src;
 		this.dst = dst;
+		this.blobStore = blobStore;
 	}
 
-	/** @see QuiltZipFileSystem#writeQuiltCompressedFileSystem(Path, Path) */
+	/** @see QuiltZipFileSystem#writeQuiltCompressedFileSystem(Path, Path, Path) */
 	void write() throws IOException {
 		try (FileChannel channel = FileChannel.open(dst, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
 			write0(channel);
 		} finally {
 			aborted = true;
+			Deflater deflater;
+			while ((deflater = deflaters.poll()) != null) {
+				deflater.end();
+			}
 		}
 	}
 
@@ -84,41 +107,21 @@ final class QuiltZipCustomCompressedWriter {
 
 		// Steps:
 		// 1: Find all folders and files
-		// 2: Pass each file on to a queue of files to be processed
-		// 3: On threads compress those files into a set of byte arrays
-		// 4: Write the directory entry list using those compressed files
-		// 5: Append the byte arrays to the output file directly, in the right order
-
-		// Spin up the other threads now
-		int mainIndex = WRITER_THREAD_INDEX.incrementAndGet();
+		// 2: Submit each file to the shared worker pool, once there's enough memory for it
+		// 3: On the pool compress each file into a byte array
+		// 4: Append the byte array to the output file directly, as soon as it's finished, and record where it went
+		// 5: Once every file has been written, write the index of every file and folder after them
 
 		channel.write(ByteBuffer.wrap(PARTIAL_HEADER));
-		// 4 bytes: Directory pointer
-		channel.write(ByteBuffer.allocate(4));
-		currentOffset.set((int) channel.position());
-
-		int threadCount = Runtime.getRuntime().availableProcessors();
-		WriterThread[] threads = new WriterThread[threadCount];
-		for (int i = 0; i < threadCount; i++) {
-			threads[i] = new WriterThread(mainIndex, i, channel);
-			threads[i].setUncaughtExceptionHandler((thread, ex) -> {
-				System.err.println("Exception in thread " + thread.getName());
-				ex.printStackTrace(System.err);
-				ExecutionException ee = new ExecutionException(thread.getName(), ex);
-				synchronized (QuiltZipCustomCompressedWriter.this) {
-					if (exception == null) {
-						exception = ee;
-					} else {
-						exception.addSuppressed(ee);
-					}
-				}
-			});
-			threads[i].setDaemon(true);
-			threads[i].start();
-		}
+		// 8 bytes: Index pointer
+		channel.write(ByteBuffer.allocate(8));
+		currentOffset.set(channel.position());
 
+		final ForkJoinPool pool = QuiltLoaderWorkerPool.get();
+		final List<ForkJoinTask<?>> tasks = new ArrayList<>();
 		final Deque<Directory> stack = new ArrayDeque<>();
 
+		boolean walked = false;
 		try {
 			Files.walkFileTree(src, new SimpleFileVisitor<Path>() {
 				@Override
@@ -138,8 +141,20 @@ final class QuiltZipCustomCompressedWriter {
 						// Recheck in case we should stop early
 						return FileVisitResult.TERMINATE;
 					}
+					if (attrs.size() > MAX_FILE_SIZE) {
+						throw tooLarge(file, attrs.size());
+					}
 					stack.peek().childFiles.add(file);
-					sourceFiles.add(file);
+
+					// Files larger than the limit are still written, just on their own
+					int permits = (int) Math.min(attrs.size(), MAX_MEMORY);
+					try {
+						memory.acquire(permits);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException();
+					}
+					tasks.add(pool.submit(() -> writeFile(channel, file, permits)));
 					return FileVisitResult.CONTINUE;
 				}
 
@@ -152,87 +167,28 @@ final class QuiltZipCustomCompressedWriter {
 					return FileVisitResult.CONTINUE;
 				}
 			});
+			walked = true;
 		} catch (IOException e) {
-			synchronized (this) {
-				if (exception == null) {
-					exception = e;
-				} else {
-					exception.addSuppressed(e);
-				}
+			addException(e);
+		} finally {
+			if (!walked) {
+				// Including unchecked exceptions from the visitor, which are thrown after every task has finished
+				aborted = true;
+			}
+			// Wait for every file to be written, even if we're stopping early, since they all write to the channel
+			// (and use deflaters from the pool), which write() closes as soon as this returns
+			for (ForkJoinTask<?> task : tasks) {
+				task.quietlyJoin();
 			}
-		}
-
-		// Inform every thread that there are no more files left
-		for (int i = 0; i < threadCount; i++) {
-			sourceFiles.add(THREAD_STOPPER);
 		}
 
 		if (stack.size() != 1) {
 			// A bug in our code apparently
-			synchronized (this) {
-				IllegalStateException illegal = new IllegalStateException("Directory stack too large/small! " + stack);
-				if (exception != null) {
-					// ...or probably caused by this exception, so it's okay
-					exception.addSuppressed(illegal);
-				} else {
-					exception = illegal;
-				}
-			}
-		}
-
-		// Wait for every thread to finish
-		for (int i = 0; i < threadCount; i++) {
-			try {
-				threads[i].join();
-			} catch (InterruptedException e) {
-				// We need to stop now apparently
-				Thread.currentThread().interrupt();
-				interrupted = true;
-				for (int j = i + 1; j < threadCount; j++) {
-					threads[j].interrupt();
-				}
-				break;
-			}
+			addException(new IllegalStateException("Directory stack too large/small! " + stack));
 		}
 
-		// Check state of every thread to propagate exceptions upwards
-		synchronized (QuiltZipCustomCompressedWriter.this) {
-			if (!sourceFiles.isEmpty()) {
-				StringBuilder sb = new StringBuilder();
-				Iterator<Path> iterator = sourceFiles.iterator();
-				int count = 0;
-				while (iterator.hasNext()) {
-					count++;
-					Path next = iterator.next();
-					if (count < 100) {
-						if (sb.length() == 0) {
-							sb.append(", ");
-						}
-						sb.append(next);
-					}
-				}
-				if (count >= 100) {
-					sb.append(", [" + (count - 100) + " more]");
-				}
-				IOException e = new IOException("Some source files haven't been processed!\n" + sb);
-				if (exception == null) {
-					// And we don't know why
-					exception = e;
-				} else {
-					// And we might know why, so it's probably okay
-					exception.addSuppressed(e);
-				}
-			}
-
-			if (interrupted) {
-				// Either us, or another thread, was interrupted.
-				if (exception == null) {
-					exception = new InterruptedIOException();
-				} else {
-					exception.addSuppressed(new InterruptedIOException());
-				}
-			}
-
+		// Check for exceptions from every task to propagate them upwards
+		synchronized (this) {
 			if (exception != null) {
 				aborted = true;
 				if (exception instanceof IllegalStateException) {
@@ -240,7 +196,7 @@ final class QuiltZipCustomCompressedWriter {
 				} else if (exception instanceof IOException) {
 					throw (IOException) exception;
 				} else if (exception instanceof ExecutionException) {
-					throw new RuntimeException("One of the writer threads crashed!", exception);
+					throw new RuntimeException("One of the writer tasks crashed!", exception);
 				} else {
 					throw new IllegalStateException(
 						"Unexpected 'Exception' type - this should only be set to IOException or IllegalStateException!",
@@ -250,44 +206,46 @@ final class QuiltZipCustomCompressedWriter {
 			}
 		}
 
-		// Write the directory
-		int directoryOffset = currentOffset.get();
-		ExposedByteArrayOutputStream baos = new ExposedByteArrayOutputStream();
-		GZIPOutputStream gzip = new GZIPOutputStream(baos);
-		writeDirectory(stack.pop(), files, new DataOutputStream(gzip));
-		gzip.finish();
-		channel.write(baos.wrapIntoBuffer(), directoryOffset);
-
-		// Write the directory offset
-		baos = new ExposedByteArrayOutputStream();
-		DataOutputStream dos = new DataOutputStream(baos);
-		dos.writeInt(directoryOffset);
-		channel.write(baos.wrapIntoBuffer(), HEADER.length);
+		// Write the index
+		long indexOffset = currentOffset.get();
+		ByteBuffer index = ByteBuffer.wrap(writeIndex(stack.pop()));
+		for (long position = indexOffset; index.hasRemaining();) {
+			position += channel.write(index, position);
+		}
+
+		// Write the index offset
+		ByteBuffer offset = ByteBuffer.allocate(8);
+		offset.putLong(0, indexOffset);
+		channel.write(offset, HEADER_V3.length);
 		channel.force(false);
 
 		// and the finished header
-		channel.write(ByteBuffer.wrap(HEADER), 0);
+		channel.write(ByteBuffer.wrap(HEADER_V3), 0);
+	}
+
+	/** Creates the {@link QuiltZipIndex} for the given root directory. */
+	private byte[] writeIndex(Directory root) throws IOException {
+		QuiltZipIndex.Builder builder = new QuiltZipIndex.Builder();
+		addToIndex(builder, root, "");
+		String relativeBlobStore = null;
+		if (blobStore != null) {
+			// Relative, so the cache folder can be moved (or copied) along with the blob store
+			Path relative = dst.toAbsolutePath().getParent().relativize(blobStore.toAbsolutePath());
+			relativeBlobStore = relative.toString().replace('\\', '/');
+		}
+		return builder.build(relativeBlobStore);
 	}
 
-	private void writeDirectory(Directory directory, Map<Path, FileEntry> fileMap, DataOutputStream to)
-		throws IOException {
-		// Some directories might have thousands of files, but it's not common
-		to.writeShort(directory.childFiles.size());
+	private void addToIndex(QuiltZipIndex.Builder builder, Directory directory, String path) throws IOException {
+		builder.addFolder(path);
 		for (Path file : directory.childFiles) {
-			byte[] nameBytes = file.getFileName().toString().getBytes(UTF8);
-			to.writeByte(nameBytes.length);
-			to.write(nameBytes);
-			FileEntry entry = fileMap.get(file);
-			to.writeInt(entry.offset);
-			to.writeInt(entry.uncompressedLength);
-			to.writeInt(entry.compressedLength);
+			FileEntry entry = files.get(file);
+			String filePath = path + "/" + file.getFileName().toString();
+			int kind = entry.blobHash != null ? QuiltZipIndex.KIND_BLOB : QuiltZipIndex.KIND_FILE;
+			builder.addFile(filePath, kind, entry.offset, entry.compressedLength, entry.uncompressedLength, entry.blobHash);
 		}
-		to.writeShort(directory.childDirectories.size());
 		for (Directory sub : directory.childDirectories) {
-			byte[] nameBytes = sub.folderName.getBytes(UTF8);
-			to.writeByte(nameBytes.length);
-			to.write(nameBytes);
-			writeDirectory(sub, fileMap, to);
+			addToIndex(builder, sub, path + "/" + sub.folderName);
 		}
 	}
 
@@ -301,87 +259,93 @@ final class QuiltZipCustomCompressedWriter {
 		}
 	}
 
-	private final class WriterThread extends Thread {
-
-		final FileChannel channel;
-		Deflater deflater;
-
-		public WriterThread(int mainIndex, int subIndex, FileChannel channel) {
-			super("QuiltZipWriter-" + mainIndex + "." + subIndex);
-			this.channel = channel;
-		}
+	private void writeFile(FileChannel channel, Path file, int permits) {
+		Deflater deflater = null;
+		try {
+			if (aborted || exception != null) {
+				return;
+			}
 
-		@Override
-		public void run() {
-			while (exception == null && !aborted) {
-				final Path next;
-				try {
-					next = sourceFiles.take();
-				} catch (InterruptedException e) {
-					interrupted = true;
-					break;
-				}
-				if (next == THREAD_STOPPER) {
-					break;
-				}
+			deflater = deflaters.poll();
+			if (deflater == null) {
+				deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+			}
 
-				if (deflater == null) {
-					deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+			int uncompressedLength;
+			byte[] hash = null;
+			ExposedByteArrayOutputStream baos = new ExposedByteArrayOutputStream();
+			try (DeflaterOutputStream compressor = new DeflaterOutputStream(baos, deflater)) {
+				if (blobStore != null) {
+					byte[] bytes = Files.readAllBytes(file);
+					hash = HashUtil.computeHash(bytes);
+					compressor.write(bytes);
+					uncompressedLength = bytes.length;
 				} else {
-					deflater.reset();
-				}
-
-				try {
-					int uncompressedLength;
-					ExposedByteArrayOutputStream baos = new ExposedByteArrayOutputStream();
-					try (DeflaterOutputStream compressor = new DeflaterOutputStream(baos, deflater)) {
-						uncompressedLength = (int) Files.copy(next, compressor);
-					}
-					int offset = currentOffset.getAndAdd(baos.size());
-					int length = baos.size();
-					channel.write(ByteBuffer.wrap(baos.getArray(), 0, length), offset);
-					files.put(next, new FileEntry(offset, uncompressedLength, length));
-				} catch (IOException e) {
-					e = new IOException("Failed to copy " + next, e);
-					synchronized (QuiltZipCustomCompressedWriter.this) {
-						if (aborted) {
-							// Don't try to append to an exception if it's already been thrown
-							e.printStackTrace();
-							break;
-						}
-						if (exception == null) {
-							exception = e;
-						} else {
-							exception.addSuppressed(e);
-						}
-						break;
+					long copied = Files.copy(file, compressor);
+					if (copied > MAX_FILE_SIZE) {
+						// It grew since it was found
+						throw tooLarge(file, copied);
 					}
+					uncompressedLength = (int) copied;
 				}
 			}
+			int length = baos.size();
+			if (hash != null && length >= QuiltZipBlobStore.MIN_BLOB_SIZE) {
+				QuiltZipBlobStore.store(blobStore, hash, baos.getArray(), length);
+				files.put(file, new FileEntry(hash, uncompressedLength, length));
+				return;
+			}
 
+			// Files are appended in the order they finish, rather than the order they were found
+			long offset = currentOffset.getAndAdd(length);
+			ByteBuffer buffer = ByteBuffer.wrap(baos.getArray(), 0, length);
+			for (long position = offset; buffer.hasRemaining();) {
+				position += channel.write(buffer, position);
+			}
+			files.put(file, new FileEntry(offset, uncompressedLength, length));
+		} catch (IOException e) {
+			addException(new IOException("Failed to copy " + file, e));
+		} catch (RuntimeException | Error e) {
+			addException(new ExecutionException("Failed to copy " + file, e));
+		} finally {
 			if (deflater != null) {
-				deflater.end();
+				deflater.reset();
+				deflaters.add(deflater);
 			}
+			memory.release(permits);
+		}
+	}
+
+	private static IOException tooLarge(Path file, long size) {
+		return new IOException("Cannot write " + file + " since it's " + size + " bytes, which is larger than " + MAX_FILE_SIZE);
+	}
+
+	private synchronized void addException(Exception e) {
+		if (exception == null) {
+			exception = e;
+		} else {
+			exception.addSuppressed(e);
 		}
 	}
 
 	static final class FileEntry {
-		final int offset;
+		final long offset;
 		final int uncompressedLength, compressedLength;
+		final byte @Nullable [] blobHash;
 
-		FileEntry(int offset, int uncompressedLength, int compressedLength) {
+		FileEntry(long offset, int uncompressedLength, int compressedLength) {
 			this.offset = offset;
 			this.uncompressedLength = uncompressedLength;
 			this.compressedLength = compressedLength;
+			this.blobHash = null;
 		}
-	}
 
-	private static final class StopThreadsPath extends NullPath {
-		@Override
-		protected IllegalStateException illegal() {
-			throw new IllegalStateException(
-				"QuiltZipCustomCompressedWriter must NEVER permit StopThreadsPath to leak!"
-			);
+		FileEntry(byte[] blobHash, int uncompressedLength, int compressedLength) {
+			// Blobs are read from the start of their own file
+			this.offset = 0;
+			this.uncompressedLength = uncompressedLength;
+			this.compressedLength = compressedLength;
+			this.blobHash = blobHash;
 		}
 	}
 }
@@ -19,6 +19,7 @@ package org.quiltmc.loader.impl.filesystem;
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -26,28 +27,33 @@ import java.io.PushbackInputStream;
 import java.io.UncheckedIOException;
 import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.spi.FileSystemProvider;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.Inflater;
-import java.util.zip.InflaterInputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
 import org.jetbrains.annotations.Nullable;
+import org.quiltmc.loader.api.FasterFiles;
 import org.quiltmc.loader.api.plugin.NonZipException;
 import org.quiltmc.loader.impl.filesystem.QuiltUnifiedEntry.QuiltUnifiedFile;
 import org.quiltmc.loader.impl.filesystem.QuiltUnifiedEntry.QuiltUnifiedFolderReadOnly;
@@ -59,6 +65,7 @@ import org.quiltmc.loader.impl.util.LimitedInputStream;
 import org.quiltmc.loader.impl.util.QuiltLoaderCleanupTasks;
 import org.quiltmc.loader.impl.util.QuiltLoaderInternal;
 import org.quiltmc.loader.impl.util.QuiltLoaderInternalType;
+import org.quiltmc.loader.impl.util.SystemProperties;
 
 /** A read-only file system that only caches the locations of zip entries rather than their zip contents. This is
  * slightly more flexible than java's zip file system since it can have a different "root" than the real root of a zip
@@ -74,20 +81,41 @@ public class QuiltZipFileSystem extends QuiltMapFileSystem<QuiltZipFileSystem, Q
 
 	static final boolean DEBUG_TEST_READING = false;
 
+	static final boolean MAP_FILES = Boolean.getBoolean(SystemProperties.QUILT_ZIPFS_MAP_FILES);
+	static final long SPILL_NESTED_SIZE = Long.getLong(SystemProperties.QUILT_ZIPFS_SPILL_NESTED_SIZE, 1024) * 1024;
+	static final int LAZY_ENTRY_COUNT = Integer.getInteger(SystemProperties.QUILT_ZIPFS_LAZY_ENTRY_COUNT, 1024);
+
 	final WeakReference<QuiltZipFileSystem> thisRef = new WeakReference<>(this);
 	final ZipSource source;
 
+	/** Non-null if entries are only created when they are first accessed, rather than when this is constructed. */
+	private @Nullable LazyIndex lazy;
+
+	/** The number of entries above which entries are created lazily, or -1 to never create them lazily. */
+	private final int lazyEntryCount;
+
+	/** Identifies the file this was read from and its size and last modified time, or null if this wasn't read from a
+	 * file on the default file system (or from a file inside another zip which was). */
+	private final @Nullable String contentIdentity;
+
 	public QuiltZipFileSystem(String name, Path zipFrom, String zipPathPrefix) throws IOException {
+		this(name, zipFrom, zipPathPrefix, LAZY_ENTRY_COUNT);
+	}
+
+	QuiltZipFileSystem(String name, Path zipFrom, String zipPathPrefix, int lazyEntryCount) throws IOException {
 		super(QuiltZipFileSystem.class, QuiltZipPath.class, name, true);
+		this.lazyEntryCount = lazyEntryCount;
+		this.contentIdentity = identifyContents(zipFrom, zipPathPrefix);
 
 		if (DEBUG_TEST_READING) {
 			System.out.println("new QuiltZipFileSystem ( "  + name + ", from " + zipFrom + " )");
 		}
 
 		if (zipFrom.getFileSystem() == FileSystems.getDefault()) {
-			source = new SharedByteChannels(this, zipFrom);
+			ZipSource mapped = MAP_FILES ? MappedSource.tryMap(this, zipFrom) : null;
+			source = mapped != null ? mapped : new SharedByteChannels(this, zipFrom);
 		} else {
-			source = new InMemorySource(Files.newInputStream(zipFrom));
+			source = openNestedSource(zipFrom);
 		}
 
 		// Ensure root exists - empty zips wouldn't create this otherwise
@@ -102,8 +130,24 @@ public class QuiltZipFileSystem extends QuiltMapFileSystem<QuiltZipFileSystem, Q
 			if (readLength == 0 || readLength == -1) {
 				throw new ZeroByteFileException("Zip start header not found - 0 byte file!");
 			}
-			if (readLength == header.length && Arrays.equals(header, QuiltZipCustomCompressedWriter.HEADER)) {
-				if (!(source instanceof SharedByteChannels)) {
+			if (readLength == header.length && Arrays.equals(header, QuiltZipCustomCompressedWriter.HEADER_V3)) {
+				if (!source.isRandomAccess()) {
+					throw new IOException("Cannot read a custom compressed stream that isn't on the default file system!");
+				}
+				long indexStart = new DataInputStream(pushback).readLong();
+				QuiltZipIndex index = QuiltZipIndex.read(source.readToEnd(indexStart));
+				Path blobStore = null;
+				if (index.blobStore != null) {
+					blobStore = zipFrom.toAbsolutePath().getParent().resolve(index.blobStore).normalize();
+					checkBlobs(index, blobStore);
+				}
+				if (zipPathPrefix.isEmpty() && isLazy(index.entryCount)) {
+					switchToLazyEntries(new LazyIndex(index, QuiltBasePath.NAME_ROOT, blobStore, index.entryCount));
+				} else {
+					readIndex(root, index, QuiltZipIndex.ROOT, zipPathPrefix, blobStore);
+				}
+			} else if (readLength == header.length && Arrays.equals(header, QuiltZipCustomCompressedWriter.HEADER)) {
+				if (!source.isRandomAccess()) {
 					throw new IOException("Cannot read a custom compressed stream that isn't on the default file system!");
 				}
 				int directoryStart = new DataInputStream(pushback).readInt();
@@ -113,7 +157,7 @@ public class QuiltZipFileSystem extends QuiltMapFileSystem<QuiltZipFileSystem, Q
 				}
 			} else if (readLength == header.length && Arrays.equals(header, QuiltZipCustomCompressedWriter.PARTIAL_HEADER)) {
 				throw new PartiallyWrittenIOException();
-			} else {
+			} else if (!source.isRandomAccess() || !initializeFromCentralDirectory(zipPathPrefix)) {
 				pushback.reset();
 				initializeFromZip(pushback, zipPathPrefix);
 			}
@@ -128,11 +172,158 @@ public class QuiltZipFileSystem extends QuiltMapFileSystem<QuiltZipFileSystem, Q
 		dumpEntries(name);
 	}
 
+	/** Read before the zip is opened, so a file which is modified while it's being read never looks unchanged. */
+	private static @Nullable String identifyContents(Path zipFrom, String zipPathPrefix) throws IOException {
+		String identity;
+		if (zipFrom.getFileSystem() == FileSystems.getDefault()) {
+			BasicFileAttributes attributes = Files.readAttributes(zipFrom, BasicFileAttributes.class);
+			identity = "file " + zipFrom.toAbsolutePath().normalize() + " " + attributes.size() + " "
+				+ attributes.lastModifiedTime().toMillis();
+		} else if (zipFrom instanceof QuiltZipPath && ((QuiltZipPath) zipFrom).fs.contentIdentity != null) {
+			QuiltZipPath outer = (QuiltZipPath) zipFrom;
+			identity = outer.fs.contentIdentity + " nested " + outer.toAbsolutePath().normalize();
+		} else {
+			return null;
+		}
+		return zipPathPrefix.isEmpty() ? identity : identity + " prefix " + zipPathPrefix;
+	}
+
+	/** @return A string which is only equal to the value returned by a file system in a later launch if it was read
+	 *         from the same file, and that file hasn't been modified since. Null if this isn't backed by a file. */
+	@Nullable
+	String getContentIdentity() {
+		return contentIdentity;
+	}
+
+	/** Opens a zip which isn't on the default file system. Uncompressed zips inside another {@link QuiltZipFileSystem}
+	 * are read directly from the outer zip, larger compressed zips are copied to a temporary file, and everything else
+	 * is copied into memory. */
+	private ZipSource openNestedSource(Path zipFrom) throws IOException {
+		if (zipFrom instanceof QuiltZipPath) {
+			QuiltZipPath outer = (QuiltZipPath) zipFrom;
+			QuiltUnifiedEntry entry = outer.fs.getEntry(outer);
+			if (entry instanceof QuiltZipFile && !((QuiltZipFile) entry).isCompressed) {
+				QuiltZipFile file = (QuiltZipFile) entry;
+				return new SliceSource(this, file.source, file.dataOffset(), file.uncompressedSize);
+			}
+		}
+
+		if (SPILL_NESTED_SIZE >= 0 && Files.size(zipFrom) >= SPILL_NESTED_SIZE) {
+			Path temp = null;
+			try {
+				temp = Files.createTempFile("quilt-loader-nested-", ".zip");
+				temp.toFile().deleteOnExit();
+				Files.copy(zipFrom, temp, StandardCopyOption.REPLACE_EXISTING);
+			} catch (IOException e) {
+				// Probably an unwritable temporary folder, which isn't a reason to fail
+				if (temp != null) {
+					Files.deleteIfExists(temp);
+				}
+				temp = null;
+			}
+			if (temp != null) {
+				ZipSource mapped = MAP_FILES ? MappedSource.tryMap(this, temp) : null;
+				return new SpilledSource(temp, mapped != null ? mapped : new SharedByteChannels(this, temp));
+			}
+		}
+
+		return new InMemorySource(Files.newInputStream(zipFrom));
+	}
+
 	@Override
 	protected boolean startWithConcurrentMap() {
 		return false;
 	}
 
+	/** Adds every entry from the zip's central directory, which only requires reading the end of the zip.
+	 *
+	 * @return False if the zip doesn't have a readable central directory (for example if it's truncated), in which
+	 *         case nothing was added, and the zip must be read with {@link #initializeFromZip(InputStream, String)}
+	 *         instead. */
+	private boolean initializeFromCentralDirectory(String zipPathPrefix) throws IOException {
+		List<QuiltZipCentralDirectory.Entry> entries;
+		try (SeekableByteChannel channel = source.channel()) {
+			entries = QuiltZipCentralDirectory.read(channel);
+		}
+		if (entries == null) {
+			return false;
+		}
+
+		if (isLazy(entries.size())) {
+			QuiltZipIndex index = indexCentralDirectory(entries, zipPathPrefix);
+			if (index != null) {
+				switchToLazyEntries(new LazyIndex(index, QuiltBasePath.NAME_ROOT, null, index.entryCount));
+				return true;
+			}
+		}
+
+		for (QuiltZipCentralDirectory.Entry entry : entries) {
+			String entryName = entry.name;
+
+			if (!entryName.startsWith(zipPathPrefix)) {
+				continue;
+			}
+			entryName = entryName.substring(zipPathPrefix.length());
+			if (!entryName.startsWith("/")) {
+				entryName = "/" + entryName;
+			}
+
+			QuiltZipPath path = getPath(entryName);
+
+			if (entryName.endsWith("/")) {
+				createDirectories(path);
+			} else if (exists(path)) {
+				throw new IOException("Duplicate entry " + path);
+			} else {
+				addEntryAndParents(new QuiltZipFile(path, source, entry));
+			}
+		}
+		return true;
+	}
+
+	private boolean isLazy(int entryCount) {
+		return lazyEntryCount >= 0 && entryCount >= lazyEntryCount;
+	}
+
+	/** @return An in-memory index of the given entries, or null if they can't be indexed (because an entry name
+	 *         contains ".."), in which case every entry must be created up front instead. */
+	private static @Nullable QuiltZipIndex indexCentralDirectory(List<QuiltZipCentralDirectory.Entry> entries,
+		String zipPathPrefix) throws IOException {
+
+		QuiltZipIndex.Builder builder = new QuiltZipIndex.Builder();
+		try {
+			for (QuiltZipCentralDirectory.Entry entry : entries) {
+				String entryName = entry.name;
+
+				if (!entryName.startsWith(zipPathPrefix)) {
+					continue;
+				}
+				entryName = entryName.substring(zipPathPrefix.length());
+
+				if (entryName.endsWith("/")) {
+					builder.addFolder(entryName);
+					continue;
+				}
+
+				int kind = QuiltZipIndex.KIND_FILE | QuiltZipIndex.FLAG_AT_LOCAL_HEADER;
+				if (entry.method == ZipEntry.STORED) {
+					kind |= QuiltZipIndex.FLAG_STORED;
+				} else if (entry.method != ZipEntry.DEFLATED) {
+					throw new IOException("Unsupported zip entry method " + entry.method);
+				}
+				if (entry.compressedSize > Integer.MAX_VALUE || entry.uncompressedSize > Integer.MAX_VALUE) {
+					throw new IOException("Zip entry " + entry.name + " is too large!");
+				}
+				builder.addFile(
+					entryName, kind, entry.localHeaderOffset, entry.compressedSize, entry.uncompressedSize, null
+				);
+			}
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+		return QuiltZipIndex.read(ByteBuffer.wrap(builder.build(null)));
+	}
+
 	private void initializeFromZip(InputStream fileStream, String zipPathPrefix) throws IOException {
 		try (CountingInputStream counter = new CountingInputStream(fileStream); //
 			CustomZipInputStream zip = new CustomZipInputStream(counter)//
@@ -162,6 +353,192 @@ public class QuiltZipFileSystem extends QuiltMapFileSystem<QuiltZipFileSystem, Q
 		}
 	}
 
+	private void readIndex(QuiltZipPath path, QuiltZipIndex index, int folder, String zipPathPrefix,
+		@Nullable Path blobStore) throws IOException {
+
+		String pathString = path.toString();
+		if (pathString.startsWith(zipPathPrefix) || zipPathPrefix.startsWith(pathString)) {
+			createDirectories(path);
+		}
+		int firstChild = index.firstChild(folder);
+		int end = firstChild + index.childCount(folder);
+		if (firstChild <= folder || end > index.entryCount) {
+			throw new IOException("Invalid children for " + path);
+		}
+		for (int child = firstChild; child < end; child++) {
+			QuiltZipPath childPath = path.resolve(index.name(child));
+			if (index.isFolder(child)) {
+				readIndex(childPath, index, child, zipPathPrefix, blobStore);
+			} else if (childPath.toString().startsWith(zipPathPrefix)) {
+				addEntryAndParents(createIndexedFile(childPath, index, child, blobStore));
+			}
+		}
+	}
+
+	private QuiltZipFile createIndexedFile(QuiltZipPath path, QuiltZipIndex index, int entry,
+		@Nullable Path blobStore) throws IOException {
+
+		long compressedSize = index.compressedSize(entry);
+		long uncompressedSize = index.uncompressedSize(entry);
+		if (compressedSize < 0 || compressedSize > Integer.MAX_VALUE //
+			|| uncompressedSize < 0 || uncompressedSize > Integer.MAX_VALUE) {
+			throw new IOException("Unsupported file size for " + path);
+		}
+
+		if (index.kind(entry) == QuiltZipIndex.KIND_BLOB) {
+			if (blobStore == null) {
+				throw new IOException("Blob " + path + " without a blob store!");
+			}
+			Path blob = QuiltZipBlobStore.resolve(blobStore, index.blobHash(entry));
+			return new QuiltZipFile(path, new BlobSource(blob), 0, (int) compressedSize, (int) uncompressedSize, true);
+		}
+		return new QuiltZipFile(
+			path, source, index.offset(entry), index.hasFlag(entry, QuiltZipIndex.FLAG_AT_LOCAL_HEADER),
+			(int) compressedSize, (int) uncompressedSize, !index.hasFlag(entry, QuiltZipIndex.FLAG_STORED)
+		);
+	}
+
+	/** Checks that every blob exists up front, so a cache with missing blobs is rejected when it's opened rather than
+	 * when a file is first read. */
+	private static void checkBlobs(QuiltZipIndex index, Path blobStore) throws IOException {
+		for (int i = 0; i < index.blobCount(); i++) {
+			Path blob = QuiltZipBlobStore.resolve(blobStore, index.blobHashAt(i));
+			if (!FasterFiles.isRegularFile(blob)) {
+				throw new IOException("Missing blob " + blob);
+			}
+		}
+	}
+
+	// Lazy entries
+
+	private void switchToLazyEntries(LazyIndex index) {
+		// The root folder is created from the index as well
+		switchToLazyEntries();
+		lazy = index;
+	}
+
+	@Override
+	protected QuiltUnifiedEntry getEntry(Path path) {
+		QuiltUnifiedEntry entry = super.getEntry(path);
+		LazyIndex lazy = this.lazy;
+		if (entry != null || lazy == null) {
+			return entry;
+		}
+		QuiltZipPath zipPath = (QuiltZipPath) path.toAbsolutePath().normalize();
+		int index = lazy.index.find(lazy.indexPath(zipPath));
+		if (index < 0) {
+			return null;
+		}
+		return addLazyEntry(createLazyEntry(lazy, zipPath, index));
+	}
+
+	private QuiltUnifiedEntry createLazyEntry(LazyIndex lazy, QuiltZipPath path, int index) {
+		QuiltZipIndex zipIndex = lazy.index;
+		if (zipIndex.isFolder(index)) {
+			int firstChild = zipIndex.firstChild(index);
+			QuiltMapPath<?, ?>[] children = new QuiltMapPath<?, ?>[zipIndex.childCount(index)];
+			for (int i = 0; i < children.length; i++) {
+				children[i] = path.resolve(zipIndex.name(firstChild + i));
+			}
+			return new QuiltUnifiedFolderReadOnly(path, children);
+		}
+		try {
+			return createIndexedFile(path, zipIndex, index, lazy.blobStore);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	protected int getEntryCount() {
+		LazyIndex lazy = this.lazy;
+		return lazy != null ? lazy.entryCount : super.getEntryCount();
+	}
+
+	@Override
+	protected Iterable<QuiltZipPath> getEntryPathIterator() {
+		LazyIndex lazy = this.lazy;
+		if (lazy == null) {
+			return super.getEntryPathIterator();
+		}
+		// Paths are created as they are iterated, rather than all at once
+		int rootIndex = lazy.index.find(lazy.root);
+		return () -> new IndexedPathIterator(lazy.index, rootIndex, root);
+	}
+
+	/** @return The index of this file system, if its entries are created lazily and its root is the root of the index,
+	 *         so {@link QuiltZipIndex#find(String)} can be used with the absolute paths of this file system. Otherwise
+	 *         null. */
+	@Nullable
+	QuiltZipIndex getLazyIndex() {
+		LazyIndex lazy = this.lazy;
+		return lazy != null && lazy.root.equals(QuiltBasePath.NAME_ROOT) ? lazy.index : null;
+	}
+
+	/** Visits every entry of a {@link QuiltZipIndex} depth first, only keeping the paths of the current folders. */
+	private static final class IndexedPathIterator implements Iterator<QuiltZipPath> {
+		final QuiltZipIndex index;
+		final List<QuiltZipPath> folders = new ArrayList<>();
+		final List<int[]> ranges = new ArrayList<>();
+		QuiltZipPath next;
+
+		IndexedPathIterator(QuiltZipIndex index, int rootIndex, QuiltZipPath root) {
+			this.index = index;
+			if (rootIndex >= 0) {
+				next = root;
+				push(rootIndex, root);
+			}
+		}
+
+		private void push(int entry, QuiltZipPath path) {
+			if (index.isFolder(entry)) {
+				int firstChild = index.firstChild(entry);
+				folders.add(path);
+				ranges.add(new int[] { firstChild, firstChild + index.childCount(entry) });
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@Override
+		public QuiltZipPath next() {
+			QuiltZipPath current = next;
+			if (current == null) {
+				throw new NoSuchElementException();
+			}
+			next = null;
+			while (!ranges.isEmpty()) {
+				int last = ranges.size() - 1;
+				int[] range = ranges.get(last);
+				if (range[0] >= range[1]) {
+					ranges.remove(last);
+					folders.remove(last);
+					continue;
+				}
+				int child = range[0]++;
+				next = folders.get(last).resolve(index.name(child));
+				push(child, next);
+				break;
+			}
+			return current;
+		}
+	}
+
+	private static int countIndexedEntries(QuiltZipIndex index, int entry) {
+		int count = 1;
+		if (index.isFolder(entry)) {
+			int firstChild = index.firstChild(entry);
+			int end = firstChild + index.childCount(entry);
+			for (int child = firstChild; child < end; child++) {
+				count += countIndexedEntries(index, child);
+			}
+		}
+		return count;
+	}
+
 	private void readDirectory(QuiltZipPath path, DataInputStream stream, String zipPathPrefix) throws IOException {
 		String pathString = path.toString();
 		if (pathString.startsWith(zipPathPrefix) || zipPathPrefix.startsWith(pathString)) {
@@ -199,7 +576,21 @@ public class QuiltZipFileSystem extends QuiltMapFileSystem<QuiltZipFileSystem, Q
 		source = newRoot.fs.source;
 		source.open(this);
 
-		addFolder(newRoot, getRoot());
+		String parentIdentity = newRoot.fs.contentIdentity;
+		contentIdentity = parentIdentity == null ? null : parentIdentity + " sub " + newRoot.toAbsolutePath().normalize();
+
+		LazyIndex parentLazy = newRoot.fs.lazy;
+		if (parentLazy != null) {
+			String indexRoot = parentLazy.indexPath(newRoot.toAbsolutePath().normalize());
+			int rootIndex = parentLazy.index.find(indexRoot);
+			int count = rootIndex < 0 ? 0 : countIndexedEntries(parentLazy.index, rootIndex);
+			lazyEntryCount = 0;
+			switchToLazyEntries(new LazyIndex(parentLazy.index, indexRoot, parentLazy.blobStore, count));
+		} else {
+			lazyEntryCount = -1;
+			addFolder(newRoot, getRoot());
+			switchToReadOnly();
+		}
 
 		QuiltZipFileSystemProvider.PROVIDER.register(this);
 
@@ -213,7 +604,7 @@ public class QuiltZipFileSystem extends QuiltMapFileSystem<QuiltZipFileSystem, Q
 		QuiltUnifiedEntry entryFrom = srcFS.getEntry(src);
 		if (entryFrom instanceof QuiltUnifiedFolderReadOnly) {
 			// QuiltZipFolder does store subfolders that are part of the original FS, so we need to fully copy it
-			QuiltMapPath<?, ?>[] srcChildren = ((QuiltUnifiedFolderReadOnly) entryFrom).children;
+			QuiltMapPath<?, ?>[] srcChildren = ((QuiltUnifiedFolderReadOnly) entryFrom).children();
 			QuiltMapPath<?, ?>[] dstChildren = new QuiltMapPath<?, ?>[srcChildren.length];
 			for (int i = 0; i < srcChildren.length; i++) {
 				QuiltMapPath<?, ?> srcChild = srcChildren[i];
@@ -224,7 +615,8 @@ public class QuiltZipFileSystem extends QuiltMapFileSystem<QuiltZipFileSystem, Q
 			addEntryWithoutParentsUnsafe(new QuiltUnifiedFolderReadOnly(dst, dstChildren));
 		} else if (entryFrom instanceof QuiltZipFile) {
 			QuiltZipFile from = (QuiltZipFile) entryFrom;
-			addEntryWithoutParentsUnsafe(new QuiltZipFile(dst, source, from.offset, from.compressedSize, from.uncompressedSize, from.isCompressed));
+			ZipSource fileSource = from.source instanceof BlobSource ? from.source : source;
+			addEntryWithoutParentsUnsafe(new QuiltZipFile(dst, fileSource, from.offset, from.atLocalHeader, from.compressedSize, from.uncompressedSize, from.isCompressed));
 		} else {
 			// This isn't meant to happen, it means something got constructed badly
 			throw new IllegalArgumentException("Unknown source entry " + entryFrom);
@@ -239,7 +631,17 @@ public class QuiltZipFileSystem extends QuiltMapFileSystem<QuiltZipFileSystem, Q
 	 * @param dst The destination file to copy to. This must not already exist.
 	 * @throws IOException if anything goes wrong while writing the file or reading the source files. */
 	public static void writeQuiltCompressedFileSystem(Path src, Path dst) throws IOException {
-		new QuiltZipCustomCompressedWriter(src, dst).write();
+		writeQuiltCompressedFileSystem(src, dst, null);
+	}
+
+	/** Writes a "Quilt compressed file system", like {@link #writeQuiltCompressedFileSystem(Path, Path)}, except that
+	 * larger files are stored in the given {@link QuiltZipBlobStore} rather than in the destination file. The blob
+	 * store is referenced relative to the destination file, so both must be moved together.
+	 *
+	 * @param blobStore The blob store folder, or null to store every file in the destination file. */
+	public static void writeQuiltCompressedFileSystem(Path src, Path dst, @Nullable Path blobStore)
+		throws IOException {
+		new QuiltZipCustomCompressedWriter(src, dst, blobStore).write();
 	}
 
 	@Override
@@ -336,6 +738,32 @@ public class QuiltZipFileSystem extends QuiltMapFileSystem<QuiltZipFileSystem, Q
 		}
 	}
 
+	/** The entries of a file system which are created from a {@link QuiltZipIndex} when they are first accessed, since
+	 * most entries of larger zips (like the minecraft jar) are never accessed. */
+	static final class LazyIndex {
+		final QuiltZipIndex index;
+		/** The path in the index of the file system's root, which is only different to "/" for file systems which only
+		 * expose a single folder of another file system. */
+		final String root;
+		final @Nullable Path blobStore;
+		final int entryCount;
+
+		LazyIndex(QuiltZipIndex index, String root, @Nullable Path blobStore, int entryCount) {
+			this.index = index;
+			this.root = root;
+			this.blobStore = blobStore;
+			this.entryCount = entryCount;
+		}
+
+		String indexPath(QuiltZipPath path) {
+			String pathString = path.toString();
+			if (root.equals(QuiltBasePath.NAME_ROOT)) {
+				return pathString;
+			}
+			return pathString.equals(QuiltBasePath.NAME_ROOT) ? root : root + pathString;
+		}
+	}
+
 	static abstract class ZipSource {
 
 		abstract InputStream openConstructingStream() throws IOException;
@@ -353,6 +781,31 @@ public class QuiltZipFileSystem extends QuiltMapFileSystem<QuiltZipFileSystem, Q
 		abstract InputStream stream(long position) throws IOException;
 
 		abstract SeekableByteChannel channel() throws IOException;
+
+		/** @return True if {@link #stream(long)} and {@link #channel()} can efficiently read from any position. */
+		boolean isRandomAccess() {
+			return false;
+		}
+
+		/** @return Every byte from the given position to the end of this source. This may be a view of the source
+		 *         itself (rather than a copy), so it must not be modified. */
+		ByteBuffer readToEnd(long position) throws IOException {
+			try (SeekableByteChannel channel = channel()) {
+				long length = channel.size() - position;
+				if (length < 0 || length > Integer.MAX_VALUE) {
+					throw new IOException("Cannot read " + length + " bytes from " + position);
+				}
+				ByteBuffer buffer = ByteBuffer.allocate((int) length);
+				channel.position(position);
+				while (buffer.hasRemaining()) {
+					if (channel.read(buffer) < 0) {
+						throw new EOFException();
+					}
+				}
+				buffer.flip();
+				return buffer;
+			}
+		}
 	}
 
 	static final class InMemorySource extends ZipSource {
@@ -440,6 +893,58 @@ public class QuiltZipFileSystem extends QuiltMapFileSystem<QuiltZipFileSystem, Q
 		}
 	}
 
+	/** A single file in a {@link QuiltZipBlobStore}. Blobs are small enough that they are read fully for every stream,
+	 * which avoids keeping any file open. */
+	static final class BlobSource extends ZipSource {
+		final Path blob;
+
+		BlobSource(Path blob) {
+			this.blob = blob;
+		}
+
+		@Override
+		InputStream openConstructingStream() throws IOException {
+			return Files.newInputStream(blob);
+		}
+
+		@Override
+		ZipSource forIndividualFile(long offset, int length) {
+			return this;
+		}
+
+		@Override
+		void build() throws IOException {
+			// NO-OP
+		}
+
+		@Override
+		boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		void open(QuiltZipFileSystem fs) {
+			// NO-OP
+		}
+
+		@Override
+		void close(QuiltZipFileSystem fs) throws IOException {
+			// NO-OP
+		}
+
+		@Override
+		InputStream stream(long position) throws IOException {
+			byte[] bytes = Files.readAllBytes(blob);
+			int pos = (int) position;
+			return new ByteArrayInputStream(bytes, pos, bytes.length - pos);
+		}
+
+		@Override
+		SeekableByteChannel channel() throws IOException {
+			return new ByteArrayChannel(Files.readAllBytes(blob), 0);
+		}
+	}
+
 	/** Used to cache {@link SeekableByteChannel} per-thread, since it's an expensive operation to open them. */
 	static final class SharedByteChannels extends ZipSource {
 		final Path zipFrom;
@@ -462,6 +967,11 @@ public class QuiltZipFileSystem extends QuiltMapFileSystem<QuiltZipFileSystem, Q
 			return Files.newInputStream(zipFrom);
 		}
 
+		@Override
+		boolean isRandomAccess() {
+			return true;
+		}
+
 		@Override
 		ZipSource forIndividualFile(long offset, int length) {
 			return this;
@@ -543,6 +1053,447 @@ public class QuiltZipFileSystem extends QuiltMapFileSystem<QuiltZipFileSystem, Q
 		}
 	}
 
+	/** Reads from a memory-mapped file, so every read is just a copy from the mapped region: unlike
+	 * {@link SharedByteChannels} there's no system call for each read, and no file channel for each thread.
+	 * <p>
+	 * The mapping can't be released explicitly (there's no supported way to unmap a buffer, and unmapping while
+	 * another thread is still reading crashes the JVM), so it's only released once this has been closed and every
+	 * stream and channel created from it has been garbage collected.
+	 * <p>
+	 * The size of the file is only read once, when it's mapped. Reading a mapped file after it's been truncated faults,
+	 * which is turned into an {@link IOException} where the JVM reports it synchronously. Otherwise it can still throw
+	 * an {@link InternalError}, which is why this is only used if {@link SystemProperties#QUILT_ZIPFS_MAP_FILES} is
+	 * set. */
+	static final class MappedSource extends ZipSource {
+		final Path zipFrom;
+		final Set<WeakReference<QuiltZipFileSystem>> fileSystems = new HashSet<>();
+		/** Null once this has been closed, so the mapping can be released. */
+		private volatile ByteBuffer buffer;
+
+		private MappedSource(QuiltZipFileSystem fs, Path zipFrom, ByteBuffer buffer) {
+			this.zipFrom = zipFrom;
+			this.buffer = buffer;
+			open(fs);
+		}
+
+		/** @return A new {@link MappedSource}, or null if the file is too large to map in a single buffer or couldn't
+		 *         be mapped, in which case {@link SharedByteChannels} should be used instead. */
+		static @Nullable MappedSource tryMap(QuiltZipFileSystem fs, Path zipFrom) {
+			// The mapping stays valid after the channel is closed
+			try (FileChannel channel = FileChannel.open(zipFrom, StandardOpenOption.READ)) {
+				long size = channel.size();
+				if (size > Integer.MAX_VALUE) {
+					return null;
+				}
+				return new MappedSource(fs, zipFrom, channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+			} catch (IOException | UnsupportedOperationException e) {
+				return null;
+			}
+		}
+
+		private ByteBuffer view() throws IOException {
+			ByteBuffer from = buffer;
+			if (from == null) {
+				throw new ClosedChannelException();
+			}
+			return from.duplicate();
+		}
+
+		@Override
+		InputStream openConstructingStream() throws IOException {
+			return stream(0);
+		}
+
+		@Override
+		ZipSource forIndividualFile(long offset, int length) {
+			return this;
+		}
+
+		@Override
+		void build() throws IOException {
+			// NO-OP
+		}
+
+		@Override
+		boolean isOpen() {
+			return buffer != null;
+		}
+
+		@Override
+		synchronized void open(QuiltZipFileSystem fs) {
+			fileSystems.add(fs.thisRef);
+		}
+
+		@Override
+		synchronized void close(QuiltZipFileSystem fs) throws IOException {
+			fileSystems.remove(fs.thisRef);
+			if (fileSystems.isEmpty()) {
+				buffer = null;
+			}
+		}
+
+		@Override
+		InputStream stream(long position) throws IOException {
+			ByteBuffer view = view();
+			view.position((int) Math.min(position, view.limit()));
+			return new ByteBufferInputStream(view);
+		}
+
+		@Override
+		SeekableByteChannel channel() throws IOException {
+			return new ByteBufferChannel(view());
+		}
+
+		@Override
+		boolean isRandomAccess() {
+			return true;
+		}
+
+		@Override
+		ByteBuffer readToEnd(long position) throws IOException {
+			ByteBuffer view = view();
+			if (position < 0 || position > view.limit()) {
+				throw new IOException("Cannot read from " + position);
+			}
+			view.position((int) position);
+			// Copied, since the result is read without expecting an IOException
+			ByteBuffer copy = ByteBuffer.allocate(view.remaining());
+			try {
+				copy.put(view);
+			} catch (InternalError e) {
+				throw mappedFault(e);
+			}
+			copy.flip();
+			return copy;
+		}
+	}
+
+	/** Accessing a mapped file which has been truncated throws an {@link InternalError} (rather than crashing), which
+	 * this turns into the {@link IOException} that callers expect. */
+	static IOException mappedFault(InternalError error) {
+		return new IOException("Failed to read a memory-mapped file, it may have been modified while it was open", error);
+	}
+
+	/** A region of another {@link ZipSource}, used for uncompressed zips inside another zip so they don't need to be
+	 * copied. Every file system using this also keeps the outer source open. */
+	static final class SliceSource extends ZipSource {
+		final ZipSource from;
+		final long start;
+		final int length;
+
+		SliceSource(QuiltZipFileSystem fs, ZipSource from, long start, int length) {
+			this.from = from;
+			this.start = start;
+			this.length = length;
+			from.open(fs);
+		}
+
+		@Override
+		InputStream openConstructingStream() throws IOException {
+			return stream(0);
+		}
+
+		@Override
+		ZipSource forIndividualFile(long offset, int length) {
+			return this;
+		}
+
+		@Override
+		void build() throws IOException {
+			// NO-OP
+		}
+
+		@Override
+		boolean isOpen() {
+			return from.isOpen();
+		}
+
+		@Override
+		void open(QuiltZipFileSystem fs) {
+			from.open(fs);
+		}
+
+		@Override
+		void close(QuiltZipFileSystem fs) throws IOException {
+			from.close(fs);
+		}
+
+		@Override
+		InputStream stream(long position) throws IOException {
+			return new LimitedInputStream(from.stream(start + position), (int) Math.max(0, length - position));
+		}
+
+		@Override
+		SeekableByteChannel channel() throws IOException {
+			return new SliceChannel(from.channel(), start, length);
+		}
+
+		@Override
+		boolean isRandomAccess() {
+			return from.isRandomAccess();
+		}
+	}
+
+	/** A zip which was copied to a temporary file, which is deleted once every file system using it is closed. */
+	static final class SpilledSource extends ZipSource {
+		final Path file;
+		final ZipSource from;
+
+		SpilledSource(Path file, ZipSource from) {
+			this.file = file;
+			this.from = from;
+		}
+
+		@Override
+		InputStream openConstructingStream() throws IOException {
+			return from.openConstructingStream();
+		}
+
+		@Override
+		ZipSource forIndividualFile(long offset, int length) {
+			return this;
+		}
+
+		@Override
+		void build() throws IOException {
+			from.build();
+		}
+
+		@Override
+		boolean isOpen() {
+			return from.isOpen();
+		}
+
+		@Override
+		void open(QuiltZipFileSystem fs) {
+			from.open(fs);
+		}
+
+		@Override
+		void close(QuiltZipFileSystem fs) throws IOException {
+			from.close(fs);
+			if (!from.isOpen()) {
+				try {
+					Files.deleteIfExists(file);
+				} catch (IOException e) {
+					// deleteOnExit will get it instead
+				}
+			}
+		}
+
+		@Override
+		InputStream stream(long position) throws IOException {
+			return from.stream(position);
+		}
+
+		@Override
+		SeekableByteChannel channel() throws IOException {
+			return from.channel();
+		}
+
+		@Override
+		boolean isRandomAccess() {
+			return from.isRandomAccess();
+		}
+	}
+
+	/** A {@link SeekableByteChannel} which only exposes a region of another channel. */
+	static final class SliceChannel implements SeekableByteChannel {
+		final SeekableByteChannel from;
+		final long start, size;
+		long position;
+
+		SliceChannel(SeekableByteChannel from, long start, long size) {
+			this.from = from;
+			this.start = start;
+			this.size = size;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return from.isOpen();
+		}
+
+		@Override
+		public void close() throws IOException {
+			from.close();
+		}
+
+		@Override
+		public int read(ByteBuffer dst) throws IOException {
+			if (position >= size) {
+				return -1;
+			}
+			int toRead = (int) Math.min(size - position, dst.remaining());
+			from.position(start + position);
+			int oldLimit = dst.limit();
+			dst.limit(dst.position() + toRead);
+			int read;
+			try {
+				read = from.read(dst);
+			} finally {
+				dst.limit(oldLimit);
+			}
+			if (read > 0) {
+				position += read;
+			}
+			return read;
+		}
+
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			throw new IOException("read only");
+		}
+
+		@Override
+		public long position() throws IOException {
+			return position;
+		}
+
+		@Override
+		public SeekableByteChannel position(long newPosition) throws IOException {
+			if (newPosition < 0) {
+				throw new IllegalArgumentException("position < 0");
+			}
+			this.position = newPosition;
+			return this;
+		}
+
+		@Override
+		public long size() throws IOException {
+			return size;
+		}
+
+		@Override
+		public SeekableByteChannel truncate(long size) throws IOException {
+			if (size >= this.size) {
+				return this;
+			} else {
+				throw new IOException("read only");
+			}
+		}
+	}
+
+	/** An {@link InputStream} which reads from the position of a {@link ByteBuffer} up to its limit. */
+	static final class ByteBufferInputStream extends InputStream {
+		final ByteBuffer buffer;
+
+		ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() throws IOException {
+			try {
+				return buffer.hasRemaining() ? Byte.toUnsignedInt(buffer.get()) : -1;
+			} catch (InternalError e) {
+				throw mappedFault(e);
+			}
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			int read = Math.min(len, buffer.remaining());
+			try {
+				buffer.get(b, off, read);
+			} catch (InternalError e) {
+				throw mappedFault(e);
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+			buffer.position(buffer.position() + skipped);
+			return skipped;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return buffer.remaining();
+		}
+	}
+
+	/** A read-only {@link SeekableByteChannel} over the whole of a {@link ByteBuffer}. */
+	static final class ByteBufferChannel implements SeekableByteChannel {
+		final ByteBuffer buffer;
+		boolean open = true;
+
+		ByteBufferChannel(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return open;
+		}
+
+		@Override
+		public void close() throws IOException {
+			open = false;
+		}
+
+		@Override
+		public int read(ByteBuffer dst) throws IOException {
+			if (!open) {
+				throw new ClosedChannelException();
+			}
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			int length = Math.min(buffer.remaining(), dst.remaining());
+			ByteBuffer slice = buffer.duplicate();
+			slice.limit(slice.position() + length);
+			try {
+				dst.put(slice);
+			} catch (InternalError e) {
+				throw mappedFault(e);
+			}
+			buffer.position(buffer.position() + length);
+			return length;
+		}
+
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			throw new IOException("read only");
+		}
+
+		@Override
+		public long position() throws IOException {
+			return buffer.position();
+		}
+
+		@Override
+		public SeekableByteChannel position(long newPosition) throws IOException {
+			if (newPosition < 0) {
+				throw new IllegalArgumentException("position < 0");
+			}
+			buffer.position((int) Math.min(newPosition, buffer.limit()));
+			return this;
+		}
+
+		@Override
+		public long size() throws IOException {
+			return buffer.limit();
+		}
+
+		@Override
+		public SeekableByteChannel truncate(long size) throws IOException {
+			if (size >= buffer.limit()) {
+				return this;
+			} else {
+				throw new IOException("read only");
+			}
+		}
+	}
+
 	/** An {@link InputStream} which is based on a {@link SeekableByteChannel}, which allows the backing channel to be
 	 * used by multiple streams in the same thread. */
 	static final class ByteChannel2Stream extends InputStream {
@@ -656,13 +1607,19 @@ public class QuiltZipFileSystem extends QuiltMapFileSystem<QuiltZipFileSystem, Q
 
 	static final class QuiltZipFile extends QuiltUnifiedFile {
 		final ZipSource source;
+		/** Either the offset of this file's data, or (if {@link #atLocalHeader}) the offset of its local file header,
+		 * which is only read when this file is first read. */
 		final long offset;
+		final boolean atLocalHeader;
 		final int compressedSize, uncompressedSize;
 		final boolean isCompressed;
 
+		private volatile long dataOffset = -1;
+
 		QuiltZipFile(QuiltZipPath path, ZipSource source, ZipEntry entry, CustomZipInputStream zip) throws IOException {
 			super(path);
 			this.offset = zip.getOffset();
+			this.atLocalHeader = false;
 			int method = entry.getMethod();
 			if (method == ZipEntry.DEFLATED) {
 				isCompressed = true;
@@ -727,13 +1684,44 @@ public class QuiltZipFileSystem extends QuiltMapFileSystem<QuiltZipFileSystem, Q
 			}
 		}
 
+		QuiltZipFile(QuiltZipPath path, ZipSource source, QuiltZipCentralDirectory.Entry entry) throws IOException {
+			super(path);
+			if (entry.method == ZipEntry.DEFLATED) {
+				isCompressed = true;
+			} else if (entry.method == ZipEntry.STORED) {
+				isCompressed = false;
+			} else {
+				throw new IOException("Unsupported zip entry method " + entry.method);
+			}
+			if (entry.compressedSize > Integer.MAX_VALUE || entry.uncompressedSize > Integer.MAX_VALUE) {
+				throw new IOException("Zip entry " + entry.name + " is too large!");
+			}
+
+			this.source = source;
+			this.offset = entry.localHeaderOffset;
+			this.atLocalHeader = true;
+			this.compressedSize = (int) entry.compressedSize;
+			this.uncompressedSize = (int) entry.uncompressedSize;
+
+			if (DEBUG_TEST_READING) {
+				testReading(entry.name);
+			}
+		}
+
 		QuiltZipFile(QuiltZipPath path, ZipSource source, long offset, int compressedSize, int uncompressedSize,
 			boolean isCompressed) {
 
+			this(path, source, offset, false, compressedSize, uncompressedSize, isCompressed);
+		}
+
+		QuiltZipFile(QuiltZipPath path, ZipSource source, long offset, boolean atLocalHeader, int compressedSize,
+			int uncompressedSize, boolean isCompressed) {
+
 			super(path);
 
 			this.source = source;
 			this.offset = offset;
+			this.atLocalHeader = atLocalHeader;
 			this.compressedSize = compressedSize;
 			this.uncompressedSize = uncompressedSize;
 			this.isCompressed = isCompressed;
@@ -743,6 +1731,21 @@ public class QuiltZipFileSystem extends QuiltMapFileSystem<QuiltZipFileSystem, Q
 			}
 		}
 
+		/** @return The offset of this file's data in the {@link #source}. */
+		long dataOffset() throws IOException {
+			if (!atLocalHeader) {
+				return offset;
+			}
+			long value = dataOffset;
+			if (value < 0) {
+				try (SeekableByteChannel channel = source.channel()) {
+					value = QuiltZipCentralDirectory.readDataOffset(channel, offset);
+				}
+				dataOffset = value;
+			}
+			return value;
+		}
+
 		private void testReading(String path) {
 			if (!path.endsWith(".json") && !path.endsWith(".txt") && !"META-INF/MANIFEST.MF".equals(path)) {
 				return;
@@ -796,7 +1799,7 @@ public class QuiltZipFileSystem extends QuiltMapFileSystem<QuiltZipFileSystem, Q
 
 		@Override
 		protected QuiltUnifiedEntry createCopiedTo(QuiltMapPath<?, ?> newPath) {
-			return new QuiltZipFile((QuiltZipPath) newPath, source, offset, compressedSize, uncompressedSize, isCompressed);
+			return new QuiltZipFile((QuiltZipPath) newPath, source, offset, atLocalHeader, compressedSize, uncompressedSize, isCompressed);
 		}
 
 		@Override
@@ -808,20 +1811,37 @@ public class QuiltZipFileSystem extends QuiltMapFileSystem<QuiltZipFileSystem, Q
 		InputStream createInputStream() throws IOException {
 			InputStream stream = createUncompressingInputStream();
 			if (isCompressed) {
-				stream = new InflaterInputStream(stream, new Inflater(true));
-				// Make InputStream.available work
+				// InflatingInputStream makes InputStream.available work
 				// older versions of FerriteCore used this to allocate a byte array to read into
 				// - newer versions are fixed, but we still want to keep backwards compatibility
-				// Also make InputStream.read(byte[], int, int) read as much as possible
+				// It also makes InputStream.read(byte[], int, int) read as much as possible
 				// - minecraft 1.18.2 reads the font sizes by incorrectly assuming read(new byte[65536])
 				//   will always read exactly 65536 bytes, when that's not normally true
-				stream = new LimitedInputStream(stream, uncompressedSize);
+				stream = new QuiltZipInflaters.InflatingInputStream(stream, uncompressedSize);
 			}
 			return stream;
 		}
 
+		/** Reads this whole file into an array of exactly {@link #uncompressedSize} bytes, inflating directly into
+		 * it. */
+		@Override
+		byte[] readAllBytes() throws IOException {
+			byte[] bytes = new byte[uncompressedSize];
+			if (bytes.length == 0) {
+				return bytes;
+			}
+			try (InputStream stream = createInputStream()) {
+				// Both possible streams always read as much as possible
+				int read = stream.read(bytes, 0, bytes.length);
+				if (read != bytes.length) {
+					throw new EOFException("Expected " + bytes.length + " bytes in " + path + ", but only found " + read);
+				}
+			}
+			return bytes;
+		}
+
 		private InputStream createUncompressingInputStream() throws IOException, IOException {
-			return new LimitedInputStream(source.stream(offset), compressedSize);
+			return new LimitedInputStream(source.stream(dataOffset()), compressedSize);
 		}
 
 		@Override
@@ -842,7 +1862,7 @@ public class QuiltZipFileSystem extends QuiltMapFileSystem<QuiltZipFileSystem, Q
 
 		SeekableByteChannel createByteChannel() throws IOException {
 			if (!isCompressed) {
-				return new OffsetSeekableByteChannel(source.channel());
+				return new OffsetSeekableByteChannel(source.channel(), dataOffset());
 			} else {
 				return new InflaterSeekableByteChannel();
 			}
@@ -850,11 +1870,13 @@ public class QuiltZipFileSystem extends QuiltMapFileSystem<QuiltZipFileSystem, Q
 
 		class OffsetSeekableByteChannel implements SeekableByteChannel {
 			final SeekableByteChannel from;
+			final long offset;
 
 			volatile long position = 0;
 
-			OffsetSeekableByteChannel(SeekableByteChannel from) {
+			OffsetSeekableByteChannel(SeekableByteChannel from, long offset) {
 				this.from = from;
+				this.offset = offset;
 			}
 
 			@Override
@@ -917,16 +1939,11 @@ public class QuiltZipFileSystem extends QuiltMapFileSystem<QuiltZipFileSystem, Q
 		}
 
 		class InflaterSeekableByteChannel implements SeekableByteChannel {
-			final InflaterInputStream infl;
-
 			boolean open = true;
 			volatile long position = 0;
-			byte[] buffer = new byte[uncompressedSize];
-			int bufferPosition = 0;
-
-			public InflaterSeekableByteChannel() throws IOException {
-				infl = new InflaterInputStream(createUncompressingInputStream(), new Inflater(true));
-			}
+			/** The whole inflated file. This is only read on the first read, since some callers only open a channel
+			 * to check its size. */
+			byte[] buffer;
 
 			@Override
 			public boolean isOpen() {
@@ -934,27 +1951,24 @@ public class QuiltZipFileSystem extends QuiltMapFileSystem<QuiltZipFileSystem, Q
 			}
 
 			@Override
-			public void close() throws IOException {
+			public synchronized void close() throws IOException {
 				open = false;
-				infl.close();
+				buffer = null;
 			}
 
 			@Override
 			public synchronized int read(ByteBuffer dst) throws IOException {
+				if (!open) {
+					throw new ClosedChannelException();
+				}
 				if (position >= uncompressedSize) {
 					return -1;
 				}
 				int toRead = (int) Math.min(uncompressedSize - position, dst.remaining());
 				int pos = (int) position;
 
-				int targetPos = toRead + pos;
-				while (bufferPosition < targetPos) {
-					int read = infl.read(buffer, bufferPosition, buffer.length - bufferPosition);
-					if (read < 0) {
-						throw new IOException("Unable to read enough bytes from the gzip stream!");
-					} else {
-						bufferPosition += read;
-					}
+				if (buffer == null) {
+					buffer = readAllBytes();
 				}
 				position += toRead;
 
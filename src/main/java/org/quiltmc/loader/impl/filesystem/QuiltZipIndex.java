@@ -0,0 +1,443 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.loader.impl.filesystem;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jetbrains.annotations.Nullable;
+import org.quiltmc.loader.impl.util.HashUtil;
+import org.quiltmc.loader.impl.util.QuiltLoaderInternal;
+import org.quiltmc.loader.impl.util.QuiltLoaderInternalType;
+
+/** The index of a version 3 "Quilt compressed file system", which is stored uncompressed at the end of the file so it
+ * can be used directly from a (possibly memory-mapped) buffer without reading it into objects first.
+ * <p>
+ * Every entry (file or folder) has a fixed size, so they can be read in any order. The children of each folder are
+ * stored next to each other, so a folder only needs the index of its first child and the number of children. Entries
+ * can also be looked up by their full path through an open-addressing hash table, which contains the index of each
+ * entry (plus one, so zero means empty), and is keyed by {@link String#hashCode()} of the full path.
+ * <p>
+ * The format is:
+ * <ol>
+ * <li>A header: {@link #MAGIC}, flags, the number of entries, the number of hash slots, the number of blob hashes,
+ * the length of the names section, and the length of the blob store path. (7 ints)</li>
+ * <li>The UTF-8 path of the {@link QuiltZipBlobStore}, relative to the file system's file (if
+ * {@link #FLAG_BLOBS} is set).</li>
+ * <li>Each entry (see {@link #ENTRY_SIZE}). The first entry is always the root folder.</li>
+ * <li>Each hash slot (1 int each).</li>
+ * <li>Each blob hash ({@link HashUtil#SHA1_HASH_LENGTH} bytes each).</li>
+ * <li>The UTF-8 name of every entry.</li>
+ * </ol>
+ * All numbers are big-endian. */
+@QuiltLoaderInternal(QuiltLoaderInternalType.NEW_INTERNAL)
+final class QuiltZipIndex {
+
+	static final int MAGIC = 0x515A4933; // "QZI3"
+	static final int FLAG_BLOBS = 1;
+
+	static final int HEADER_SIZE = 7 * 4;
+
+	/** Each entry is made up of:
+	 * <ol>
+	 * <li>The {@link String#hashCode()} of its full path (int)</li>
+	 * <li>The index of its parent, or -1 for the root (int)</li>
+	 * <li>The offset and length of its name, in the names section (2 ints)</li>
+	 * <li>Its kind: {@link #KIND_FILE}, {@link #KIND_BLOB}, or {@link #KIND_FOLDER}, combined with
+	 * {@link #FLAG_STORED} and {@link #FLAG_AT_LOCAL_HEADER} (int)</li>
+	 * <li>The number of children, for folders (int)</li>
+	 * <li>The offset of the data for files, the blob index for blobs, or the index of the first child for folders
+	 * (long)</li>
+	 * <li>The compressed size, and uncompressed size (2 longs)</li>
+	 * </ol> */
+	static final int ENTRY_SIZE = 48;
+
+	static final int KIND_FILE = 0;
+	static final int KIND_BLOB = 1;
+	static final int KIND_FOLDER = 2;
+	static final int KIND_MASK = 0xFF;
+
+	/** Set for files which aren't compressed. This is never written to files, since they always compress files. */
+	static final int FLAG_STORED = 1 << 8;
+	/** Set for files whose offset points to their zip local file header rather than their data. This is never written
+	 * to files, only to indexes of normal zips which are kept in memory. */
+	static final int FLAG_AT_LOCAL_HEADER = 1 << 9;
+
+	static final int ROOT = 0;
+
+	final ByteBuffer buffer;
+	final int entryCount;
+	final @Nullable String blobStore;
+
+	private final int entryStart;
+	private final int slotStart, slotMask;
+	private final int blobStart, blobCount;
+	private final int nameStart;
+
+	private QuiltZipIndex(ByteBuffer buffer, int entryCount, int slotCount, int blobCount, int blobStoreLength,
+		@Nullable String blobStore) {
+
+		this.buffer = buffer;
+		this.entryCount = entryCount;
+		this.blobStore = blobStore;
+		this.entryStart = HEADER_SIZE + blobStoreLength;
+		this.slotStart = entryStart + entryCount * ENTRY_SIZE;
+		this.slotMask = slotCount - 1;
+		this.blobStart = slotStart + slotCount * 4;
+		this.blobCount = blobCount;
+		this.nameStart = blobStart + blobCount * HashUtil.SHA1_HASH_LENGTH;
+	}
+
+	/** Reads an index. The buffer is used directly, and must not be modified afterwards. Only the header and section
+	 * sizes are checked here. */
+	static QuiltZipIndex read(ByteBuffer buffer) throws IOException {
+		buffer = buffer.slice();
+		if (buffer.remaining() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not a quilt zip index!");
+		}
+		int flags = buffer.getInt(4);
+		int entryCount = buffer.getInt(8);
+		int slotCount = buffer.getInt(12);
+		int blobCount = buffer.getInt(16);
+		int namesLength = buffer.getInt(20);
+		int blobStoreLength = buffer.getInt(24);
+		if (entryCount < 1 || slotCount < entryCount || Integer.bitCount(slotCount) != 1 || blobCount < 0
+			|| namesLength < 0 || blobStoreLength < 0) {
+			throw new IOException("Invalid quilt zip index header!");
+		}
+		long length = HEADER_SIZE + (long) blobStoreLength + entryCount * (long) ENTRY_SIZE + slotCount * 4L
+			+ blobCount * (long) HashUtil.SHA1_HASH_LENGTH + namesLength;
+		if (length > buffer.remaining()) {
+			throw new IOException("Truncated quilt zip index!");
+		}
+
+		String blobStore = null;
+		if ((flags & FLAG_BLOBS) != 0) {
+			blobStore = decode(buffer, HEADER_SIZE, blobStoreLength);
+		}
+		return new QuiltZipIndex(buffer, entryCount, slotCount, blobCount, blobStoreLength, blobStore);
+	}
+
+	private int entry(int index) {
+		return entryStart + index * ENTRY_SIZE;
+	}
+
+	/** @return The {@link String#hashCode()} of the full path of the given entry. */
+	int pathHash(int index) {
+		return buffer.getInt(entry(index));
+	}
+
+	int parent(int index) {
+		return buffer.getInt(entry(index) + 4);
+	}
+
+	String name(int index) {
+		int entry = entry(index);
+		return decode(buffer, nameStart + buffer.getInt(entry + 8), buffer.getInt(entry + 12));
+	}
+
+	int kind(int index) {
+		return buffer.getInt(entry(index) + 16) & KIND_MASK;
+	}
+
+	boolean hasFlag(int index, int flag) {
+		return (buffer.getInt(entry(index) + 16) & flag) != 0;
+	}
+
+	boolean isFolder(int index) {
+		return kind(index) == KIND_FOLDER;
+	}
+
+	int childCount(int index) {
+		return buffer.getInt(entry(index) + 20);
+	}
+
+	int firstChild(int index) {
+		return (int) buffer.getLong(entry(index) + 24);
+	}
+
+	long offset(int index) {
+		return buffer.getLong(entry(index) + 24);
+	}
+
+	long compressedSize(int index) {
+		return buffer.getLong(entry(index) + 32);
+	}
+
+	long uncompressedSize(int index) {
+		return buffer.getLong(entry(index) + 40);
+	}
+
+	/** @return The hash of the blob for the given {@link #KIND_BLOB} entry. */
+	byte[] blobHash(int index) {
+		return blobHashAt((int) offset(index));
+	}
+
+	int blobCount() {
+		return blobCount;
+	}
+
+	byte[] blobHashAt(int blobIndex) {
+		byte[] hash = new byte[HashUtil.SHA1_HASH_LENGTH];
+		int start = blobStart + blobIndex * HashUtil.SHA1_HASH_LENGTH;
+		for (int i = 0; i < hash.length; i++) {
+			hash[i] = buffer.get(start + i);
+		}
+		return hash;
+	}
+
+	/** @param path An absolute path, using "/" as the separator, without a trailing slash (except for the root).
+	 * @return The index of the entry with the given path, or -1 if there isn't one. */
+	int find(String path) {
+		int hash = path.hashCode();
+		for (int slot = mix(hash) & slotMask;; slot = (slot + 1) & slotMask) {
+			int value = buffer.getInt(slotStart + slot * 4);
+			if (value == 0) {
+				return -1;
+			}
+			int index = value - 1;
+			if (buffer.getInt(entry(index)) == hash && matches(index, path)) {
+				return index;
+			}
+		}
+	}
+
+	/** Checks the full path of the given entry against the given path, by walking up through its parents. */
+	private boolean matches(int index, String path) {
+		int end = path.length();
+		while (index != ROOT) {
+			String name = name(index);
+			int start = end - name.length();
+			if (start < 1 || path.charAt(start - 1) != '/' || !path.regionMatches(start, name, 0, name.length())) {
+				return false;
+			}
+			end = start - 1;
+			index = parent(index);
+		}
+		return end == 0 || (end == 1 && path.length() == 1);
+	}
+
+	static int mix(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+	/** @return The number of hash slots to use for the given number of entries. This is always a power of two, and at
+	 *         least double the number of entries. */
+	static int slotCount(int entryCount) {
+		return Integer.highestOneBit(Math.max(1, entryCount) * 2 - 1) << 1;
+	}
+
+	/** Creates a new index from files and folders added in any order. */
+	static final class Builder {
+		private final Node root = new Node("");
+		private int blobCount;
+
+		/** Adds a folder, and any parent folders which haven't been added yet.
+		 *
+		 * @param path The path of the folder, relative to the root, using "/" as the separator.
+		 * @throws IOException if a file has already been added in place of the folder, or one of its parents. */
+		void addFolder(String path) throws IOException {
+			Node folder = root;
+			for (String name : split(path)) {
+				folder = folder.getOrAddFolder(name, path);
+			}
+		}
+
+		/** Adds a file, and any parent folders which haven't been added yet.
+		 *
+		 * @param path The path of the file, relative to the root, using "/" as the separator.
+		 * @param kind Either {@link #KIND_FILE} or {@link #KIND_BLOB}, possibly combined with {@link #FLAG_STORED} and
+		 *            {@link #FLAG_AT_LOCAL_HEADER}.
+		 * @param offset The offset of the file's data (or local file header), ignored for blobs.
+		 * @param blobHash The hash of the blob, only used for {@link #KIND_BLOB}.
+		 * @throws IOException if the file has already been added, or one of its parents is a file. */
+		void addFile(String path, int kind, long offset, long compressedSize, long uncompressedSize,
+			byte @Nullable [] blobHash) throws IOException {
+
+			String[] names = split(path);
+			if (names.length == 0) {
+				throw new IOException("Cannot add the root as a file!");
+			}
+			Node folder = root;
+			for (int i = 0; i < names.length - 1; i++) {
+				folder = folder.getOrAddFolder(names[i], path);
+			}
+			String name = names[names.length - 1];
+			if (folder.children.containsKey(name)) {
+				throw new IOException("Duplicate entry /" + path);
+			}
+			Node file = new Node(name);
+			file.kind = kind;
+			file.compressedSize = compressedSize;
+			file.uncompressedSize = uncompressedSize;
+			if ((kind & KIND_MASK) == KIND_BLOB) {
+				file.blobHash = blobHash;
+				file.value = blobCount++;
+			} else {
+				file.value = offset;
+			}
+			folder.children.put(name, file);
+		}
+
+		/** @param blobStore The relative path to the {@link QuiltZipBlobStore}, if any files are blobs. */
+		byte[] build(@Nullable String blobStore) throws IOException {
+			// Breadth first, so the children of each folder are next to each other
+			List<Node> nodes = new ArrayList<>();
+			nodes.add(root);
+			root.path = "/";
+			int namesLength = 0;
+			for (int i = 0; i < nodes.size(); i++) {
+				Node node = nodes.get(i);
+				namesLength += node.nameBytes.length;
+				if (node.kind != KIND_FOLDER) {
+					continue;
+				}
+				node.value = nodes.size();
+				// Files first, to match the order that directories are walked in
+				for (Node child : node.children.values()) {
+					if (child.kind != KIND_FOLDER) {
+						child.init(node, i);
+						nodes.add(child);
+					}
+				}
+				for (Node child : node.children.values()) {
+					if (child.kind == KIND_FOLDER) {
+						child.init(node, i);
+						nodes.add(child);
+					}
+				}
+			}
+
+			byte[] blobStoreBytes = blobStore == null ? new byte[0] : blobStore.getBytes(StandardCharsets.UTF_8);
+			int slotCount = slotCount(nodes.size());
+			long length = HEADER_SIZE + (long) blobStoreBytes.length + nodes.size() * (long) ENTRY_SIZE
+				+ slotCount * 4L + blobCount * (long) HashUtil.SHA1_HASH_LENGTH + namesLength;
+			if (length > Integer.MAX_VALUE) {
+				throw new IOException("Too many files to index! (" + nodes.size() + ")");
+			}
+
+			ByteBuffer buffer = ByteBuffer.allocate((int) length);
+			buffer.putInt(MAGIC);
+			buffer.putInt(blobStore != null ? FLAG_BLOBS : 0);
+			buffer.putInt(nodes.size());
+			buffer.putInt(slotCount);
+			buffer.putInt(blobCount);
+			buffer.putInt(namesLength);
+			buffer.putInt(blobStoreBytes.length);
+			buffer.put(blobStoreBytes);
+
+			int[] slots = new int[slotCount];
+			byte[][] blobs = new byte[blobCount][];
+			int nameOffset = 0;
+			for (int i = 0; i < nodes.size(); i++) {
+				Node node = nodes.get(i);
+				int hash = node.path.hashCode();
+				buffer.putInt(hash);
+				buffer.putInt(node.parent);
+				buffer.putInt(nameOffset);
+				buffer.putInt(node.nameBytes.length);
+				nameOffset += node.nameBytes.length;
+				buffer.putInt(node.kind);
+				buffer.putInt(node.kind == KIND_FOLDER ? node.children.size() : 0);
+				buffer.putLong(node.value);
+				buffer.putLong(node.compressedSize);
+				buffer.putLong(node.uncompressedSize);
+				if ((node.kind & KIND_MASK) == KIND_BLOB) {
+					blobs[(int) node.value] = node.blobHash;
+				}
+
+				int slot = mix(hash) & (slotCount - 1);
+				while (slots[slot] != 0) {
+					slot = (slot + 1) & (slotCount - 1);
+				}
+				slots[slot] = i + 1;
+			}
+
+			for (int slot : slots) {
+				buffer.putInt(slot);
+			}
+			for (byte[] blob : blobs) {
+				buffer.put(blob);
+			}
+			for (Node node : nodes) {
+				buffer.put(node.nameBytes);
+			}
+			return buffer.array();
+		}
+
+		private static String[] split(String path) {
+			List<String> names = new ArrayList<>();
+			for (String name : path.split("/")) {
+				if (name.isEmpty() || name.equals(".")) {
+					continue;
+				}
+				if (name.equals("..")) {
+					throw new IllegalArgumentException("Unsupported path " + path);
+				}
+				names.add(name);
+			}
+			return names.toArray(new String[0]);
+		}
+
+		private static final class Node {
+			final String name;
+			final byte[] nameBytes;
+			final Map<String, Node> children = new LinkedHashMap<>();
+			int kind = KIND_FOLDER;
+			/** The first child for folders, the offset for files, or the blob index for blobs. */
+			long value;
+			long compressedSize, uncompressedSize;
+			byte[] blobHash;
+
+			String path;
+			int parent = -1;
+
+			Node(String name) {
+				this.name = name;
+				this.nameBytes = name.getBytes(StandardCharsets.UTF_8);
+			}
+
+			Node getOrAddFolder(String childName, String fullPath) throws IOException {
+				Node child = children.get(childName);
+				if (child == null) {
+					children.put(childName, child = new Node(childName));
+				} else if (child.kind != KIND_FOLDER) {
+					throw new IOException("Cannot make a file into a folder for /" + fullPath);
+				}
+				return child;
+			}
+
+			void init(Node parentNode, int parentIndex) {
+				this.parent = parentIndex;
+				this.path = parentNode.path.equals("/") ? "/" + name : parentNode.path + "/" + name;
+			}
+		}
+	}
+
+	private static String decode(ByteBuffer buffer, int offset, int length) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = buffer.get(offset + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.loader.impl.filesystem;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import org.quiltmc.loader.impl.util.LimitedInputStream;
+import org.quiltmc.loader.impl.util.QuiltLoaderInternal;
+import org.quiltmc.loader.impl.util.QuiltLoaderInternalType;
+
+/** A bounded pool of raw {@link Inflater}s (and their input buffers), since class loading reads tens of thousands of
+ * compressed entries, and each {@link Inflater} holds native memory which is otherwise only freed when it's garbage
+ * collected. */
+@QuiltLoaderInternal(QuiltLoaderInternalType.NEW_INTERNAL)
+final class QuiltZipInflaters {
+
+	static final int MAX_POOLED = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+	static final int INPUT_BUFFER_SIZE = 8192;
+
+	private static final ArrayBlockingQueue<Pooled> POOL = new ArrayBlockingQueue<>(MAX_POOLED);
+
+	private QuiltZipInflaters() {}
+
+	static final class Pooled {
+		final Inflater inflater = new Inflater(true);
+		final byte[] input = new byte[INPUT_BUFFER_SIZE];
+	}
+
+	static Pooled acquire() {
+		Pooled pooled = POOL.poll();
+		return pooled != null ? pooled : new Pooled();
+	}
+
+	static void release(Pooled pooled) {
+		pooled.inflater.reset();
+		if (!POOL.offer(pooled)) {
+			pooled.inflater.end();
+		}
+	}
+
+	/** Inflates a single raw-deflated entry of a known size, with a pooled {@link Inflater} which is returned to the
+	 * pool when this is closed. Like {@link LimitedInputStream} this always reads as much as possible, and
+	 * {@link #available()} returns the exact number of bytes left. */
+	static final class InflatingInputStream extends InputStream {
+		final InputStream from;
+		final int uncompressedSize;
+
+		private Pooled pooled = acquire();
+		private int position;
+
+		InflatingInputStream(InputStream from, int uncompressedSize) {
+			this.from = from;
+			this.uncompressedSize = uncompressedSize;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return uncompressedSize - position;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] value = new byte[1];
+			int read = read(value, 0, 1);
+			return read > 0 ? Byte.toUnsignedInt(value[0]) : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (pooled == null) {
+				throw new IOException("Stream closed");
+			}
+			if (len <= 0) {
+				return 0;
+			}
+			int max = Math.min(len, uncompressedSize - position);
+			if (max <= 0) {
+				return -1;
+			}
+
+			Inflater inflater = pooled.inflater;
+			int total = 0;
+			try {
+				while (total < max) {
+					int read = inflater.inflate(b, off + total, max - total);
+					if (read > 0) {
+						total += read;
+					} else if (inflater.finished() || inflater.needsDictionary()) {
+						break;
+					} else if (inflater.needsInput()) {
+						int input = from.read(pooled.input, 0, pooled.input.length);
+						if (input < 0) {
+							throw new EOFException("Unexpected end of compressed entry");
+						}
+						inflater.setInput(pooled.input, 0, input);
+					}
+				}
+			} catch (DataFormatException e) {
+				String message = e.getMessage();
+				throw new ZipException(message != null ? message : "Invalid compressed data");
+			}
+
+			position += total;
+			return total > 0 ? total : -1;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (pooled != null) {
+				release(pooled);
+				pooled = null;
+			}
+			from.close();
+		}
+	}
+}
@@ -31,6 +31,7 @@ import org.quiltmc.loader.impl.QuiltLoaderImpl;
 import org.quiltmc.loader.impl.game.GameProvider;
 import org.quiltmc.loader.impl.report.QuiltReport;
 import org.quiltmc.loader.impl.report.QuiltReport.CrashReportSaveFailed;
+import org.quiltmc.loader.impl.transformer.TransformCacheStats;
 import org.quiltmc.loader.impl.util.QuiltLoaderInternal;
 import org.quiltmc.loader.impl.util.QuiltLoaderInternalType;
 import org.quiltmc.loader.impl.util.log.Log;
@@ -61,6 +62,10 @@ public final class QuiltGuiEntry {
 			} catch (Throwable t) {
 				report.addStacktraceSection("Exception while building the mods table", 0, t);
 			}
+			TransformCacheStats cacheStats = QuiltLoaderImpl.INSTANCE.getTransformCacheStats();
+			if (cacheStats != null) {
+				cacheStats.addReportSection(report, 100).setShowInLogs(false);
+			}
 
 			Path crashReportFile = null;
 			String crashReportText = null;
@@ -29,6 +29,7 @@ import java.util.jar.Manifest;
 
 import org.quiltmc.loader.api.ModContainer;
 import org.quiltmc.loader.impl.entrypoint.GameTransformer;
+import org.quiltmc.loader.impl.transformer.LazyClassTransformer;
 import org.quiltmc.loader.impl.util.QuiltLoaderInternal;
 import org.quiltmc.loader.impl.util.QuiltLoaderInternalType;
 
@@ -40,8 +41,18 @@ public interface QuiltLauncher {
 	void addToClassPath(Path path, ModContainer mod, URL origin, String... allowedPrefixes);
 	void setAllowedPrefixes(Path path, String... prefixes);
 	void setTransformCache(URL insideTransformCache);
+	void setLazyTransformer(LazyClassTransformer transformer);
 	void setHiddenClasses(Set<String> classes);
 	void setHiddenClasses(Map<String, String> classes);
+
+	/** Uses the class path snapshot stored in the given file for every path added to the class path from now on, until
+	 * the game's class path has been unlocked. If the snapshot doesn't exist (or doesn't match) then a new one is
+	 * written once every path has been added.
+	 *
+	 * @param key The key which the snapshot must have been written with to be used. */
+	default void setClassPathSnapshot(Path file, String key) {
+		// NO-OP by default
+	}
 	void setPluginPackages(Map<String, ClassLoader> hiddenClasses);
 	void hideParentUrl(URL hidden);
 	void hideParentPath(Path obf);
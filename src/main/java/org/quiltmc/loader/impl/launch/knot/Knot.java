@@ -28,6 +28,7 @@ import org.quiltmc.loader.impl.entrypoint.GameTransformer;
 import org.quiltmc.loader.impl.game.GameProvider;
 import org.quiltmc.loader.impl.launch.common.QuiltLauncherBase;
 import org.quiltmc.loader.impl.launch.common.QuiltMixinBootstrap;
+import org.quiltmc.loader.impl.transformer.LazyClassTransformer;
 import org.quiltmc.loader.impl.util.FileUtil;
 import org.quiltmc.loader.impl.util.QuiltLoaderInternal;
 import org.quiltmc.loader.impl.util.QuiltLoaderInternalType;
@@ -87,11 +88,67 @@ public final class Knot extends QuiltLauncherBase {
 		}
 	}
 
+	/** Loads mods and generates the transform cache, exactly like {@link #launch(String[], EnvType)} would, but then
+	 * returns without launching the game. This is used to ship the transform cache with the game, so the first launch
+	 * doesn't have to generate it. */
+	public static void prebuild(String[] args, EnvType type) {
+		setupUncaughtExceptionHandler();
+
+		try {
+			Knot knot = new Knot(type);
+			knot.setupGame(args);
+
+			long start = System.nanoTime();
+			QuiltLoaderImpl.INSTANCE.prebuild();
+			Log.info(LogCategory.CACHE, "Prebuilt the transform cache in %dms", (System.nanoTime() - start) / 1_000_000);
+		} catch (FormattedException e) {
+			handleFormattedException(e);
+		}
+	}
+
 	public Knot(EnvType type) {
 		this.envType = type;
 	}
 
 	public ClassLoader init(String[] args) {
+		ClassLoader cl = setupGame(args);
+
+		QuiltLoaderImpl loader = QuiltLoaderImpl.INSTANCE;
+		loader.load();
+		loader.freeze();
+
+		MixinBootstrap.init();
+		QuiltMixinBootstrap.init(getEnvironmentType(), loader);
+		QuiltLauncherBase.finishMixinBootstrapping();
+
+		classLoader.getDelegate().initializeTransformers();
+
+		provider.unlockClassPath(this);
+		unlocked = true;
+		classLoader.finishClassPathSnapshot();
+		classLoader.getDelegate().openClassLoadProfile();
+
+		QuiltConfigImpl.init();
+
+		try {
+			// If the very first class transformed by mixin is also referenced by a mixin config
+			// then we'll crash due to an "attempted duplicate class definition"
+			// Since this target class is *very unlikely* to be referenced by mixin we forcibly load it.
+			classLoader.loadIntoTarget("org.quiltmc.loader.impl.launch.knot.UnusedEmptyTargetClass");
+		} catch (ClassNotFoundException cnfe) {
+			Log.warn(LogCategory.KNOT, "Early non-mixin-config related class failed to load!");
+			Log.warn(LogCategory.KNOT, "If you get a 'LinkageError' of 'attempted duplicated * definition' after this then this error is the cause!", cnfe);
+		}
+
+		classLoader.getDelegate().afterMixinIntiializeFinished();
+
+		loader.invokePreLaunch();
+
+		return cl;
+	}
+
+	/** Finds the game and creates the class loader, but doesn't load any mods. */
+	private ClassLoader setupGame(String[] args) {
 		setProperties(properties);
 
 		// configure fabric vars
@@ -144,36 +201,7 @@ public final class Knot extends QuiltLauncherBase {
 
 		Thread.currentThread().setContextClassLoader(cl);
 
-		QuiltLoaderImpl loader = QuiltLoaderImpl.INSTANCE;
-		loader.setGameProvider(provider);
-		loader.load();
-		loader.freeze();
-
-		MixinBootstrap.init();
-		QuiltMixinBootstrap.init(getEnvironmentType(), loader);
-		QuiltLauncherBase.finishMixinBootstrapping();
-
-		classLoader.getDelegate().initializeTransformers();
-
-		provider.unlockClassPath(this);
-		unlocked = true;
-
-		QuiltConfigImpl.init();
-
-		try {
-			// If the very first class transformed by mixin is also referenced by a mixin config
-			// then we'll crash due to an "attempted duplicate class definition"
-			// Since this target class is *very unlikely* to be referenced by mixin we forcibly load it.
-			classLoader.loadIntoTarget("org.quiltmc.loader.impl.launch.knot.UnusedEmptyTargetClass");
-		} catch (ClassNotFoundException cnfe) {
-			Log.warn(LogCategory.KNOT, "Early non-mixin-config related class failed to load!");
-			Log.warn(LogCategory.KNOT, "If you get a 'LinkageError' of 'attempted duplicated * definition' after this then this error is the cause!", cnfe);
-		}
-
-		classLoader.getDelegate().afterMixinIntiializeFinished();
-
-		loader.invokePreLaunch();
-
+		QuiltLoaderImpl.INSTANCE.setGameProvider(provider);
 		return cl;
 	}
 
@@ -308,6 +336,16 @@ public final class Knot extends QuiltLauncherBase {
 		classLoader.getDelegate().setTransformCache(insideTransformCache);
 	}
 
+	@Override
+	public void setLazyTransformer(LazyClassTransformer transformer) {
+		classLoader.getDelegate().setLazyTransformer(transformer);
+	}
+
+	@Override
+	public void setClassPathSnapshot(Path file, String key) {
+		classLoader.openClassPathSnapshot(file, key);
+	}
+
 	@Override
 	public void setHiddenClasses(Set<String> hiddenClasses) {
 		classLoader.getDelegate().setHiddenClasses(hiddenClasses);
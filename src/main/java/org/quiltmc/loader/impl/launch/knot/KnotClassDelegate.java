@@ -18,8 +18,10 @@ package org.quiltmc.loader.impl.launch.knot;
 
 import net.fabricmc.api.EnvType;
 
+import org.quiltmc.loader.impl.transformer.LazyClassTransformer;
 import org.quiltmc.loader.impl.transformer.PackageStrippingData;
 import org.quiltmc.loader.impl.util.LoaderUtil;
+import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.ClassReader;
 import org.quiltmc.loader.api.ModContainer;
 import org.quiltmc.loader.api.QuiltLoader;
@@ -44,6 +46,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Constructor;
 import java.net.JarURLConnection;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.nio.file.FileSystemNotFoundException;
@@ -114,18 +117,26 @@ class KnotClassDelegate {
 	}
 
 	private static final boolean LOG_EARLY_CLASS_LOADS = Boolean.getBoolean(SystemProperties.LOG_EARLY_CLASS_LOADS);
+	private static final boolean ENABLE_MIXIN_CLASS_CACHE = Boolean.getBoolean(SystemProperties.ENABLE_MIXIN_CLASS_CACHE);
+	private static final boolean ENABLE_CLASS_LOAD_PROFILE = Boolean.getBoolean(SystemProperties.ENABLE_CLASS_LOAD_PROFILE);
 
 	private final Map<String, Metadata> metadataCache = new ConcurrentHashMap<>();
 	private final Map<String, String> modCodeSourceMap = new ConcurrentHashMap<>();
+	/** The metadata of every root passed to {@link #setMod(Path, URL, ModContainer)}, so classes read directly from a
+	 * root don't need to convert their path to a URL to find it. */
+	private final Map<Path, Metadata> rootMetadata = new ConcurrentHashMap<>();
 	private final KnotClassLoaderInterface itf;
 	private final GameProvider provider;
 	private final boolean isDevelopment;
 	private final EnvType envType;
 	private IMixinTransformer mixinTransformer;
+	private volatile MixinClassCache mixinClassCache;
+	private volatile KnotClassLoadProfile classLoadProfile;
 	private boolean transformInitialized = false;
 	private boolean transformFinishedLoading = false;
 	private Map<String, String> hiddenClasses = Collections.emptyMap();
 	private String transformCacheUrl;
+	private LazyClassTransformer lazyTransformer;
 	private final Map<String, String[]> allowedPrefixes = new ConcurrentHashMap<>();
 	private final Set<String> parentSourcedClasses = Collections.newSetFromMap(new ConcurrentHashMap<>());
 
@@ -220,7 +231,10 @@ class KnotClassDelegate {
 			}
 		}
 
-		URL url = getClassUrl(name, allowFromParent);
+		String classFileName = LoaderUtil.getClassFileName(name);
+		// Classes in our own roots are read directly from their path, so the URL is only created when it's needed
+		Path path = itf.findResourcePath(classFileName);
+		URL url = path != null ? null : itf.getResource(classFileName, allowFromParent);
 
 		if (!allowFromParent && shouldRerouteToParent(name)) {
 			// Force slf4j itself to be loaded on a single classloader
@@ -228,15 +242,14 @@ class KnotClassDelegate {
 			// TODO: Change this into a report, rather than being printed on each overlap.
 			// Check to see if the class actually exists in the parent
 			// and it hasn't been "hidden"
-			String classFileName = LoaderUtil.getClassFileName(name);
 			URL originalURL = itf.getOriginalLoader().getResource(classFileName);
 			if (originalURL != null) {
 				try {
 					URL codeSource = UrlUtil.getSource(classFileName, originalURL);
 					if (codeSource != null && !parentHiddenUrls.contains(codeSource.toString())) {
 						// Exists in parent, not hidden
-						if (url != null) {
-							Log.warn(LogCategory.GENERAL, "Rerouting classloading to the parent classloader instead of " + url);
+						if (path != null || url != null) {
+							Log.warn(LogCategory.GENERAL, "Rerouting classloading to the parent classloader instead of " + (path != null ? path : url));
 						}
 						return null;
 					}
@@ -246,12 +259,14 @@ class KnotClassDelegate {
 			}
 		}
 
-		if (!allowedPrefixes.isEmpty() && url != null) {
-			String fileName = LoaderUtil.getClassFileName(name);
+		if (!allowedPrefixes.isEmpty() && (path != null || url != null)) {
+			if (url == null) {
+				url = toUrl(path);
+			}
 			URL codeSource = null;
 
 			try {
-				codeSource = UrlUtil.getSource(fileName, url);
+				codeSource = UrlUtil.getSource(classFileName, url);
 			} catch (UrlConversionException e) {
 				Log.warn(LogCategory.GENERAL, "Failed to get the code source URL for " + url);
 			}
@@ -299,14 +314,19 @@ class KnotClassDelegate {
 			throw new RuntimeException("Cannot load " + name + " " + hideReason);
 		}
 
-		byte[] input = getPostMixinClassByteArray(url, name);
+		KnotClassLoadProfile profile = classLoadProfile;
+		if (profile != null && path != null) {
+			profile.record(name);
+		}
+
+		byte[] input = getPostMixinClassByteArray(path, url, name);
 		if (input == null) return null;
 
 		if (allowFromParent) {
 			parentSourcedClasses.add(name);
 		}
 
-		KnotClassDelegate.Metadata metadata = getMetadata(name, url);
+		KnotClassDelegate.Metadata metadata = getMetadata(name, path, url);
 
 		final String modId;
 
@@ -323,7 +343,7 @@ class KnotClassDelegate {
 			// or where it causes a re-entrant classloading of itself
 			Log.warn(LogCategory.GENERAL, "Tried to define " + c + " but it was already loaded!");
 			Log.warn(LogCategory.GENERAL, "  - Already loaded source: " + UrlUtil.getCodeSource(c));
-			Log.warn(LogCategory.GENERAL, "  - Rejected (new) source: " + url);
+			Log.warn(LogCategory.GENERAL, "  - Rejected (new) source: " + (path != null ? path : url));
 			return c;
 		}
 
@@ -375,6 +395,40 @@ class KnotClassDelegate {
 		return hideReason != null ? hideReason : "";
 	}
 
+	private Metadata getMetadata(String name, @Nullable Path resourcePath, @Nullable URL resourceURL) {
+		if (resourcePath != null) {
+			Metadata metadata = getRootMetadata(name, resourcePath);
+			if (metadata != null) {
+				return metadata;
+			}
+			if (resourceURL == null) {
+				resourceURL = toUrl(resourcePath);
+			}
+		}
+		return getMetadata(name, resourceURL);
+	}
+
+	/** @param classFilePath The path of the class file of the given class, which was found in one of the roots passed
+	 *            to {@link #setMod(Path, URL, ModContainer)}.
+	 * @return The metadata of the root which contains the given class file, or null if it wasn't read from a root. */
+	@Nullable
+	private Metadata getRootMetadata(String name, Path classFilePath) {
+		if (rootMetadata.isEmpty()) {
+			return null;
+		}
+
+		// The class file is the root resolved against the class name, so the root is one parent per package (plus one
+		// for the file itself)
+		Path root = classFilePath.getParent();
+		for (int i = 0; i < name.length() && root != null; i++) {
+			char c = name.charAt(i);
+			if (c == '.' || c == '/') {
+				root = root.getParent();
+			}
+		}
+		return root == null ? null : rootMetadata.get(root);
+	}
+
 	Metadata getMetadata(String name, URL resourceURL) {
 		if (resourceURL == null) return Metadata.EMPTY;
 
@@ -418,7 +472,7 @@ class KnotClassDelegate {
 		if (mod != null) {
 			modCodeSourceMap.put(mod.metadata().id(), urlStr);
 		}
-		metadataCache.computeIfAbsent(urlStr, str -> {
+		Metadata metadata = metadataCache.computeIfAbsent(urlStr, str -> {
 			Manifest manifest = null;
 
 			try {
@@ -432,6 +486,7 @@ class KnotClassDelegate {
 			String modId = mod == null ? null : mod.metadata().id();
 			return new Metadata(manifest, new CodeSourceImpl(codeSourceUrl, null, modId));
 		});
+		rootMetadata.putIfAbsent(loadFrom, metadata);
 	}
 
 	Metadata getMetadata(URL codeSourceUrl) {
@@ -484,19 +539,48 @@ class KnotClassDelegate {
 		return itf.getResource(LoaderUtil.getClassFileName(name), allowFromParent);
 	}
 
+	private static URL toUrl(Path path) {
+		try {
+			return UrlUtil.asUrl(path);
+		} catch (MalformedURLException e) {
+			throw new Error(e);
+		}
+	}
+
 	public byte[] getPostMixinClassByteArray(String name, boolean allowFromParent) {
+		Path path = itf.findResourcePath(LoaderUtil.getClassFileName(name));
+		if (path != null) {
+			return getPostMixinClassByteArray(path, null, name);
+		}
 		return getPostMixinClassByteArray(getClassUrl(name, allowFromParent), name);
 	}
 
 	public byte[] getPostMixinClassByteArray(URL url, String name) {
-		byte[] transformedClassArray = getPreMixinClassByteArray(url, name);
+		return getPostMixinClassByteArray(null, url, name);
+	}
+
+	/** @param path If non-null then the class is read from this path, and the url is ignored. */
+	private byte[] getPostMixinClassByteArray(@Nullable Path path, @Nullable URL url, String name) {
+		byte[] transformedClassArray = getPreMixinClassByteArray(path, url, name);
 
 		if (!transformInitialized || !canTransformClass(name)) {
 			return transformedClassArray;
 		}
 
+		MixinClassCache cache = mixinClassCache;
+		if (cache != null && transformedClassArray != null) {
+			byte[] cached = cache.get(name, transformedClassArray);
+			if (cached != null) {
+				return cached;
+			}
+		}
+
 		try {
-			return getMixinTransformer().transformClassBytes(name, name, transformedClassArray);
+			byte[] result = getMixinTransformer().transformClassBytes(name, name, transformedClassArray);
+			if (cache != null && transformedClassArray != null) {
+				cache.put(name, transformedClassArray, result);
+			}
+			return result;
 		} catch (Throwable t) {
 			String msg = String.format("Mixin transformation of %s failed", name);
 			Log.warn(LogCategory.KNOT, msg, t);
@@ -507,12 +591,31 @@ class KnotClassDelegate {
 
 	public void afterMixinIntiializeFinished() {
 		transformFinishedLoading = true;
+
+		// Only opened now, since mixin selects every config when it transforms the first class
+		Path transformCacheFolder = QuiltLoaderImpl.INSTANCE.getTransformCacheFolder();
+		if (ENABLE_MIXIN_CLASS_CACHE && transformCacheFolder != null) {
+			mixinClassCache = MixinClassCache.open(transformCacheFolder, this);
+		}
+	}
+
+	/** Starts recording the order that classes are loaded in, and prefetching the classes recorded by the previous
+	 * launch. Must only be called once every transformer (other than mixin) has been set. */
+	void openClassLoadProfile() {
+		Path transformCacheFolder = QuiltLoaderImpl.INSTANCE.getTransformCacheFolder();
+		if (ENABLE_CLASS_LOAD_PROFILE && transformCacheFolder != null && classLoadProfile == null) {
+			classLoadProfile = KnotClassLoadProfile.open(transformCacheFolder, this, itf);
+		}
 	}
 
 	/**
 	 * Runs all the class transformers except mixin.
 	 */
 	public byte[] getPreMixinClassByteArray(String name, boolean allowFromParent) {
+		Path path = itf.findResourcePath(LoaderUtil.getClassFileName(name));
+		if (path != null) {
+			return getPreMixinClassByteArray(path, null, name);
+		}
 		return getPreMixinClassByteArray(getClassUrl(name, allowFromParent), name);
 	}
 
@@ -520,6 +623,10 @@ class KnotClassDelegate {
 	 * Runs all the class transformers except mixin.
 	 */
 	public byte[] getPreMixinClassByteArray(URL classFileURL, String name) {
+		return getPreMixinClassByteArray(null, classFileURL, name);
+	}
+
+	private byte[] getPreMixinClassByteArray(@Nullable Path classFilePath, @Nullable URL classFileURL, String name) {
 		// some of the transformers rely on dot notation
 		name = name.replace('/', '.');
 
@@ -531,11 +638,38 @@ class KnotClassDelegate {
 			return PatchLoader.getNewPatchedClass(name);
 		}
 
+		KnotClassLoadProfile profile = classLoadProfile;
+		if (profile != null && classFilePath != null) {
+			byte[] prefetched = profile.take(name, classFilePath);
+			if (prefetched != null) {
+				return prefetched;
+			}
+		}
+
+		byte[] bytes;
 		try {
-			return getRawClassByteArray(classFileURL, name);
+			bytes = getRawClassByteArray(classFilePath, classFileURL);
 		} catch (IOException e) {
 			throw new RuntimeException("Failed to load class file for '" + name + "'!", e);
 		}
+
+		return applyPreMixinTransformers(classFilePath, classFileURL, name, bytes);
+	}
+
+	/** Reads the given class and runs all the class transformers except mixin, for {@link KnotClassLoadProfile}. Unlike
+	 * {@link #getPreMixinClassByteArray(String, boolean)} this doesn't check or log anything, since the class might not
+	 * actually be loaded. */
+	byte[] prefetchPreMixinClassByteArray(Path classFilePath, String name) throws IOException {
+		return applyPreMixinTransformers(classFilePath, null, name, FileUtil.readAllBytes(classFilePath));
+	}
+
+	private byte[] applyPreMixinTransformers(@Nullable Path classFilePath, @Nullable URL classFileURL, String name, byte[] bytes) {
+		if (lazyTransformer != null && bytes != null) {
+			CodeSourceImpl codeSource = getMetadata(name, classFilePath, classFileURL).codeSource;
+			bytes = lazyTransformer.transform(codeSource == null ? null : codeSource.modId, name, bytes);
+		}
+
+		return bytes;
 	}
 
 	private static boolean canTransformClass(String name) {
@@ -545,9 +679,20 @@ class KnotClassDelegate {
 	}
 
 	public byte[] getRawClassByteArray(String name, boolean allowFromParent) throws IOException {
+		Path path = itf.findResourcePath(LoaderUtil.getClassFileName(name));
+		if (path != null) {
+			return FileUtil.readAllBytes(path);
+		}
 		return getRawClassByteArray(getClassUrl(name, allowFromParent), name);
 	}
 
+	private byte[] getRawClassByteArray(@Nullable Path path, @Nullable URL url) throws IOException {
+		if (path != null) {
+			return FileUtil.readAllBytes(path);
+		}
+		return getRawClassByteArray(url, null);
+	}
+
 	public byte[] getRawClassByteArray(URL url, String name) throws IOException {
 		try (InputStream inputStream = (url != null ? url.openStream() : null)) {
 			if (inputStream == null) {
@@ -569,6 +714,10 @@ class KnotClassDelegate {
 		transformCacheUrl = insideTransformCache.toString();
 	}
 
+	void setLazyTransformer(LazyClassTransformer transformer) {
+		lazyTransformer = transformer;
+	}
+
 	void setHiddenClasses(Set<String> hiddenClasses) {
 		Map<String, String> map = new HashMap<>();
 		for (String cl : hiddenClasses) {
@@ -0,0 +1,392 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.loader.impl.launch.knot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.jetbrains.annotations.Nullable;
+import org.quiltmc.loader.api.FasterFiles;
+import org.quiltmc.loader.impl.util.LoaderUtil;
+import org.quiltmc.loader.impl.util.QuiltLoaderInternal;
+import org.quiltmc.loader.impl.util.QuiltLoaderInternalType;
+import org.quiltmc.loader.impl.util.QuiltLoaderWorkerPool;
+import org.quiltmc.loader.impl.util.SystemProperties;
+import org.quiltmc.loader.impl.util.log.Log;
+import org.quiltmc.loader.impl.util.log.LogCategory;
+
+/** Records the order that classes are loaded from Knot's own class path while the game starts, and writes it to
+ * {@value #FILE_NAME} in the transform cache folder once recording ends (or when the game exits, if that's sooner).
+ * <p>
+ * On the next launch a few background threads walk the previous profile slightly ahead of the game, reading each class
+ * and running every transformer except mixin on it, and store the result until {@link KnotClassDelegate} asks for it
+ * with {@link #take(String, Path)}. Classes which aren't asked for (because this launch loads different classes) are
+ * dropped once the game has moved far enough past them, and the total size of every stored class is bounded by
+ * {@link SystemProperties#CLASS_PREFETCH_MAX_SIZE}.
+ * <p>
+ * This is only used if {@link SystemProperties#ENABLE_CLASS_LOAD_PROFILE} is set. */
+@QuiltLoaderInternal(QuiltLoaderInternalType.NEW_INTERNAL)
+final class KnotClassLoadProfile {
+
+	static final String FILE_NAME = "class-load-profile.bin";
+
+	private static final int MAGIC = 0x51434c50; // "QCLP"
+	private static final int VERSION = 1;
+
+	/** Classes loaded after this aren't part of starting the game, so they aren't recorded. */
+	private static final long RECORD_NANOS = TimeUnit.MINUTES.toNanos(2);
+	private static final int MAX_CLASSES = 1 << 16;
+
+	/** How many classes (in the previous profile) the prefetcher can be ahead of the last class the game took. */
+	private static final int WINDOW = 1024;
+
+	/** Prefetching stops if the game doesn't take any class for this long. */
+	private static final long IDLE_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+	private static final String PREFETCH_THREAD_NAME = "QuiltLoader Class Prefetcher #";
+	private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+	private final Path file;
+	private final KnotClassDelegate delegate;
+	private final KnotClassLoaderInterface itf;
+
+	// Recording
+	private final long recordUntil = System.nanoTime() + RECORD_NANOS;
+	private final Set<String> recorded = ConcurrentHashMap.newKeySet();
+	private final Queue<String> order = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean recording = new AtomicBoolean(true);
+
+	// Prefetching
+	private final long maxBytes = Long.getLong(SystemProperties.CLASS_PREFETCH_MAX_SIZE, 32 * 1024) * 1024;
+	private final Map<String, Prefetched> ready = new ConcurrentHashMap<>();
+	private final AtomicInteger next = new AtomicInteger();
+	private final AtomicInteger running = new AtomicInteger();
+	private final Object lock = new Object();
+	private volatile String[] previous = new String[0];
+	private volatile boolean stopped;
+
+	// Guarded by lock
+	private long readyBytes;
+	/** The index after the furthest class the game has taken. */
+	private int taken;
+	/** Every class before this index has either been taken or dropped. */
+	private int dropped;
+	/** The number of classes the game has asked for which were prefetched, which changes whenever the game makes
+	 * progress. */
+	private int takenCount;
+	/** The number of prefetched classes which were actually returned to the game, since a class taken from a different
+	 * path than it was prefetched from is read again. */
+	private int usedCount;
+
+	private KnotClassLoadProfile(Path file, KnotClassDelegate delegate, KnotClassLoaderInterface itf) {
+		this.file = file;
+		this.delegate = delegate;
+		this.itf = itf;
+	}
+
+	/** Starts recording, and starts prefetching the classes from the previous profile (if there is one). */
+	static KnotClassLoadProfile open(Path transformCacheFolder, KnotClassDelegate delegate, KnotClassLoaderInterface itf) {
+		KnotClassLoadProfile profile = new KnotClassLoadProfile(transformCacheFolder.resolve(FILE_NAME), delegate, itf);
+
+		// The profile is written when recording ends, even if the game stops loading classes (or exits) before then
+		startThread(profile::writeAfterRecording, "QuiltLoader Class Load Profile Writer");
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> profile.finishRecording(false), "QuiltLoader Class Load Profile Writer"));
+
+		int threads = Integer.getInteger(
+			SystemProperties.CLASS_PREFETCH_THREADS, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)
+		);
+		if (threads > 0 && FasterFiles.isRegularFile(profile.file)) {
+			profile.running.set(threads);
+			// The first thread reads the profile, so the game doesn't have to wait for it
+			startThread(() -> {
+				if (profile.readPrevious()) {
+					for (int i = 1; i < threads; i++) {
+						startThread(profile::prefetch, PREFETCH_THREAD_NAME + THREAD_COUNT.incrementAndGet());
+					}
+					profile.prefetch();
+				} else {
+					profile.stop();
+				}
+			}, PREFETCH_THREAD_NAME + THREAD_COUNT.incrementAndGet());
+		}
+
+		return profile;
+	}
+
+	private void writeAfterRecording() {
+		long remaining;
+		while (recording.get() && (remaining = recordUntil - System.nanoTime()) > 0) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(remaining);
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+		finishRecording(false);
+	}
+
+	private static void startThread(Runnable task, String name) {
+		Thread thread = new Thread(task, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private boolean readPrevious() {
+		try (InputStream stream = Files.newInputStream(file)) {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(stream)));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				return false;
+			}
+			String[] names = new String[in.readInt()];
+			for (int i = 0; i < names.length; i++) {
+				names[i] = in.readUTF();
+			}
+			previous = names;
+			return true;
+		} catch (IOException e) {
+			Log.warn(LogCategory.KNOT, "Failed to read the class load profile " + file, e);
+			return false;
+		}
+	}
+
+	/** Records that the given class was loaded from the given path, which is expected to be in Knot's own class
+	 * path. */
+	void record(String name) {
+		if (!recording.get()) {
+			return;
+		}
+
+		if (System.nanoTime() > recordUntil || recorded.size() >= MAX_CLASSES) {
+			finishRecording(true);
+			return;
+		}
+
+		if (recorded.add(name)) {
+			order.add(name);
+		}
+	}
+
+	/** Stops recording and writes the profile, unless recording has already stopped.
+	 *
+	 * @param async If true then the profile is written on {@link QuiltLoaderWorkerPool}, rather than on this thread. */
+	private void finishRecording(boolean async) {
+		if (recording.compareAndSet(true, false)) {
+			if (async) {
+				QuiltLoaderWorkerPool.get().execute(this::write);
+			} else {
+				write();
+			}
+		}
+	}
+
+	private void write() {
+		String[] names = order.toArray(new String[0]);
+		if (Arrays.equals(names, previous)) {
+			return;
+		}
+
+		try {
+			Path tmp = Files.createTempFile(file.getParent(), FILE_NAME, ".tmp");
+			try {
+				try (OutputStream stream = Files.newOutputStream(tmp)) {
+					DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(stream)));
+					out.writeInt(MAGIC);
+					out.writeInt(VERSION);
+					out.writeInt(names.length);
+					for (String name : names) {
+						out.writeUTF(name);
+					}
+					out.close();
+				}
+				try {
+					Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+				} catch (AtomicMoveNotSupportedException e) {
+					Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+				}
+			} finally {
+				Files.deleteIfExists(tmp);
+			}
+			Log.debug(LogCategory.KNOT, "Wrote the load order of %d classes to the class load profile", names.length);
+		} catch (IOException e) {
+			Log.warn(LogCategory.KNOT, "Failed to write the class load profile " + file, e);
+		}
+	}
+
+	private void prefetch() {
+		String[] names = previous;
+		int index;
+		while (!stopped && (index = next.getAndIncrement()) < names.length) {
+			if (!waitForSpace(index)) {
+				break;
+			}
+
+			String name = names[index];
+			if (itf.isClassLoaded(name)) {
+				continue;
+			}
+
+			Path path = itf.findResourcePath(LoaderUtil.getClassFileName(name));
+			if (path == null) {
+				continue;
+			}
+
+			byte[] bytes;
+			try {
+				bytes = delegate.prefetchPreMixinClassByteArray(path, name);
+			} catch (IOException | RuntimeException e) {
+				// The game will read it again (and report the error) if it's actually loaded
+				continue;
+			}
+
+			if (bytes != null) {
+				synchronized (lock) {
+					if (!stopped && index >= dropped) {
+						ready.put(name, new Prefetched(index, path, bytes));
+						readyBytes += bytes.length;
+					}
+				}
+			}
+		}
+
+		if (running.decrementAndGet() == 0) {
+			// Keep the last classes around until the game stops taking them
+			waitUntilIdle();
+			stop();
+		}
+	}
+
+	/** @return False if prefetching has stopped. */
+	private boolean waitForSpace(int index) {
+		synchronized (lock) {
+			while (!stopped && (index >= taken + WINDOW || readyBytes >= maxBytes)) {
+				int before = takenCount;
+				waitOnLock();
+				if (before == takenCount && (index >= taken + WINDOW || readyBytes >= maxBytes)) {
+					stop();
+				}
+			}
+			return !stopped;
+		}
+	}
+
+	private void waitUntilIdle() {
+		synchronized (lock) {
+			while (!stopped && !ready.isEmpty()) {
+				int before = takenCount;
+				waitOnLock();
+				if (before == takenCount) {
+					return;
+				}
+			}
+		}
+	}
+
+	private void waitOnLock() {
+		try {
+			lock.wait(IDLE_MILLIS);
+		} catch (InterruptedException e) {
+			stop();
+		}
+	}
+
+	private void stop() {
+		synchronized (lock) {
+			if (stopped) {
+				return;
+			}
+			stopped = true;
+			ready.clear();
+			readyBytes = 0;
+			lock.notifyAll();
+			if (previous.length > 0) {
+				Log.info(
+					LogCategory.KNOT, "Finished prefetching classes: %d of %d were used, %d were loaded from a different path",
+					usedCount, previous.length, takenCount - usedCount
+				);
+			}
+		}
+	}
+
+	/** @return The bytes of the given class (after every transformer except mixin has been applied) if it was
+	 *         prefetched from the given path, or null otherwise. */
+	byte @Nullable [] take(String name, Path path) {
+		if (ready.isEmpty()) {
+			return null;
+		}
+
+		Prefetched prefetched = ready.remove(name);
+		if (prefetched == null) {
+			return null;
+		}
+
+		boolean samePath = prefetched.path.equals(path);
+
+		synchronized (lock) {
+			readyBytes -= prefetched.bytes.length;
+			takenCount++;
+			if (samePath) {
+				usedCount++;
+			}
+			if (prefetched.index >= taken) {
+				taken = prefetched.index + 1;
+				// Classes far behind the game were either loaded from somewhere else or aren't used by this launch
+				String[] names = previous;
+				for (; dropped < taken - WINDOW; dropped++) {
+					Prefetched old = ready.remove(names[dropped]);
+					if (old != null) {
+						readyBytes -= old.bytes.length;
+					}
+				}
+			}
+			lock.notifyAll();
+		}
+
+		return samePath ? prefetched.bytes : null;
+	}
+
+	private static final class Prefetched {
+		final int index;
+		final Path path;
+		final byte[] bytes;
+
+		Prefetched(int index, Path path, byte[] bytes) {
+			this.index = index;
+			this.path = path;
+			this.bytes = bytes;
+		}
+	}
+}
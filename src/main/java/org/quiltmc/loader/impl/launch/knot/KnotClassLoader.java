@@ -130,6 +130,21 @@ class KnotClassLoader extends SecureClassLoader implements KnotClassLoaderInterf
 		return minimalLoader.getResource(name);
 	}
 
+	@Override
+	public Path findResourcePath(String name) {
+		return paths.findResource(name);
+	}
+
+	@Override
+	public void openClassPathSnapshot(Path file, String key) {
+		paths.openSnapshot(file, key);
+	}
+
+	@Override
+	public void finishClassPathSnapshot() {
+		paths.finishSnapshot();
+	}
+
 	@Override
 	public InputStream getResourceAsStream(String name) {
 		Objects.requireNonNull(name);
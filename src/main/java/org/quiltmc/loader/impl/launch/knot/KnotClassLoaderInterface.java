@@ -35,5 +35,14 @@ interface KnotClassLoaderInterface extends KnotBaseClassLoader {
 	void addPath(Path root, ModContainer mod, URL origin);
 	URL getResource(String name);
 	URL getResource(String name, boolean allowFromParent);
+	/** @return The path of the given resource if it's in one of the roots added by
+	 *         {@link #addPath(Path, ModContainer, URL)}, or null otherwise. This doesn't create a {@link URL}. */
+	Path findResourcePath(String name);
 	InputStream getResourceAsStream(String filename, boolean allowFromParent) throws IOException;
+	/** Starts using the class path snapshot stored in the given file for every path added by
+	 * {@link #addPath(Path, ModContainer, URL)}. */
+	void openClassPathSnapshot(Path file, String key);
+	/** Called once the game's class path has been unlocked, which writes a new snapshot if the opened one couldn't be
+	 * used. */
+	void finishClassPathSnapshot();
 }
@@ -127,6 +127,22 @@ class KnotCompatibilityClassLoader extends URLClassLoader implements KnotClassLo
 		}
 	}
 
+	@Override
+	public Path findResourcePath(String name) {
+		// Every root is added as a URL
+		return null;
+	}
+
+	@Override
+	public void openClassPathSnapshot(Path file, String key) {
+		// Every root is added as a URL, so there's nothing to store
+	}
+
+	@Override
+	public void finishClassPathSnapshot() {
+		// NO-OP
+	}
+
 	@Override
 	public InputStream getResourceAsStream(String classFile, boolean allowFromParent) throws IOException {
 		if (!allowFromParent) {
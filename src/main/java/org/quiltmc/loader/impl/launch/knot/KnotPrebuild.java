@@ -0,0 +1,35 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.loader.impl.launch.knot;
+
+import org.quiltmc.loader.impl.util.QuiltLoaderInternal;
+import org.quiltmc.loader.impl.util.QuiltLoaderInternalType;
+import org.quiltmc.loader.impl.util.SystemProperties;
+
+/** Generates the transform cache without launching the game, for example while building a server image. This takes
+ * the same arguments and system properties as {@link KnotClient} or {@link KnotServer} (so the game jar and mods
+ * folder can be set with {@link SystemProperties#GAME_JAR_PATH} and {@link SystemProperties#MODS_DIRECTORY}), and
+ * additionally requires {@link SystemProperties#SIDE} to be set to either "client" or "server".
+ * <p>
+ * The system properties, game directory, and mods must be the same as the real launch, otherwise the cache won't be
+ * reused. */
+@QuiltLoaderInternal(QuiltLoaderInternalType.NEW_INTERNAL)
+public class KnotPrebuild {
+	public static void main(String[] args) {
+		Knot.prebuild(args, null);
+	}
+}
@@ -0,0 +1,490 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.loader.impl.launch.knot;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.quiltmc.loader.api.FasterFiles;
+import org.quiltmc.loader.impl.QuiltLoaderImpl;
+import org.quiltmc.loader.impl.launch.common.QuiltLauncherBase;
+import org.quiltmc.loader.impl.util.FileUtil;
+import org.quiltmc.loader.impl.util.HashUtil;
+import org.quiltmc.loader.impl.util.QuiltLoaderInternal;
+import org.quiltmc.loader.impl.util.QuiltLoaderInternalType;
+import org.quiltmc.loader.impl.util.log.Log;
+import org.quiltmc.loader.impl.util.log.LogCategory;
+import org.quiltmc.parsers.json.JsonReader;
+import org.quiltmc.parsers.json.JsonToken;
+import org.spongepowered.asm.launch.MixinBootstrap;
+import org.spongepowered.asm.mixin.Mixins;
+import org.spongepowered.asm.mixin.extensibility.IMixinConfig;
+import org.spongepowered.asm.mixin.transformer.Config;
+import org.spongepowered.asm.service.MixinService;
+
+/** Stores classes after mixin has been applied to them, so the next launch can skip applying mixins to every class
+ * that hasn't changed. Each class is stored in its own file, named after the hash of the class before mixins were
+ * applied.
+ * <p>
+ * Every entry is only valid for a single "mixin environment": the mixin and loader versions, every mod (through the
+ * transform cache options, since config plugins and target hierarchies can depend on mods without mixins), every mixin
+ * config (in order) along with its refmap, mixin classes and plugin class, and any "mixin.*" system properties. A hash
+ * of all of these is stored in {@value #FINGERPRINT_FILE}, and if it doesn't match the current environment then every
+ * entry is deleted.
+ * <p>
+ * Targets of configs with a plugin are never cached, since mixin calls the plugin's preApply and postApply methods
+ * every time it transforms them. Plugins which decide what to apply based on anything else (like config files) still
+ * aren't covered by this, which is why this cache needs to be enabled explicitly.
+ * <p>
+ * Returning a cached class skips mixin entirely, so mixin's ClassInfo for that class only describes the class before
+ * mixins were applied. Mixins on subclasses (and frame computation in other classes) look up interfaces and members
+ * through ClassInfo, so only classes whose declared structure (access, superclass, interfaces, and every field and
+ * method, including private ones) is unchanged by mixins are cached. */
+@QuiltLoaderInternal(QuiltLoaderInternalType.NEW_INTERNAL)
+final class MixinClassCache {
+
+	private static final String FINGERPRINT_FILE = "fingerprint.txt";
+	private static final String ENTRY_SUFFIX = ".class";
+
+	/** Classes which reference these are never cached, since mixin generates the referenced classes while applying
+	 * mixins, and only keeps them in memory. */
+	private static final byte[] SYNTHETIC_PACKAGE = "org/spongepowered/asm/synthetic/".getBytes(StandardCharsets.UTF_8);
+
+	private final Path folder;
+	private final Set<String> entries;
+
+	/** Every class (in dot notation) targeted by a config with a plugin. */
+	private final Set<String> pluginTargets;
+
+	private volatile boolean enabled = true;
+
+	private MixinClassCache(Path folder, Set<String> entries, Set<String> pluginTargets) {
+		this.folder = folder;
+		this.entries = entries;
+		this.pluginTargets = pluginTargets;
+	}
+
+	/** Opens the mixin class cache that lives next to the given transform cache folder, deleting it first if the mixin
+	 * environment has changed since it was written.
+	 *
+	 * @return The cache, or null if it couldn't be opened. */
+	@Nullable
+	static MixinClassCache open(Path transformCacheFolder, KnotClassDelegate delegate) {
+		Path folder = transformCacheFolder.resolveSibling(transformCacheFolder.getFileName() + "-mixin");
+		long start = System.nanoTime();
+		try {
+			String fingerprint = computeFingerprint(delegate);
+			if (fingerprint == null) {
+				return null;
+			}
+
+			Path fingerprintFile = folder.resolve(FINGERPRINT_FILE);
+			String previous = null;
+			if (FasterFiles.isRegularFile(fingerprintFile)) {
+				previous = new String(Files.readAllBytes(fingerprintFile), StandardCharsets.UTF_8);
+			}
+
+			Set<String> entries = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+			if (fingerprint.equals(previous)) {
+				try (DirectoryStream<Path> shards = Files.newDirectoryStream(folder, Files::isDirectory)) {
+					for (Path shard : shards) {
+						try (DirectoryStream<Path> stream = Files.newDirectoryStream(shard, "*" + ENTRY_SUFFIX)) {
+							for (Path entry : stream) {
+								String name = entry.getFileName().toString();
+								entries.add(name.substring(0, name.length() - ENTRY_SUFFIX.length()));
+							}
+						}
+					}
+				}
+				Log.info(LogCategory.MIXIN, "Reusing " + entries.size() + " classes from the mixin class cache");
+			} else {
+				if (previous != null) {
+					Log.info(LogCategory.MIXIN, "Not reusing the mixin class cache since mixins have changed");
+				}
+				delete(folder);
+				Files.createDirectories(folder);
+				Files.write(fingerprintFile, fingerprint.getBytes(StandardCharsets.UTF_8));
+			}
+
+			Log.debug(LogCategory.MIXIN, "Opening the mixin class cache took " + (System.nanoTime() - start) / 1_000_000 + "ms");
+			return new MixinClassCache(folder, entries, getPluginTargets());
+		} catch (IOException e) {
+			Log.warn(LogCategory.MIXIN, "Failed to open the mixin class cache in " + folder, e);
+			return null;
+		}
+	}
+
+	/** @return The class after mixins have been applied, or null if it hasn't been cached. */
+	byte @Nullable [] get(String name, byte[] input) {
+		if (!checkEnabled() || pluginTargets.contains(name.replace('/', '.'))) {
+			return null;
+		}
+
+		String key = HashUtil.hashToString(HashUtil.computeHash(input));
+		if (!entries.contains(key)) {
+			return null;
+		}
+
+		Path file = getEntryPath(key);
+		byte[] stored;
+		try {
+			stored = Files.readAllBytes(file);
+		} catch (NoSuchFileException e) {
+			entries.remove(key);
+			return null;
+		} catch (IOException e) {
+			Log.warn(LogCategory.MIXIN, "Failed to read " + file + " from the mixin class cache", e);
+			return null;
+		}
+
+		// The first 4 bytes are the CRC32 of the class, to catch files which weren't fully written
+		if (stored.length > 4) {
+			CRC32 crc = new CRC32();
+			crc.update(stored, 4, stored.length - 4);
+			if ((int) crc.getValue() == readInt(stored)) {
+				return Arrays.copyOfRange(stored, 4, stored.length);
+			}
+		}
+
+		Log.warn(LogCategory.MIXIN, "Ignoring corrupt mixin class cache entry " + file);
+		entries.remove(key);
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			// Not important, since we'll overwrite it anyway
+		}
+		return null;
+	}
+
+	/** Stores the result of applying mixins to the given class. Classes which mixin didn't change are skipped, since
+	 * those are cheap for mixin to process. */
+	void put(String name, byte[] input, byte @Nullable [] output) {
+		if (output == null || output == input || !checkEnabled() || Arrays.equals(input, output)) {
+			return;
+		}
+
+		if (pluginTargets.contains(name.replace('/', '.'))) {
+			return;
+		}
+
+		if (indexOf(output, SYNTHETIC_PACKAGE) >= 0) {
+			return;
+		}
+
+		if (changesStructure(input, output)) {
+			return;
+		}
+
+		String key = HashUtil.hashToString(HashUtil.computeHash(input));
+		Path file = getEntryPath(key);
+		CRC32 crc = new CRC32();
+		crc.update(output, 0, output.length);
+		byte[] stored = new byte[output.length + 4];
+		writeInt(stored, (int) crc.getValue());
+		System.arraycopy(output, 0, stored, 4, output.length);
+
+		try {
+			Files.createDirectories(file.getParent());
+			Path tmp = Files.createTempFile(file.getParent(), key, ".tmp");
+			try {
+				Files.write(tmp, stored);
+				try {
+					Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+				} catch (AtomicMoveNotSupportedException e) {
+					Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+				}
+			} finally {
+				Files.deleteIfExists(tmp);
+			}
+			entries.add(key);
+		} catch (IOException e) {
+			enabled = false;
+			Log.warn(LogCategory.MIXIN, "Failed to write to the mixin class cache, so it will be disabled for this launch", e);
+		}
+	}
+
+	private boolean checkEnabled() {
+		if (!enabled) {
+			return false;
+		}
+
+		// Mixin only selects new configs when it transforms a class,
+		// so it needs to run on every class from now on
+		if (Mixins.getUnvisitedCount() > 0) {
+			enabled = false;
+			Log.info(LogCategory.MIXIN, "Disabling the mixin class cache since a mixin config was added after launch");
+			return false;
+		}
+
+		return true;
+	}
+
+	private Path getEntryPath(String key) {
+		return folder.resolve(key.substring(0, 2)).resolve(key + ENTRY_SUFFIX);
+	}
+
+	/** @return A hash of everything which could change how mixins are applied, or null if the environment couldn't be
+	 *         read. */
+	@Nullable
+	private static String computeFingerprint(KnotClassDelegate delegate) throws IOException {
+		String options = QuiltLoaderImpl.INSTANCE.getTransformCacheOptions();
+		if (options == null) {
+			Log.warn(LogCategory.MIXIN, "Not using the mixin class cache since the transform cache options aren't known");
+			return null;
+		}
+
+		List<String> lines = new ArrayList<>();
+		lines.add("loader=" + QuiltLoaderImpl.VERSION);
+		lines.add("mixin=" + MixinBootstrap.VERSION);
+		lines.add("env=" + QuiltLauncherBase.getLauncher().getEnvironmentType());
+		lines.add("development=" + QuiltLauncherBase.getLauncher().isDevelopment());
+		lines.add("java=" + System.getProperty("java.specification.version"));
+		lines.add("mods=" + hash(options.getBytes(StandardCharsets.UTF_8)));
+
+		// Properties have no order, unlike configs (which are applied in the order they were registered)
+		List<String> properties = new ArrayList<>();
+		for (Map.Entry<Object, Object> entry : System.getProperties().entrySet()) {
+			String key = String.valueOf(entry.getKey());
+			if (key.startsWith("mixin.")) {
+				properties.add("property " + key + "=" + entry.getValue());
+			}
+		}
+		Collections.sort(properties);
+		lines.addAll(properties);
+
+		for (Config config : Mixins.getConfigs()) {
+			String name = config.getName();
+			byte[] json = readResource(name);
+			if (json == null) {
+				Log.warn(LogCategory.MIXIN, "Not using the mixin class cache since the mixin config " + name + " couldn't be found");
+				return null;
+			}
+			lines.add("config " + name + " " + hash(json));
+
+			List<String> classes = new ArrayList<>();
+			String refmap;
+			try {
+				refmap = readConfig(json, classes);
+			} catch (IOException | RuntimeException e) {
+				Log.warn(LogCategory.MIXIN, "Not using the mixin class cache since the mixin config " + name + " couldn't be read", e);
+				return null;
+			}
+
+			if (refmap != null) {
+				byte[] refmapBytes = readResource(refmap);
+				lines.add("refmap " + name + " " + refmap + " " + (refmapBytes == null ? "missing" : hash(refmapBytes)));
+			}
+
+			for (String cls : classes) {
+				byte[] bytes = delegate.getRawClassByteArray(cls, true);
+				lines.add("class " + name + " " + cls + " " + (bytes == null ? "missing" : hash(bytes)));
+			}
+		}
+
+		return HashUtil.hashToString(HashUtil.computeHash(String.join("\n", lines)));
+	}
+
+	private static Set<String> getPluginTargets() {
+		Set<String> targets = new HashSet<>();
+		for (Config config : Mixins.getConfigs()) {
+			IMixinConfig mixinConfig = config.getConfig();
+			if (mixinConfig.getPlugin() != null) {
+				targets.addAll(mixinConfig.getTargets());
+			}
+		}
+		return targets;
+	}
+
+	/** Reads the refmap and every class referenced by a mixin config.
+	 *
+	 * @param classes Every mixin class and the config plugin class are added to this.
+	 * @return The refmap, or null if the config doesn't have one. */
+	@Nullable
+	private static String readConfig(byte[] json, List<String> classes) throws IOException {
+		String refmap = null;
+		String pkg = "";
+		List<String> mixins = new ArrayList<>();
+		String plugin = null;
+
+		try (JsonReader reader = JsonReader.json(new InputStreamReader(new ByteArrayInputStream(json), StandardCharsets.UTF_8))) {
+			reader.beginObject();
+			while (reader.hasNext()) {
+				String key = reader.nextName();
+				switch (key) {
+					case "refmap": {
+						refmap = reader.nextString();
+						break;
+					}
+					case "package": {
+						pkg = reader.nextString();
+						break;
+					}
+					case "plugin": {
+						plugin = reader.nextString();
+						break;
+					}
+					case "mixins":
+					case "client":
+					case "server": {
+						if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+							reader.skipValue();
+							break;
+						}
+						reader.beginArray();
+						while (reader.hasNext()) {
+							mixins.add(reader.nextString());
+						}
+						reader.endArray();
+						break;
+					}
+					default: {
+						reader.skipValue();
+					}
+				}
+			}
+			reader.endObject();
+		}
+
+		for (String mixin : mixins) {
+			classes.add(pkg.isEmpty() ? mixin : pkg + "." + mixin);
+		}
+		if (plugin != null) {
+			classes.add(plugin);
+		}
+		return refmap;
+	}
+
+	private static byte @Nullable [] readResource(String name) throws IOException {
+		try (InputStream stream = MixinService.getService().getResourceAsStream(name)) {
+			if (stream == null) {
+				return null;
+			}
+			return FileUtil.readAllBytes(stream);
+		}
+	}
+
+	private static String hash(byte[] bytes) {
+		return HashUtil.hashToString(HashUtil.computeHash(bytes));
+	}
+
+	private static void delete(Path folder) throws IOException {
+		if (!FasterFiles.exists(folder)) {
+			return;
+		}
+		Files.walkFileTree(folder, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+				if (exc != null) {
+					throw exc;
+				}
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/** @return True if the output doesn't declare exactly the same interfaces, fields, and methods (with the same
+	 *         access) as the input, or has a different superclass or access. */
+	private static boolean changesStructure(byte[] input, byte[] output) {
+		return !readStructure(input).equals(readStructure(output));
+	}
+
+	private static Set<String> readStructure(byte[] classBytes) {
+		Set<String> structure = new HashSet<>();
+		new ClassReader(classBytes).accept(new ClassVisitor(QuiltLoaderImpl.ASM_VERSION) {
+			@Override
+			public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+				structure.add("class " + access);
+				structure.add("super " + superName);
+				if (interfaces != null) {
+					for (String itf : interfaces) {
+						structure.add("interface " + itf);
+					}
+				}
+			}
+
+			@Override
+			public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+				structure.add("field " + access + " " + name + " " + descriptor);
+				return null;
+			}
+
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+				structure.add("method " + access + " " + name + descriptor);
+				return null;
+			}
+		}, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+		return structure;
+	}
+
+	private static int indexOf(byte[] array, byte[] target) {
+		outer: for (int i = 0; i <= array.length - target.length; i++) {
+			for (int j = 0; j < target.length; j++) {
+				if (array[i + j] != target[j]) {
+					continue outer;
+				}
+			}
+			return i;
+		}
+		return -1;
+	}
+
+	private static int readInt(byte[] array) {
+		return (array[0] & 0xFF) << 24 | (array[1] & 0xFF) << 16 | (array[2] & 0xFF) << 8 | (array[3] & 0xFF);
+	}
+
+	private static void writeInt(byte[] array, int value) {
+		array[0] = (byte) (value >>> 24);
+		array[1] = (byte) (value >>> 16);
+		array[2] = (byte) (value >>> 8);
+		array[3] = (byte) value;
+	}
+}
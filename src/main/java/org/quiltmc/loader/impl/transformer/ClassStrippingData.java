@@ -253,7 +253,11 @@ public class ClassStrippingData extends AbstractStripData {
 	}
 
 	public ClassStrippingData(int api, EnvType envType, List<ModLoadOption> mods) {
-		super(api, envType, mods.stream().map(ModLoadOption::id).collect(Collectors.toSet()));
+		this(api, envType, mods.stream().map(ModLoadOption::id).collect(Collectors.toSet()));
+	}
+
+	public ClassStrippingData(int api, EnvType envType, Set<String> modIds) {
+		super(api, envType, modIds);
 		this.envTypeString = envType.name();
 	}
 
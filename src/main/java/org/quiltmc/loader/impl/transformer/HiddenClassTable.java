@@ -0,0 +1,269 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.loader.impl.transformer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.quiltmc.loader.impl.util.QuiltLoaderInternal;
+import org.quiltmc.loader.impl.util.QuiltLoaderInternalType;
+
+/** A read-only map of every class which can't be loaded to the reason why, which is stored in the transform cache.
+ * This is queried directly from its binary form, rather than being copied into a {@link HashMap}, since modpacks can
+ * strip tens of thousands of classes and almost none of them are ever requested. Reasons are only decoded when they
+ * are actually requested.
+ * <p>
+ * The format is:
+ * <ol>
+ * <li>A header: {@link #MAGIC}, {@link #VERSION}, the number of classes, and the number of distinct reasons.</li>
+ * <li>Each class, sorted by the UTF-8 bytes of its name: the offset and length of the name, and the index of its
+ * reason. (3 ints each).</li>
+ * <li>Each reason: its offset and length. (2 ints each).</li>
+ * <li>The UTF-8 bytes of every name and reason. Offsets are relative to the start of this section.</li>
+ * </ol>
+ * All ints are big-endian. */
+@QuiltLoaderInternal(QuiltLoaderInternalType.NEW_INTERNAL)
+public final class HiddenClassTable extends AbstractMap<String, String> {
+
+	static final int MAGIC = 0x51484354; // "QHCT"
+	static final int VERSION = 1;
+
+	private static final int HEADER_SIZE = 16;
+	private static final int CLASS_ENTRY_SIZE = 12;
+	private static final int REASON_ENTRY_SIZE = 8;
+
+	private final ByteBuffer buffer;
+	private final int classCount;
+	private final int reasonStart;
+	private final int stringStart;
+
+	/** Reasons which have already been decoded. Races just decode the same string twice. */
+	private final String[] reasons;
+
+	private Set<Entry<String, String>> entrySet;
+
+	private HiddenClassTable(ByteBuffer buffer, int classCount, int reasonCount) {
+		this.buffer = buffer;
+		this.classCount = classCount;
+		this.reasonStart = HEADER_SIZE + classCount * CLASS_ENTRY_SIZE;
+		this.stringStart = reasonStart + reasonCount * REASON_ENTRY_SIZE;
+		this.reasons = new String[reasonCount];
+	}
+
+	/** Reads a table written by {@link #write(Map)}. The buffer is used directly, and must not be modified afterwards.
+	 * Only the header and table sizes are checked here, since checking every entry would defeat the point. */
+	public static HiddenClassTable read(ByteBuffer buffer) throws IOException {
+		buffer = buffer.slice();
+		if (buffer.remaining() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not a hidden class table!");
+		}
+		int version = buffer.getInt(4);
+		if (version != VERSION) {
+			throw new IOException("Unsupported hidden class table version " + version);
+		}
+		int classCount = buffer.getInt(8);
+		int reasonCount = buffer.getInt(12);
+		long stringStart = HEADER_SIZE + classCount * (long) CLASS_ENTRY_SIZE + reasonCount * (long) REASON_ENTRY_SIZE;
+		if (classCount < 0 || reasonCount < 0 || stringStart > buffer.remaining()) {
+			throw new IOException("Truncated hidden class table!");
+		}
+		return new HiddenClassTable(buffer, classCount, reasonCount);
+	}
+
+	public static byte[] write(Map<String, String> hiddenClasses) {
+		List<byte[]> names = new ArrayList<>(hiddenClasses.size());
+		Map<byte[], String> nameToReason = new HashMap<>();
+		for (Entry<String, String> entry : hiddenClasses.entrySet()) {
+			byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+			names.add(name);
+			nameToReason.put(name, entry.getValue());
+		}
+		names.sort(HiddenClassTable::compare);
+
+		Map<String, Integer> reasonIndices = new HashMap<>();
+		List<byte[]> reasons = new ArrayList<>();
+		int stringLength = 0;
+		for (byte[] name : names) {
+			stringLength += name.length;
+			String reason = nameToReason.get(name);
+			if (!reasonIndices.containsKey(reason)) {
+				reasonIndices.put(reason, reasons.size());
+				byte[] bytes = reason.getBytes(StandardCharsets.UTF_8);
+				reasons.add(bytes);
+				stringLength += bytes.length;
+			}
+		}
+
+		int tableLength = HEADER_SIZE + names.size() * CLASS_ENTRY_SIZE + reasons.size() * REASON_ENTRY_SIZE;
+		ByteBuffer buffer = ByteBuffer.allocate(tableLength + stringLength);
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putInt(names.size());
+		buffer.putInt(reasons.size());
+
+		int stringOffset = 0;
+		for (byte[] name : names) {
+			buffer.putInt(stringOffset);
+			buffer.putInt(name.length);
+			buffer.putInt(reasonIndices.get(nameToReason.get(name)));
+			stringOffset += name.length;
+		}
+		for (byte[] reason : reasons) {
+			buffer.putInt(stringOffset);
+			buffer.putInt(reason.length);
+			stringOffset += reason.length;
+		}
+		for (byte[] name : names) {
+			buffer.put(name);
+		}
+		for (byte[] reason : reasons) {
+			buffer.put(reason);
+		}
+		return buffer.array();
+	}
+
+	private static int compare(byte[] a, byte[] b) {
+		int length = Math.min(a.length, b.length);
+		for (int i = 0; i < length; i++) {
+			int cmp = (a[i] & 0xFF) - (b[i] & 0xFF);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return a.length - b.length;
+	}
+
+	/** @return The index of the given class, or a negative number if it isn't hidden. */
+	private int indexOf(String name) {
+		byte[] key = name.getBytes(StandardCharsets.UTF_8);
+		int low = 0;
+		int high = classCount - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = compareName(mid, key);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	private int compareName(int index, byte[] key) {
+		int entry = HEADER_SIZE + index * CLASS_ENTRY_SIZE;
+		int offset = stringStart + buffer.getInt(entry);
+		int length = buffer.getInt(entry + 4);
+		int common = Math.min(length, key.length);
+		for (int i = 0; i < common; i++) {
+			int cmp = (buffer.get(offset + i) & 0xFF) - (key[i] & 0xFF);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return length - key.length;
+	}
+
+	private String nameAt(int index) {
+		int entry = HEADER_SIZE + index * CLASS_ENTRY_SIZE;
+		return decode(buffer.getInt(entry), buffer.getInt(entry + 4));
+	}
+
+	private String reasonAt(int index) {
+		int reasonIndex = buffer.getInt(HEADER_SIZE + index * CLASS_ENTRY_SIZE + 8);
+		String reason = reasons[reasonIndex];
+		if (reason == null) {
+			int entry = reasonStart + reasonIndex * REASON_ENTRY_SIZE;
+			reason = decode(buffer.getInt(entry), buffer.getInt(entry + 4));
+			reasons[reasonIndex] = reason;
+		}
+		return reason;
+	}
+
+	private String decode(int offset, int length) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = buffer.get(stringStart + offset + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public String get(Object key) {
+		if (!(key instanceof String) || classCount == 0) {
+			return null;
+		}
+		int index = indexOf((String) key);
+		return index < 0 ? null : reasonAt(index);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return key instanceof String && classCount > 0 && indexOf((String) key) >= 0;
+	}
+
+	@Override
+	public int size() {
+		return classCount;
+	}
+
+	@Override
+	public Set<Entry<String, String>> entrySet() {
+		if (entrySet == null) {
+			entrySet = new AbstractSet<Entry<String, String>>() {
+				@Override
+				public Iterator<Entry<String, String>> iterator() {
+					return new Iterator<Entry<String, String>>() {
+						int index = 0;
+
+						@Override
+						public boolean hasNext() {
+							return index < classCount;
+						}
+
+						@Override
+						public Entry<String, String> next() {
+							if (index >= classCount) {
+								throw new NoSuchElementException();
+							}
+							int i = index++;
+							return new SimpleImmutableEntry<>(nameAt(i), reasonAt(i));
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return classCount;
+				}
+			};
+		}
+		return entrySet;
+	}
+}
@@ -18,13 +18,18 @@ package org.quiltmc.loader.impl.transformer;
 
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.AnnotationVisitor;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
@@ -36,6 +41,7 @@ import org.objectweb.asm.Type;
 import org.quiltmc.loader.api.ModInternal;
 import org.quiltmc.loader.api.plugin.solver.ModLoadOption;
 import org.quiltmc.loader.impl.QuiltLoaderImpl;
+import org.quiltmc.loader.impl.util.HashUtil;
 import org.quiltmc.loader.impl.util.QuiltLoaderInternal;
 import org.quiltmc.loader.impl.util.QuiltLoaderInternalType;
 import org.quiltmc.loader.impl.util.log.Log;
@@ -55,10 +61,14 @@ public class InternalsHiderTransform {
 	private static final String METHOD_OWNER = Type.getInternalName(QuiltInternalExceptionUtil.class);
 
 	final Target target;
-	final Map<String, InternalValue> internalPackages = new HashMap<>();
-	final Map<String, InternalValue> internalClasses = new HashMap<>();
-	final Map<MethodKey, InternalValue> internalMethods = new HashMap<>();
-	final Map<FieldKey, InternalValue> internalFields = new HashMap<>();
+
+	// Concurrent maps, since the transform cache can scan and run classes in parallel.
+	// Every key is derived from the name of the class that declares it, so classes with different names never write
+	// to the same key - which keeps the result identical to a sequential scan.
+	final Map<String, InternalValue> internalPackages = new ConcurrentHashMap<>();
+	final Map<String, InternalValue> internalClasses = new ConcurrentHashMap<>();
+	final Map<MethodKey, InternalValue> internalMethods = new ConcurrentHashMap<>();
+	final Map<FieldKey, InternalValue> internalFields = new ConcurrentHashMap<>();
 
 	public InternalsHiderTransform(Target target) {
 		this.target = target;
@@ -72,66 +82,18 @@ public class InternalsHiderTransform {
 		} catch (IllegalArgumentException e) {
 			throw new IllegalArgumentException("Failed to read the class " + file + " from mod " + mod.id(), e);
 		}
-		String className = reader.getClassName();
-		boolean isPackageInfo = className.endsWith("/package-info");
-		ClassVisitor visitor = new ClassVisitor(QuiltLoaderImpl.ASM_VERSION) {
-
-			@Override
-			public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
-				if (!MOD_INTERNAL_DESCRIPTOR.equals(descriptor)) {
-					return null;
-				}
-				return new ScanningAnnotationVisitor() {
-					@Override
-					public void visitEnd() {
-						String key = className;
-						if (isPackageInfo) {
-							key = key.substring(0, className.length() - "/package-info".length());
-						}
-						put(mod, (isPackageInfo ? internalPackages : internalClasses), key);
-					}
-				};
-			}
-
-			@Override
-			public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
-				String[] exceptions) {
-
-				return new MethodVisitor(api) {
-					@Override
-					public AnnotationVisitor visitAnnotation(String aDesc, boolean visible) {
-						if (!MOD_INTERNAL_DESCRIPTOR.equals(aDesc)) {
-							return null;
-						}
-						return new ScanningAnnotationVisitor() {
-							@Override
-							public void visitEnd() {
-								put(mod, internalMethods, new MethodKey(className, name, descriptor));
-							}
-						};
-					}
-				};
-			}
+		ClassScanner scanner = createScanner(mod, null);
+		reader.accept(scanner, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+		scanner.commit(Collections.emptySet(), Collections.emptySet());
+	}
 
-			@Override
-			public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
-				return new FieldVisitor(api) {
-					@Override
-					public AnnotationVisitor visitAnnotation(String aDesc, boolean visible) {
-						if (!MOD_INTERNAL_DESCRIPTOR.equals(aDesc)) {
-							return null;
-						}
-						return new ScanningAnnotationVisitor() {
-							@Override
-							public void visitEnd() {
-								put(mod, internalFields, new FieldKey(className, name, descriptor));
-							}
-						};
-					}
-				};
-			}
-		};
-		reader.accept(visitor, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+	/** Creates a visitor which finds every {@code @ModInternal} declaration in a class, while passing every visit on to
+	 * the given visitor. This lets the transform cache scan a class in the same pass that it reads it for stripping.
+	 * <p>
+	 * Nothing is recorded until {@link ClassScanner#commit(Collection, Collection)} is called, since the class (or some
+	 * of its members) might be stripped afterwards. */
+	ClassScanner createScanner(ModLoadOption mod, @Nullable ClassVisitor next) {
+		return new ClassScanner(mod, next);
 	}
 
 	public byte[] run(ModLoadOption mod, byte[] classBytes) {
@@ -280,6 +242,29 @@ public class InternalsHiderTransform {
 
 	}
 
+	/** @return A hash of every {@code @ModInternal} declaration found by {@link #scanClass(ModLoadOption, Path, byte[])}.
+	 *         Since {@link #run(ModLoadOption, byte[])} rewrites each class based on these, a class which was rewritten
+	 *         with the same fingerprint doesn't need to be rewritten again. */
+	String computeScanFingerprint() {
+		List<String> lines = new ArrayList<>();
+		for (Map.Entry<String, InternalValue> entry : internalPackages.entrySet()) {
+			lines.add("package " + entry.getKey() + " " + entry.getValue().describe());
+		}
+		for (Map.Entry<String, InternalValue> entry : internalClasses.entrySet()) {
+			lines.add("class " + entry.getKey() + " " + entry.getValue().describe());
+		}
+		for (Map.Entry<MethodKey, InternalValue> entry : internalMethods.entrySet()) {
+			MethodKey key = entry.getKey();
+			lines.add("method " + key.className + "." + key.methodName + key.descriptor + " " + entry.getValue().describe());
+		}
+		for (Map.Entry<FieldKey, InternalValue> entry : internalFields.entrySet()) {
+			FieldKey key = entry.getKey();
+			lines.add("field " + key.className + "." + key.fieldName + ":" + key.type + " " + entry.getValue().describe());
+		}
+		Collections.sort(lines);
+		return HashUtil.hashToString(HashUtil.computeHash(String.join("\n", lines)));
+	}
+
 	private InternalValue getAnnotationSet(String owner) {
 		InternalValue value = internalClasses.get(owner);
 		if (value != null) {
@@ -328,9 +313,9 @@ public class InternalsHiderTransform {
 				} else {
 					throw new IllegalStateException("Unknown Target " + target);
 				}
-				internalClasses.put(owner, value);
+				InternalValue existing = internalClasses.putIfAbsent(owner, value);
 
-				return value;
+				return existing != null ? existing : value;
 
 			} catch (ClassNotFoundException e) {
 				Log.warn(LogCategory.GENERAL, "Failed to load " + owner, e);
@@ -422,6 +407,10 @@ public class InternalsHiderTransform {
 
 		abstract String modFrom();
 
+		String describe() {
+			return getClass().getSimpleName() + " " + replacements;
+		}
+
 		String getInvokeMethodName() {
 			return "throwInternalAccess";
 		}
@@ -506,6 +495,11 @@ public class InternalsHiderTransform {
 		String modFrom() {
 			return inMod == null ? "Unkown Mod" : inMod.metadata().name();
 		}
+
+		@Override
+		String describe() {
+			return (inMod == null ? "" : inMod.id()) + " " + new TreeSet<>(permitted) + " " + replacements;
+		}
 	}
 
 	static final class InternalSuper {
@@ -524,23 +518,124 @@ public class InternalsHiderTransform {
 		}
 	}
 
-	static abstract class ScanningAnnotationVisitor extends AnnotationVisitor {
-		final List<String> exceptions = new ArrayList<>();
-		final List<String> replacements = new ArrayList<>();
-		final List<String> classReplacements = new ArrayList<>();
+	final class ClassScanner extends ClassVisitor {
+		private final ModLoadOption mod;
+		private String className;
+		private boolean isPackageInfo;
+
+		private Runnable classDeclaration;
+		private final Map<String, Runnable> methodDeclarations = new HashMap<>();
+		private final Map<String, Runnable> fieldDeclarations = new HashMap<>();
 
-		protected ScanningAnnotationVisitor() {
-			super(QuiltLoaderImpl.ASM_VERSION);
+		ClassScanner(ModLoadOption mod, @Nullable ClassVisitor next) {
+			super(QuiltLoaderImpl.ASM_VERSION, next);
+			this.mod = mod;
 		}
 
 		@Override
-		public void visit(String name, Object value) {
+		public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+			className = name;
+			isPackageInfo = name.endsWith("/package-info");
+			super.visit(version, access, name, signature, superName, interfaces);
+		}
+
+		@Override
+		public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+			AnnotationVisitor sup = super.visitAnnotation(descriptor, visible);
+			if (!MOD_INTERNAL_DESCRIPTOR.equals(descriptor)) {
+				return sup;
+			}
+			return new ScanningAnnotationVisitor(sup) {
+				@Override
+				protected void onEnd() {
+					classDeclaration = () -> {
+						String key = className;
+						if (isPackageInfo) {
+							key = key.substring(0, className.length() - "/package-info".length());
+						}
+						put(mod, (isPackageInfo ? internalPackages : internalClasses), key);
+					};
+				}
+			};
+		}
+
+		@Override
+		public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+			String[] exceptions) {
+
+			return new MethodVisitor(api, super.visitMethod(access, name, descriptor, signature, exceptions)) {
+				@Override
+				public AnnotationVisitor visitAnnotation(String aDesc, boolean visible) {
+					AnnotationVisitor sup = super.visitAnnotation(aDesc, visible);
+					if (!MOD_INTERNAL_DESCRIPTOR.equals(aDesc)) {
+						return sup;
+					}
+					return new ScanningAnnotationVisitor(sup) {
+						@Override
+						protected void onEnd() {
+							methodDeclarations.put(name + descriptor, () -> {
+								put(mod, internalMethods, new MethodKey(className, name, descriptor));
+							});
+						}
+					};
+				}
+			};
+		}
+
+		@Override
+		public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+			return new FieldVisitor(api, super.visitField(access, name, descriptor, signature, value)) {
+				@Override
+				public AnnotationVisitor visitAnnotation(String aDesc, boolean visible) {
+					AnnotationVisitor sup = super.visitAnnotation(aDesc, visible);
+					if (!MOD_INTERNAL_DESCRIPTOR.equals(aDesc)) {
+						return sup;
+					}
+					return new ScanningAnnotationVisitor(sup) {
+						@Override
+						protected void onEnd() {
+							fieldDeclarations.put(name + descriptor, () -> {
+								put(mod, internalFields, new FieldKey(className, name, descriptor));
+							});
+						}
+					};
+				}
+			};
+		}
+
+		/** Records every declaration that was found, except for the given members.
+		 *
+		 * @param strippedFields The fields (name + descriptor) which were stripped from the class.
+		 * @param strippedMethods The methods (name + descriptor) which were stripped from the class. */
+		void commit(Collection<String> strippedFields, Collection<String> strippedMethods) {
+			if (classDeclaration != null) {
+				classDeclaration.run();
+			}
+			for (Map.Entry<String, Runnable> entry : methodDeclarations.entrySet()) {
+				if (!strippedMethods.contains(entry.getKey())) {
+					entry.getValue().run();
+				}
+			}
+			for (Map.Entry<String, Runnable> entry : fieldDeclarations.entrySet()) {
+				if (!strippedFields.contains(entry.getKey())) {
+					entry.getValue().run();
+				}
+			}
+		}
+	}
+
+	static abstract class ScanningAnnotationVisitor extends AnnotationVisitor {
+		final List<String> exceptions = new ArrayList<>();
+		final List<String> replacements = new ArrayList<>();
+		final List<String> classReplacements = new ArrayList<>();
 
+		protected ScanningAnnotationVisitor(@Nullable AnnotationVisitor next) {
+			super(QuiltLoaderImpl.ASM_VERSION, next);
 		}
 
 		@Override
 		public AnnotationVisitor visitArray(String name) {
-			return new AnnotationVisitor(api) {
+			return new AnnotationVisitor(api, super.visitArray(name)) {
 				@Override
 				public void visit(String ignored, Object value) {
 					if ("exceptions".equals(name) && value instanceof String) {
@@ -557,12 +652,19 @@ public class InternalsHiderTransform {
 							classReplacements.add(type.getClassName());
 						}
 					}
+
+					super.visit(ignored, value);
 				}
 			};
 		}
 
 		@Override
-		public abstract void visitEnd();
+		public final void visitEnd() {
+			super.visitEnd();
+			onEnd();
+		}
+
+		protected abstract void onEnd();
 
 		protected final <K> void put(ModLoadOption mod, Map<K, InternalValue> map, K key) {
 			Set<String> set = new HashSet<>();
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.loader.impl.transformer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.jetbrains.annotations.Nullable;
+import org.quiltmc.loader.api.QuiltLoader;
+import org.quiltmc.loader.api.plugin.solver.ModLoadOption;
+import org.quiltmc.loader.impl.launch.common.QuiltLauncherBase;
+import org.quiltmc.loader.impl.util.QuiltLoaderInternal;
+import org.quiltmc.loader.impl.util.QuiltLoaderInternalType;
+import org.quiltmc.loader.impl.util.QuiltLoaderWorkerPool;
+import org.quiltmc.loader.impl.util.SystemProperties;
+import org.quiltmc.loader.impl.util.log.Log;
+import org.quiltmc.loader.impl.util.log.LogCategory;
+
+import net.fabricmc.accesswidener.AccessWidener;
+import net.fabricmc.api.EnvType;
+
+/** Transforms classes when they are loaded, instead of generating the whole transform cache before the game starts.
+ * This still has to read every class up-front (but skipping their code) to find the classes which need to be hidden,
+ * and every {@code @ModInternal} declaration. Classes are then transformed exactly like {@link TransformCacheGenerator}
+ * would transform them, but only when the class loader asks for them. */
+@QuiltLoaderInternal(QuiltLoaderInternalType.NEW_INTERNAL)
+public final class LazyClassTransformer {
+
+	private final boolean isDevelopment;
+	private final EnvType envType;
+	private final TransformCache cache;
+	private final AccessWidener accessWidener;
+	private final InternalsHiderTransform internalsHider;
+	private final Map<String, ModLoadOption> mods = new HashMap<>();
+
+	private LazyClassTransformer(TransformCache cache) {
+		this.isDevelopment = QuiltLoader.isDevelopmentEnvironment();
+		this.envType = QuiltLauncherBase.getLauncher().getEnvironmentType();
+		this.cache = cache;
+		this.accessWidener = TransformCacheGenerator.loadAccessWideners(cache);
+		this.internalsHider = new InternalsHiderTransform(InternalsHiderTransform.Target.MOD);
+		for (ModLoadOption mod : cache.getModsInCache()) {
+			mods.put(mod.id(), mod);
+		}
+	}
+
+	/** @return True if the given mods can be transformed lazily. This isn't supported when chasm is enabled (since
+	 *         chasm transforms every class at once) or when any mod needs to be remapped. */
+	static boolean canTransformLazily(List<ModLoadOption> modList) {
+		if (Boolean.getBoolean(SystemProperties.ENABLE_EXPERIMENTAL_CHASM)) {
+			return false;
+		}
+		for (ModLoadOption mod : modList) {
+			if (mod.needsTransforming() && mod.namespaceMappingFrom() != null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Reads every class in the given mods to find hidden classes and internal declarations. */
+	static LazyClassTransformer create(List<ModLoadOption> modList) throws IOException {
+		long start = System.nanoTime();
+		LazyClassTransformer transformer = new LazyClassTransformer(TransformCache.createView(modList));
+
+		ForkJoinPool pool = TransformCacheGenerator.PARALLEL ? QuiltLoaderWorkerPool.get() : null;
+		transformer.cache.forEachClassFile((mod, name, file) -> {
+			byte[] classBytes = QuiltLauncherBase.getLauncher().getEntrypointTransformer().transform(name);
+			if (classBytes == null) {
+				classBytes = Files.readAllBytes(file);
+			}
+			QuiltTransformer.analyze(
+				transformer.isDevelopment, transformer.envType, transformer.cache, transformer.accessWidener,
+				transformer.internalsHider, name, mod, classBytes
+			);
+			return null;
+		}, false, pool);
+
+		transformer.cache.getStats().end(TransformCacheStats.Phase.TOTAL, start);
+		Log.info(LogCategory.CACHE, "Scanned every class for lazy transforming in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+		return transformer;
+	}
+
+	/** @return The stats of the up-front scan, and of every class transformed since. */
+	public TransformCacheStats getStats() {
+		return cache.getStats();
+	}
+
+	/** @return Every class which can't be loaded, mapped to the reason why. */
+	public Map<String, String> getHiddenClasses() {
+		return cache.getHiddenClasses();
+	}
+
+	/** Transforms a single class, which must have come from the given mod.
+	 *
+	 * @param modId The mod which contains the class, or null if it didn't come from a mod.
+	 * @param name The name of the class, using '.' as the separator.
+	 * @param bytes The class bytes, as read from the mod.
+	 * @return The transformed class. */
+	public byte[] transform(@Nullable String modId, String name, byte[] bytes) {
+		ModLoadOption mod = modId == null ? null : mods.get(modId);
+		if (mod == null || cache.isHidden(name)) {
+			return bytes;
+		}
+
+		byte[] patched = QuiltLauncherBase.getLauncher().getEntrypointTransformer().transform(name);
+		if (patched != null) {
+			bytes = patched;
+		}
+
+		byte[] result = QuiltTransformer.transform(isDevelopment, envType, cache, accessWidener, name, mod, bytes);
+		if (result == null) {
+			result = bytes;
+		}
+
+		return internalsHider.run(mod, result);
+	}
+}
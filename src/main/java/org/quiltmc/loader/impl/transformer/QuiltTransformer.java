@@ -17,6 +17,7 @@
 package org.quiltmc.loader.impl.transformer;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 
 import net.fabricmc.accesswidener.AccessWidener;
@@ -37,12 +38,34 @@ import net.fabricmc.accesswidener.AccessWidenerClassVisitor;
 @QuiltLoaderInternal(QuiltLoaderInternalType.NEW_INTERNAL)
 final class QuiltTransformer {
 	public static byte @Nullable [] transform(boolean isDevelopment, EnvType envType, TransformCache cache, AccessWidener accessWidener, String name, ModLoadOption mod, byte[] bytes) {
+		return transform(isDevelopment, envType, cache, accessWidener, null, name, mod, bytes);
+	}
+
+	/** @param internalsScanner If not null, then every {@code @ModInternal} declaration in the transformed class is
+	 *            scanned into this. This reuses the stripping pass whenever possible, rather than reading the class again
+	 *            afterwards. Nothing is scanned if the class is hidden. */
+	public static byte @Nullable [] transform(boolean isDevelopment, EnvType envType, TransformCache cache, AccessWidener accessWidener, @Nullable InternalsHiderTransform internalsScanner, String name, ModLoadOption mod, byte[] bytes) {
+		return transform0(isDevelopment, envType, cache, accessWidener, internalsScanner, name, mod, bytes, false);
+	}
+
+	/** Hides the class if it would be stripped entirely, and otherwise scans it into the given
+	 * {@link InternalsHiderTransform}, exactly like {@link #transform(boolean, EnvType, TransformCache, AccessWidener, InternalsHiderTransform, String, ModLoadOption, byte[])}
+	 * but without actually transforming the class. */
+	public static void analyze(boolean isDevelopment, EnvType envType, TransformCache cache, AccessWidener accessWidener, InternalsHiderTransform internalsScanner, String name, ModLoadOption mod, byte[] bytes) {
+		transform0(isDevelopment, envType, cache, accessWidener, internalsScanner, name, mod, bytes, true);
+	}
+
+	private static byte @Nullable [] transform0(boolean isDevelopment, EnvType envType, TransformCache cache, AccessWidener accessWidener, @Nullable InternalsHiderTransform internalsScanner, String name, ModLoadOption mod, byte[] bytes, boolean analyzeOnly) {
 		boolean isGameClass = mod.id().equals(QuiltLoaderImpl.INSTANCE.getGameProvider().getGameId());
 		boolean transformAccess = isGameClass && QuiltLauncherBase.getLauncher().getMappingConfiguration().requiresPackageAccessHack();
 		boolean strip = !isGameClass || isDevelopment;
 		boolean applyAccessWidener = isGameClass && accessWidener.getTargets().contains(name);
+		TransformCacheStats stats = cache.getStats();
 
-		if (!transformAccess && !strip && !applyAccessWidener) {
+		if (!strip && (analyzeOnly || (!transformAccess && !applyAccessWidener))) {
+			if (internalsScanner != null) {
+				scanUnstripped(stats, internalsScanner, mod, new ClassReader(bytes));
+			}
 			return bytes;
 		}
 
@@ -51,12 +74,24 @@ final class QuiltTransformer {
 		ClassVisitor visitor = null;
 		int visitorCount = 0;
 
+		long stripStart = System.nanoTime();
+
 		if (strip) {
-			ClassStrippingData data = new ClassStrippingData(QuiltLoaderImpl.ASM_VERSION, envType, cache.getAllMods());
-			classReader.accept(data, ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES);
+			ClassStrippingData data = new ClassStrippingData(QuiltLoaderImpl.ASM_VERSION, envType, cache.getModIdsSeenBy(mod));
+			InternalsHiderTransform.ClassScanner scanner = null;
+
+			if (internalsScanner != null) {
+				// Neither the access widener nor the package access fixer touch annotations,
+				// so the only difference between this and scanning the output is the stripped members
+				scanner = internalsScanner.createScanner(mod, data);
+				classReader.accept(scanner, ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES);
+			} else {
+				classReader.accept(data, ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES);
+			}
 
 			if (data.stripEntireClass()) {
 				cache.hideClass(name, data.summarizeDenyLoadReasons());
+				stats.end(TransformCacheStats.Phase.STRIP, stripStart);
 				return null;
 			}
 
@@ -77,6 +112,16 @@ final class QuiltTransformer {
 				}
 			}
 
+			if (scanner != null) {
+				scanner.commit(data.getStripFields(), stripMethods);
+			}
+
+			stats.end(TransformCacheStats.Phase.STRIP, stripStart);
+
+			if (analyzeOnly) {
+				return null;
+			}
+
 			if (!data.isEmpty()) {
 
 				if (stripAnyLambdas) {
@@ -95,6 +140,10 @@ final class QuiltTransformer {
 			}
 		}
 
+		if (internalsScanner != null && !strip) {
+			scanUnstripped(stats, internalsScanner, mod, classReader);
+		}
+
 		if (classWriter == null) {
 			classWriter = new ClassWriter(classReader, 0);
 			visitor = classWriter;
@@ -114,7 +163,18 @@ final class QuiltTransformer {
 			return null;
 		}
 
+		long transformStart = System.nanoTime();
 		classReader.accept(visitor, 0);
-		return classWriter.toByteArray();
+		byte[] result = classWriter.toByteArray();
+		stats.end(TransformCacheStats.Phase.TRANSFORM, transformStart);
+		return result;
+	}
+
+	private static void scanUnstripped(TransformCacheStats stats, InternalsHiderTransform internalsScanner, ModLoadOption mod, ClassReader classReader) {
+		long start = System.nanoTime();
+		InternalsHiderTransform.ClassScanner scanner = internalsScanner.createScanner(mod, null);
+		classReader.accept(scanner, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+		scanner.commit(Collections.emptySet(), Collections.emptySet());
+		stats.end(TransformCacheStats.Phase.INTERNALS_SCAN, start);
 	}
 }
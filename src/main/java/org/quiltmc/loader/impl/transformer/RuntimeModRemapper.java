@@ -61,7 +61,7 @@ final class RuntimeModRemapper {
 	private static final String REMAP_TYPE_STATIC = "static";
 
 	public static void remap(TransformCache cache) {
-		List<ModLoadOption> modsToRemap = cache.getModsInCache().stream()
+		List<ModLoadOption> modsToRemap = cache.getModsToTransform().stream()
 				.filter(modLoadOption -> modLoadOption.namespaceMappingFrom() != null)
 				.collect(Collectors.toList());
 		Set<InputTag> remapMixins = new HashSet<>();
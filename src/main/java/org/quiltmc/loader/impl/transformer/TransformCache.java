@@ -25,13 +25,20 @@ import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.AbstractSet;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -59,19 +66,47 @@ class TransformCache {
 	private final Map<ModLoadOption, Path> modRoots = new HashMap<>();
 	private final List<ModLoadOption> allMods;
 	private final List<ModLoadOption> modsInCache;
-	private final Map<String, String> hiddenClasses = new HashMap<>();
+	private final List<ModLoadOption> modsToTransform;
+	private final Set<ModLoadOption> reusedMods = new HashSet<>();
+	private final Set<String> allModIds;
+	private final Map<ModLoadOption, Map<String, Boolean>> requiredModQueries = new ConcurrentHashMap<>();
+	private final Map<String, String> hiddenClasses = new ConcurrentHashMap<>();
+	private final TransformCacheStats stats;
 	private static final boolean COPY_ON_WRITE = true;
 
 	public TransformCache(Path root, List<ModLoadOption> orderedMods) {
+		this(root, orderedMods, null, Collections.emptyMap(), new TransformCacheStats());
+	}
+
+	/** @param segments If not null, then every mod in {@link TransformCacheSegments#reused} is copied from the
+	 *            previous cache rather than from the mod itself, and won't be transformed again.
+	 * @param previousHidden The hidden classes of the previous cache, used to restore hidden classes from reused
+	 *            segments.
+	 * @param stats The stats to record the time spent copying and remapping into. */
+	public TransformCache(Path root, List<ModLoadOption> orderedMods, @Nullable TransformCacheSegments segments,
+		Map<String, String> previousHidden, TransformCacheStats stats) {
+
 		this.root = root;
+		this.stats = stats;
 		this.allMods = orderedMods;
 		this.modsInCache = orderedMods.stream().filter(mod -> mod.needsTransforming() && !QuiltLoaderImpl.MOD_ID.equals(mod.id())).collect(Collectors.toList());
+		this.allModIds = orderedMods.stream().map(ModLoadOption::id).collect(Collectors.toSet());
+		this.modsToTransform = new ArrayList<>();
 
+		long copyStart = System.nanoTime();
 		for (ModLoadOption mod : this.modsInCache) {
-			Path modSrc = mod.createTransformRoot();
 			Path modDst = root.resolve(mod.id());
 			modRoots.put(mod, modDst);
 
+			if (segments != null && segments.previousRoot != null && segments.isReused(mod.id())) {
+				copyPreviousSegment(mod, segments.previousRoot.resolve(mod.id()), modDst, previousHidden);
+				reusedMods.add(mod);
+				continue;
+			}
+
+			modsToTransform.add(mod);
+			Path modSrc = mod.createTransformRoot();
+
 			final boolean onlyTransformableFiles = mod.couldResourcesChange();
 
 			try {
@@ -152,13 +187,64 @@ class TransformCache {
 				throw new UncheckedIOException(io);
 			}
 		}
+		stats.end(TransformCacheStats.Phase.COPY, copyStart);
+
 		// Populate mods that need remapped
+		long remapStart = System.nanoTime();
 		RuntimeModRemapper.remap(this);
+		stats.end(TransformCacheStats.Phase.REMAP, remapStart);
 		for (ModLoadOption orderedMod : this.modsInCache) {
 			modRoots.put(orderedMod, root.resolve(orderedMod.id() + "/"));
 		}
 	}
 
+	private TransformCache(List<ModLoadOption> orderedMods) {
+		this.root = null;
+		this.stats = new TransformCacheStats();
+		this.allMods = orderedMods;
+		this.modsInCache = orderedMods.stream().filter(mod -> mod.needsTransforming() && !QuiltLoaderImpl.MOD_ID.equals(mod.id())).collect(Collectors.toList());
+		this.allModIds = orderedMods.stream().map(ModLoadOption::id).collect(Collectors.toSet());
+		this.modsToTransform = new ArrayList<>(modsInCache);
+
+		for (ModLoadOption mod : modsInCache) {
+			modRoots.put(mod, mod.createTransformRoot());
+		}
+	}
+
+	/** Creates a cache which reads every mod directly from {@link ModLoadOption#createTransformRoot()}, rather than
+	 * copying them into a new filesystem. Nothing may be written to the returned cache, and mods which need to be
+	 * remapped aren't supported. */
+	static TransformCache createView(List<ModLoadOption> orderedMods) {
+		return new TransformCache(orderedMods);
+	}
+
+	private void copyPreviousSegment(ModLoadOption mod, Path previousSrc, Path modDst, Map<String, String> previousHidden) {
+		if (!FasterFiles.isDirectory(previousSrc)) {
+			return;
+		}
+
+		try (Stream<Path> stream = Files.walk(previousSrc)) {
+			stream.filter(FasterFiles::isRegularFile).forEach(path -> {
+				copyFile(path, previousSrc, modDst);
+				String fileName = path.getFileName().toString();
+				if (fileName.endsWith(".class")) {
+					// Hidden classes are left in the cache, so we can find them again by their file
+					String name = LoaderUtil.getClassNameFromTransformCache(path.toString());
+					String reason = previousHidden.get(name);
+					if (reason != null) {
+						hideClass(name, reason);
+					}
+				}
+			});
+		} catch (IOException io) {
+			throw new UncheckedIOException("Failed to copy the previous transform cache segment of " + mod.id(), io);
+		}
+	}
+
+	public TransformCacheStats getStats() {
+		return stats;
+	}
+
 	public Path getRoot(ModLoadOption mod) {
 		return modRoots.get(mod);
 	}
@@ -168,6 +254,49 @@ class TransformCache {
 		return Collections.unmodifiableList(modsInCache);
 	}
 
+	/** @return Every mod which has a {@link #getRoot(ModLoadOption)} in this cache, and which wasn't reused from a
+	 *         previous cache. */
+	public List<ModLoadOption> getModsToTransform() {
+		return Collections.unmodifiableList(modsToTransform);
+	}
+
+	/** @return True if the given mod was copied from a previous cache, and so shouldn't be transformed again. */
+	public boolean isReused(ModLoadOption mod) {
+		return reusedMods.contains(mod);
+	}
+
+	/** @return The set of every loaded mod id, as seen by the given mod. Any {@link Set#contains(Object)} calls are
+	 *         recorded, so they can be checked again before reusing the mod's segment of the cache. */
+	public Set<String> getModIdsSeenBy(ModLoadOption mod) {
+		Map<String, Boolean> queries = requiredModQueries.computeIfAbsent(mod, m -> new ConcurrentHashMap<>());
+		return new AbstractSet<String>() {
+			@Override
+			public boolean contains(Object o) {
+				boolean present = allModIds.contains(o);
+				if (o instanceof String) {
+					queries.put((String) o, present);
+				}
+				return present;
+			}
+
+			@Override
+			public Iterator<String> iterator() {
+				return Collections.unmodifiableSet(allModIds).iterator();
+			}
+
+			@Override
+			public int size() {
+				return allModIds.size();
+			}
+		};
+	}
+
+	/** @return Every mod id the given mod checked for in {@link #getModIdsSeenBy(ModLoadOption)}, mapped to whether
+	 *         it was present. */
+	public Map<String, Boolean> getRequiredModQueries(ModLoadOption mod) {
+		return Collections.unmodifiableMap(requiredModQueries.getOrDefault(mod, Collections.emptyMap()));
+	}
+
 	/** @return The original list of mods, including any which aren't directly in this cache. */
 	public List<ModLoadOption> getAllMods() {
 		return Collections.unmodifiableList(allMods);
@@ -177,13 +306,67 @@ class TransformCache {
 		return Collections.unmodifiableMap(hiddenClasses);
 	}
 
+	public boolean isHidden(String className) {
+		return hiddenClasses.containsKey(className);
+	}
+
+	/** Visits every class file in every mod in {@link #getModsToTransform()}. */
 	public void forEachClassFile(ClassConsumer action)
 			throws IOException {
-		for (ModLoadOption mod : modsInCache) {
-			visitFolder(mod, getRoot(mod), action);
+		forEachClassFile(action, false);
+	}
+
+	/** @param includeReused If true then every mod in {@link #getModsInCache()} is visited, rather than just
+	 *            {@link #getModsToTransform()}. */
+	public void forEachClassFile(ClassConsumer action, boolean includeReused)
+			throws IOException {
+		forEachClassFile(action, includeReused, null);
+	}
+
+	/** @param pool If not null, then classes are passed to the action on the threads of the given pool, rather than
+	 *            on the calling thread. Every class with the same name (from different mods) is still visited in mod
+	 *            order on a single thread, so the action only needs to be safe for concurrent calls with different
+	 *            class names. */
+	public void forEachClassFile(ClassConsumer action, boolean includeReused, @Nullable ForkJoinPool pool)
+			throws IOException {
+		if (pool == null) {
+			for (ModLoadOption mod : includeReused ? modsInCache : modsToTransform) {
+				visitFolder(mod, getRoot(mod), action);
+			}
+			return;
+		}
+
+		Map<String, List<ClassFile>> byName = new LinkedHashMap<>();
+		for (ModLoadOption mod : includeReused ? modsInCache : modsToTransform) {
+			visitFolder(mod, getRoot(mod), (m, name, file) -> {
+				byName.computeIfAbsent(name, n -> new ArrayList<>(1)).add(new ClassFile(m, name, file));
+				return null;
+			});
 		}
+
+		runInPool(pool, new ArrayList<>(byName.values()), files -> {
+			for (ClassFile file : files) {
+				// Re-check, since an earlier class with the same name might have been hidden
+				if (!hiddenClasses.containsKey(file.name)) {
+					byte[] result = action.run(file.mod, file.name, file.file);
+					if (result != null) {
+						Files.write(file.file, result);
+					}
+				}
+			}
+		});
 	}
 
+	/** Runs the given action for every item, on the threads of the given pool. */
+	static <T> void runInPool(ForkJoinPool pool, List<T> items, PoolAction<T> action) throws IOException {
+		try {
+			pool.invoke(new PoolTask<>(items, 0, items.size(), action));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/** Safe to call concurrently, but only for different class names. */
 	public void hideClass(String className, String denyReason) {
 		hiddenClasses.merge(className, denyReason, (current, nval) -> {
 			return current + "\n" + nval;
@@ -229,6 +412,11 @@ class TransformCache {
 		return null;
 	}
 
+	private static String getClassName(Path root, Path file) {
+		String name = root.relativize(file).toString().replace(root.getFileSystem().getSeparator(), ".");
+		return name.substring(0, name.length() - ".class".length());
+	}
+
 	private void visitFolder(ModLoadOption mod, Path root, ClassConsumer action) throws IOException {
 		if (!Files.isDirectory(root)) {
 			return;
@@ -248,7 +436,7 @@ class TransformCache {
 			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
 				String fileName = file.getFileName().toString();
 				if (fileName.endsWith(".class") && couldBeJavaElement(fileName, true)) {
-					String name = LoaderUtil.getClassNameFromTransformCache(file.toString());
+					String name = getClassName(root, file);
 					if (!hiddenClasses.containsKey(name)) {
 						byte[] result = action.run(mod, name, file);
 						if (result != null) {
@@ -274,6 +462,57 @@ class TransformCache {
 		});
 	}
 
+	static final class ClassFile {
+		final ModLoadOption mod;
+		final String name;
+		final Path file;
+
+		ClassFile(ModLoadOption mod, String name, Path file) {
+			this.mod = mod;
+			this.name = name;
+			this.file = file;
+		}
+	}
+
+	@FunctionalInterface
+	interface PoolAction<T> {
+		void run(T item) throws IOException;
+	}
+
+	/** Splits a list of items in half until each task only contains a few items, so idle threads can steal the other
+	 * halves. */
+	static final class PoolTask<T> extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private static final int SPLIT_THRESHOLD = 8;
+
+		final List<T> items;
+		final int from, to;
+		final PoolAction<T> action;
+
+		PoolTask(List<T> items, int from, int to, PoolAction<T> action) {
+			this.items = items;
+			this.from = from;
+			this.to = to;
+			this.action = action;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > SPLIT_THRESHOLD) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new PoolTask<>(items, from, middle, action), new PoolTask<>(items, middle, to, action));
+				return;
+			}
+			try {
+				for (int i = from; i < to; i++) {
+					action.run(items.get(i));
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
 	@FunctionalInterface
 	public interface ClassConsumer {
 		/**
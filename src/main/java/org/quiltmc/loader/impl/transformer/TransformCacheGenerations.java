@@ -0,0 +1,166 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.loader.impl.transformer;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jetbrains.annotations.Nullable;
+import org.quiltmc.loader.api.FasterFiles;
+import org.quiltmc.loader.impl.util.HashUtil;
+import org.quiltmc.loader.impl.util.QuiltLoaderInternal;
+import org.quiltmc.loader.impl.util.QuiltLoaderInternalType;
+import org.quiltmc.loader.impl.util.SystemProperties;
+import org.quiltmc.loader.impl.util.log.Log;
+import org.quiltmc.loader.impl.util.log.LogCategory;
+
+/** Keeps older transform caches around when the set of mods changes, so switching back to a recent mod set can reuse
+ * its cache instead of generating it again. Each older cache is stored next to the current one, named after a hash of
+ * its {@code options.txt}. When there are too many, or they are too old or too large, the least recently used ones are
+ * deleted.
+ * <p>
+ * The modification time of each generation file is used as its "last used" time, since it is set when the cache stops
+ * being the current one. */
+@QuiltLoaderInternal(QuiltLoaderInternalType.NEW_INTERNAL)
+final class TransformCacheGenerations {
+
+	/** The maximum number of transform caches to keep, including the current one. */
+	static final int MAX_GENERATIONS = Integer.getInteger(SystemProperties.TRANSFORM_CACHE_GENERATIONS, 3);
+	static final long MAX_SIZE = Long.getLong(SystemProperties.TRANSFORM_CACHE_GENERATIONS_MAX_SIZE, 2048) * 1024 * 1024;
+	static final long MAX_AGE = TimeUnit.DAYS.toMillis(Long.getLong(SystemProperties.TRANSFORM_CACHE_GENERATIONS_MAX_AGE, 30));
+
+	private static final String PREFIX = "generation-";
+	private static final String SUFFIX = ".zip";
+
+	private TransformCacheGenerations() {}
+
+	static boolean isEnabled() {
+		return MAX_GENERATIONS > 1;
+	}
+
+	static boolean isGenerationFile(Path file) {
+		String name = file.getFileName().toString();
+		return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+	}
+
+	/** @param options The full contents of {@code options.txt}.
+	 * @return The file which the cache with the given options is stored in, when it isn't the current cache. */
+	static Path getFile(Path transformCacheFolder, String options) {
+		String fingerprint = HashUtil.hashToString(HashUtil.computeHash(options));
+		return transformCacheFolder.resolve(PREFIX + fingerprint + SUFFIX);
+	}
+
+	/** Moves the current cache into its own generation file.
+	 *
+	 * @param options The full contents of the current cache's {@code options.txt}.
+	 * @return True if it was moved, or false if it couldn't be. */
+	static boolean archive(Path transformCacheFolder, Path cacheFile, String options) {
+		Path target = getFile(transformCacheFolder, options);
+		try {
+			Files.move(cacheFile, target, StandardCopyOption.REPLACE_EXISTING);
+			Files.setLastModifiedTime(target, FileTime.fromMillis(System.currentTimeMillis()));
+			return true;
+		} catch (IOException e) {
+			Log.warn(LogCategory.CACHE, "Failed to keep the previous transform cache as " + target, e);
+			return false;
+		}
+	}
+
+	/** Moves the generation with the given options back to be the current cache.
+	 *
+	 * @return True if it was moved, or false if there is no such generation. */
+	static boolean restore(Path transformCacheFolder, Path cacheFile, String options) {
+		if (!isEnabled()) {
+			return false;
+		}
+		Path source = getFile(transformCacheFolder, options);
+		if (!FasterFiles.isRegularFile(source)) {
+			return false;
+		}
+		try {
+			Files.move(source, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+			return true;
+		} catch (IOException e) {
+			Log.warn(LogCategory.CACHE, "Failed to restore the older transform cache " + source, e);
+			return false;
+		}
+	}
+
+	/** @return The most recently used generation, or null if there are none. */
+	@Nullable
+	static Path findMostRecent(Path transformCacheFolder) throws IOException {
+		List<Path> files = list(transformCacheFolder);
+		return files.isEmpty() ? null : files.get(0);
+	}
+
+	/** Deletes generations until there are at most {@link #MAX_GENERATIONS} caches, none of them older than
+	 * {@link #MAX_AGE}, and all of them (including the current cache) smaller than {@link #MAX_SIZE} in total. */
+	static void evict(Path transformCacheFolder, Path cacheFile) {
+		evict(transformCacheFolder, cacheFile, MAX_GENERATIONS, MAX_AGE, MAX_SIZE);
+	}
+
+	/** Like {@link #evict(Path, Path)}, but with the given limits instead of the configured ones. */
+	static void evict(Path transformCacheFolder, Path cacheFile, int maxGenerations, long maxAge, long maxSize) {
+		try {
+			List<Path> files = list(transformCacheFolder);
+			long totalSize = FasterFiles.isRegularFile(cacheFile) ? Files.size(cacheFile) : 0;
+			long now = System.currentTimeMillis();
+			int kept = 1;
+
+			for (Path file : files) {
+				long size = Files.size(file);
+				long age = now - Files.getLastModifiedTime(file).toMillis();
+				if (kept < maxGenerations && age <= maxAge && totalSize + size <= maxSize) {
+					kept++;
+					totalSize += size;
+				} else {
+					Log.info(LogCategory.CACHE, "Deleting the older transform cache " + file.getFileName());
+					Files.delete(file);
+				}
+			}
+		} catch (IOException e) {
+			Log.warn(LogCategory.CACHE, "Failed to delete older transform caches", e);
+		}
+	}
+
+	/** @return Every generation file, most recently used first. */
+	private static List<Path> list(Path transformCacheFolder) throws IOException {
+		List<Path> files = new ArrayList<>();
+		if (!FasterFiles.isDirectory(transformCacheFolder)) {
+			return files;
+		}
+		Map<Path, FileTime> times = new HashMap<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(transformCacheFolder, PREFIX + "*" + SUFFIX)) {
+			for (Path file : stream) {
+				files.add(file);
+				times.put(file, Files.getLastModifiedTime(file));
+			}
+		}
+		files.sort(Comparator.comparing(times::get, Comparator.reverseOrder()));
+		return files;
+	}
+}
@@ -20,10 +20,15 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.jetbrains.annotations.Nullable;
 import org.quiltmc.loader.api.FasterFiles;
 import org.quiltmc.loader.api.QuiltLoader;
 import org.quiltmc.loader.api.plugin.solver.ModLoadOption;
@@ -32,7 +37,10 @@ import org.quiltmc.loader.impl.filesystem.QuiltMapFileSystem;
 import org.quiltmc.loader.impl.launch.common.QuiltLauncherBase;
 import org.quiltmc.loader.impl.util.QuiltLoaderInternal;
 import org.quiltmc.loader.impl.util.QuiltLoaderInternalType;
+import org.quiltmc.loader.impl.util.QuiltLoaderWorkerPool;
 import org.quiltmc.loader.impl.util.SystemProperties;
+import org.quiltmc.loader.impl.util.log.Log;
+import org.quiltmc.loader.impl.util.log.LogCategory;
 
 import net.fabricmc.accesswidener.AccessWidener;
 import net.fabricmc.accesswidener.AccessWidenerReader;
@@ -40,65 +48,175 @@ import net.fabricmc.accesswidener.AccessWidenerReader;
 @QuiltLoaderInternal(QuiltLoaderInternalType.NEW_INTERNAL)
 final class TransformCacheGenerator {
 
+	static final boolean PARALLEL = Boolean.getBoolean(SystemProperties.PARALLEL_TRANSFORM_CACHE);
+
+	/** The maximum number of bytes of transformed classes which are kept in memory until the internals hider rewrites
+	 * them. Classes transformed after this is reached are written straight away, and read again by the rewrite. */
+	static final long TRANSFORMED_MEMORY = Long.getLong(SystemProperties.TRANSFORM_CACHE_GENERATOR_MEMORY, 64) * 1024 * 1024;
 
 	static TransformCache generate(Path root, List<ModLoadOption> modList) throws ModResolutionException, IOException {
-		TransformCache cache = new TransformCache(root, modList);
+		return generate(root, modList, null, Collections.emptyMap(), new TransformCacheStats());
+	}
+
+	/** @param segments The segments to reuse from a previous cache, and to record the new segment inputs into.
+	 * @param previousHidden The hidden classes of the previous cache.
+	 * @param stats The stats to record the time spent in each phase into.
+	 * @return The generated cache, or null if the reused segments turned out to be invalid, in which case the caller
+	 *         must generate the cache again from a clean root, using {@link TransformCacheSegments#withoutReuse()}. */
+	@Nullable
+	static TransformCache generate(Path root, List<ModLoadOption> modList, @Nullable TransformCacheSegments segments,
+		Map<String, String> previousHidden, TransformCacheStats stats) throws ModResolutionException, IOException {
+
+		ForkJoinPool pool = PARALLEL ? QuiltLoaderWorkerPool.get() : null;
+		return generate0(root, modList, segments, previousHidden, stats, pool);
+	}
+
+	/** @param pool The pool to transform classes in, or null to transform them on this thread. The generated cache
+	 *            must be identical either way. */
+	@Nullable
+	static TransformCache generate0(Path root, List<ModLoadOption> modList,
+		@Nullable TransformCacheSegments segments, Map<String, String> previousHidden, TransformCacheStats stats,
+		@Nullable ForkJoinPool pool) throws ModResolutionException, IOException {
+
+		TransformCache cache = new TransformCache(root, modList, segments, previousHidden, stats);
 		QuiltMapFileSystem.dumpEntries(root.getFileSystem(), "after-copy");
 
 		// Transform time!
 		// Load AWs
+		long awStart = System.nanoTime();
 		AccessWidener accessWidener = loadAccessWideners(cache);
+		stats.end(TransformCacheStats.Phase.ACCESS_WIDENERS, awStart);
+		boolean chasm = Boolean.getBoolean(SystemProperties.ENABLE_EXPERIMENTAL_CHASM);
+		InternalsHiderTransform internalsHider = new InternalsHiderTransform(InternalsHiderTransform.Target.MOD);
+		Map<Path, ModLoadOption> classes = new ConcurrentHashMap<>();
+
+		// Classes which have been transformed, but not written yet.
+		// Since the internals hider needs to run on every class anyway, we only write each class once, after that.
+		// This is limited to TRANSFORMED_MEMORY bytes, so memory use doesn't grow with the size of every mod
+		Map<Path, byte[]> transformed = new ConcurrentHashMap<>();
+		AtomicLong transformedBytes = new AtomicLong();
+
 		// game provider transformer and QuiltTransformer
+		// When chasm is disabled the internals hider scan happens in the same pass, since nothing else changes the
+		// classes before the internals hider runs.
+		// Reused segments are scanned too, since they can declare internals for the new classes
 		cache.forEachClassFile((mod, name, file) -> {
 
-			byte[] classBytes = QuiltLauncherBase.getLauncher().getEntrypointTransformer().transform(name);
-
-			if (classBytes == null) {
-				classBytes = Files.readAllBytes(file);
+			if (cache.isReused(mod)) {
+				stats.count(TransformCacheStats.Counter.CLASSES_REUSED, 1);
+				if (!chasm) {
+					long start = System.nanoTime();
+					internalsHider.scanClass(mod, file, Files.readAllBytes(file));
+					stats.end(TransformCacheStats.Phase.INTERNALS_SCAN, start);
+				}
+				return null;
 			}
 
-			return QuiltTransformer.transform(
+			byte[] patched = QuiltLauncherBase.getLauncher().getEntrypointTransformer().transform(name);
+			byte[] classBytes = patched != null ? patched : Files.readAllBytes(file);
+			stats.count(TransformCacheStats.Counter.CLASSES_VISITED, 1);
+			stats.count(TransformCacheStats.Counter.CLASS_BYTES_IN, classBytes.length);
+
+			byte[] result = QuiltTransformer.transform(
 					QuiltLoader.isDevelopmentEnvironment(),
 					QuiltLauncherBase.getLauncher().getEnvironmentType(),
 					cache,
 					accessWidener,
+					chasm ? null : internalsHider,
 					name,
 					mod,
 					classBytes
 			);
-		});
+
+			if (result == null) {
+				if (cache.isHidden(name)) {
+					return null;
+				}
+				// Not transformed by quilt, but the game provider might still have patched it
+				result = patched;
+			}
+
+			if (chasm) {
+				// Chasm reads the classes from the cache, so they need to be written now
+				return result;
+			}
+
+			classes.put(file, mod);
+			if (result != null) {
+				if (transformedBytes.addAndGet(result.length) > TRANSFORMED_MEMORY) {
+					// Over budget, so write it now and read it again later
+					transformedBytes.addAndGet(-result.length);
+					return result;
+				}
+				transformed.put(file, result);
+			}
+			return null;
+		}, true, pool);
 
 		// chasm
-		if (Boolean.getBoolean(SystemProperties.ENABLE_EXPERIMENTAL_CHASM)) {
+		if (chasm) {
+			long chasmStart = System.nanoTime();
 			ChasmInvoker.applyChasm(cache);
+			stats.end(TransformCacheStats.Phase.CHASM, chasmStart);
+
+			// internals hider
+			// the double read is necessary to avoid storing all classes in memory at once, and thus having memory complexity
+			// proportional to mod count
+			cache.forEachClassFile((mod, name, file) -> {
+				long start = System.nanoTime();
+				byte[] classBytes = Files.readAllBytes(file);
+				if (!cache.isReused(mod)) {
+					classes.put(file, mod);
+				}
+				internalsHider.scanClass(mod, file, classBytes);
+				stats.end(TransformCacheStats.Phase.INTERNALS_SCAN, start);
+				return null;
+			}, true, pool);
 		}
-		InternalsHiderTransform internalsHider = new InternalsHiderTransform(InternalsHiderTransform.Target.MOD);
-		Map<Path, ModLoadOption> classes = new HashMap<>();
 
-		// internals hider
-		// the double read is necessary to avoid storing all classes in memory at once, and thus having memory complexity
-		// proportional to mod count
-		cache.forEachClassFile((mod, name, file) -> {
-			byte[] classBytes = Files.readAllBytes(file);
-			classes.put(file, mod);
-			internalsHider.scanClass(mod, file, classBytes);
-			return null;
-		});
+		if (segments != null) {
+			String fingerprint = internalsHider.computeScanFingerprint();
+			if (!segments.reused.isEmpty() && !fingerprint.equals(segments.internalsFingerprint)) {
+				Log.info(LogCategory.CACHE, "Not reusing any previous transform cache segments since @ModInternal declarations changed");
+				return null;
+			}
+			segments.internalsFingerprint = fingerprint;
+			for (ModLoadOption mod : cache.getModsToTransform()) {
+				segments.recordRequired(mod.id(), cache.getRequiredModQueries(mod));
+			}
+		}
 
-		for (Map.Entry<Path, ModLoadOption> entry : classes.entrySet()) {
-			byte[] classBytes = Files.readAllBytes(entry.getKey());
+		TransformCache.PoolAction<Map.Entry<Path, ModLoadOption>> hideInternals = entry -> {
+			long start = System.nanoTime();
+			byte[] classBytes = transformed.remove(entry.getKey());
+			if (classBytes == null) {
+				classBytes = Files.readAllBytes(entry.getKey());
+			} else {
+				transformedBytes.addAndGet(-classBytes.length);
+			}
 			byte[] newBytes = internalsHider.run(entry.getValue(), classBytes);
 			if (newBytes != null) {
 				Files.write(entry.getKey(), newBytes);
+				stats.count(TransformCacheStats.Counter.CLASS_BYTES_OUT, newBytes.length);
+			}
+			stats.end(TransformCacheStats.Phase.INTERNALS_REWRITE, start);
+		};
+
+		if (pool == null) {
+			for (Map.Entry<Path, ModLoadOption> entry : classes.entrySet()) {
+				hideInternals.run(entry);
 			}
+		} else {
+			TransformCache.runInPool(pool, new ArrayList<>(classes.entrySet()), hideInternals);
 		}
 
 		internalsHider.finish();
 
+		stats.count(TransformCacheStats.Counter.CLASSES_HIDDEN, cache.getHiddenClasses().size());
 		return cache;
 	}
 
-	private static AccessWidener loadAccessWideners(TransformCache cache) {
+	static AccessWidener loadAccessWideners(TransformCache cache) {
 		AccessWidener ret = new AccessWidener();
 		AccessWidenerReader accessWidenerReader = new AccessWidenerReader(ret);
 
@@ -22,57 +22,87 @@ import java.io.IOError;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 
+import org.jetbrains.annotations.Nullable;
 import org.quiltmc.loader.api.FasterFiles;
 import org.quiltmc.loader.api.QuiltLoader;
 import org.quiltmc.loader.api.plugin.solver.ModLoadOption;
 import org.quiltmc.loader.api.plugin.solver.ModSolveResult;
+import org.quiltmc.loader.impl.QuiltLoaderImpl;
 import org.quiltmc.loader.impl.discovery.ModResolutionException;
 import org.quiltmc.loader.impl.filesystem.PartiallyWrittenIOException;
 import org.quiltmc.loader.impl.filesystem.QuiltMapFileSystem;
 import org.quiltmc.loader.impl.filesystem.QuiltUnifiedFileSystem;
 import org.quiltmc.loader.impl.filesystem.QuiltUnifiedPath;
+import org.quiltmc.loader.impl.filesystem.QuiltZipBlobStore;
 import org.quiltmc.loader.impl.filesystem.QuiltZipFileSystem;
+import org.quiltmc.loader.impl.filesystem.QuiltClassPath;
 import org.quiltmc.loader.impl.filesystem.QuiltZipPath;
+import org.quiltmc.loader.impl.launch.common.QuiltLauncherBase;
 import org.quiltmc.loader.impl.util.FilePreloadHelper;
 import org.quiltmc.loader.impl.util.FileSystemUtil;
+import org.quiltmc.loader.impl.util.HashUtil;
 import org.quiltmc.loader.impl.util.QuiltLoaderInternal;
 import org.quiltmc.loader.impl.util.QuiltLoaderInternalType;
 import org.quiltmc.loader.impl.util.SystemProperties;
 import org.quiltmc.loader.impl.util.log.Log;
 import org.quiltmc.loader.impl.util.log.LogCategory;
-import org.quiltmc.parsers.json.JsonReader;
-import org.quiltmc.parsers.json.JsonToken;
-import org.quiltmc.parsers.json.JsonWriter;
 
 @QuiltLoaderInternal(QuiltLoaderInternalType.NEW_INTERNAL)
 public class TransformCacheManager {
 
 	static final boolean SHOW_KEY_DIFFERENCE = Boolean.getBoolean(SystemProperties.LOG_CACHE_KEY_CHANGES);
+	static final boolean LAZY = Boolean.getBoolean(SystemProperties.LAZY_TRANSFORM_CACHE);
+	static final boolean BLOB_STORE = Boolean.getBoolean(SystemProperties.TRANSFORM_CACHE_BLOB_STORE);
 
 	/** Sub-folder for classes which are not associated with any mod in particular, but still need to be classloaded. */
 	public static final String TRANSFORM_CACHE_NONMOD_CLASSLOADABLE = "Unknown Mod";
 
 	private static final String CACHE_FILE = "files.zip";
 
+	/** The previous {@link #CACHE_FILE}, which is kept around while generating a new cache so its segments can be
+	 * reused. This is only used when {@link TransformCacheGenerations} is disabled, since otherwise the previous cache
+	 * is kept as a generation instead. */
+	private static final String PREVIOUS_CACHE_FILE = "files.previous.zip";
+
 	private static final String FILE_TRANSFORM_COMPLETE = "__TRANSFORM_COMPLETE";
-	private static final String DENY_LOAD_REASONS_PATH = "deny_load_reasons.json";
+	private static final String HIDDEN_CLASSES_PATH = "hidden_classes.bin";
+
+	/** A {@link TransformCacheStats} report for the last time the cache was generated. This is in the transform cache
+	 * folder (rather than the cache file) so it can be read easily. */
+	private static final String STATS_REPORT_FILE = "cache-report.txt";
+
+	/** The {@link QuiltClassPath} snapshot for this cache's mods, which is only valid for the same options as the cache
+	 * itself, and so is deleted along with it. */
+	private static final String CLASS_PATH_SNAPSHOT_FILE = "classpath-snapshot.bin";
+
+	/** The {@link QuiltZipBlobStore} folder, which is next to every transform cache folder (rather than inside one) so
+	 * that they can all share it. */
+	private static final String BLOB_STORE_FOLDER = "transform-blobs";
+	private static final String TRANSFORM_CACHE_FOLDER_PREFIX = "transform-cache-";
+	/** Unreferenced blobs newer than this might belong to a cache that another launch is still writing. */
+	private static final long BLOB_SWEEP_MIN_AGE = TimeUnit.HOURS.toMillis(1);
 
+	/** @param allowLazy If false then the transform cache is always generated before this returns, even when
+	 *            {@link SystemProperties#LAZY_TRANSFORM_CACHE} is enabled. */
 	public static TransformCacheResult populateTransformBundle(Path transformCacheFolder, List<ModLoadOption> modList,
-		Map<String, String> modOriginHash, ModSolveResult result) throws ModResolutionException {
+		Map<String, String> modOriginHash, ModSolveResult result, boolean allowLazy) throws ModResolutionException {
 		Map<String, String> map = new TreeMap<>();
 		// Mod order is important? For now, assume it is
 		int index = 0;
@@ -100,30 +130,96 @@ public class TransformCacheManager {
 		}
 
 		QuiltZipPath existing = checkTransformCache(transformCacheFolder, map);
+		if (existing == null && !QuiltLoader.isDevelopmentEnvironment()) {
+			Path cacheFile = transformCacheFolder.resolve(CACHE_FILE);
+			if (TransformCacheGenerations.restore(transformCacheFolder, cacheFile, toString(map))) {
+				Log.info(LogCategory.CACHE, "Found an older transform cache for this set of mods");
+				existing = checkTransformCache(transformCacheFolder, map);
+			}
+		}
 		boolean isNewlyGenerated = false;
+		TransformCacheStats stats = null;
 		if (existing == null) {
-			existing = createTransformCache(transformCacheFolder.resolve(CACHE_FILE), toString(map), modList);
+			TransformCacheSegments segments = new TransformCacheSegments(
+				computeSegmentKeys(modList, modOriginHash, enableChasm)
+			);
+
+			if (allowLazy && LAZY && LazyClassTransformer.canTransformLazily(modList)) {
+				LazyClassTransformer lazy;
+				try {
+					lazy = LazyClassTransformer.create(modList);
+				} catch (IOException e) {
+					throw new ModResolutionException("Failed to scan mod classes for lazy transforming!", e);
+				}
+				startBackfill(transformCacheFolder, toString(map), modList, segments, !enableChasm);
+				return new TransformCacheResult(lazy, toString(map));
+			}
+
+			stats = new TransformCacheStats();
+			existing = createTransformCache(transformCacheFolder, toString(map), modList, segments, !enableChasm, stats);
 			isNewlyGenerated = true;
 		} else if (!Boolean.getBoolean(SystemProperties.DISABLE_PRELOAD_TRANSFORM_CACHE)) {
 			FilePreloadHelper.preLoad(transformCacheFolder.resolve(CACHE_FILE));
 		}
+		if (TransformCacheGenerations.isEnabled()) {
+			TransformCacheGenerations.evict(transformCacheFolder, transformCacheFolder.resolve(CACHE_FILE));
+		}
+		if (BLOB_STORE && isNewlyGenerated) {
+			sweepBlobStore(transformCacheFolder);
+		}
 		try {
-			Map<String, String> hiddenClasses = new HashMap<>();
-			try (JsonReader reader = JsonReader.json(existing.resolve(DENY_LOAD_REASONS_PATH))) {
-				reader.beginObject();
-				while (reader.peek() == JsonToken.NAME) {
-					String clName = reader.nextName();
-					String clReason = reader.nextString();
-					hiddenClasses.put(clName, clReason);
-				}
-				reader.endObject();
-			}
-			return new TransformCacheResult(existing, isNewlyGenerated, hiddenClasses);
+			return new TransformCacheResult(
+				existing, isNewlyGenerated, readHiddenClasses(existing), stats,
+				transformCacheFolder.resolve(CLASS_PATH_SNAPSHOT_FILE), toString(map)
+			);
 		} catch (IOException e) {
 			throw new ModResolutionException("Failed to read hidden classes in the transform cache file!", e);
 		}
 	}
 
+	private static Map<String, String> readHiddenClasses(Path cacheRoot) throws IOException {
+		return HiddenClassTable.read(ByteBuffer.wrap(Files.readAllBytes(cacheRoot.resolve(HIDDEN_CLASSES_PATH))));
+	}
+
+	/** Computes the static key of every mod's segment of the transform cache. This contains every input which is known
+	 * before the cache is generated - see {@link TransformCacheSegments} for the inputs which aren't. */
+	private static Map<String, String> computeSegmentKeys(List<ModLoadOption> modList, Map<String, String> modOriginHash,
+		boolean enableChasm) {
+
+		String gameId = QuiltLoaderImpl.INSTANCE.getGameProvider().getGameId();
+
+		StringBuilder common = new StringBuilder();
+		common.append("env=").append(QuiltLauncherBase.getLauncher().getEnvironmentType()).append("\n");
+		common.append("chasm=").append(enableChasm).append("\n");
+		// Game classes are stripped differently in development
+		common.append("development=").append(QuiltLoader.isDevelopmentEnvironment()).append("\n");
+		// The loader itself provides the entrypoint transformer, and the internals of loader
+		common.append("loader=").append(modOriginHash.get(QuiltLoaderImpl.MOD_ID)).append("\n");
+
+		// Access wideners are only applied to the game
+		StringBuilder accessWideners = new StringBuilder();
+		for (ModLoadOption mod : modList) {
+			if (!mod.metadata().accessWideners().isEmpty()) {
+				accessWideners.append("aw=").append(mod.id()).append(" ").append(modOriginHash.get(mod.id()));
+				accessWideners.append("\n");
+			}
+		}
+
+		Map<String, String> keys = new TreeMap<>();
+		for (ModLoadOption mod : modList) {
+			StringBuilder sb = new StringBuilder(common);
+			sb.append("origin=").append(modOriginHash.get(mod.id())).append("\n");
+			sb.append("transform=").append(mod.needsTransforming());
+			sb.append(" ").append(mod.couldResourcesChange());
+			sb.append(" ").append(mod.namespaceMappingFrom()).append("\n");
+			if (mod.id().equals(gameId)) {
+				sb.append(accessWideners);
+			}
+			keys.put(mod.id(), HashUtil.hashToString(HashUtil.computeHash(sb.toString())));
+		}
+		return keys;
+	}
+
 	private static String toString(Map<String, String> map) {
 		StringBuilder optionList = new StringBuilder();
 		for (Entry<String, String> entry : map.entrySet()) {
@@ -154,6 +250,9 @@ public class TransformCacheManager {
 			return null;
 		}
 
+		boolean keepPrevious = false;
+		StringBuilder previousOptions = new StringBuilder();
+
 		try (QuiltZipFileSystem fs = new QuiltZipFileSystem("transform-cache", cacheFile, "")) {
 			QuiltZipPath inner = fs.getRoot();
 			if (!FasterFiles.isRegularFile(inner.resolve(FILE_TRANSFORM_COMPLETE))) {
@@ -172,6 +271,7 @@ public class TransformCacheManager {
 					if (line.isEmpty()) {
 						continue;
 					}
+					previousOptions.append(line).append('\n');
 					int eq = line.indexOf('=');
 					String key = line.substring(0, eq);
 					String value = line.substring(eq + 1);
@@ -211,11 +311,12 @@ public class TransformCacheManager {
 							+ " different keys."
 							+ " (Add '-Dloader.transform_cache.log_changed_keys=true' to see all changes).");
 					}
-					erasePreviousTransformCache(transformCacheFolder, cacheFile, null);
-					return null;
+					keepPrevious = true;
 				}
 			}
-			return inner;
+			if (!keepPrevious) {
+				return inner;
+			}
 		} catch (IOException | IOError io) {
 			if (io instanceof PartiallyWrittenIOException) {
 				Log.info(LogCategory.CACHE, "Not reusing previous transform cache since it's incomplete!");
@@ -230,10 +331,70 @@ public class TransformCacheManager {
 
 			return null;
 		}
+
+		if (TransformCacheGenerations.isEnabled()) {
+			// Keep it as an older generation, both for switching back to it and for reusing its segments
+			TransformCacheGenerations.archive(transformCacheFolder, cacheFile, previousOptions.toString());
+			erasePreviousTransformCache(transformCacheFolder, cacheFile, null);
+		} else {
+			// Segments of the cache might still be reusable, so keep it around until the new cache is generated
+			keepPreviousTransformCache(transformCacheFolder, cacheFile);
+		}
+		return null;
+	}
+
+	/** Generates the transform cache on a background thread, so the next launch can use it instead of transforming
+	 * classes lazily again. This is a daemon thread, so if the game exits first then the (incomplete) cache is just
+	 * discarded by the next launch. */
+	private static void startBackfill(Path transformCacheFolder, String options, List<ModLoadOption> modList,
+		TransformCacheSegments segments, boolean allowReuse) {
+
+		Thread thread = new Thread(() -> {
+			TransformCacheStats stats = new TransformCacheStats();
+			try {
+				QuiltZipPath root = createTransformCache(transformCacheFolder, options, modList, segments, allowReuse, stats);
+				root.getFileSystem().close();
+				if (TransformCacheGenerations.isEnabled()) {
+					TransformCacheGenerations.evict(transformCacheFolder, transformCacheFolder.resolve(CACHE_FILE));
+				}
+				if (BLOB_STORE) {
+					sweepBlobStore(transformCacheFolder);
+				}
+				Log.info(LogCategory.CACHE, "Finished generating the transform cache in the background in " + stats.getNanos(TransformCacheStats.Phase.TOTAL) / 1_000_000 + "ms");
+			} catch (ModResolutionException | IOException | RuntimeException e) {
+				Log.warn(LogCategory.CACHE, "Failed to generate the transform cache in the background", e);
+			}
+		}, "Quilt Loader Transform Cache Backfill");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+	}
+
+	private static void keepPreviousTransformCache(Path transformCacheFolder, Path cacheFile)
+		throws ModResolutionException {
+
+		Path previousFile = transformCacheFolder.resolve(PREVIOUS_CACHE_FILE);
+		try {
+			Files.move(cacheFile, previousFile, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			Log.info(LogCategory.CACHE, "Failed to keep the previous transform cache, so no segments will be reused", e);
+			erasePreviousTransformCache(transformCacheFolder, cacheFile, null);
+			return;
+		}
+		erasePreviousTransformCache(transformCacheFolder, cacheFile, null, previousFile);
 	}
 
 	private static void erasePreviousTransformCache(Path transformCacheFolder, Path cacheFile, Throwable suppressed)
 		throws ModResolutionException {
+		erasePreviousTransformCache(transformCacheFolder, cacheFile, suppressed, null);
+	}
+
+	/** Deletes every file in the transform cache folder, except for older generations (which are only deleted by
+	 * {@link TransformCacheGenerations#evict(Path, Path)}).
+	 *
+	 * @param keep Another file in the transform cache folder which shouldn't be deleted, or null. */
+	private static void erasePreviousTransformCache(Path transformCacheFolder, Path cacheFile, Throwable suppressed,
+		@Nullable Path keep) throws ModResolutionException {
 
 		if (!Files.exists(transformCacheFolder)) {
 			return;
@@ -243,6 +404,9 @@ public class TransformCacheManager {
 			Files.walkFileTree(transformCacheFolder, Collections.emptySet(), 1, new SimpleFileVisitor<Path>() {
 				@Override
 				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+					if (file.equals(keep) || TransformCacheGenerations.isGenerationFile(file)) {
+						return FileVisitResult.CONTINUE;
+					}
 					Files.delete(file);
 					return FileVisitResult.CONTINUE;
 				}
@@ -260,8 +424,19 @@ public class TransformCacheManager {
 
 	static final boolean WRITE_CUSTOM = true;
 
-	private static QuiltZipPath createTransformCache(Path transformCacheFile, String options, List<
-		ModLoadOption> modList) throws ModResolutionException {
+	/** @param allowReuse If true then segments from {@link #PREVIOUS_CACHE_FILE}, or the most recently used older
+	 *            generation, will be reused if possible.
+	 * @param stats The stats to record every phase of generation into. These are also written to
+	 *            {@link #STATS_REPORT_FILE}. */
+	private static QuiltZipPath createTransformCache(Path transformCacheFolder, String options, List<
+		ModLoadOption> modList, TransformCacheSegments segments, boolean allowReuse, TransformCacheStats stats)
+		throws ModResolutionException {
+
+		long start = System.nanoTime();
+		Path transformCacheFile = transformCacheFolder.resolve(CACHE_FILE);
+		Path previousFile = transformCacheFolder.resolve(PREVIOUS_CACHE_FILE);
+		// Older generations are kept after reusing their segments, unlike the previous cache file
+		Path deleteAfter = previousFile;
 
 		try {
 			Files.createDirectories(transformCacheFile.getParent());
@@ -269,51 +444,161 @@ public class TransformCacheManager {
 			throw new ModResolutionException("Failed to create the transform cache parent directory!", e);
 		}
 
-		if (!Boolean.getBoolean(SystemProperties.DISABLE_OPTIMIZED_COMPRESSED_TRANSFORM_CACHE)) {
-			try (QuiltUnifiedFileSystem fs = new QuiltUnifiedFileSystem("transform-cache", true)) {
-				Path root = fs.getRoot();
-				writeTransformCache(options, modList, root);
-				QuiltZipFileSystem.writeQuiltCompressedFileSystem(root, transformCacheFile);
+		if (!FasterFiles.exists(previousFile) && TransformCacheGenerations.isEnabled()) {
+			try {
+				Path generation = TransformCacheGenerations.findMostRecent(transformCacheFolder);
+				if (generation != null) {
+					previousFile = generation;
+					deleteAfter = null;
+				}
+			} catch (IOException e) {
+				Log.warn(LogCategory.CACHE, "Failed to find older transform caches to reuse segments from", e);
+			}
+		}
+
+		boolean optimised = !Boolean.getBoolean(SystemProperties.DISABLE_OPTIMIZED_COMPRESSED_TRANSFORM_CACHE);
+		QuiltZipFileSystem previous = null;
+		Map<String, String> previousHidden = Collections.emptyMap();
+
+		try {
+			if (allowReuse && optimised && FasterFiles.exists(previousFile)) {
+				try {
+					previous = new QuiltZipFileSystem("transform-cache-previous", previousFile, "");
+					Set<String> modIds = new HashSet<>();
+					for (ModLoadOption mod : modList) {
+						modIds.add(mod.id());
+					}
+					segments = segments.findReusable(previous.getRoot(), modIds);
+					previousHidden = readHiddenClasses(previous.getRoot());
+					Log.info(
+						LogCategory.CACHE, "Reusing %d of %d transform cache segments", segments.reused.size(),
+						segments.keys.size()
+					);
+				} catch (IOException | IOError io) {
+					Log.info(LogCategory.CACHE, "Not reusing any previous transform cache segments since something went wrong while reading them!", io);
+					segments = segments.withoutReuse();
+					previousHidden = Collections.emptyMap();
+				}
+			}
+
+			if (optimised) {
+				// Normally this only loops once, unless the reused segments turn out to be invalid
+				while (true) {
+					try (QuiltUnifiedFileSystem fs = new QuiltUnifiedFileSystem("transform-cache", true)) {
+						Path root = fs.getRoot();
+						if (writeTransformCache(options, modList, root, segments, previousHidden, stats)) {
+							long writeStart = System.nanoTime();
+							Path blobStore = BLOB_STORE ? transformCacheFolder.getParent().resolve(BLOB_STORE_FOLDER) : null;
+							QuiltZipFileSystem.writeQuiltCompressedFileSystem(root, transformCacheFile, blobStore);
+							stats.end(TransformCacheStats.Phase.WRITE, writeStart);
+							finishStats(transformCacheFolder, transformCacheFile, stats, start);
+							return openCache(transformCacheFile);
+						}
+					} catch (IOException e) {
+						throw new ModResolutionException("Failed to create the transform bundle!", e);
+					}
+					segments = segments.withoutReuse();
+				}
+			}
+
+			try (FileSystemUtil.FileSystemDelegate fs = FileSystemUtil.getJarFileSystem(transformCacheFile, true)) {
+				URI fileUri = transformCacheFile.toUri();
+				URI zipUri = new URI("jar:" + fileUri.getScheme(), fileUri.getPath(), null);
+
+				Path inner = fs.get().getPath("/");
+
+				writeTransformCache(options, modList, inner, segments.withoutReuse(), Collections.emptyMap(), stats);
 
-				return openCache(transformCacheFile);
 			} catch (IOException e) {
 				throw new ModResolutionException("Failed to create the transform bundle!", e);
+			} catch (URISyntaxException e) {
+				throw new ModResolutionException(e);
 			}
+
+			finishStats(transformCacheFolder, transformCacheFile, stats, start);
+			return openCache(transformCacheFile);
+		} finally {
+			closePreviousTransformCache(previous, deleteAfter);
 		}
+	}
 
-		try (FileSystemUtil.FileSystemDelegate fs = FileSystemUtil.getJarFileSystem(transformCacheFile, true)) {
-			URI fileUri = transformCacheFile.toUri();
-			URI zipUri = new URI("jar:" + fileUri.getScheme(), fileUri.getPath(), null);
+	private static void finishStats(Path transformCacheFolder, Path transformCacheFile, TransformCacheStats stats,
+		long start) {
 
-			Path inner = fs.get().getPath("/");
+		stats.end(TransformCacheStats.Phase.TOTAL, start);
+		try {
+			stats.count(TransformCacheStats.Counter.CACHE_FILE_BYTES, Files.size(transformCacheFile));
+			StringBuilder sb = new StringBuilder("Generated the transform cache:");
+			stats.appendLines(line -> sb.append("\n  ").append(line));
+			Log.info(LogCategory.CACHE, sb.toString());
+			stats.writeReport(transformCacheFolder.resolve(STATS_REPORT_FILE));
+		} catch (IOException e) {
+			Log.warn(LogCategory.CACHE, "Failed to write the transform cache generation report", e);
+		}
+	}
 
-			writeTransformCache(options, modList, inner);
+	/** Deletes every blob which isn't used by any cache file (including older generations) in any transform cache
+	 * folder next to the given one. */
+	private static void sweepBlobStore(Path transformCacheFolder) {
+		Path parent = transformCacheFolder.getParent();
+		Set<String> referenced = new HashSet<>();
+		try {
+			Files.walkFileTree(parent, Collections.emptySet(), 2, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+					if (dir.equals(parent) || dir.getFileName().toString().startsWith(TRANSFORM_CACHE_FOLDER_PREFIX)) {
+						return FileVisitResult.CONTINUE;
+					}
+					return FileVisitResult.SKIP_SUBTREE;
+				}
 
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+					if (!file.getParent().equals(parent) && file.getFileName().toString().endsWith(".zip")) {
+						QuiltZipBlobStore.collectReferences(file, referenced);
+					}
+					return FileVisitResult.CONTINUE;
+				}
+			});
+			long deleted = QuiltZipBlobStore.sweep(parent.resolve(BLOB_STORE_FOLDER), referenced, BLOB_SWEEP_MIN_AGE);
+			if (deleted > 0) {
+				Log.info(LogCategory.CACHE, "Deleted " + deleted / 1024 + "KB of unused transform cache blobs");
+			}
 		} catch (IOException e) {
-			throw new ModResolutionException("Failed to create the transform bundle!", e);
-		} catch (URISyntaxException e) {
-			throw new ModResolutionException(e);
+			// If any cache can't be read then we don't know which blobs it uses, so nothing can be deleted
+			Log.warn(LogCategory.CACHE, "Failed to delete unused transform cache blobs", e);
 		}
-
-		return openCache(transformCacheFile);
 	}
 
-	private static void writeTransformCache(String options, List<ModLoadOption> modList, Path root) throws ModResolutionException, IOException {
-		TransformCache cache = TransformCacheGenerator.generate(root, modList);
-		QuiltMapFileSystem.dumpEntries(root.getFileSystem(), "after-populate");
-		Files.write(root.resolve("options.txt"), options.getBytes(StandardCharsets.UTF_8));
-		try (JsonWriter json = JsonWriter.json(Files.newBufferedWriter(root.resolve(DENY_LOAD_REASONS_PATH)))) {
-			if (true) {
-				json.setIndent(" ");
+	private static void closePreviousTransformCache(@Nullable QuiltZipFileSystem previous, @Nullable Path previousFile) {
+		try {
+			if (previous != null) {
+				previous.close();
 			}
-			json.beginObject();
-			for (Map.Entry<String,String> entry : cache.getHiddenClasses().entrySet()) {
-				json.name(entry.getKey());
-				json.value(entry.getValue());
+			if (previousFile != null) {
+				Files.deleteIfExists(previousFile);
 			}
-			json.endObject();
+		} catch (IOException e) {
+			Log.warn(LogCategory.CACHE, "Failed to delete the previous transform cache " + previousFile, e);
 		}
+	}
+
+	/** @return False if the reused segments turned out to be invalid, in which case nothing was written and the cache
+	 *         must be written again to a new root with {@link TransformCacheSegments#withoutReuse()}. */
+	private static boolean writeTransformCache(String options, List<ModLoadOption> modList, Path root,
+		TransformCacheSegments segments, Map<String, String> previousHidden, TransformCacheStats stats)
+		throws ModResolutionException, IOException {
+
+		TransformCache cache = TransformCacheGenerator.generate(root, modList, segments, previousHidden, stats);
+		if (cache == null) {
+			return false;
+		}
+		QuiltMapFileSystem.dumpEntries(root.getFileSystem(), "after-populate");
+		Files.write(root.resolve("options.txt"), options.getBytes(StandardCharsets.UTF_8));
+		segments.write(root);
+		Files.write(root.resolve(HIDDEN_CLASSES_PATH), HiddenClassTable.write(cache.getHiddenClasses()));
 		Files.createFile(root.resolve(FILE_TRANSFORM_COMPLETE));
+		return true;
 	}
 
 	private static QuiltZipPath openCache(Path transformCacheFile) throws ModResolutionException {
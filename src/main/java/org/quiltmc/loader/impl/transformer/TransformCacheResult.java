@@ -16,8 +16,10 @@
 
 package org.quiltmc.loader.impl.transformer;
 
+import java.nio.file.Path;
 import java.util.Map;
 
+import org.jetbrains.annotations.Nullable;
 import org.quiltmc.loader.impl.filesystem.QuiltZipPath;
 import org.quiltmc.loader.impl.util.QuiltLoaderInternal;
 import org.quiltmc.loader.impl.util.QuiltLoaderInternalType;
@@ -28,9 +30,41 @@ public class TransformCacheResult {
 	public final boolean isNewlyGenerated;
 	public final Map<String, String> hiddenClasses;
 
-	TransformCacheResult(QuiltZipPath transformCacheRoot, boolean isNewlyGenerated, Map<String, String> hiddenClasses) {
+	/** If not null then {@link #transformCacheRoot} is null, and every class must be transformed by this when it is
+	 * loaded instead. */
+	@Nullable
+	public final LazyClassTransformer lazyTransformer;
+
+	/** The stats from generating the cache, or null if an existing cache was reused. */
+	@Nullable
+	public final TransformCacheStats stats;
+
+	/** The file to store the class path snapshot in, or null if {@link #transformCacheRoot} is null. */
+	@Nullable
+	public final Path classPathSnapshot;
+
+	/** The options which the cache was generated with (every mod, along with the hash of its origin), which is also
+	 * the key for {@link #classPathSnapshot}. */
+	public final String options;
+
+	TransformCacheResult(QuiltZipPath transformCacheRoot, boolean isNewlyGenerated, Map<String, String> hiddenClasses,
+		@Nullable TransformCacheStats stats, Path classPathSnapshot, String options) {
 		this.isNewlyGenerated = isNewlyGenerated;
 		this.transformCacheRoot = transformCacheRoot;
 		this.hiddenClasses = hiddenClasses;
+		this.lazyTransformer = null;
+		this.stats = stats;
+		this.classPathSnapshot = classPathSnapshot;
+		this.options = options;
+	}
+
+	TransformCacheResult(LazyClassTransformer lazyTransformer, String options) {
+		this.isNewlyGenerated = true;
+		this.transformCacheRoot = null;
+		this.hiddenClasses = lazyTransformer.getHiddenClasses();
+		this.lazyTransformer = lazyTransformer;
+		this.stats = lazyTransformer.getStats();
+		this.classPathSnapshot = null;
+		this.options = options;
 	}
 }
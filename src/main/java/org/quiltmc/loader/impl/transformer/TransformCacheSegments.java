@@ -0,0 +1,196 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.loader.impl.transformer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.jetbrains.annotations.Nullable;
+import org.quiltmc.loader.api.FasterFiles;
+import org.quiltmc.loader.impl.util.QuiltLoaderInternal;
+import org.quiltmc.loader.impl.util.QuiltLoaderInternalType;
+
+/** Stores the key of every per-mod segment in a transform cache. Each mod gets its own folder in the cache, and when
+ * the whole cache can't be reused (because a different set of mods is loaded, or a mod was updated) we still reuse
+ * the folders of every mod whose inputs haven't changed, instead of transforming them again.
+ * <p>
+ * The inputs of a segment are split into three parts:
+ * <ol>
+ * <li>A static key, computed by {@link TransformCacheManager} before generation starts. This covers the mod's origin
+ * hash, the environment, the chasm flag, and access wideners for the game.</li>
+ * <li>The mod ids which {@link ClassStrippingData} checked for while stripping the mod (via {@code @Requires}), along
+ * with whether they were present at the time.</li>
+ * <li>A fingerprint of every {@code @ModInternal} declaration across all mods, since the internals hider rewrites each
+ * class based on declarations from other mods.</li>
+ * </ol>
+ * The first two are checked before generation, while the last can only be checked after scanning the new classes. */
+@QuiltLoaderInternal(QuiltLoaderInternalType.NEW_INTERNAL)
+final class TransformCacheSegments {
+
+	static final String FILE_NAME = "segments.txt";
+
+	private static final String INTERNALS_KEY = "internals";
+	private static final String SEGMENT_PREFIX = "segment:";
+	private static final String REQUIRES_PREFIX = "requires:";
+
+	/** Mod id to static key. */
+	final Map<String, String> keys;
+
+	/** Mod id to the mod ids it checked for, mapped to whether they were present. */
+	final Map<String, Map<String, Boolean>> requiredMods = new TreeMap<>();
+
+	/** Mod ids which are reused from a previous cache. */
+	final Set<String> reused = new TreeSet<>();
+
+	/** Path to the root of the previous cache, or null if nothing is reused. */
+	@Nullable
+	final Path previousRoot;
+
+	@Nullable
+	String internalsFingerprint;
+
+	TransformCacheSegments(Map<String, String> keys) {
+		this(keys, null);
+	}
+
+	private TransformCacheSegments(Map<String, String> keys, @Nullable Path previousRoot) {
+		this.keys = keys;
+		this.previousRoot = previousRoot;
+	}
+
+	/** @return A copy of these segments which doesn't reuse anything from the previous cache. */
+	TransformCacheSegments withoutReuse() {
+		return new TransformCacheSegments(keys, null);
+	}
+
+	/** Finds every segment which can be reused from the previous cache.
+	 *
+	 * @param previousRoot The root of the previous (complete) transform cache.
+	 * @param allModIds Every mod id which is loaded this time.
+	 * @return A new {@link TransformCacheSegments} with {@link #reused} populated. */
+	TransformCacheSegments findReusable(Path previousRoot, Set<String> allModIds) throws IOException {
+		TransformCacheSegments previous = read(previousRoot);
+		if (previous == null) {
+			return this;
+		}
+
+		TransformCacheSegments next = new TransformCacheSegments(keys, previousRoot);
+		next.internalsFingerprint = previous.internalsFingerprint;
+
+		outer: for (Entry<String, String> entry : keys.entrySet()) {
+			String modId = entry.getKey();
+			if (!entry.getValue().equals(previous.keys.get(modId))) {
+				continue;
+			}
+
+			Map<String, Boolean> required = previous.requiredMods.getOrDefault(modId, Collections.emptyMap());
+			for (Entry<String, Boolean> req : required.entrySet()) {
+				if (allModIds.contains(req.getKey()) != req.getValue()) {
+					continue outer;
+				}
+			}
+
+			next.reused.add(modId);
+			next.requiredMods.put(modId, required);
+		}
+
+		return next;
+	}
+
+	boolean isReused(String modId) {
+		return reused.contains(modId);
+	}
+
+	void recordRequired(String modId, Map<String, Boolean> required) {
+		requiredMods.put(modId, new TreeMap<>(required));
+	}
+
+	@Nullable
+	static TransformCacheSegments read(Path root) throws IOException {
+		Path file = root.resolve(FILE_NAME);
+		if (!FasterFiles.isRegularFile(file)) {
+			return null;
+		}
+
+		TransformCacheSegments segments = new TransformCacheSegments(new TreeMap<>());
+		try (BufferedReader br = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = br.readLine()) != null) {
+				if (line.isEmpty()) {
+					continue;
+				}
+				int eq = line.indexOf('=');
+				if (eq < 0) {
+					throw new IOException("Malformed line in " + FILE_NAME + ": '" + line + "'");
+				}
+				String key = line.substring(0, eq);
+				String value = line.substring(eq + 1);
+				if (INTERNALS_KEY.equals(key)) {
+					segments.internalsFingerprint = value;
+				} else if (key.startsWith(SEGMENT_PREFIX)) {
+					segments.keys.put(key.substring(SEGMENT_PREFIX.length()), value);
+				} else if (key.startsWith(REQUIRES_PREFIX)) {
+					Map<String, Boolean> required = new TreeMap<>();
+					if (!value.isEmpty()) {
+						for (String id : value.split(",")) {
+							if (id.startsWith("!")) {
+								required.put(id.substring(1), false);
+							} else {
+								required.put(id, true);
+							}
+						}
+					}
+					segments.requiredMods.put(key.substring(REQUIRES_PREFIX.length()), required);
+				}
+			}
+		}
+		return segments;
+	}
+
+	void write(Path root) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		sb.append(INTERNALS_KEY).append('=').append(internalsFingerprint).append('\n');
+		for (Entry<String, String> entry : keys.entrySet()) {
+			sb.append(SEGMENT_PREFIX).append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+		}
+		for (Entry<String, Map<String, Boolean>> entry : requiredMods.entrySet()) {
+			sb.append(REQUIRES_PREFIX).append(entry.getKey()).append('=');
+			boolean first = true;
+			for (Entry<String, Boolean> req : entry.getValue().entrySet()) {
+				if (!first) {
+					sb.append(',');
+				}
+				first = false;
+				if (!req.getValue()) {
+					sb.append('!');
+				}
+				sb.append(req.getKey());
+			}
+			sb.append('\n');
+		}
+		Files.write(root.resolve(FILE_NAME), sb.toString().getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.loader.impl.transformer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.NumberFormat;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.quiltmc.loader.impl.QuiltLoaderImpl;
+import org.quiltmc.loader.impl.report.QuiltReport;
+import org.quiltmc.loader.impl.report.QuiltStringSection;
+import org.quiltmc.loader.impl.util.QuiltLoaderInternal;
+import org.quiltmc.loader.impl.util.QuiltLoaderInternalType;
+
+/** Timers and counters for each phase of generating the transform cache. These are safe to update from multiple
+ * threads. When the cache is generated in parallel the time of each phase is summed across every thread, so it can
+ * be larger than {@link Phase#TOTAL}. */
+@QuiltLoaderInternal(QuiltLoaderInternalType.NEW_INTERNAL)
+public final class TransformCacheStats {
+
+	public enum Phase {
+		COPY("Copying mod files"),
+		REMAP("Remapping mods"),
+		ACCESS_WIDENERS("Loading access wideners"),
+		STRIP("Finding stripped members (and scanning @ModInternal)"),
+		TRANSFORM("Stripping and applying access wideners"),
+		CHASM("Applying chasm transformers"),
+		INTERNALS_SCAN("Scanning @ModInternal in unstripped classes"),
+		INTERNALS_REWRITE("Hiding internals and writing classes"),
+		WRITE("Compressing the cache file"),
+		TOTAL("Total (wall clock)");
+
+		public final String description;
+
+		Phase(String description) {
+			this.description = description;
+		}
+	}
+
+	public enum Counter {
+		CLASSES_VISITED("Classes transformed"),
+		CLASSES_REUSED("Classes reused from an older cache"),
+		CLASSES_HIDDEN("Classes hidden"),
+		CLASS_BYTES_IN("Class bytes read"),
+		CLASS_BYTES_OUT("Class bytes written"),
+		CACHE_FILE_BYTES("Cache file size");
+
+		public final String description;
+
+		Counter(String description) {
+			this.description = description;
+		}
+	}
+
+	public static final String REPORT_SECTION_NAME = "Transform Cache";
+
+	private final LongAdder[] phaseNanos = new LongAdder[Phase.values().length];
+	private final LongAdder[] counters = new LongAdder[Counter.values().length];
+
+	public TransformCacheStats() {
+		for (int i = 0; i < phaseNanos.length; i++) {
+			phaseNanos[i] = new LongAdder();
+		}
+		for (int i = 0; i < counters.length; i++) {
+			counters[i] = new LongAdder();
+		}
+	}
+
+	/** Adds the time since the given {@link System#nanoTime()} to the given phase. */
+	public void end(Phase phase, long startNanos) {
+		phaseNanos[phase.ordinal()].add(System.nanoTime() - startNanos);
+	}
+
+	public void count(Counter counter, long amount) {
+		counters[counter.ordinal()].add(amount);
+	}
+
+	public long getNanos(Phase phase) {
+		return phaseNanos[phase.ordinal()].sum();
+	}
+
+	public long getCount(Counter counter) {
+		return counters[counter.ordinal()].sum();
+	}
+
+	/** Appends a human readable summary of every phase and counter. */
+	public void appendLines(Consumer<String> to) {
+		NumberFormat format = NumberFormat.getIntegerInstance();
+		for (Phase phase : Phase.values()) {
+			to.accept(phase.description + ": " + format.format(getNanos(phase) / 1_000_000) + "ms");
+		}
+		for (Counter counter : Counter.values()) {
+			to.accept(counter.description + ": " + format.format(getCount(counter)));
+		}
+	}
+
+	public QuiltStringSection addReportSection(QuiltReport report, int ordering) {
+		QuiltStringSection section = report.addStringSection(REPORT_SECTION_NAME, ordering);
+		appendLines(section::lines);
+		return section;
+	}
+
+	/** Writes a report containing only these stats, replacing the given file if it already exists. */
+	public void writeReport(Path file) throws IOException {
+		QuiltReport report = new QuiltReport("Quilt Loader: Transform Cache Report");
+		report.overview("Quilt Loader Version: " + QuiltLoaderImpl.VERSION);
+		addReportSection(report, 0);
+		Files.deleteIfExists(file);
+		report.write(file);
+	}
+}
@@ -19,6 +19,11 @@ package org.quiltmc.loader.impl.util;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.quiltmc.loader.impl.filesystem.QuiltMapFileSystem;
 
 @QuiltLoaderInternal(QuiltLoaderInternalType.NEW_INTERNAL)
 public final class FileUtil {
@@ -41,4 +46,14 @@ public final class FileUtil {
 
 		return baos.toByteArray();
 	}
+
+	/** Reads all bytes from the given file. Files in quilt-loader's own file systems are read directly from their
+	 * entries. */
+	public static byte[] readAllBytes(Path path) throws IOException {
+		FileSystem fs = path.getFileSystem();
+		if (fs instanceof QuiltMapFileSystem) {
+			return ((QuiltMapFileSystem<?, ?>) fs).readAllBytes(path);
+		}
+		return Files.readAllBytes(path);
+	}
 }
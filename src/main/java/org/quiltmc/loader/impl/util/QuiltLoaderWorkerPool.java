@@ -0,0 +1,46 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.loader.impl.util;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/** A bounded pool of daemon threads which is shared by everything in quilt loader that works in parallel (like
+ * transforming classes and writing the transform cache), so each of them doesn't start its own thread per core. The
+ * threads are only started when work is first submitted, and stop after they've been idle for a while. */
+@QuiltLoaderInternal(QuiltLoaderInternalType.NEW_INTERNAL)
+public final class QuiltLoaderWorkerPool {
+
+	private static ForkJoinPool pool;
+
+	private QuiltLoaderWorkerPool() {}
+
+	public static synchronized ForkJoinPool get() {
+		if (pool == null) {
+			int threads = Integer.getInteger(
+				SystemProperties.WORKER_THREADS, Runtime.getRuntime().availableProcessors()
+			);
+			pool = new ForkJoinPool(Math.max(1, threads), p -> {
+				ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+				thread.setName("QuiltLoaderWorker-" + thread.getPoolIndex());
+				thread.setDaemon(true);
+				return thread;
+			}, null, false);
+		}
+		return pool;
+	}
+}
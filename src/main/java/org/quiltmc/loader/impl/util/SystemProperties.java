@@ -92,12 +92,63 @@ public final class SystemProperties {
 	public static final String DISABLE_OPTIMIZED_COMPRESSED_TRANSFORM_CACHE = "loader.transform_cache.disable_optimised_compression";
 	public static final String DISABLE_PRELOAD_TRANSFORM_CACHE = "loader.transform_cache.disable_preload";
 	public static final String LOG_CACHE_KEY_CHANGES = "loader.transform_cache.log_changed_keys";
+	// transform classes on every core when generating the transform cache, rather than just one
+	public static final String PARALLEL_TRANSFORM_CACHE = "loader.transform_cache.parallel";
+	// the maximum number of megabytes of transformed classes which are kept in memory while generating the transform
+	// cache, rather than being written and read again. Defaults to 64
+	public static final String TRANSFORM_CACHE_GENERATOR_MEMORY = "loader.transform_cache.generator_memory";
+	// the maximum number of megabytes of files which are compressed at once when writing the transform cache. Defaults
+	// to 64
+	public static final String TRANSFORM_CACHE_WRITER_MEMORY = "loader.transform_cache.writer_memory";
+	// when the transform cache needs to be regenerated, transform classes as they are loaded instead, and generate the
+	// cache in the background for the next launch
+	public static final String LAZY_TRANSFORM_CACHE = "loader.transform_cache.lazy";
+	// the number of transform caches (for different sets of mods) to keep, including the current one. 1 disables this
+	public static final String TRANSFORM_CACHE_GENERATIONS = "loader.transform_cache.generations";
+	// the maximum total size of every kept transform cache, in megabytes
+	public static final String TRANSFORM_CACHE_GENERATIONS_MAX_SIZE = "loader.transform_cache.generations.max_size";
+	// the number of days an unused transform cache is kept for
+	public static final String TRANSFORM_CACHE_GENERATIONS_MAX_AGE = "loader.transform_cache.generations.max_age";
+	// store larger files from every transform cache in a single folder, named by their contents, so caches for
+	// different sets of mods share identical files rather than storing them again
+	public static final String TRANSFORM_CACHE_BLOB_STORE = "loader.transform_cache.blob_store";
+	// store classes after mixin has been applied, and reuse them in the next launch if mixins haven't changed.
+	// Mixin doesn't see cached classes, so classes which mixins add, remove, or change any members or interfaces of
+	// aren't cached
+	public static final String ENABLE_MIXIN_CLASS_CACHE = "loader.mixin_class_cache.enable";
+	// record the order that classes are loaded in, and prefetch the classes recorded by the previous launch on background
+	// threads. Off by default
+	public static final String ENABLE_CLASS_LOAD_PROFILE = "loader.class_load_profile.enable";
+	// number of threads which prefetch classes from the class load profile, if it's enabled. Defaults to half of the
+	// available processors (up to 4), and 0 disables prefetching
+	public static final String CLASS_PREFETCH_THREADS = "loader.class_prefetch.threads";
+	// maximum size (in kilobytes) of prefetched classes which haven't been loaded yet. Defaults to 32768
+	public static final String CLASS_PREFETCH_MAX_SIZE = "loader.class_prefetch.max_size";
 	// enable useTempFile in ZipFileSystem, reduces memory usage when writing transform cache at the cost of speed
 	public static final String USE_ZIPFS_TEMP_FILE = "loader.zipfs.use_temp_file";
+	// memory-map zips opened by QuiltZipFileSystem (and the class path snapshot) rather than reading them through a
+	// file channel per thread. This makes each read a memory copy instead of a system call, and saves a channel per
+	// reading thread. Off by default, since mappings are only released once they are garbage collected (and on windows
+	// mapped files can't be moved or deleted until then), and reading a mapped file which has been truncated can fail
+	// with an InternalError
+	public static final String QUILT_ZIPFS_MAP_FILES = "loader.quilt_zipfs.map_files";
+	// compressed zips inside other zips (like jar-in-jar mods) which are at least this many kilobytes are copied to a
+	// temporary file rather than kept in memory. Defaults to 1024, -1 disables this
+	public static final String QUILT_ZIPFS_SPILL_NESTED_SIZE = "loader.quilt_zipfs.spill_nested_size";
+	// zips (and transform caches) opened by QuiltZipFileSystem with at least this many entries only create each entry
+	// when it's first accessed. Defaults to 1024, -1 disables this
+	public static final String QUILT_ZIPFS_LAZY_ENTRY_COUNT = "loader.quilt_zipfs.lazy_entry_count";
+	// store the files of read-only in-memory file systems (like those created by copyToReadOnlyFileSystem) in direct
+	// buffers outside of the java heap, unless a specific file system asks otherwise. Defaults to false
+	public static final String MEMORY_FILE_SYSTEM_OFF_HEAP = "loader.memory_fs.off_heap";
+	// the number of threads in the worker pool shared by the loader's parallel tasks. Defaults to the number of cores
+	public static final String WORKER_THREADS = "loader.worker_threads";
 	public static final String ENABLE_QUILT_MOD_JSON5_IN_DEV_ENV = "loader.enable_quilt_mod_json5_in_dev_env";
 	public static final String DEBUG_DUMP_FILESYSTEM_CONTENTS = "loader.debug.filesystem.dump_contents";
 	public static final String ALWAYS_DEFER_FILESYSTEM_OPERATIONS = "loader.workaround.defer_all_filesystem_operations";
 	public static final String DISABLE_QUILT_CLASS_PATH_CUSTOM_TABLE = "loader.quilt_class_path.disable_custom_table";
+	// don't save the quilt class path index next to the transform cache, or reuse it in the next launch
+	public static final String DISABLE_QUILT_CLASS_PATH_SNAPSHOT = "loader.quilt_class_path.disable_snapshot";
 	public static final String DISABLE_BUILTIN_MIXIN_EXTRAS = "loader.disable_builtin_mixin_extras";
 	/** whether the loader should display unsupported mods with the GUI or ignore and continue starting up the game. */
 	public static final String IGNORE_UNSUPPORTED_MODS = "loader.ignore_unsupported_mods";
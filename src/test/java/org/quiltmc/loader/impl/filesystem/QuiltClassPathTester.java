@@ -0,0 +1,199 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.loader.impl.filesystem;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class QuiltClassPathTester {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void testLazyZipRoots() throws IOException {
+		Path first = createZip("first.zip", "a/shared.txt", "first", "a/first.txt", "first");
+		Path second = createZip("second.zip", "a/shared.txt", "second", "a/b/second.txt", "second");
+		Path third = createZip("third.zip", "a/shared.txt", "third", "c/third.txt", "third");
+
+		try (QuiltZipFileSystem eager1 = new QuiltZipFileSystem("eager1", first, "", -1);
+			QuiltZipFileSystem lazy = new QuiltZipFileSystem("lazy", second, "", 0);
+			QuiltZipFileSystem eager3 = new QuiltZipFileSystem("eager3", third, "", -1)) {
+
+			QuiltClassPath classPath = new QuiltClassPath();
+			classPath.addRoot(eager1.getRoot());
+			classPath.addRoot(lazy.getRoot());
+			classPath.addRoot(eager3.getRoot());
+
+			// Roots must be searched in the order they were added, even though the lazy root isn't in the main map
+			assertResource(classPath, "first", "a/shared.txt");
+			assertResource(classPath, "second", "/a/b/second.txt");
+			assertResource(classPath, "third", "c/third.txt");
+			Assertions.assertNull(classPath.findResource("a/b/missing.txt"));
+			Assertions.assertNull(classPath.findResource("missing/second.txt"));
+
+			List<String> all = new ArrayList<>();
+			for (Path path : classPath.getResources("a/shared.txt")) {
+				all.add(read(path));
+			}
+			Assertions.assertEquals(Arrays.asList("first", "second", "third"), all);
+			Assertions.assertEquals(1, classPath.getResources("/a/b/second.txt").size());
+		}
+	}
+
+	@Test
+	public void testSnapshotInvalidation() throws Exception {
+		Path snapshot = tempDir.resolve("snapshot.bin");
+		Path zip = createZip("mod.zip", "a/old.txt", "first");
+
+		try (QuiltZipFileSystem fs = new QuiltZipFileSystem("mod", zip, "", -1)) {
+			QuiltClassPath classPath = new QuiltClassPath();
+			classPath.openSnapshot(snapshot, "key");
+			classPath.addRoot(fs.getRoot());
+			classPath.finishSnapshot();
+			assertResource(classPath, "first", "a/old.txt");
+		}
+
+		// Written in the background
+		for (int i = 0; i < 100 && !Files.exists(snapshot); i++) {
+			Thread.sleep(50);
+		}
+		Assertions.assertTrue(Files.exists(snapshot));
+
+		try (QuiltZipFileSystem fs = new QuiltZipFileSystem("mod", zip, "", -1)) {
+			QuiltClassPath classPath = new QuiltClassPath();
+			classPath.openSnapshot(snapshot, "key");
+			classPath.addRoot(fs.getRoot());
+			classPath.finishSnapshot();
+			assertResource(classPath, "first", "a/old.txt");
+		}
+
+		// Same name, same entry count, and the same size - only the contents and modified time differ
+		FileTime modified = Files.getLastModifiedTime(zip);
+		createZip("mod.zip", "a/new.txt", "fresh");
+		Files.setLastModifiedTime(zip, FileTime.fromMillis(modified.toMillis() + 10_000));
+
+		try (QuiltZipFileSystem fs = new QuiltZipFileSystem("mod", zip, "", -1)) {
+			QuiltClassPath classPath = new QuiltClassPath();
+			classPath.openSnapshot(snapshot, "key");
+			classPath.addRoot(fs.getRoot());
+			classPath.finishSnapshot();
+			assertResource(classPath, "fresh", "a/new.txt");
+			Assertions.assertNull(classPath.findResource("a/old.txt"));
+		}
+	}
+
+	@Test
+	public void testFolderFilter() throws IOException {
+		// "Aa" and "BB" have the same hash code, so "/BB" is a false positive of the folder filter
+		Path zip = createZip("filter.zip", "a/b/present.txt", "present", "empty/", "", "Aa/collide.txt", "indexed");
+
+		try (QuiltZipFileSystem eager = new QuiltZipFileSystem("eager", zip, "", -1);
+			QuiltZipFileSystem lazy = new QuiltZipFileSystem("lazy", zip, "", 0);
+			QuiltMemoryFileSystem.ReadWrite unindexed = new QuiltMemoryFileSystem.ReadWrite("unindexed", true)) {
+
+			Files.createDirectories(unindexed.getPath("/BB"));
+			Files.write(unindexed.getPath("/BB/collide.txt"), "unindexed".getBytes(StandardCharsets.UTF_8));
+			Files.createDirectories(unindexed.getPath("/missing"));
+			Files.write(unindexed.getPath("/missing/only.txt"), "unindexed".getBytes(StandardCharsets.UTF_8));
+
+			for (QuiltZipFileSystem fs : new QuiltZipFileSystem[] { eager, lazy }) {
+				QuiltClassPath classPath = new QuiltClassPath();
+				classPath.addRoot(fs.getRoot());
+
+				// Present folder
+				assertResource(classPath, "present", "a/b/present.txt");
+				Assertions.assertNull(classPath.findResource("a/b/absent.txt"));
+
+				// Absent folder
+				Assertions.assertNull(classPath.findResource("missing/only.txt"));
+				Assertions.assertEquals(0, classPath.getResources("missing/only.txt").size());
+
+				// Empty folder, with and without a trailing slash
+				Assertions.assertTrue(Files.isDirectory(classPath.findResource("empty")));
+				Assertions.assertTrue(Files.isDirectory(classPath.findResource("empty/")));
+				Assertions.assertTrue(Files.isDirectory(classPath.findResource("/a/b/")));
+				Assertions.assertNull(classPath.findResource("absent/"));
+
+				// False positive
+				assertResource(classPath, "indexed", "Aa/collide.txt");
+				Assertions.assertNull(classPath.findResource("BB/collide.txt"));
+
+				// Roots which aren't indexed are still searched, whether or not the filter matches
+				classPath.addRoot(unindexed.getRoot());
+				assertResource(classPath, "unindexed", "missing/only.txt");
+				assertResource(classPath, "unindexed", "BB/collide.txt");
+				Assertions.assertEquals(1, classPath.getResources("BB/collide.txt").size());
+				assertResource(classPath, "indexed", "Aa/collide.txt");
+			}
+		}
+	}
+
+	@Test
+	public void testFolderFilterHashes() {
+		QuiltClassPath.FolderFilter filter = new QuiltClassPath.FolderFilter();
+		filter.add("/a/b".hashCode());
+		Assertions.assertTrue(filter.mightContain("a/b/c.txt"));
+		Assertions.assertTrue(filter.mightContain("/a/b/c.txt"));
+		Assertions.assertTrue(filter.mightContain("root.txt"));
+		Assertions.assertTrue(filter.mightContain("/root.txt"));
+		Assertions.assertFalse(filter.mightContain("a/c.txt"));
+		Assertions.assertFalse(filter.mightContain("a/b/c/d.txt"));
+		Assertions.assertEquals("/a/b".hashCode(), QuiltClassPath.FolderFilter.folderHash("a/b/c.txt", 3));
+		Assertions.assertEquals("/a/b".hashCode(), QuiltClassPath.FolderFilter.folderHash("/a/b/c.txt", 4));
+	}
+
+	private static void assertResource(QuiltClassPath classPath, String expected, String path) throws IOException {
+		Path found = classPath.findResource(path);
+		Assertions.assertNotNull(found, path);
+		Assertions.assertEquals(expected, read(found));
+	}
+
+	private static String read(Path path) throws IOException {
+		return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+	}
+
+	/** @param files Alternating file names and contents. */
+	private Path createZip(String name, String... files) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (ZipOutputStream zip = new ZipOutputStream(baos)) {
+			for (int i = 0; i < files.length; i += 2) {
+				zip.putNextEntry(new ZipEntry(files[i]));
+				if (!files[i].endsWith("/")) {
+					zip.write(files[i + 1].getBytes(StandardCharsets.UTF_8));
+				}
+				zip.closeEntry();
+			}
+		}
+		Path zip = tempDir.resolve(name);
+		Files.write(zip, baos.toByteArray());
+		return zip;
+	}
+}
@@ -16,23 +16,51 @@
 
 package org.quiltmc.loader.impl.filesystem;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.condition.EnabledOnOs;
 import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
@@ -82,6 +110,522 @@ public class QuiltFileSystemTester {
 		}
 	}
 
+	@Test
+	public void testLazyZip(@TempDir Path tempDir) throws IOException {
+		Path zip = tempDir.resolve("lazy.zip");
+		Files.write(zip, createTestZip());
+
+		try (QuiltZipFileSystem eager = new QuiltZipFileSystem("eager", zip, "", -1);
+			QuiltZipFileSystem lazy = new QuiltZipFileSystem("lazy", zip, "", 0)) {
+
+			Assertions.assertNull(eager.getLazyIndex());
+			Assertions.assertNotNull(lazy.getLazyIndex());
+
+			Map<String, String> expected = describeTree(eager.getRoot());
+			Assertions.assertEquals(expected, describeTree(lazy.getRoot()));
+			Assertions.assertTrue(expected.containsKey("/empty"));
+			Assertions.assertEquals(
+				"file 13 " + Arrays.hashCode("Hello, world!".getBytes(StandardCharsets.UTF_8)), expected.get("/a/b/hello.txt")
+			);
+
+			Set<String> eagerPaths = new HashSet<>();
+			eager.getEntryPathIterator().forEach(p -> eagerPaths.add(p.toString()));
+			Set<String> lazyPaths = new HashSet<>();
+			lazy.getEntryPathIterator().forEach(p -> lazyPaths.add(p.toString()));
+			Assertions.assertEquals(eagerPaths, lazyPaths);
+			Assertions.assertEquals(eager.getEntryCount(), lazy.getEntryCount());
+
+			for (String missing : new String[] { "/missing", "/a/missing.txt", "/a/b/hello.txt/child", "/stored.txt/" }) {
+				Assertions.assertEquals(Files.exists(eager.getPath(missing)), Files.exists(lazy.getPath(missing)), missing);
+			}
+
+			// Sub-folder file systems share the index of a lazy file system
+			try (QuiltZipFileSystem eagerSub = new QuiltZipFileSystem("eager_sub", eager.getPath("/a"));
+				QuiltZipFileSystem lazySub = new QuiltZipFileSystem("lazy_sub", lazy.getPath("/a"))) {
+				Assertions.assertEquals(describeTree(eagerSub.getRoot()), describeTree(lazySub.getRoot()));
+				Assertions.assertTrue(Files.isRegularFile(lazySub.getPath("/b/hello.txt")));
+				Assertions.assertNull(lazySub.getLazyIndex());
+			}
+		}
+	}
+
+	@Test
+	public void testCompressedRoundTrip(@TempDir Path tempDir) throws IOException {
+		Path src = tempDir.resolve("src");
+		createTestFolder(src);
+		Path dst = tempDir.resolve("compressed.qzip");
+		QuiltZipFileSystem.writeQuiltCompressedFileSystem(src, dst);
+
+		byte[] header = new byte[QuiltZipCustomCompressedWriter.HEADER_V3.length];
+		System.arraycopy(Files.readAllBytes(dst), 0, header, 0, header.length);
+		Assertions.assertArrayEquals(QuiltZipCustomCompressedWriter.HEADER_V3, header);
+
+		Map<String, String> expected = describeTree(src);
+		try (QuiltZipFileSystem eager = new QuiltZipFileSystem("compressed_eager", dst, "", -1);
+			QuiltZipFileSystem lazy = new QuiltZipFileSystem("compressed_lazy", dst, "", 0)) {
+			Assertions.assertEquals(expected, describeTree(eager.getRoot()));
+			Assertions.assertEquals(expected, describeTree(lazy.getRoot()));
+		}
+
+		// Reading with a prefix only exposes that folder
+		try (QuiltZipFileSystem prefixed = new QuiltZipFileSystem("compressed_prefix", dst, "/a/")) {
+			Assertions.assertTrue(Files.isRegularFile(prefixed.getPath("/a/b/hello.txt")));
+			Assertions.assertFalse(Files.exists(prefixed.getPath("/top.bin")));
+		}
+
+		Assertions.assertThrows(IOException.class, () -> QuiltZipFileSystem.writeQuiltCompressedFileSystem(src, dst));
+	}
+
+	@Test
+	public void testBlobStore(@TempDir Path tempDir) throws IOException {
+		Path store = tempDir.resolve("blobs");
+		Path src1 = tempDir.resolve("src1");
+		Path src2 = tempDir.resolve("src2");
+		createTestFolder(src1);
+		createTestFolder(src2);
+		byte[] random = new byte[64 * 1024];
+		new Random(7).nextBytes(random);
+		Files.write(src2.resolve("a/other.bin"), random);
+
+		Path dst1 = tempDir.resolve("first.qzip");
+		Path dst2 = tempDir.resolve("second.qzip");
+		QuiltZipFileSystem.writeQuiltCompressedFileSystem(src1, dst1, store);
+		QuiltZipFileSystem.writeQuiltCompressedFileSystem(src2, dst2, store);
+
+		// Only the larger files are stored as blobs, and the file both share is only stored once
+		Set<String> blobs = listBlobs(store);
+		Assertions.assertEquals(2, blobs.size());
+
+		Set<String> refs1 = new HashSet<>();
+		QuiltZipBlobStore.collectReferences(dst1, refs1);
+		Set<String> refs2 = new HashSet<>();
+		QuiltZipBlobStore.collectReferences(dst2, refs2);
+		Assertions.assertEquals(1, refs1.size());
+		Assertions.assertEquals(blobs, refs2);
+		Assertions.assertTrue(refs2.containsAll(refs1));
+
+		// Files without a blob store don't reference anything
+		Path plain = tempDir.resolve("plain.zip");
+		Files.write(plain, createTestZip());
+		Set<String> none = new HashSet<>();
+		QuiltZipBlobStore.collectReferences(plain, none);
+		Assertions.assertEquals(Collections.emptySet(), none);
+
+		try (QuiltZipFileSystem fs1 = new QuiltZipFileSystem("blobs1", dst1, "");
+			QuiltZipFileSystem fs2 = new QuiltZipFileSystem("blobs2", dst2, "")) {
+			Assertions.assertEquals(describeTree(src1), describeTree(fs1.getRoot()));
+			Assertions.assertEquals(describeTree(src2), describeTree(fs2.getRoot()));
+		}
+
+		// Unreferenced blobs are only deleted once they're old enough
+		FileTime old = FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1));
+		for (String blob : blobs) {
+			Files.setLastModifiedTime(QuiltZipBlobStore.resolve(store, hexToBytes(blob)), old);
+		}
+		Assertions.assertEquals(0, QuiltZipBlobStore.sweep(store, refs1, TimeUnit.DAYS.toMillis(1)));
+		Assertions.assertEquals(blobs, listBlobs(store));
+
+		// Random bytes don't compress, so the deleted blob is at least as large as the file
+		Assertions.assertTrue(QuiltZipBlobStore.sweep(store, refs1, TimeUnit.MINUTES.toMillis(1)) >= random.length);
+		Assertions.assertEquals(refs1, listBlobs(store));
+
+		try (QuiltZipFileSystem fs1 = new QuiltZipFileSystem("blobs1", dst1, "")) {
+			Assertions.assertEquals(describeTree(src1), describeTree(fs1.getRoot()));
+		}
+		// Missing blobs are found when the file system is opened, rather than when the file is read
+		Assertions.assertThrows(IOException.class, () -> new QuiltZipFileSystem("blobs2", dst2, "").close());
+	}
+
+	private static Set<String> listBlobs(Path store) throws IOException {
+		Set<String> blobs = new HashSet<>();
+		try (Stream<Path> stream = Files.walk(store)) {
+			stream.filter(Files::isRegularFile).forEach(p -> blobs.add(p.getFileName().toString()));
+		}
+		return blobs;
+	}
+
+	private static byte[] hexToBytes(String hex) {
+		byte[] bytes = new byte[hex.length() / 2];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+		}
+		return bytes;
+	}
+
+	@Test
+	public void testNestedZips(@TempDir Path tempDir) throws IOException {
+		byte[] inner = createTestZip();
+		// Random bytes don't compress, so this is larger than the spill size even when compressed
+		byte[] large = new byte[(int) QuiltZipFileSystem.SPILL_NESTED_SIZE + 1024];
+		new Random(3).nextBytes(large);
+		ByteArrayOutputStream largeInner = new ByteArrayOutputStream();
+		try (ZipOutputStream zip = new ZipOutputStream(largeInner)) {
+			zip.putNextEntry(new ZipEntry("large.bin"));
+			zip.write(large);
+			zip.closeEntry();
+		}
+
+		Path outerZip = tempDir.resolve("outer.zip");
+		try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(outerZip))) {
+			ZipEntry stored = new ZipEntry("stored.jar");
+			stored.setMethod(ZipEntry.STORED);
+			stored.setSize(inner.length);
+			CRC32 crc = new CRC32();
+			crc.update(inner);
+			stored.setCrc(crc.getValue());
+			zip.putNextEntry(stored);
+			zip.write(inner);
+			zip.closeEntry();
+			zip.putNextEntry(new ZipEntry("deflated.jar"));
+			zip.write(inner);
+			zip.closeEntry();
+			zip.putNextEntry(new ZipEntry("large.jar"));
+			largeInner.writeTo(zip);
+			zip.closeEntry();
+		}
+
+		Path expectedZip = tempDir.resolve("expected.zip");
+		Files.write(expectedZip, inner);
+
+		for (int lazyEntryCount : new int[] { -1, 0 }) {
+			try (QuiltZipFileSystem outer = new QuiltZipFileSystem("outer", outerZip, "", lazyEntryCount);
+				QuiltZipFileSystem expected = new QuiltZipFileSystem("expected", expectedZip, "")) {
+
+				// Uncompressed zips are read straight from the outer zip
+				try (QuiltZipFileSystem fs = new QuiltZipFileSystem("stored", outer.getPath("/stored.jar"), "")) {
+					Assertions.assertTrue(fs.source instanceof QuiltZipFileSystem.SliceSource);
+					Assertions.assertEquals(describeTree(expected.getRoot()), describeTree(fs.getRoot()));
+				}
+				// The outer zip is still usable after the slice is closed
+				Assertions.assertArrayEquals(inner, Files.readAllBytes(outer.getPath("/stored.jar")));
+
+				// Smaller compressed zips are copied into memory
+				try (QuiltZipFileSystem fs = new QuiltZipFileSystem("deflated", outer.getPath("/deflated.jar"), "")) {
+					Assertions.assertTrue(fs.source instanceof QuiltZipFileSystem.InMemorySource);
+					Assertions.assertEquals(describeTree(expected.getRoot()), describeTree(fs.getRoot()));
+				}
+
+				// Larger compressed zips are copied to a temporary file, which is deleted when they are closed
+				Path spilled;
+				try (QuiltZipFileSystem fs = new QuiltZipFileSystem("large", outer.getPath("/large.jar"), "")) {
+					Assertions.assertTrue(fs.source instanceof QuiltZipFileSystem.SpilledSource);
+					spilled = ((QuiltZipFileSystem.SpilledSource) fs.source).file;
+					Assertions.assertTrue(Files.exists(spilled));
+					Assertions.assertArrayEquals(large, Files.readAllBytes(fs.getPath("/large.bin")));
+				}
+				Assertions.assertFalse(Files.exists(spilled));
+			}
+		}
+	}
+
+	@Test
+	public void testPooledInflaters() throws Exception {
+		byte[][] payloads = new byte[16][];
+		byte[][] compressed = new byte[payloads.length][];
+		Random random = new Random(5);
+		for (int i = 0; i < payloads.length; i++) {
+			// Half compress well, half don't, and some are larger than the input buffer
+			payloads[i] = new byte[random.nextInt(QuiltZipInflaters.INPUT_BUFFER_SIZE * 4)];
+			if (i % 2 == 0) {
+				random.nextBytes(payloads[i]);
+			} else {
+				Arrays.fill(payloads[i], (byte) i);
+			}
+			compressed[i] = deflateRaw(payloads[i]);
+		}
+
+		// Streams closed before they finish must not leave anything behind in the pooled inflater
+		for (int i = 0; i < QuiltZipInflaters.MAX_POOLED * 2; i++) {
+			byte[] payload = payloads[i % payloads.length];
+			try (InputStream stream = inflate(compressed[i % payloads.length], payload.length)) {
+				stream.read(new byte[payload.length / 2]);
+			}
+		}
+
+		int threads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> tasks = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				int seed = t;
+				tasks.add(executor.submit(() -> {
+					Random order = new Random(seed);
+					for (int i = 0; i < 500; i++) {
+						int index = order.nextInt(payloads.length);
+						try (InputStream stream = inflate(compressed[index], payloads[index].length)) {
+							Assertions.assertEquals(payloads[index].length, stream.available());
+							Assertions.assertArrayEquals(payloads[index], readFully(stream, payloads[index].length));
+							Assertions.assertEquals(0, stream.available());
+							Assertions.assertEquals(-1, stream.read());
+						}
+					}
+					return null;
+				}));
+			}
+			for (Future<?> task : tasks) {
+				task.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		InputStream closed = inflate(compressed[0], payloads[0].length);
+		closed.close();
+		Assertions.assertThrows(IOException.class, () -> closed.read());
+
+		// Truncated input fails instead of returning fewer bytes
+		byte[] truncated = Arrays.copyOf(compressed[0], compressed[0].length / 2);
+		try (InputStream stream = inflate(truncated, payloads[0].length)) {
+			Assertions.assertThrows(IOException.class, () -> readFully(stream, payloads[0].length));
+		}
+	}
+
+	private static InputStream inflate(byte[] compressed, int uncompressedSize) {
+		return new QuiltZipInflaters.InflatingInputStream(new ByteArrayInputStream(compressed), uncompressedSize);
+	}
+
+	private static byte[] readFully(InputStream stream, int length) throws IOException {
+		byte[] bytes = new byte[length];
+		int offset = 0;
+		while (offset < length) {
+			int read = stream.read(bytes, offset, length - offset);
+			if (read < 0) {
+				throw new EOFException();
+			}
+			offset += read;
+		}
+		return bytes;
+	}
+
+	private static byte[] deflateRaw(byte[] bytes) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		try (DeflaterOutputStream stream = new DeflaterOutputStream(baos, deflater)) {
+			stream.write(bytes);
+		} finally {
+			deflater.end();
+		}
+		return baos.toByteArray();
+	}
+
+	@Test
+	public void testOffHeapRegions() {
+		QuiltMemoryFileRegions regions = new QuiltMemoryFileRegions();
+		Random random = new Random(11);
+		List<byte[]> files = new ArrayList<>();
+		long total = 0;
+		// Enough small files to fill several regions, with a few which get a region to themselves
+		for (int i = 0; total < QuiltMemoryFileRegions.REGION_SIZE * 3L; i++) {
+			int size = i % 50 == 0 ? QuiltMemoryFileRegions.REGION_SIZE / 2 + i : random.nextInt(64 * 1024);
+			byte[] bytes = new byte[size];
+			random.nextBytes(bytes);
+			Assertions.assertEquals(files.size(), regions.add(bytes));
+			files.add(bytes);
+			total += size;
+		}
+		regions.add(new byte[0]);
+		files.add(new byte[0]);
+		regions.finish();
+
+		Assertions.assertTrue(regions.getOffHeapSize() >= total);
+		// Only the space left at the end of a region (when the next file didn't fit) is wasted
+		Assertions.assertTrue(regions.getOffHeapSize() < total + 64 * 1024 * (total / QuiltMemoryFileRegions.REGION_SIZE + 1));
+
+		for (int id = 0; id < files.size(); id++) {
+			byte[] expected = files.get(id);
+			Assertions.assertEquals(expected.length, regions.length(id));
+			ByteBuffer buffer = regions.get(id);
+			Assertions.assertEquals(0, buffer.position());
+			Assertions.assertEquals(expected.length, buffer.remaining());
+			byte[] actual = new byte[buffer.remaining()];
+			buffer.get(actual);
+			Assertions.assertArrayEquals(expected, actual);
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(booleans = { false, true })
+	public void testOffHeapFileSystem(boolean compress, @TempDir Path tempDir) throws IOException {
+		Path src = tempDir.resolve("src");
+		createTestFolder(src);
+		Map<String, String> expected = describeTree(src);
+
+		try (QuiltMemoryFileSystem.ReadOnly onHeap = new QuiltMemoryFileSystem.ReadOnly("on_heap", true, src, compress, false);
+			QuiltMemoryFileSystem.ReadOnly offHeap = new QuiltMemoryFileSystem.ReadOnly("off_heap", true, src, compress, true)) {
+
+			Assertions.assertEquals(expected, describeTree(onHeap.getRoot()));
+			Assertions.assertEquals(expected, describeTree(offHeap.getRoot()));
+			Assertions.assertEquals(0, onHeap.getOffHeapSize());
+			Assertions.assertTrue(offHeap.getOffHeapSize() > 0);
+			Assertions.assertTrue(offHeap.getEstimatedMemoryFootprint() < onHeap.getEstimatedMemoryFootprint());
+
+			// Channels can read any part of an off-heap file
+			Path top = offHeap.getPath("/top.bin");
+			byte[] all = Files.readAllBytes(top);
+			try (SeekableByteChannel channel = Files.newByteChannel(top)) {
+				Assertions.assertEquals(all.length, channel.size());
+				channel.position(1000);
+				ByteBuffer part = ByteBuffer.allocate(100);
+				Assertions.assertEquals(100, channel.read(part));
+				Assertions.assertArrayEquals(Arrays.copyOfRange(all, 1000, 1100), part.array());
+			}
+		}
+
+		try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(createTestZip()));
+			QuiltMemoryFileSystem.ReadOnly fromZip = new QuiltMemoryFileSystem.ReadOnly("off_heap_zip", zip, "", compress, true);
+			QuiltZipFileSystem expectedZip = new QuiltZipFileSystem("expected_zip", writeTestZip(tempDir), "")) {
+			Assertions.assertEquals(describeTree(expectedZip.getRoot()), describeTree(fromZip.getRoot()));
+			Assertions.assertTrue(fromZip.getOffHeapSize() > 0);
+		}
+	}
+
+	@Test
+	public void testCompactedEntries(@TempDir Path tempDir) throws IOException {
+		Path src = tempDir.resolve("src");
+		createTestFolder(src);
+		Map<String, String> expected = describeTree(src);
+
+		try (QuiltMemoryFileSystem.ReadOnly fs = new QuiltMemoryFileSystem.ReadOnly("compacted", true, src, false, false);
+			QuiltZipFileSystem zip = new QuiltZipFileSystem("compacted_zip", writeTestZip(tempDir), "", -1)) {
+
+			QuiltMapEntryTrie trie = fs.getCompactedEntries();
+			Assertions.assertNotNull(trie);
+			Assertions.assertNotNull(zip.getCompactedEntries());
+			Assertions.assertEquals(expected, describeTree(fs.getRoot()));
+
+			Set<String> paths = new TreeSet<>();
+			fs.getEntryPathIterator().forEach(p -> paths.add(p.toString()));
+			Assertions.assertEquals(expected.keySet(), paths);
+			Assertions.assertEquals(expected.size(), fs.getEntryCount());
+
+			Path hello = fs.getPath("/a/b/hello.txt");
+			Assertions.assertSame(hello, fs.getEntry(hello).path);
+			Assertions.assertTrue(fs.isRegularFile(hello, new LinkOption[0]));
+			Assertions.assertTrue(fs.isDirectory(hello.getParent()));
+			Assertions.assertTrue(fs.isDirectory(fs.getPath("/empty")));
+			for (String missing : new String[] { "/missing", "/a/missing.txt", "/a/b/hello.txt/child", "/b/hello.txt" }) {
+				Assertions.assertFalse(fs.exists(fs.getPath(missing)), missing);
+				Assertions.assertNull(fs.getEntry(fs.getPath(missing)), missing);
+			}
+
+			// Folder names are shared between file systems
+			int a = trie.find(fs.getPath("/a"));
+			int zipA = zip.getCompactedEntries().find(zip.getPath("/a"));
+			Assertions.assertSame(trie.name(a), zip.getCompactedEntries().name(zipA));
+
+			Assertions.assertThrows(IOException.class, () -> Files.write(fs.getPath("/new.txt"), new byte[1]));
+			Assertions.assertThrows(IOException.class, () -> Files.delete(fs.getPath("/a/empty.txt")));
+			Assertions.assertTrue(Files.exists(fs.getPath("/a/empty.txt")));
+		}
+	}
+
+	private static Path writeTestZip(Path folder) throws IOException {
+		Path zip = folder.resolve("test.zip");
+		Files.write(zip, createTestZip());
+		return zip;
+	}
+
+	/** Creates a folder with nested folders, an empty folder, an empty file, and a larger incompressible file. */
+	static void createTestFolder(Path src) throws IOException {
+		Files.createDirectories(src.resolve("a/b"));
+		Files.createDirectories(src.resolve("empty"));
+		Files.write(src.resolve("a/b/hello.txt"), "Hello, world!".getBytes(StandardCharsets.UTF_8));
+		Files.write(src.resolve("a/empty.txt"), new byte[0]);
+		byte[] random = new byte[64 * 1024];
+		new Random(42).nextBytes(random);
+		Files.write(src.resolve("top.bin"), random);
+	}
+
+	@Test
+	public void testMappedSource(@TempDir Path tempDir) throws IOException {
+		Path zip = tempDir.resolve("mapped.zip");
+		Files.write(zip, createTestZip());
+		Path big = tempDir.resolve("big.bin");
+		byte[] bytes = new byte[1 << 20];
+		new Random(3).nextBytes(bytes);
+		Files.write(big, bytes);
+
+		try (QuiltZipFileSystem fs = new QuiltZipFileSystem("mapped", zip, "")) {
+			QuiltZipFileSystem.MappedSource source = QuiltZipFileSystem.MappedSource.tryMap(fs, big);
+			Assertions.assertNotNull(source);
+
+			byte[] part = new byte[1024];
+			try (InputStream stream = source.stream(1 << 19)) {
+				Assertions.assertEquals(part.length, stream.read(part));
+			}
+			Assertions.assertArrayEquals(Arrays.copyOfRange(bytes, 1 << 19, (1 << 19) + part.length), part);
+
+			try (SeekableByteChannel channel = source.channel()) {
+				Assertions.assertEquals(bytes.length, channel.size());
+				channel.position(100);
+				ByteBuffer buffer = ByteBuffer.allocate(part.length);
+				Assertions.assertEquals(part.length, channel.read(buffer));
+				Assertions.assertArrayEquals(Arrays.copyOfRange(bytes, 100, 100 + part.length), buffer.array());
+			}
+
+			ByteBuffer end = source.readToEnd(bytes.length - 10);
+			Assertions.assertEquals(10, end.remaining());
+			Assertions.assertThrows(IOException.class, () -> source.readToEnd(bytes.length + 1));
+
+			source.close(fs);
+			Assertions.assertFalse(source.isOpen());
+			Assertions.assertThrows(IOException.class, () -> source.stream(0));
+			Assertions.assertThrows(IOException.class, () -> source.channel());
+		}
+	}
+
+	/** @return The type, size, and contents of every file and folder below the given folder, keyed by path. */
+	static Map<String, String> describeTree(Path root) throws IOException {
+		Map<String, String> tree = new TreeMap<>();
+		try (Stream<Path> stream = Files.walk(root)) {
+			for (Path path : (Iterable<Path>) stream::iterator) {
+				BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+				if (attributes.isDirectory()) {
+					Set<String> children = new TreeSet<>();
+					try (DirectoryStream<Path> dir = Files.newDirectoryStream(path)) {
+						dir.forEach(child -> children.add(child.getFileName().toString()));
+					}
+					tree.put(key(root, path), "folder " + children);
+				} else {
+					byte[] bytes = Files.readAllBytes(path);
+					Assertions.assertEquals(attributes.size(), bytes.length, path.toString());
+					tree.put(key(root, path), "file " + attributes.size() + " " + Arrays.hashCode(bytes));
+				}
+			}
+		}
+		return tree;
+	}
+
+	private static String key(Path root, Path path) {
+		return "/" + root.relativize(path).toString().replace(root.getFileSystem().getSeparator(), "/");
+	}
+
+	static byte[] createTestZip() throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (ZipOutputStream zip = new ZipOutputStream(baos)) {
+			zip.putNextEntry(new ZipEntry("empty/"));
+			zip.closeEntry();
+			zip.putNextEntry(new ZipEntry("a/b/hello.txt"));
+			zip.write("Hello, world!".getBytes(StandardCharsets.UTF_8));
+			zip.closeEntry();
+			zip.putNextEntry(new ZipEntry("a/other.txt"));
+			zip.write("Another file".getBytes(StandardCharsets.UTF_8));
+			zip.closeEntry();
+
+			byte[] stored = "Stored without compression".getBytes(StandardCharsets.UTF_8);
+			ZipEntry entry = new ZipEntry("stored.txt");
+			entry.setMethod(ZipEntry.STORED);
+			entry.setSize(stored.length);
+			CRC32 crc = new CRC32();
+			crc.update(stored);
+			entry.setCrc(crc.getValue());
+			zip.putNextEntry(entry);
+			zip.write(stored);
+			zip.closeEntry();
+		}
+		return baos.toByteArray();
+	}
+
 	@SafeVarargs
 	private static <T> Set<T> set(T... values) {
 		Set<T> set = new HashSet<>();
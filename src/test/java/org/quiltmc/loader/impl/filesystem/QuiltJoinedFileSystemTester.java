@@ -18,6 +18,7 @@ package org.quiltmc.loader.impl.filesystem;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -26,8 +27,12 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -128,6 +133,84 @@ public class QuiltJoinedFileSystemTester {
 		}
 	}
 
+	/**
+	 * Tests the merged index, which is only used when every backing filesystem is permanently read-only, by comparing
+	 * it to the same files in read/write filesystems.
+	 */
+	@Test
+	public void testMergedIndex(@TempDir Path tempDir) throws IOException {
+		Path zip1 = tempDir.resolve("first.zip");
+		Path zip2 = tempDir.resolve("second.zip");
+		writeZip(zip1, "a/shared.txt", "first", "a/first.txt", "first", "top.txt", "first", "clash", "first");
+		writeZip(zip2, "a/shared.txt", "second", "a/b/second.txt", "second", "empty/", "", "clash/inner.txt", "second");
+
+		try (QuiltZipFileSystem ro1 = new QuiltZipFileSystem("ro1", zip1, "");
+			QuiltZipFileSystem ro2 = new QuiltZipFileSystem("ro2", zip2, "");
+			QuiltMemoryFileSystem.ReadWrite rw1 = new QuiltMemoryFileSystem.ReadWrite("rw1", true);
+			QuiltMemoryFileSystem.ReadWrite rw2 = new QuiltMemoryFileSystem.ReadWrite("rw2", true);
+			QuiltJoinedFileSystem merged = new QuiltJoinedFileSystem("merged", Arrays.asList(ro1.getRoot(), ro2.getRoot()));
+			QuiltJoinedFileSystem unmerged = new QuiltJoinedFileSystem("unmerged", Arrays.asList(rw1.getRoot(), rw2.getRoot()))) {
+
+			copyTree(ro1.getRoot(), rw1.getRoot());
+			copyTree(ro2.getRoot(), rw2.getRoot());
+
+			Assertions.assertNotNull(merged.getMergedIndex());
+			Assertions.assertNull(unmerged.getMergedIndex());
+
+			Assertions.assertEquals(
+				QuiltFileSystemTester.describeTree(unmerged.getRoot()), QuiltFileSystemTester.describeTree(merged.getRoot())
+			);
+
+			// The first backing path wins
+			Assertions.assertEquals("first", read(merged.getPath("/a/shared.txt")));
+			Assertions.assertTrue(Files.isRegularFile(merged.getPath("/clash")));
+			assertEqual(Files.newDirectoryStream(merged.getPath("/clash")), merged.getPath("/clash/inner.txt"));
+
+			for (String path : new String[] { "/a/b/second.txt", "/empty", "/missing", "/a/missing.txt", "/top.txt/x" }) {
+				Assertions.assertEquals(Files.exists(unmerged.getPath(path)), Files.exists(merged.getPath(path)), path);
+				Assertions.assertEquals(Files.isDirectory(unmerged.getPath(path)), Files.isDirectory(merged.getPath(path)), path);
+			}
+
+			// A backing path can be a folder inside a read-only filesystem
+			try (QuiltJoinedFileSystem sub = new QuiltJoinedFileSystem("sub", Arrays.asList(ro1.getPath("/a"), ro2.getPath("/a")))) {
+				Assertions.assertNotNull(sub.getMergedIndex());
+				assertEqual(
+					Files.newDirectoryStream(sub.getRoot()),
+					sub.getPath("/shared.txt"), sub.getPath("/first.txt"), sub.getPath("/b")
+				);
+				Assertions.assertEquals("second", read(sub.getPath("/b/second.txt")));
+			}
+		}
+	}
+
+	private static void copyTree(Path from, Path to) throws IOException {
+		try (Stream<Path> stream = Files.walk(from)) {
+			for (Path path : (Iterable<Path>) stream::iterator) {
+				Path target = to.resolve(from.relativize(path).toString());
+				if (Files.isDirectory(path)) {
+					Files.createDirectories(target);
+				} else {
+					Files.copy(path, target);
+				}
+			}
+		}
+	}
+
+	private static String read(Path path) throws IOException {
+		return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+	}
+
+	/** @param files Alternating file names and contents. */
+	private static void writeZip(Path zip, String... files) throws IOException {
+		try (ZipOutputStream stream = new ZipOutputStream(Files.newOutputStream(zip))) {
+			for (int i = 0; i < files.length; i += 2) {
+				stream.putNextEntry(new ZipEntry(files[i]));
+				stream.write(files[i + 1].getBytes(StandardCharsets.UTF_8));
+				stream.closeEntry();
+			}
+		}
+	}
+
 	/**
 	 * @return sets of two paths for testing joined filesystems
 	 */
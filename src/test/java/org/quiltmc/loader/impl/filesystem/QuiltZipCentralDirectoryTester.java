@@ -0,0 +1,120 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.loader.impl.filesystem;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class QuiltZipCentralDirectoryTester {
+
+	static final byte[] HELLO = "Hello, world!".getBytes(StandardCharsets.UTF_8);
+	static final byte[] STORED = "Stored without compression".getBytes(StandardCharsets.UTF_8);
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void testEntries() throws IOException {
+		Path zip = tempDir.resolve("test.zip");
+		Files.write(zip, createZip());
+		checkEntries(zip);
+	}
+
+	@Test
+	public void testPrefixedZip() throws IOException {
+		// Like a self-executing jar, which has a script before the zip
+		byte[] prefix = "#!/bin/sh\nexec java -jar \"$0\"\n".getBytes(StandardCharsets.UTF_8);
+		byte[] zipBytes = createZip();
+		byte[] bytes = Arrays.copyOf(prefix, prefix.length + zipBytes.length);
+		System.arraycopy(zipBytes, 0, bytes, prefix.length, zipBytes.length);
+		Path zip = tempDir.resolve("prefixed.zip");
+		Files.write(zip, bytes);
+		checkEntries(zip);
+	}
+
+	@Test
+	public void testTruncatedZip() throws IOException {
+		byte[] bytes = createZip();
+		Path zip = tempDir.resolve("truncated.zip");
+		Files.write(zip, Arrays.copyOf(bytes, bytes.length - 10));
+		try (SeekableByteChannel channel = Files.newByteChannel(zip)) {
+			Assertions.assertNull(QuiltZipCentralDirectory.read(channel));
+		}
+	}
+
+	private static void checkEntries(Path zip) throws IOException {
+		try (SeekableByteChannel channel = Files.newByteChannel(zip)) {
+			List<QuiltZipCentralDirectory.Entry> entries = QuiltZipCentralDirectory.read(channel);
+			Assertions.assertNotNull(entries);
+			Assertions.assertEquals(3, entries.size());
+
+			Assertions.assertEquals("folder/", entries.get(0).name);
+
+			QuiltZipCentralDirectory.Entry hello = entries.get(1);
+			Assertions.assertEquals("folder/hello.txt", hello.name);
+			Assertions.assertEquals(ZipEntry.DEFLATED, hello.method);
+			Assertions.assertEquals(HELLO.length, hello.uncompressedSize);
+
+			QuiltZipCentralDirectory.Entry stored = entries.get(2);
+			Assertions.assertEquals("stored.txt", stored.name);
+			Assertions.assertEquals(ZipEntry.STORED, stored.method);
+			Assertions.assertEquals(STORED.length, stored.uncompressedSize);
+			long dataOffset = QuiltZipCentralDirectory.readDataOffset(channel, stored.localHeaderOffset);
+			ByteBuffer data = ByteBuffer.allocate(STORED.length);
+			channel.position(dataOffset);
+			channel.read(data);
+			Assertions.assertArrayEquals(STORED, data.array());
+		}
+	}
+
+	private static byte[] createZip() throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (ZipOutputStream zip = new ZipOutputStream(baos)) {
+			zip.putNextEntry(new ZipEntry("folder/"));
+			zip.closeEntry();
+			// Deflated entries are written with a data descriptor, so the local header doesn't contain the sizes
+			zip.putNextEntry(new ZipEntry("folder/hello.txt"));
+			zip.write(HELLO);
+			zip.closeEntry();
+
+			ZipEntry stored = new ZipEntry("stored.txt");
+			stored.setMethod(ZipEntry.STORED);
+			stored.setSize(STORED.length);
+			CRC32 crc = new CRC32();
+			crc.update(STORED);
+			stored.setCrc(crc.getValue());
+			zip.putNextEntry(stored);
+			zip.write(STORED);
+			zip.closeEntry();
+		}
+		return baos.toByteArray();
+	}
+}
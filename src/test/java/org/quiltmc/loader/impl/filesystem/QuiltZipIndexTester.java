@@ -0,0 +1,83 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.loader.impl.filesystem;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class QuiltZipIndexTester {
+
+	@Test
+	public void testFind() throws IOException {
+		QuiltZipIndex.Builder builder = new QuiltZipIndex.Builder();
+		builder.addFile("a/b/c.txt", QuiltZipIndex.KIND_FILE, 100, 10, 20, null);
+		builder.addFolder("empty/");
+		builder.addFile("top.txt", QuiltZipIndex.KIND_FILE | QuiltZipIndex.FLAG_STORED, 200, 5, 5, null);
+		QuiltZipIndex index = QuiltZipIndex.read(ByteBuffer.wrap(builder.build(null)));
+
+		Assertions.assertEquals(6, index.entryCount);
+		Assertions.assertEquals(QuiltZipIndex.ROOT, index.find("/"));
+
+		int file = index.find("/a/b/c.txt");
+		Assertions.assertTrue(file > 0);
+		Assertions.assertEquals("c.txt", index.name(file));
+		Assertions.assertEquals(QuiltZipIndex.KIND_FILE, index.kind(file));
+		Assertions.assertEquals(100, index.offset(file));
+		Assertions.assertEquals(10, index.compressedSize(file));
+		Assertions.assertEquals(20, index.uncompressedSize(file));
+		Assertions.assertFalse(index.hasFlag(file, QuiltZipIndex.FLAG_STORED));
+		Assertions.assertEquals(index.find("/a/b"), index.parent(file));
+
+		int top = index.find("/top.txt");
+		Assertions.assertTrue(index.hasFlag(top, QuiltZipIndex.FLAG_STORED));
+
+		int empty = index.find("/empty");
+		Assertions.assertTrue(index.isFolder(empty));
+		Assertions.assertEquals(0, index.childCount(empty));
+
+		Assertions.assertEquals(-1, index.find("/a/c.txt"));
+		Assertions.assertEquals(-1, index.find("/b/c.txt"));
+		Assertions.assertEquals(-1, index.find("/missing"));
+	}
+
+	@Test
+	public void testChildrenAreContiguous() throws IOException {
+		QuiltZipIndex.Builder builder = new QuiltZipIndex.Builder();
+		builder.addFile("x/1", QuiltZipIndex.KIND_FILE, 0, 1, 1, null);
+		builder.addFile("y/1", QuiltZipIndex.KIND_FILE, 0, 1, 1, null);
+		builder.addFile("x/2", QuiltZipIndex.KIND_FILE, 0, 1, 1, null);
+		QuiltZipIndex index = QuiltZipIndex.read(ByteBuffer.wrap(builder.build(null)));
+
+		int x = index.find("/x");
+		Assertions.assertEquals(2, index.childCount(x));
+		int first = index.firstChild(x);
+		Assertions.assertEquals("1", index.name(first));
+		Assertions.assertEquals("2", index.name(first + 1));
+		Assertions.assertEquals(x, index.parent(first + 1));
+	}
+
+	@Test
+	public void testDuplicates() throws IOException {
+		QuiltZipIndex.Builder builder = new QuiltZipIndex.Builder();
+		builder.addFile("a/b", QuiltZipIndex.KIND_FILE, 0, 1, 1, null);
+		Assertions.assertThrows(IOException.class, () -> builder.addFile("a/b", QuiltZipIndex.KIND_FILE, 0, 1, 1, null));
+		Assertions.assertThrows(IOException.class, () -> builder.addFolder("a/b/c"));
+	}
+}
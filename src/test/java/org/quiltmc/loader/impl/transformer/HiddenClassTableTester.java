@@ -0,0 +1,67 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.loader.impl.transformer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class HiddenClassTableTester {
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		Map<String, String> classes = new HashMap<>();
+		classes.put("com.example.client.Screen", "it is client-only");
+		classes.put("com.example.client.Renderer", "it is client-only");
+		classes.put("com.example.Optional", "the mod 'other' isn't loaded");
+		classes.put("com.example.\u00e9t\u00e9", "it is client-only");
+		classes.put("com.example.package-info", "it was removed by a chasm transformer");
+
+		HiddenClassTable table = HiddenClassTable.read(ByteBuffer.wrap(HiddenClassTable.write(classes)));
+
+		Assertions.assertEquals(classes, table);
+		Assertions.assertEquals(classes.size(), table.size());
+		for (Map.Entry<String, String> entry : classes.entrySet()) {
+			Assertions.assertEquals(entry.getValue(), table.get(entry.getKey()));
+		}
+
+		Assertions.assertNull(table.get("com.example"));
+		Assertions.assertNull(table.get("com.example.client.Screen2"));
+		Assertions.assertNull(table.get("a"));
+		Assertions.assertNull(table.get("z"));
+		Assertions.assertFalse(table.containsKey("com.example.client"));
+	}
+
+	@Test
+	public void testEmpty() throws IOException {
+		HiddenClassTable table = HiddenClassTable.read(ByteBuffer.wrap(HiddenClassTable.write(new HashMap<>())));
+		Assertions.assertTrue(table.isEmpty());
+		Assertions.assertNull(table.get("com.example.Main"));
+	}
+
+	@Test
+	public void testInvalid() {
+		Assertions.assertThrows(IOException.class, () -> HiddenClassTable.read(ByteBuffer.wrap(new byte[] { 1, 2, 3 })));
+		byte[] truncated = HiddenClassTable.write(Collections.singletonMap("com.example.Main", "reason"));
+		Assertions.assertThrows(IOException.class, () -> HiddenClassTable.read(ByteBuffer.wrap(truncated, 0, 20)));
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.loader.impl.transformer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TransformCacheGenerationsTester {
+
+	private static final long NOW = System.currentTimeMillis();
+
+	@Test
+	public void testArchiveAndRestore(@TempDir Path folder) throws IOException {
+		Path cache = folder.resolve("transform-cache.zip");
+		Files.write(cache, "first".getBytes(StandardCharsets.UTF_8));
+
+		Assertions.assertTrue(TransformCacheGenerations.archive(folder, cache, "options a"));
+		Assertions.assertFalse(Files.exists(cache));
+		Path generation = TransformCacheGenerations.getFile(folder, "options a");
+		Assertions.assertTrue(TransformCacheGenerations.isGenerationFile(generation));
+		Assertions.assertEquals(generation, TransformCacheGenerations.findMostRecent(folder));
+
+		// Only the same options restore it
+		Assertions.assertFalse(TransformCacheGenerations.restore(folder, cache, "options b"));
+		Assertions.assertFalse(Files.exists(cache));
+		Assertions.assertTrue(TransformCacheGenerations.restore(folder, cache, "options a"));
+		Assertions.assertEquals("first", new String(Files.readAllBytes(cache), StandardCharsets.UTF_8));
+		Assertions.assertFalse(Files.exists(generation));
+		Assertions.assertNull(TransformCacheGenerations.findMostRecent(folder));
+	}
+
+	@Test
+	public void testEvictKeepsMostRecent(@TempDir Path folder) throws IOException {
+		Path cache = folder.resolve("transform-cache.zip");
+		Files.write(cache, new byte[10]);
+		Path oldest = generation(folder, "a", 10, 3);
+		Path older = generation(folder, "b", 10, 2);
+		Path newest = generation(folder, "c", 10, 1);
+
+		// The current cache counts as one of the generations
+		TransformCacheGenerations.evict(folder, cache, 3, TimeUnit.DAYS.toMillis(30), 1000);
+		assertExisting(Arrays.asList(older, newest), Arrays.asList(oldest));
+		Assertions.assertEquals(newest, TransformCacheGenerations.findMostRecent(folder));
+		Assertions.assertTrue(Files.exists(cache));
+	}
+
+	@Test
+	public void testEvictOldAndLarge(@TempDir Path folder) throws IOException {
+		Path cache = folder.resolve("transform-cache.zip");
+		Path recent = generation(folder, "a", 10, 1);
+		Path expired = generation(folder, "b", 10, 40);
+		Path large = generation(folder, "c", 100, 2);
+
+		TransformCacheGenerations.evict(folder, cache, 10, TimeUnit.DAYS.toMillis(30), 50);
+		assertExisting(Arrays.asList(recent), Arrays.asList(expired, large));
+	}
+
+	@Test
+	public void testEvictCountsCurrentCache(@TempDir Path folder) throws IOException {
+		Path cache = folder.resolve("transform-cache.zip");
+		Files.write(cache, new byte[40]);
+		Path fits = generation(folder, "a", 10, 1);
+		Path tooLarge = generation(folder, "b", 10, 2);
+
+		// 40 + 10 fits, but another 10 doesn't
+		TransformCacheGenerations.evict(folder, cache, 10, TimeUnit.DAYS.toMillis(30), 55);
+		assertExisting(Arrays.asList(fits), Arrays.asList(tooLarge));
+		Assertions.assertTrue(Files.exists(cache));
+	}
+
+	/** Creates a generation file with the given size, which was last used the given number of days ago. */
+	private static Path generation(Path folder, String options, int size, int daysAgo) throws IOException {
+		Path file = TransformCacheGenerations.getFile(folder, options);
+		Files.write(file, new byte[size]);
+		Files.setLastModifiedTime(file, FileTime.fromMillis(NOW - TimeUnit.DAYS.toMillis(daysAgo)));
+		return file;
+	}
+
+	private static void assertExisting(Iterable<Path> kept, Iterable<Path> deleted) {
+		for (Path file : kept) {
+			Assertions.assertTrue(Files.exists(file), file + " should have been kept");
+		}
+		for (Path file : deleted) {
+			Assertions.assertFalse(Files.exists(file), file + " should have been deleted");
+		}
+	}
+}
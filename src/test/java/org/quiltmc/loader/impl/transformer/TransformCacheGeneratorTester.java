@@ -0,0 +1,379 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.loader.impl.transformer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.quiltmc.loader.api.ModContainer;
+import org.quiltmc.loader.api.ModInternal;
+import org.quiltmc.loader.api.Requires;
+import org.quiltmc.loader.api.Version;
+import org.quiltmc.loader.api.minecraft.ClientOnly;
+import org.quiltmc.loader.api.plugin.solver.ModLoadOption;
+import org.quiltmc.loader.impl.QuiltLoaderImpl;
+import org.quiltmc.loader.impl.config.DummyGameProvider;
+import org.quiltmc.loader.impl.entrypoint.GameTransformer;
+import org.quiltmc.loader.impl.filesystem.QuiltUnifiedFileSystem;
+import org.quiltmc.loader.impl.launch.common.QuiltLauncherBase;
+import org.quiltmc.loader.impl.metadata.qmj.V1ModMetadataBuilder;
+import org.quiltmc.loader.impl.plugin.quilt.QuiltModOption;
+import org.quiltmc.loader.impl.util.QuiltLoaderWorkerPool;
+
+import net.fabricmc.api.EnvType;
+
+public class TransformCacheGeneratorTester {
+
+	@TempDir
+	Path temp;
+
+	@BeforeEach
+	public void setupLauncher() {
+		QuiltLoaderImpl.INSTANCE.setGameProvider(new DummyGameProvider(temp));
+		if (QuiltLauncherBase.getLauncher() == null) {
+			new TestLauncher();
+		}
+	}
+
+	@Test
+	public void testSequentialMatchesParallel() throws IOException {
+		List<ModLoadOption> mods = createMods(false);
+		Map<String, String> sequential = generate(mods, null, null);
+		Map<String, String> parallel = generate(mods, null, QuiltLoaderWorkerPool.get());
+
+		// Make sure the test mods actually get stripped, hidden and rewritten
+		Assertions.assertTrue(sequential.containsKey("/mod_a/moda/Api.class"));
+		Assertions.assertTrue(sequential.get("hidden").contains("moda.ClientThing"));
+		Assertions.assertTrue(sequential.containsKey("/mod_b/modb/User.class"));
+
+		Assertions.assertEquals(sequential, parallel);
+		Assertions.assertEquals(sequential, generate(mods, null, QuiltLoaderWorkerPool.get()));
+	}
+
+	@Test
+	public void testReusedMatchesFresh() throws IOException {
+		Set<String> modIds = new HashSet<>(Arrays.asList("mod_a", "mod_b"));
+		Map<String, String> previousKeys = new TreeMap<>();
+		previousKeys.put("mod_a", "a1");
+		previousKeys.put("mod_b", "b1");
+		TransformCacheSegments previousSegments = new TransformCacheSegments(previousKeys);
+
+		try (QuiltUnifiedFileSystem previous = new QuiltUnifiedFileSystem("transform-cache-previous", true)) {
+			Path previousRoot = previous.getRoot();
+			TransformCache cache = TransformCacheGenerator.generate0(
+				previousRoot, createMods(false), previousSegments, Collections.emptyMap(), new TransformCacheStats(), null
+			);
+			Assertions.assertNotNull(cache);
+			previousSegments.write(previousRoot);
+			Map<String, String> previousHidden = cache.getHiddenClasses();
+
+			// Only mod_b changed since then
+			List<ModLoadOption> mods = createMods(true);
+			Map<String, String> keys = new TreeMap<>(previousKeys);
+			keys.put("mod_b", "b2");
+			TransformCacheSegments segments = new TransformCacheSegments(keys).findReusable(previousRoot, modIds);
+			Assertions.assertEquals(Collections.singleton("mod_a"), segments.reused);
+
+			for (ForkJoinPool pool : new ForkJoinPool[] { null, QuiltLoaderWorkerPool.get() }) {
+				Map<String, String> fresh = generate(mods, segments.withoutReuse(), pool);
+				Map<String, String> reused = generate(mods, segments, previousHidden, pool);
+				Assertions.assertTrue(fresh.containsKey("/mod_b/modb/Extra.class"));
+				Assertions.assertEquals(fresh, reused);
+			}
+		}
+	}
+
+	private static Map<String, String> generate(List<ModLoadOption> mods, @Nullable TransformCacheSegments segments,
+		@Nullable ForkJoinPool pool) throws IOException {
+
+		return generate(mods, segments, Collections.emptyMap(), pool);
+	}
+
+	/** @return Every file and folder in the generated cache, mapped to the base64 of its bytes. */
+	private static Map<String, String> generate(List<ModLoadOption> mods, @Nullable TransformCacheSegments segments,
+		Map<String, String> previousHidden, @Nullable ForkJoinPool pool) throws IOException {
+
+		try (QuiltUnifiedFileSystem fs = new QuiltUnifiedFileSystem("transform-cache-test", true)) {
+			Path root = fs.getRoot();
+			TransformCache cache = TransformCacheGenerator.generate0(
+				root, mods, segments, previousHidden, new TransformCacheStats(), pool
+			);
+			Assertions.assertNotNull(cache);
+
+			Map<String, String> files = new TreeMap<>();
+			try (Stream<Path> stream = Files.walk(root)) {
+				for (Path path : stream.collect(Collectors.toList())) {
+					if (Files.isDirectory(path)) {
+						files.put(path.toString(), "folder");
+					} else {
+						files.put(path.toString(), Base64.getEncoder().encodeToString(Files.readAllBytes(path)));
+					}
+				}
+			}
+			files.put("hidden", new TreeMap<>(cache.getHiddenClasses()).toString());
+			return files;
+		}
+	}
+
+	private List<ModLoadOption> createMods(boolean changed) throws IOException {
+		Path modA = temp.resolve(changed ? "mod_a_2" : "mod_a");
+		writeClass(modA, "moda/Api", createApi());
+		writeClass(modA, "moda/ClientThing", createClass("moda/ClientThing", Type.getDescriptor(ClientOnly.class)));
+		writeClass(modA, "shared/Dup", createClass("shared/Dup", null));
+
+		Path modB = temp.resolve(changed ? "mod_b_2" : "mod_b");
+		writeClass(modB, "modb/User", createUser());
+		writeClass(modB, "shared/Dup", createClass("shared/Dup", null));
+		if (changed) {
+			writeClass(modB, "modb/Extra", createClass("modb/Extra", null));
+		}
+
+		List<ModLoadOption> mods = new ArrayList<>();
+		mods.add(createMod("mod_a", modA));
+		mods.add(createMod("mod_b", modB));
+		return mods;
+	}
+
+	private static ModLoadOption createMod(String id, Path root) {
+		V1ModMetadataBuilder builder = new V1ModMetadataBuilder();
+		builder.id = id;
+		builder.group = "test";
+		builder.version = Version.of("1.0.0");
+		builder.name = id;
+		return new QuiltModOption(null, builder.build(), root, null, root, true, false);
+	}
+
+	private static void writeClass(Path root, String name, byte[] bytes) throws IOException {
+		Path file = root.resolve(name + ".class");
+		Files.createDirectories(file.getParent());
+		Files.write(file, bytes);
+	}
+
+	private static byte[] createClass(String name, @Nullable String annotation) {
+		ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, "java/lang/Object", null);
+		if (annotation != null) {
+			writer.visitAnnotation(annotation, false).visitEnd();
+		}
+		writer.visitEnd();
+		return writer.toByteArray();
+	}
+
+	/** Creates a class with one method which is only usable by mod_a, and another which is stripped since it requires
+	 * a missing mod. */
+	private static byte[] createApi() {
+		ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, "moda/Api", null, "java/lang/Object", null);
+
+		MethodVisitor internal = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "internal", "()V", null, null);
+		internal.visitAnnotation(Type.getDescriptor(ModInternal.class), true).visitEnd();
+		internal.visitCode();
+		internal.visitInsn(Opcodes.RETURN);
+		internal.visitMaxs(0, 0);
+		internal.visitEnd();
+
+		MethodVisitor optional = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "optional", "()V", null, null);
+		AnnotationVisitor requires = optional.visitAnnotation(Type.getDescriptor(Requires.class), false);
+		AnnotationVisitor value = requires.visitArray("value");
+		value.visit(null, "missing_mod");
+		value.visitEnd();
+		requires.visitEnd();
+		optional.visitCode();
+		optional.visitInsn(Opcodes.RETURN);
+		optional.visitMaxs(0, 0);
+		optional.visitEnd();
+
+		writer.visitEnd();
+		return writer.toByteArray();
+	}
+
+	/** Creates a class in mod_b which calls the internal method from mod_a. */
+	private static byte[] createUser() {
+		ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, "modb/User", null, "java/lang/Object", null);
+
+		MethodVisitor run = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "run", "()V", null, null);
+		run.visitCode();
+		run.visitMethodInsn(Opcodes.INVOKESTATIC, "moda/Api", "internal", "()V", false);
+		run.visitInsn(Opcodes.RETURN);
+		run.visitMaxs(0, 0);
+		run.visitEnd();
+
+		writer.visitEnd();
+		return writer.toByteArray();
+	}
+
+	/** A launcher for a dedicated server outside of development, which doesn't patch any game classes. */
+	static final class TestLauncher extends QuiltLauncherBase {
+
+		@Override
+		public void addToClassPath(Path path, String... allowedPrefixes) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void addToClassPath(Path path, ModContainer mod, URL origin, String... allowedPrefixes) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void setAllowedPrefixes(Path path, String... prefixes) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void setTransformCache(URL insideTransformCache) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void setLazyTransformer(LazyClassTransformer transformer) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void setHiddenClasses(Set<String> classes) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void setHiddenClasses(Map<String, String> classes) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void setPluginPackages(Map<String, ClassLoader> hiddenClasses) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void hideParentUrl(URL hidden) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void hideParentPath(Path obf) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void validateGameClassLoader(Object gameInstance) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public EnvType getEnvironmentType() {
+			return EnvType.SERVER;
+		}
+
+		@Override
+		public boolean isClassLoaded(String name) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Class<?> loadIntoTarget(String name) throws ClassNotFoundException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public InputStream getResourceAsStream(String name) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public URL getResourceURL(String name) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public ClassLoader getTargetClassLoader() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public ClassLoader getClassLoader(ModContainer mod) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public byte[] getClassByteArray(String name, boolean runTransformers) throws IOException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Manifest getManifest(Path originPath) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean isDevelopment() {
+			return false;
+		}
+
+		@Override
+		public String getEntrypoint() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public String getTargetNamespace() {
+			return "intermediary";
+		}
+
+		@Override
+		public List<Path> getClassPath() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public GameTransformer getEntrypointTransformer() {
+			return new GameTransformer() {
+				@Override
+				public byte[] transform(String className) {
+					return null;
+				}
+			};
+		}
+	}
+}